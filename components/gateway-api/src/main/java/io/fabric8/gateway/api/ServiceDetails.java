@@ -15,12 +15,14 @@
  */
 package io.fabric8.gateway.api;
 
+import io.fabric8.gateway.loadbalancer.LoadBalancedService;
+
 import java.util.List;
 
 /**
  * Represents the details of a service
  */
-public interface ServiceDetails {
+public interface ServiceDetails extends LoadBalancedService {
     String getId();
 
     String getContainer();
@@ -35,6 +35,8 @@ public interface ApiManagerService {
 	public final static String HTTP_GATEWAY = "httpGateway";
 	public final static String PORT         = "port";
 	public final static String PORT_REST    = "port.rest";
+	/** Optional HttpClientRegistry shared with the gateway for the pooled back-end connections */
+	public final static String HTTP_CLIENT_REGISTRY = "httpClientRegistry";
 
 	public void init(Map<String,Object> config);
 
@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.RequestHeaders;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerResponse;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper methods to use the {@link io.fabric8.gateway.cache.ResponseCache} with Vert.x requests and responses.
+ */
+public final class HttpCacheSupport {
+
+    private HttpCacheSupport() {
+    }
+
+    /**
+     * Returns a view of the headers of a request for the cache
+     */
+    public static RequestHeaders requestHeaders(final MultiMap headers) {
+        return new RequestHeaders() {
+            @Override
+            public String getHeader(String name) {
+                List<String> values = headers.getAll(name);
+                if (values == null || values.isEmpty()) {
+                    return null;
+                }
+                if (values.size() == 1) {
+                    return values.get(0);
+                }
+                StringBuilder buffer = new StringBuilder();
+                for (String value : values) {
+                    if (buffer.length() > 0) {
+                        buffer.append(',');
+                    }
+                    buffer.append(value);
+                }
+                return buffer.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns true if the request revalidates the stale response of the lookup, which is the case unless
+     * the client sent its own conditional headers whose <code>304</code> response must be relayed to it
+     */
+    public static boolean isRevalidating(CacheLookup lookup, MultiMap requestHeaders) {
+        return lookup != null && lookup.isStale()
+                && !requestHeaders.contains("If-None-Match") && !requestHeaders.contains("If-Modified-Since");
+    }
+
+    /**
+     * Adds the validators of the stale response of the lookup to the request to the back end service
+     */
+    public static void addValidators(CacheLookup lookup, MultiMap serviceRequestHeaders) {
+        if (lookup.getIfNoneMatch() != null) {
+            serviceRequestHeaders.set("If-None-Match", lookup.getIfNoneMatch());
+        }
+        if (lookup.getIfModifiedSince() != null) {
+            serviceRequestHeaders.set("If-Modified-Since", lookup.getIfModifiedSince());
+        }
+    }
+
+    /**
+     * Sends the cached response of the lookup with its <code>Age</code>
+     */
+    public static void respond(CacheLookup lookup, HttpServerResponse response) {
+        response.setStatusCode(lookup.getResponse().getStatus());
+        for (Map.Entry<String, String> header : lookup.getHeaders()) {
+            response.headers().add(header.getKey(), header.getValue());
+        }
+        response.headers().set("Age", lookup.getAge());
+        response.end(new Buffer(lookup.getBody()));
+    }
+}
@@ -0,0 +1,372 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one keep-alive {@link HttpClient} per event loop and backend scheme://host:port so
+ * that proxied HTTP requests reuse the pooled connections of the client rather than paying
+ * a TCP (and TLS) connect for every request.
+ * <br>
+ * A Vert.x HttpClient may only be used from the context which created it and pools up to
+ * {@link #getMaxPoolSize()} connections, so the pool size applies per backend and event loop.
+ * Every client handed out by {@link #acquire(URL)} must be handed back with
+ * {@link #release(HttpClient)} once its response has completed or failed; a client is only
+ * evicted once it has no requests in flight and has been idle for {@link #getIdleTimeout()}.
+ */
+public class HttpClientRegistry {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    private final Vertx vertx;
+    private final ConcurrentHashMap<ClientKey, ClientEntry> clients = new ConcurrentHashMap<ClientKey, ClientEntry>();
+    private final ConcurrentHashMap<HttpClient, ClientEntry> entries = new ConcurrentHashMap<HttpClient, ClientEntry>();
+
+    private boolean keepAlive = true;
+    private int maxPoolSize = 20;
+    private boolean pipelining = false;
+    private int connectTimeout = 5000;
+    private boolean tcpNoDelay = true;
+    private boolean trustAll = false;
+    private long idleTimeout = 60 * 1000;
+
+    private final AtomicLong clientsCreated = new AtomicLong();
+    private final AtomicLong clientsReused = new AtomicLong();
+    private final AtomicLong clientsEvicted = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private long evictionTimer = -1;
+
+    public HttpClientRegistry(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientRegistry{" +
+                "clients=" + clients.size() +
+                ", keepAlive=" + keepAlive +
+                ", maxPoolSize=" + maxPoolSize +
+                ", pipelining=" + pipelining +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+
+    public synchronized void init() {
+        if (idleTimeout > 0 && evictionTimer == -1) {
+            evictionTimer = vertx.setPeriodic(Math.max(idleTimeout / 2, 1), new Handler<Long>() {
+                @Override
+                public void handle(Long timerID) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    public synchronized void destroy() {
+        if (evictionTimer != -1) {
+            vertx.cancelTimer(evictionTimer);
+            evictionTimer = -1;
+        }
+        for (Map.Entry<ClientKey, ClientEntry> entry : clients.entrySet()) {
+            if (clients.remove(entry.getKey(), entry.getValue())) {
+                close(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the client registered for the current event loop and the scheme, host and port
+     * of the given backend URL, creating the client if required.
+     */
+    public HttpClient acquire(URL url) {
+        String scheme = url.getProtocol();
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        ClientKey key = new ClientKey(vertx.currentContext(), scheme, url.getHost(), port);
+        requests.incrementAndGet();
+        while (true) {
+            ClientEntry entry = clients.get(key);
+            if (entry == null) {
+                ClientEntry created = new ClientEntry(createClient(key));
+                entry = clients.putIfAbsent(key, created);
+                if (entry == null) {
+                    entries.put(created.client, created);
+                    clientsCreated.incrementAndGet();
+                    entry = created;
+                } else {
+                    created.client.close();
+                }
+                if (entry.retain()) {
+                    return entry.client;
+                }
+            } else if (entry.retain()) {
+                clientsReused.incrementAndGet();
+                return entry.client;
+            }
+            // the entry was evicted concurrently so lets drop it and try again.
+            clients.remove(key, entry);
+        }
+    }
+
+    /**
+     * Hands back a client once the response of the request it was acquired for has completed
+     * or failed. Clients which were not created by this registry are closed.
+     */
+    public void release(HttpClient client) {
+        if (client == null) {
+            return;
+        }
+        ClientEntry entry = entries.get(client);
+        if (entry != null) {
+            entry.release();
+        } else {
+            client.close();
+        }
+    }
+
+    protected HttpClient createClient(ClientKey key) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(key.host);
+        client.setPort(key.port);
+        client.setKeepAlive(keepAlive);
+        client.setPipelining(pipelining);
+        client.setMaxPoolSize(maxPoolSize);
+        client.setTCPNoDelay(tcpNoDelay);
+        if (connectTimeout > 0) {
+            client.setConnectTimeout(connectTimeout);
+        }
+        if ("https".equalsIgnoreCase(key.scheme)) {
+            client.setSSL(true);
+            client.setTrustAll(trustAll);
+        }
+        return client;
+    }
+
+    protected void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ClientKey, ClientEntry> entry : clients.entrySet()) {
+            ClientEntry value = entry.getValue();
+            if (now - value.lastUsed >= idleTimeout && value.evict()) {
+                clients.remove(entry.getKey(), value);
+                close(value);
+                clientsEvicted.incrementAndGet();
+                LOG.debug("Evicted idle client for {}", entry.getKey());
+            }
+        }
+    }
+
+    private void close(ClientEntry entry) {
+        entry.active.set(-1);
+        entries.remove(entry.client, entry);
+        entry.client.close();
+    }
+
+    /**
+     * Identifies a client by the event loop context it was created on and the backend it connects to.
+     */
+    static final class ClientKey {
+        private final Context context;
+        private final String scheme;
+        private final String host;
+        private final int port;
+
+        ClientKey(Context context, String scheme, String host, int port) {
+            this.context = context;
+            this.scheme = scheme;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ClientKey that = (ClientKey) o;
+            return context == that.context && port == that.port && host.equals(that.host) && scheme.equals(that.scheme);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(context);
+            result = 31 * result + scheme.hashCode();
+            result = 31 * result + host.hashCode();
+            result = 31 * result + port;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return scheme + "://" + host + ":" + port;
+        }
+    }
+
+    /**
+     * A registered client along with the number of requests it currently has in flight.
+     * A negative count marks a client which has been evicted.
+     */
+    static final class ClientEntry {
+        final HttpClient client;
+        final AtomicInteger active = new AtomicInteger();
+        volatile long lastUsed = System.currentTimeMillis();
+
+        ClientEntry(HttpClient client) {
+            this.client = client;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = active.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            lastUsed = System.currentTimeMillis();
+            while (true) {
+                // an evicted client keeps its negative count
+                int current = active.get();
+                if (current <= 0 || active.compareAndSet(current, current - 1)) {
+                    return;
+                }
+            }
+        }
+
+        boolean evict() {
+            return active.compareAndSet(0, -1);
+        }
+    }
+
+    public Vertx getVertx() {
+        return vertx;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets whether the connections to the backends are kept open and reused between requests.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of connections each client keeps open to its backend.
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    /**
+     * Sets whether requests are pipelined on the keep-alive connections, which only
+     * helps with backends known to handle HTTP pipelining correctly.
+     */
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public boolean isTrustAll() {
+        return trustAll;
+    }
+
+    /**
+     * Sets whether the certificates of https backends are trusted without being verified.
+     */
+    public void setTrustAll(boolean trustAll) {
+        this.trustAll = trustAll;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long in milliseconds a client without requests in flight is kept before it is closed.
+     * Must be set before {@link #init()}; a value of zero or less disables eviction.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public int getActiveRequests() {
+        int answer = 0;
+        for (ClientEntry entry : clients.values()) {
+            answer += Math.max(entry.active.get(), 0);
+        }
+        return answer;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getClientsCreated() {
+        return clientsCreated.get();
+    }
+
+    public long getClientsReused() {
+        return clientsReused.get();
+    }
+
+    public long getClientsEvicted() {
+        return clientsEvicted.get();
+    }
+}
@@ -17,15 +17,22 @@ package io.fabric8.gateway.api.handlers.http;
 
 import io.fabric8.gateway.api.CallDetailRecord;
 import io.fabric8.gateway.api.handlers.http.HttpGatewayServiceClient;
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.ResponseCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -35,12 +42,28 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 	
 	private HttpGatewayServiceClient httpGatewayClient;
 	private final HttpGateway httpGateway;
+	private final Vertx vertx;
+	private RequestCoalescer requestCoalescer;
     
+    /**
+     * Creates a handler with its own pooled clients which must be closed with {@link #destroy()}
+     */
     public HttpGatewayHandler(final Vertx vertx, final HttpGateway httpGateway) {
+        this.vertx = vertx;
         this.httpGateway = httpGateway;
         httpGatewayClient = new HttpGatewayServiceClient(vertx, httpGateway);
     }
 
+    /**
+     * Creates a handler which proxies the requests using the pooled clients of the given registry,
+     * so that the backend connections can be shared with other handlers.
+     */
+    public HttpGatewayHandler(final Vertx vertx, final HttpGateway httpGateway, final HttpClientRegistry clientRegistry) {
+        this.vertx = vertx;
+        this.httpGateway = httpGateway;
+        httpGatewayClient = new HttpGatewayServiceClient(vertx, httpGateway, clientRegistry);
+    }
+
     @Override
     public void handle(final HttpServerRequest request) {
     	
@@ -51,7 +74,30 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
     	}
     	
     	final long callStart = System.nanoTime();
-    	final HttpClientRequest serviceRequest = httpGatewayClient.execute(request, null);
+    	HttpMappingTrie.Route route = null;
+    	if (getResponseCache() != null || requestCoalescer != null) {
+    	    route = HttpMappingTrie.of(httpGateway.getMappedServices()).match(request.uri());
+    	}
+    	CacheLookup cacheLookup = lookup(route, request);
+    	if (cacheLookup != null && cacheLookup.isHit()) {
+    	    HttpCacheSupport.respond(cacheLookup, request.response());
+    	    httpGateway.addCallDetailRecord(new CallDetailRecord(System.nanoTime() - callStart, null));
+    	    return;
+    	}
+    	RequestCoalescer.Flight flight = null;
+    	if (requestCoalescer != null && route != null && requestCoalescer.isEnabled(route.getPath())) {
+    	    String key = requestCoalescer.key(request.method(), request.uri(), HttpCacheSupport.requestHeaders(request.headers()));
+    	    if (key != null) {
+    	        flight = requestCoalescer.join(route.getPath(), key, new CoalescedRequest(request, cacheLookup, currentContext()));
+    	        if (flight == null) {
+    	            // an identical request is in flight so lets wait for its response
+    	            httpGateway.addCallDetailRecord(new CallDetailRecord(System.nanoTime() - callStart, null));
+    	            return;
+    	        }
+    	        failOnTimeout(flight);
+    	    }
+    	}
+    	final HttpClientRequest serviceRequest = httpGatewayClient.execute(request, null, cacheLookup, flight);
     	
     	//Sending the request to the service
 		request.dataHandler(new Handler<Buffer>() {
@@ -74,4 +120,127 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         httpGateway.addCallDetailRecord(cdr);
     	
     }
+
+    /**
+     * Looks up the request in the response cache, if there is one, using the longest matching
+     * URI prefix as the route the cache metrics are counted against.
+     */
+    protected CacheLookup lookup(HttpMappingTrie.Route route, HttpServerRequest request) {
+        ResponseCache responseCache = getResponseCache();
+        if (responseCache == null || route == null) {
+            return null;
+        }
+        return responseCache.lookup(route.getPath(), request.method(), request.uri(), HttpCacheSupport.requestHeaders(request.headers()));
+    }
+
+    /**
+     * Closes the pooled clients of the handler unless they were passed in by the caller
+     */
+    public void destroy() {
+        httpGatewayClient.destroy();
+    }
+
+    public ResponseCache getResponseCache() {
+        return httpGatewayClient.getResponseCache();
+    }
+
+    /**
+     * Sets the cache used to serve repeated requests without calling the back end services,
+     * or null to disable caching
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        httpGatewayClient.setResponseCache(responseCache);
+    }
+
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Sets the coalescer used to share the response of a request to the back end services between
+     * identical concurrent requests, or null to send every request
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Fails the flight if the leader has not completed it in time so that the waiting requests
+     * don't hang on a back end service which never answers
+     */
+    protected void failOnTimeout(final RequestCoalescer.Flight flight) {
+        long timeout = requestCoalescer.getLeaderTimeout();
+        if (vertx == null || timeout <= 0) {
+            return;
+        }
+        final long timerId = vertx.setTimer(timeout, new Handler<Long>() {
+            public void handle(Long event) {
+                if (!flight.isClosed()) {
+                    LOG.warn("Timed out waiting for the response of " + flight + " so sending the coalesced requests independently");
+                    flight.fail();
+                }
+            }
+        });
+        flight.closeHandler(new VoidHandler() {
+            public void handle() {
+                vertx.cancelTimer(timerId);
+            }
+        });
+    }
+
+    private Context currentContext() {
+        return vertx != null ? vertx.currentContext() : null;
+    }
+
+    /**
+     * A request waiting for the response of an identical request, which is completed on its own event loop
+     */
+    private final class CoalescedRequest implements RequestCoalescer.Waiter {
+        private final HttpServerRequest request;
+        private final CacheLookup cacheLookup;
+        private final Context context;
+
+        CoalescedRequest(HttpServerRequest request, CacheLookup cacheLookup, Context context) {
+            this.request = request;
+            this.cacheLookup = cacheLookup;
+            this.context = context;
+        }
+
+        @Override
+        public void respond(final int status, final List<Map.Entry<String, String>> headers, final Buffer body) {
+            run(new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    HttpServerResponse response = request.response();
+                    response.setStatusCode(status);
+                    for (Map.Entry<String, String> header : headers) {
+                        response.headers().add(header.getKey(), header.getValue());
+                    }
+                    response.end(body);
+                }
+            });
+        }
+
+        @Override
+        public void proceed() {
+            run(new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    // coalesced requests have no body so the request can be sent straight away
+                    HttpClientRequest serviceRequest = httpGatewayClient.execute(request, null, cacheLookup);
+                    if (serviceRequest != null) {
+                        serviceRequest.end();
+                    }
+                }
+            });
+        }
+
+        private void run(Handler<Void> action) {
+            if (context != null) {
+                context.runOnContext(action);
+            } else {
+                action.handle(null);
+            }
+        }
+    }
 }
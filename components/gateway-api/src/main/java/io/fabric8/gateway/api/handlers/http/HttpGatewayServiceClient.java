@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.api.handlers.http;
 
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
@@ -43,17 +45,68 @@ public class HttpGatewayServiceClient {
 
     private final Vertx vertx;
     private final HttpGateway httpGateway;
-   
+    private final HttpClientRegistry clientRegistry;
+    private final boolean ownsClientRegistry;
+    private ResponseCache responseCache;
+
+    /**
+     * Creates a client with its own {@link HttpClientRegistry} which must be closed with {@link #destroy()}
+     */
     public HttpGatewayServiceClient(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, createClientRegistry(vertx), true);
+    }
+
+    public HttpGatewayServiceClient(Vertx vertx, HttpGateway httpGateway, HttpClientRegistry clientRegistry) {
+        this(vertx, httpGateway, clientRegistry, false);
+    }
+
+    private HttpGatewayServiceClient(Vertx vertx, HttpGateway httpGateway, HttpClientRegistry clientRegistry, boolean ownsClientRegistry) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientRegistry = clientRegistry;
+        this.ownsClientRegistry = ownsClientRegistry;
+    }
+
+    /**
+     * Destroys the client registry if it was created by this client; a registry passed in
+     * is left to its owner as it may be shared with other clients
+     */
+    public void destroy() {
+        if (ownsClientRegistry) {
+            clientRegistry.destroy();
+        }
+    }
+
+    private static HttpClientRegistry createClientRegistry(Vertx vertx) {
+        HttpClientRegistry answer = new HttpClientRegistry(vertx);
+        answer.init();
+        return answer;
     }
 
 	public HttpClientRequest execute(final HttpServerRequest request, final Object apiManagerResponseHandler) {
+	    return execute(request, apiManagerResponseHandler, null);
+	}
+
+    /**
+     * Relays the request to the back end service, revalidating the stale response of the cache lookup
+     * if there is one, and offering the response to the {@link #getResponseCache()} unless the
+     * API manager is enabled.
+     */
+	public HttpClientRequest execute(final HttpServerRequest request, final Object apiManagerResponseHandler, final CacheLookup cacheLookup) {
+	    return execute(request, apiManagerResponseHandler, cacheLookup, null);
+	}
+
+    /**
+     * Relays the request to the back end service as the leader of a flight of coalesced requests,
+     * which is failed if the request can't be sent so that the waiting requests are sent on their own.
+     */
+	public HttpClientRequest execute(final HttpServerRequest request, final Object apiManagerResponseHandler, final CacheLookup cacheLookup,
+	                                 final RequestCoalescer.Flight flight) {
 
         try {
-        	IMappedServices mappedServices = HttpMapping.getMapping(request, httpGateway.getMappedServices());
-        	ProxyMappingDetails proxyMappingDetails = mappedServices.getProxyMappingDetails();
+        	HttpMappingResult mapping = HttpMapping.getMapping(request, httpGateway.getMappedServices());
+        	final IMappedServices mappedServices = mapping != null ? mapping.getMappedServices() : null;
+        	ProxyMappingDetails proxyMappingDetails = mapping != null ? mapping.getProxyMappingDetails() : null;
         	HttpClient client = null;
         	if (proxyMappingDetails!=null && proxyMappingDetails.getProxyServiceUrl()!=null) {
         		client = createClient(new URL(proxyMappingDetails.getProxyServiceUrl()));
@@ -64,30 +117,67 @@ public class HttpGatewayServiceClient {
                 final HttpClient finalClient = client;
                 
                 Handler<HttpClientResponse> serviceResponseHandler = null;
+                HttpServiceResponseHandler responseHandler = null;
+                final String proxyServiceUrl = proxyMappingDetails.getProxyServiceUrl();
                 
                 if (httpGateway.getApiManager().isApiManagerEnabled()) {
                 	serviceResponseHandler = httpGateway.getApiManager().getService().createServiceResponseHandler(finalClient, apiManagerResponseHandler);
+                	if (flight != null) {
+                	    // the API manager handles the response so it can't be shared
+                	    flight.fail();
+                	}
         		} else {
-        			serviceResponseHandler = new HttpServiceResponseHandler(finalClient, request);
+        			responseHandler = new HttpServiceResponseHandler(clientRegistry, finalClient, request);
+        			responseHandler.setResponseCache(responseCache, cacheLookup);
+        			responseHandler.setFlight(flight);
+        			serviceResponseHandler = responseHandler;
         		}
                 
                 if (mappedServices != null) {
                     serviceResponseHandler = mappedServices.wrapResponseHandlerInPolicies(request, serviceResponseHandler, proxyMappingDetails);
                 }
                 
+                final Handler<HttpClientResponse> finalResponseHandler = serviceResponseHandler;
+                final HttpServiceResponseHandler gatewayResponseHandler = responseHandler;
                 final HttpClientRequest serviceRequest = client.request(request.method(), proxyMappingDetails.getServicePath(), serviceResponseHandler);
+                serviceRequest.exceptionHandler(new Handler<Throwable>() {
+                    @Override
+                    public void handle(Throwable e) {
+                        LOG.warn("Failed to proxy request " + request.uri() + " to service: " + proxyServiceUrl + ". " + e, e);
+                        if (gatewayResponseHandler != null) {
+                            // the response may already have released the client
+                            gatewayResponseHandler.releaseClient();
+                        } else {
+                            clientRegistry.release(finalClient);
+                        }
+                        if (flight != null) {
+                            flight.fail();
+                        }
+                        if (mappedServices != null) {
+                            mappedServices.serviceRequestFailed(finalResponseHandler, e);
+                        }
+                        respondFailed(request, gatewayResponseHandler);
+                    }
+                });
                 serviceRequest.headers().set(request.headers());
+                if (responseCache != null && HttpCacheSupport.isRevalidating(cacheLookup, request.headers())) {
+                    HttpCacheSupport.addValidators(cacheLookup, serviceRequest.headers());
+                }
                 serviceRequest.setChunked(true);
                 
                 return serviceRequest;
 
             } else {
                 //  lets return a 404
-                LOG.info("Could not find matching proxy path for " + request.uri() + " from paths: " + httpGateway.getMappedServices().keySet());
+                String message = "Could not find matching proxy path for " + request.uri() + " from paths: " + httpGateway.getMappedServices().keySet();
+                LOG.info(message);
                 HttpServerResponse httpServerResponse = request.response();
                 httpServerResponse.setStatusCode(404);
-                httpServerResponse.setStatusMessage("Could not find matching proxy path for " + request.uri() + " from paths: " + httpGateway.getMappedServices().keySet());
+                httpServerResponse.setStatusMessage(message);
                 httpServerResponse.end();
+                if (flight != null) {
+                    flight.fail();
+                }
             }
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
@@ -96,10 +186,32 @@ public class HttpGatewayServiceClient {
             e.printStackTrace(new PrintWriter(buffer));
             request.response().setStatusMessage("Error: " + e + "\nStack Trace: " + buffer);
             request.response().end();
+            if (flight != null) {
+                flight.fail();
+            }
         }
         return null;
     }
 
+    /**
+     * Answers the client with a 502 when the request to the back end service failed, or closes the
+     * connection if part of the response was already sent
+     */
+    protected void respondFailed(HttpServerRequest request, HttpServiceResponseHandler responseHandler) {
+        HttpServerResponse response = request.response();
+        if (responseHandler != null && responseHandler.isResponseStarted()) {
+            response.close();
+            return;
+        }
+        try {
+            response.setStatusCode(502);
+            response.end();
+        } catch (IllegalStateException e) {
+            // the response was already ended or written to
+            response.close();
+        }
+    }
+
     protected boolean isApimanagerRestRequest(HttpServerRequest request) {
         if (httpGateway == null || !httpGateway.isEnableIndex()) {
             return false;
@@ -108,13 +220,27 @@ public class HttpGatewayServiceClient {
         return uri == null || uri.length() == 0 || request.path().startsWith("/rest/apimanager/");
     }
 
+    /**
+     * Returns a pooled client for the backend which must be handed back to the {@link #getClientRegistry()}
+     * once the response has been handled.
+     */
     protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+        return clientRegistry.acquire(url);
+    }
+
+    public HttpClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
 
+    /**
+     * Sets the cache the responses of the back end services are stored in, or null to disable caching
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
     }
 
 }
@@ -76,65 +76,53 @@ public class HttpMapping {
         return mapper.writeValueAsString(data);
     }
     
-    public static IMappedServices getMapping(final HttpServerRequest request, Map<String, IMappedServices> mappingRules) {
-    	 
-    	String uri = request.uri();
-        String uri2 = null;
-        if (!uri.endsWith("/")) {
-            uri2 = uri + "/";
-        }
+    /**
+     * Routes the request to the mapped services with the longest URI prefix of the request
+     * which has a service available, returning null if there is none.
+     */
+    public static HttpMappingResult getMapping(final HttpServerRequest request, Map<String, IMappedServices> mappingRules) {
+        return getMapping(request, HttpMappingTrie.of(mappingRules));
+    }
+
+    public static HttpMappingResult getMapping(final HttpServerRequest request, HttpMappingTrie mappingRules) {
+        String uri = request.uri();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Proxying request: " + uri);
         }
-        
-    	String remaining = null;
-        String prefix = null;
-        String proxyServiceUrl = null;
-        String reverseServiceUrl = null;
-        
-    	IMappedServices mappedServices = null;
-         URL clientURL = null;
-         Set<Map.Entry<String, IMappedServices>> entries = mappingRules.entrySet();
-         for (Map.Entry<String, IMappedServices> entry : entries) {
-             String path = entry.getKey();
-             String pathPrefix = path;
-             if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
-            	 mappedServices = entry.getValue();
-                 int pathPrefixLength = pathPrefix.length();
-                 if (pathPrefixLength < uri.length()) {
-                     remaining = uri.substring(pathPrefixLength+1);
-                 } else {
-                     remaining = null;
-                 }
+        for (HttpMappingTrie.Route route = mappingRules.match(uri); route != null; route = route.getShorterMatch()) {
+            String pathPrefix = route.getPath();
+            IMappedServices mappedServices = route.getMappedServices();
+            String remaining = null;
+            int pathPrefixLength = pathPrefix.length();
+            if (pathPrefixLength < uri.length()) {
+                remaining = uri.substring(pathPrefixLength+1);
+            }
+
+            // now lets pick a service for this path
+            String proxyServiceUrl = mappedServices.chooseService(request);
+            if (proxyServiceUrl != null) {
+                try {
+                    URL clientURL = new URL(proxyServiceUrl);
+                    String prefix = clientURL.getPath();
+                    String reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                    if (reverseServiceUrl.endsWith("/")) {
+                        reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
+                    }
 
-                 // now lets pick a service for this path
-                 proxyServiceUrl = mappedServices.chooseService(request);
-                 if (proxyServiceUrl != null) {
-                     // lets create a client for this request...
-                     try {
-                         clientURL = new URL(proxyServiceUrl);
-                         prefix = clientURL.getPath();
-                         reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                         if (reverseServiceUrl.endsWith("/")) {
-                             reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                         }
-                         
-                         String servicePath = prefix != null ? prefix : "";
-                         // we should usually end the prefix path with a slash for web apps at least
-                         if (servicePath.length() > 0 && !servicePath.endsWith("/")) {
-                             servicePath += "/";
-                         }
-                         if (remaining != null) {
-                             servicePath += remaining;
-                         }
-                         mappedServices.setProxyMappingDetails(new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath));
-                         break;
-                     } catch (MalformedURLException e) {
-                         LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
-                     }
-                 }
-             }
-         }
-         return mappedServices;
+                    String servicePath = prefix != null ? prefix : "";
+                    // we should usually end the prefix path with a slash for web apps at least
+                    if (servicePath.length() > 0 && !servicePath.endsWith("/")) {
+                        servicePath += "/";
+                    }
+                    if (remaining != null) {
+                        servicePath += remaining;
+                    }
+                    return new HttpMappingResult(pathPrefix, mappedServices, new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath));
+                } catch (MalformedURLException e) {
+                    LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                }
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+/**
+ * The result of routing a single request: the mapped services of the longest matching
+ * URI prefix together with the details of the back end service chosen for the request.
+ */
+public class HttpMappingResult {
+    private final String pathPrefix;
+    private final IMappedServices mappedServices;
+    private final ProxyMappingDetails proxyMappingDetails;
+
+    public HttpMappingResult(String pathPrefix, IMappedServices mappedServices, ProxyMappingDetails proxyMappingDetails) {
+        this.pathPrefix = pathPrefix;
+        this.mappedServices = mappedServices;
+        this.proxyMappingDetails = proxyMappingDetails;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMappingResult{" +
+                "pathPrefix='" + pathPrefix + '\'' +
+                ", proxyMappingDetails=" + proxyMappingDetails +
+                '}';
+    }
+
+    /**
+     * Returns the URI prefix the request matched.
+     */
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    public IMappedServices getMappedServices() {
+        return mappedServices;
+    }
+
+    public ProxyMappingDetails getProxyMappingDetails() {
+        return proxyMappingDetails;
+    }
+}
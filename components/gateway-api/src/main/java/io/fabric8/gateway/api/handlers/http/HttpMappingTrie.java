@@ -0,0 +1,245 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable radix trie of the URI prefixes of the mapped services, so that the
+ * longest matching prefix of a request URI is found in time proportional to the length
+ * of the URI rather than the number of mapped services.
+ * <br>
+ * A trie is built from a snapshot of the mapped services and must be rebuilt when the
+ * mapping rules change. Gateways can return {@link #getMappedServices()} from
+ * {@link HttpGateway#getMappedServices()} so that {@link #of(Map)} reuses the trie
+ * rather than building a new one for every request.
+ */
+public final class HttpMappingTrie {
+
+    private final Route root = new Route("", null);
+    private final Map<String, IMappedServices> mappedServices;
+
+    public HttpMappingTrie(Map<String, IMappedServices> mappedServices) {
+        Map<String, IMappedServices> copy = new LinkedHashMap<String, IMappedServices>(mappedServices);
+        for (Map.Entry<String, IMappedServices> entry : copy.entrySet()) {
+            insert(entry.getKey(), entry.getValue());
+        }
+        link(root, null);
+        this.mappedServices = new TrieMap(this, Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * Returns the trie of the given mapped services, reusing it if the map was
+     * returned by {@link #getMappedServices()}.
+     */
+    public static HttpMappingTrie of(Map<String, IMappedServices> mappedServices) {
+        if (mappedServices instanceof TrieMap) {
+            return ((TrieMap) mappedServices).trie;
+        }
+        return new HttpMappingTrie(mappedServices);
+    }
+
+    /**
+     * Returns the unmodifiable mapped services indexed by URI prefix this trie was built from.
+     */
+    public Map<String, IMappedServices> getMappedServices() {
+        return mappedServices;
+    }
+
+    /**
+     * Returns the route with the longest prefix of the URI or null if no prefix matches.
+     * As a URI is also matched with a trailing slash, a request for <code>/foo</code>
+     * matches the prefix <code>/foo/</code>.
+     */
+    public Route match(String uri) {
+        int length = uri.length();
+        int max = uri.endsWith("/") ? length : length + 1;
+        Route node = root;
+        Route best = root.mappedServices != null ? root : null;
+        int i = 0;
+        while (i < max) {
+            Route child = node.child(charAt(uri, i, length));
+            if (child == null) {
+                break;
+            }
+            int end = child.path.length();
+            if (end > max || !regionMatches(uri, length, child.path, i + 1, end)) {
+                break;
+            }
+            node = child;
+            i = end;
+            if (node.mappedServices != null) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private static boolean regionMatches(String uri, int length, String path, int start, int end) {
+        for (int j = start; j < end; j++) {
+            if (path.charAt(j) != charAt(uri, j, length)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char charAt(String uri, int index, int length) {
+        return index < length ? uri.charAt(index) : '/';
+    }
+
+    private void insert(String path, IMappedServices services) {
+        Route node = root;
+        int i = 0;
+        while (i < path.length()) {
+            int index = node.indexOf(path.charAt(i));
+            if (index < 0) {
+                node.add(new Route(path, services));
+                return;
+            }
+            Route child = node.children[index];
+            int end = Math.min(path.length(), child.path.length());
+            int j = i + 1;
+            while (j < end && path.charAt(j) == child.path.charAt(j)) {
+                j++;
+            }
+            if (j < child.path.length()) {
+                // the path diverges part way along the edge so lets split it
+                Route split = new Route(path.substring(0, j), null);
+                split.add(child);
+                node.children[index] = split;
+                child = split;
+            }
+            node = child;
+            i = j;
+        }
+        node.mappedServices = services;
+    }
+
+    private static void link(Route node, Route shorter) {
+        node.shorterMatch = shorter;
+        Route next = node.mappedServices != null ? node : shorter;
+        for (Route child : node.children) {
+            link(child, next);
+        }
+    }
+
+    /**
+     * A node of the trie for a URI prefix, which has mapped services if it is a route.
+     */
+    public static final class Route {
+        private final String path;
+        private IMappedServices mappedServices;
+        private Route shorterMatch;
+        private char[] keys = new char[0];
+        private Route[] children = new Route[0];
+
+        Route(String path, IMappedServices mappedServices) {
+            this.path = path;
+            this.mappedServices = mappedServices;
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" +
+                    "path='" + path + '\'' +
+                    ", mappedServices=" + mappedServices +
+                    '}';
+        }
+
+        /**
+         * Returns the URI prefix of the route.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public IMappedServices getMappedServices() {
+            return mappedServices;
+        }
+
+        /**
+         * Returns the route with the next longest prefix which also matched the URI, if any,
+         * so that a shorter prefix can be used if no service is available for this one.
+         */
+        public Route getShorterMatch() {
+            return shorterMatch;
+        }
+
+        Route child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        int indexOf(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? index : -1;
+        }
+
+        void add(Route child) {
+            char key = child.path.charAt(path.length());
+            int index = -(Arrays.binarySearch(keys, key) + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Route[] newChildren = new Route[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = key;
+            newChildren[index] = child;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+
+    /**
+     * The unmodifiable mapped services which remembers the trie built from them.
+     */
+    static final class TrieMap extends AbstractMap<String, IMappedServices> {
+        private final HttpMappingTrie trie;
+        private final Map<String, IMappedServices> delegate;
+
+        TrieMap(HttpMappingTrie trie, Map<String, IMappedServices> delegate) {
+            this.trie = trie;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<Entry<String, IMappedServices>> entrySet() {
+            return delegate.entrySet();
+        }
+
+        @Override
+        public IMappedServices get(Object key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return delegate.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.api.handlers.http;
 
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
@@ -24,23 +26,79 @@ import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 public class HttpServiceResponseHandler implements Handler<HttpClientResponse>{
 
 	private static final transient Logger LOG = LoggerFactory.getLogger(HttpServiceResponseHandler.class);
 
+	final HttpClientRegistry clientRegistry;
 	final HttpClient httpClient;
 	final HttpServerRequest request;
+	private ResponseCache responseCache;
+	private CacheLookup cacheLookup;
+	private RequestCoalescer.Flight flight;
+	private boolean released;
+	private boolean responseStarted;
 	
 	public HttpServiceResponseHandler(HttpClient httpClient,
 			HttpServerRequest request) {
+		this(null, httpClient, request);
+	}
+
+	/**
+	 * Creates a handler which hands the client back to the registry it was acquired from,
+	 * rather than closing it, once the response has been relayed.
+	 */
+	public HttpServiceResponseHandler(HttpClientRegistry clientRegistry, HttpClient httpClient,
+			HttpServerRequest request) {
 		super();
+		this.clientRegistry = clientRegistry;
 		this.httpClient = httpClient;
 		this.request = request;
 	}
 	
 	@Override
-	public void handle(HttpClientResponse clientResponse) {
-		request.response().setStatusCode(clientResponse.statusCode());
+	public void handle(final HttpClientResponse clientResponse) {
+		responseStarted = true;
+		final int statusCode = clientResponse.statusCode();
+		clientResponse.exceptionHandler(new Handler<Throwable>() {
+			public void handle(Throwable e) {
+				LOG.warn("Failed to read the response for " + request.uri() + ": " + e, e);
+				request.response().close();
+				if (flight != null) {
+					flight.fail();
+				}
+				releaseClient();
+			}
+		});
+		Buffer cacheBuffer = null;
+		if (responseCache != null) {
+			responseCache.invalidate(request.method(), request.uri(), statusCode);
+			List<Map.Entry<String, String>> headers = clientResponse.headers().entries();
+			if (statusCode == 304 && HttpCacheSupport.isRevalidating(cacheLookup, request.headers())) {
+				cacheLookup = responseCache.revalidate(cacheLookup, headers);
+				clientResponse.endHandler(new VoidHandler() {
+					public void handle() {
+						HttpCacheSupport.respond(cacheLookup, request.response());
+						shareCachedResponse();
+						releaseClient();
+					}
+				});
+				return;
+			}
+			if (cacheLookup != null && responseCache.isStorable(cacheLookup, statusCode, headers)) {
+				cacheBuffer = new Buffer();
+			}
+		}
+		final Buffer[] cacheBody = {cacheBuffer};
+		if (flight != null) {
+			flight.start(statusCode, clientResponse.headers().entries());
+		}
+		request.response().setStatusCode(statusCode);
         request.response().headers().set(clientResponse.headers());
         request.response().setChunked(true);
         clientResponse.dataHandler(new Handler<Buffer>() {
@@ -49,13 +107,80 @@ public class HttpServiceResponseHandler implements Handler<HttpClientResponse>{
                     LOG.debug("Proxying response body:" + data);
                 }
                 request.response().write(data);
+                if (flight != null) {
+                    flight.data(data);
+                }
+                Buffer body = cacheBody[0];
+                if (body != null) {
+                    // lets give up caching a response which is too big for the cache
+                    cacheBody[0] = body.length() + data.length() <= responseCache.getMaxEntryBytes() ? body.appendBuffer(data) : null;
+                }
             }
         });
         clientResponse.endHandler(new VoidHandler() {
             public void handle() {
                 request.response().end();
-                httpClient.close();
+                if (flight != null) {
+                    flight.complete();
+                }
+                if (cacheBody[0] != null) {
+                    responseCache.store(cacheLookup, statusCode, clientResponse.headers().entries(), cacheBody[0].getBytes());
+                }
+                releaseClient();
             }
         });
 	}
+
+	/**
+	 * Sets the cache to invalidate and store the response in, and the lookup of the request
+	 * which may be null if the request was not looked up.
+	 */
+	public void setResponseCache(ResponseCache responseCache, CacheLookup cacheLookup) {
+		this.responseCache = responseCache;
+		this.cacheLookup = cacheLookup;
+	}
+
+	/**
+	 * Sets the flight of coalesced requests waiting for the response, if any
+	 */
+	public void setFlight(RequestCoalescer.Flight flight) {
+		this.flight = flight;
+	}
+
+	/**
+	 * Shares the revalidated response from the cache with the coalesced requests
+	 */
+	protected void shareCachedResponse() {
+		if (flight != null) {
+			List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>(cacheLookup.getHeaders());
+			headers.add(new AbstractMap.SimpleImmutableEntry<String, String>("Age", cacheLookup.getAge()));
+			if (flight.start(cacheLookup.getResponse().getStatus(), headers)) {
+				flight.data(new Buffer(cacheLookup.getBody()));
+			}
+			flight.complete();
+		}
+	}
+
+	/**
+	 * Returns true once the response of the back end service has been received
+	 */
+	public boolean isResponseStarted() {
+		return responseStarted;
+	}
+
+	/**
+	 * Hands the client back to the registry, or closes it, the first time it is called so that the
+	 * response and request failure handlers can both call it
+	 */
+	protected void releaseClient() {
+		if (released) {
+			return;
+		}
+		released = true;
+		if (clientRegistry != null) {
+			clientRegistry.release(httpClient);
+		} else {
+			httpClient.close();
+		}
+	}
 }
@@ -38,6 +38,12 @@ public interface IMappedServices {
 			Handler<HttpClientResponse> responseHandler,
 			ProxyMappingDetails proxyMappingDetails);
 
+	/**
+	 * Notifies the policies returned by {@link #wrapResponseHandlerInPolicies} that the request
+	 * to the service failed without a response
+	 */
+	public abstract void serviceRequestFailed(Handler<HttpClientResponse> responseHandler, Throwable cause);
+
 	/**
 	 * Rewrites the URI response from a request to a URI in the gateway namespace
 	 */
@@ -54,9 +60,5 @@ public interface IMappedServices {
 	public abstract ServiceDetails getServiceDetails();
 
 	public abstract Set<String> getServiceUrls();
-	
-	public ProxyMappingDetails getProxyMappingDetails();
-
-	public void setProxyMappingDetails(ProxyMappingDetails proxyMappingDetails);
 
 }
@@ -0,0 +1,469 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import io.fabric8.gateway.cache.RequestHeaders;
+import io.fabric8.gateway.cache.ResponseCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent GET requests so that only the first one, the leader, is sent to the
+ * back end service while the others wait for its response, which is buffered and fanned out to them.
+ * <br>
+ * Requests are identical if they have the same method, URI and values of the {@link #getKeyHeaders()},
+ * which by default include the credentials so that responses are only shared between requests made
+ * with the same credentials. Responses bigger than the {@link #getMaxResponseBytes()}, responses which
+ * set cookies, failed requests and requests still in flight after the {@link #getLeaderTimeout()} are not
+ * shared; the waiting requests are then sent to the back end service independently.
+ */
+public class RequestCoalescer {
+    private static final transient Logger LOG = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    public static final int DEFAULT_MAX_RESPONSE_BYTES = 1024 * 1024;
+    public static final long DEFAULT_LEADER_TIMEOUT = 30000L;
+    public static final List<String> DEFAULT_KEY_HEADERS = Collections.unmodifiableList(Arrays.asList(
+            "Accept", "Accept-Encoding", "Accept-Language", "Authorization", "Cookie"));
+
+    private static final List<String> UNSHARED_REQUEST_HEADERS = Arrays.asList(
+            "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range", "Range");
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+    private int maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+    private long leaderTimeout = DEFAULT_LEADER_TIMEOUT;
+    private List<String> keyHeaders = DEFAULT_KEY_HEADERS;
+    private Set<String> routes;
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{" +
+                "maxResponseBytes=" + maxResponseBytes +
+                ", leaderTimeout=" + leaderTimeout +
+                ", keyHeaders=" + keyHeaders +
+                ", routes=" + (routes != null ? routes : "*") +
+                '}';
+    }
+
+    /**
+     * Returns true if requests on the route are coalesced
+     */
+    public boolean isEnabled(String route) {
+        Set<String> enabledRoutes = routes;
+        return enabledRoutes == null || enabledRoutes.contains(route);
+    }
+
+    /**
+     * Returns the key identifying identical requests, or null if the request must not be coalesced
+     * as it is not a GET, it has a body or it is a conditional or range request whose response only
+     * applies to itself
+     */
+    public String key(String method, String uri, RequestHeaders headers) {
+        if (!"GET".equalsIgnoreCase(method) || headers.getHeader("Transfer-Encoding") != null) {
+            return null;
+        }
+        for (String name : UNSHARED_REQUEST_HEADERS) {
+            if (headers.getHeader(name) != null) {
+                return null;
+            }
+        }
+        String contentLength = headers.getHeader("Content-Length");
+        if (contentLength != null && !contentLength.trim().equals("0")) {
+            return null;
+        }
+        StringBuilder buffer = new StringBuilder("GET ").append(uri);
+        for (String name : keyHeaders) {
+            String value = headers.getHeader(name);
+            if (value != null) {
+                buffer.append('\n').append(name).append(": ").append(value);
+            }
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Joins the in flight request with the same key on the route, if any, in which case the waiter is
+     * notified once its response is available and null is returned. Otherwise the caller becomes the
+     * leader of a new flight which it must send to the back end service and complete or fail.
+     */
+    public Flight join(String route, String key, Waiter waiter) {
+        Counters routeCounters = getCounters(route);
+        Flight flight = new Flight(route, key);
+        while (true) {
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                routeCounters.flights.incrementAndGet();
+                return flight;
+            }
+            if (existing.addWaiter(waiter)) {
+                routeCounters.coalesced.incrementAndGet();
+                return null;
+            }
+            // the flight just completed so lets replace it
+            if (flights.replace(key, existing, flight)) {
+                routeCounters.flights.incrementAndGet();
+                return flight;
+            }
+        }
+    }
+
+    /**
+     * Returns the counters of the route, creating them if required
+     */
+    public Counters getCounters(String route) {
+        Counters answer = counters.get(route);
+        if (answer == null) {
+            answer = new Counters();
+            Counters previous = counters.putIfAbsent(route, answer);
+            if (previous != null) {
+                answer = previous;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the counters of all routes indexed by route
+     */
+    public Map<String, Counters> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Returns the number of requests which joined an in flight request on any route
+     */
+    public long getCoalescedRequests() {
+        long answer = 0;
+        for (Counters routeCounters : counters.values()) {
+            answer += routeCounters.getCoalesced();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of coalesced requests which were sent to the back end service independently on any route
+     */
+    public long getFallbacks() {
+        long answer = 0;
+        for (Counters routeCounters : counters.values()) {
+            answer += routeCounters.getFallbacks();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of requests currently in flight
+     */
+    public int getFlightCount() {
+        return flights.size();
+    }
+
+    public int getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    /**
+     * Sets the maximum size of a response which is buffered to be shared
+     */
+    public void setMaxResponseBytes(int maxResponseBytes) {
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    public long getLeaderTimeout() {
+        return leaderTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds after which a flight is failed if the leader has not completed it,
+     * or 0 to wait for the leader forever
+     */
+    public void setLeaderTimeout(long leaderTimeout) {
+        this.leaderTimeout = leaderTimeout;
+    }
+
+    public List<String> getKeyHeaders() {
+        return keyHeaders;
+    }
+
+    /**
+     * Sets the request headers whose values must be the same for requests to be coalesced
+     */
+    public void setKeyHeaders(List<String> keyHeaders) {
+        this.keyHeaders = Collections.unmodifiableList(new ArrayList<String>(keyHeaders));
+    }
+
+    public Set<String> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Sets the URI prefixes of the routes whose requests are coalesced, or null for all routes
+     */
+    public void setRoutes(Set<String> routes) {
+        this.routes = routes != null ? Collections.unmodifiableSet(new HashSet<String>(routes)) : null;
+    }
+
+    /**
+     * A request waiting for the response of an identical request
+     */
+    public interface Waiter {
+
+        /**
+         * Sends the shared response; the body is a copy owned by the waiter
+         */
+        void respond(int status, List<Map.Entry<String, String>> headers, Buffer body);
+
+        /**
+         * Sends the request to the back end service as the response could not be shared
+         */
+        void proceed();
+    }
+
+    /**
+     * The request of a leader to the back end service which other requests are waiting for
+     */
+    public final class Flight {
+        private final String route;
+        private final String key;
+        private final List<Waiter> waiters = new ArrayList<Waiter>();
+        private Handler<Void> closeHandler;
+        private boolean closed;
+        private int status;
+        private List<Map.Entry<String, String>> headers;
+        private Buffer body;
+
+        Flight(String route, String key) {
+            this.route = route;
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "Flight{" +
+                    "route='" + route + '\'' +
+                    ", key='" + key + '\'' +
+                    '}';
+        }
+
+        /**
+         * Starts buffering the response of the back end service, or releases the waiters if it
+         * can't be shared, in which case false is returned
+         */
+        public boolean start(int statusCode, List<Map.Entry<String, String>> responseHeaders) {
+            List<Map.Entry<String, String>> shared = new ArrayList<Map.Entry<String, String>>(responseHeaders.size());
+            for (Map.Entry<String, String> header : responseHeaders) {
+                String name = header.getKey();
+                if (name.equalsIgnoreCase("Set-Cookie") || (name.equalsIgnoreCase("Content-Length") && isTooBig(header.getValue()))) {
+                    fail();
+                    return false;
+                }
+                if (!ResponseCache.isHopByHopHeader(name)) {
+                    shared.add(new AbstractMap.SimpleImmutableEntry<String, String>(name, header.getValue()));
+                }
+            }
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                this.status = statusCode;
+                this.headers = shared;
+                this.body = new Buffer();
+                return true;
+            }
+        }
+
+        /**
+         * Buffers part of the body of the response, releasing the waiters if it is too big to be shared
+         */
+        public void data(Buffer data) {
+            synchronized (this) {
+                if (body == null) {
+                    return;
+                }
+                if (body.length() + data.length() <= maxResponseBytes) {
+                    body.appendBuffer(data);
+                    return;
+                }
+            }
+            fail();
+        }
+
+        /**
+         * Sends the buffered response to the waiters
+         */
+        public void complete() {
+            int statusCode;
+            List<Map.Entry<String, String>> responseHeaders;
+            Buffer responseBody;
+            synchronized (this) {
+                responseBody = body;
+                statusCode = status;
+                responseHeaders = headers;
+                body = null;
+            }
+            if (responseBody == null) {
+                // the response was never started or could not be shared
+                fail();
+                return;
+            }
+            responseHeaders = Collections.unmodifiableList(responseHeaders);
+            for (Waiter waiter : close()) {
+                try {
+                    waiter.respond(statusCode, responseHeaders, responseBody.copy());
+                } catch (Exception e) {
+                    LOG.warn("Failed to send the shared response of " + this + ". " + e, e);
+                }
+            }
+        }
+
+        /**
+         * Releases the waiters so that they send their own requests to the back end service
+         */
+        public void fail() {
+            synchronized (this) {
+                body = null;
+            }
+            List<Waiter> released = close();
+            if (!released.isEmpty()) {
+                getCounters(route).fallbacks.addAndGet(released.size());
+            }
+            for (Waiter waiter : released) {
+                try {
+                    waiter.proceed();
+                } catch (Exception e) {
+                    LOG.warn("Failed to send the request of " + this + ". " + e, e);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of requests waiting for the response
+         */
+        public synchronized int getWaiterCount() {
+            return waiters.size();
+        }
+
+        /**
+         * Sets the handler called once the flight has completed or failed, straight away if it already has
+         */
+        public void closeHandler(Handler<Void> handler) {
+            synchronized (this) {
+                if (!closed) {
+                    closeHandler = handler;
+                    return;
+                }
+            }
+            handler.handle(null);
+        }
+
+        /**
+         * Returns true once the flight has completed or failed
+         */
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized boolean addWaiter(Waiter waiter) {
+            if (closed) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        private List<Waiter> close() {
+            List<Waiter> answer;
+            Handler<Void> handler;
+            synchronized (this) {
+                if (closed) {
+                    return Collections.emptyList();
+                }
+                closed = true;
+                answer = new ArrayList<Waiter>(waiters);
+                waiters.clear();
+                handler = closeHandler;
+                closeHandler = null;
+            }
+            flights.remove(key, this);
+            if (handler != null) {
+                handler.handle(null);
+            }
+            return answer;
+        }
+
+        private boolean isTooBig(String contentLength) {
+            try {
+                return Long.parseLong(contentLength.trim()) > maxResponseBytes;
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The coalescing counters of a route
+     */
+    public static final class Counters {
+        private final AtomicLong flights = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong fallbacks = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "Counters{" +
+                    "flights=" + flights +
+                    ", coalesced=" + coalesced +
+                    ", fallbacks=" + fallbacks +
+                    '}';
+        }
+
+        /**
+         * Returns the number of requests sent to the back end service as the leader of a flight
+         */
+        public long getFlights() {
+            return flights.get();
+        }
+
+        /**
+         * Returns the number of requests which waited for the response of an identical request
+         */
+        public long getCoalesced() {
+            return coalesced.get();
+        }
+
+        /**
+         * Returns the number of waiting requests which were sent to the back end service independently
+         * as the response could not be shared
+         */
+        public long getFallbacks() {
+            return fallbacks.get();
+        }
+    }
+}
@@ -31,9 +31,10 @@ import io.apiman.gateway.vertx.io.VertxApimanBuffer;
 import io.fabric8.gateway.api.CallDetailRecord;
 import io.fabric8.gateway.api.apimanager.ApiManagerService;
 import io.fabric8.gateway.api.apimanager.ServiceMapping;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 import io.fabric8.gateway.api.handlers.http.HttpMapping;
-import io.fabric8.gateway.api.handlers.http.IMappedServices;
+import io.fabric8.gateway.api.handlers.http.HttpMappingResult;
 import io.fabric8.gateway.api.handlers.http.ProxyMappingDetails;
 
 import java.util.HashMap;
@@ -44,7 +45,6 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
 
@@ -56,11 +56,18 @@ public class ApiManHttpGatewayHandler implements Handler<HttpServerRequest> {
 
     private final HttpGateway httpGateway;
     private final ApiManagerService apiManager;
+    private final HttpClientRegistry clientRegistry;
 
     public ApiManHttpGatewayHandler(final Vertx vertx, final HttpGateway httpGateway, final ApiManagerService apiManager) {
+        this(vertx, httpGateway, apiManager, null);
+    }
+
+    public ApiManHttpGatewayHandler(final Vertx vertx, final HttpGateway httpGateway, final ApiManagerService apiManager,
+                                    final HttpClientRegistry clientRegistry) {
         this.httpGateway = httpGateway;
     	LOG.info("HTTP Requests are routed via APIMan");
     	this.apiManager = apiManager;
+    	this.clientRegistry = clientRegistry;
     }
 
     /**
@@ -95,9 +102,9 @@ public class ApiManHttpGatewayHandler implements Handler<HttpServerRequest> {
 			}
 	        srequest.setHeaders(headerMap);
 
-	        IMappedServices mappedServices = HttpMapping.getMapping(request, httpGateway.getMappedServices());
-	        if (mappedServices!=null) {
-		    	ProxyMappingDetails proxyMappingDetails = mappedServices.getProxyMappingDetails();
+	        HttpMappingResult mapping = HttpMapping.getMapping(request, httpGateway.getMappedServices());
+	        if (mapping!=null) {
+		    	ProxyMappingDetails proxyMappingDetails = mapping.getProxyMappingDetails();
 		    	LOG.info("Proxy Mapping Details " + proxyMappingDetails.getServicePath());
 		    	
 		        ServiceMapping apiManagerServiceInfo = apiManager.getApiManagerServiceMapping(proxyMappingDetails.getServicePath());
@@ -131,8 +138,7 @@ public class ApiManHttpGatewayHandler implements Handler<HttpServerRequest> {
 							//will mark the engineResult as failed.
 							ServiceResponse serviceResponse = engineResult.getServiceResponse();
 							if (serviceResponse!=null) {
-								final HttpClient finalClient = (HttpClient) serviceResponse.getAttribute("finalClient");
-								finalClient.close();
+								ApiManHttpServiceResponseHandler.discard(clientRegistry, serviceResponse);
 							}
 							PolicyFailure policyFailure = engineResult.getPolicyFailure();
 							response.putHeader("X-Policy-Failure-Type", String.valueOf(policyFailure.getType()));
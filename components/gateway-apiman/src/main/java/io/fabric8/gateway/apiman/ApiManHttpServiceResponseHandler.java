@@ -22,6 +22,7 @@ import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.beans.ServiceResponse;
 import io.apiman.gateway.engine.io.IApimanBuffer;
 import io.apiman.gateway.vertx.io.VertxApimanBuffer;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -37,6 +38,7 @@ import org.vertx.java.core.http.HttpClientResponse;
  */
 public class ApiManHttpServiceResponseHandler implements Handler<HttpClientResponse>{
 
+	final HttpClientRegistry clientRegistry;
 	final HttpClient httpClient;
 	final IAsyncHandler<IAsyncResult<IServiceConnectionResponse>> apiManServiceResponseHandler;
 
@@ -48,7 +50,21 @@ public class ApiManHttpServiceResponseHandler implements Handler<HttpClientRespo
 	 */
 	public ApiManHttpServiceResponseHandler(HttpClient httpClient,
 			IAsyncHandler<IAsyncResult<IServiceConnectionResponse>> responseHandler) {
+		this(null, httpClient, responseHandler);
+	}
+
+	/**
+	 * Constructor for a handler which hands the client back to the registry it was acquired from
+	 * once the response has been streamed.
+	 *
+	 * @param clientRegistry - the registry the pooled Vert.x HttpClient was acquired from.
+	 * @param httpClient - a Vert.x HttpClient instance.
+	 * @param responseHandler - an instance of the Overlord APIMan org.overlord.apiman.rt.engine.async.IAsyncHandler.
+	 */
+	public ApiManHttpServiceResponseHandler(HttpClientRegistry clientRegistry, HttpClient httpClient,
+			IAsyncHandler<IAsyncResult<IServiceConnectionResponse>> responseHandler) {
 		super();
+		this.clientRegistry = clientRegistry;
 		this.httpClient = httpClient;
 		this.apiManServiceResponseHandler = responseHandler;
 	}
@@ -110,8 +126,8 @@ public class ApiManHttpServiceResponseHandler implements Handler<HttpClientRespo
 					@Override
 					protected void handle() {
 						streamFinished = true;
-						// TODO Auto-generated method stub
 						endHandler.handle(null);
+						release(clientRegistry, httpClient);
 					}
 		        });
 			}
@@ -128,4 +144,33 @@ public class ApiManHttpServiceResponseHandler implements Handler<HttpClientRespo
         	    <IServiceConnectionResponse> create(streamToClient);
     	apiManServiceResponseHandler.handle(result);
 	}
+
+	/**
+	 * Discards the body of a response which is not relayed, for example because a policy failed,
+	 * so that its pooled connection can be reused, and hands the client back afterwards.
+	 */
+	static void discard(final HttpClientRegistry clientRegistry, ServiceResponse serviceResponse) {
+		final HttpClient httpClient = (HttpClient) serviceResponse.getAttribute(ApiManService.ATTR_HTTP_CLIENT);
+		HttpClientResponse clientResponse = (HttpClientResponse) serviceResponse.getAttribute(ApiManService.ATTR_CLIENT_RESPONSE);
+		if (clientResponse == null) {
+			release(clientRegistry, httpClient);
+			return;
+		}
+		clientResponse.dataHandler(null);
+		clientResponse.endHandler(new VoidHandler() {
+			@Override
+			protected void handle() {
+				release(clientRegistry, httpClient);
+			}
+		});
+		clientResponse.resume();
+	}
+
+	static void release(HttpClientRegistry clientRegistry, HttpClient httpClient) {
+		if (clientRegistry != null) {
+			clientRegistry.release(httpClient);
+		} else if (httpClient != null) {
+			httpClient.close();
+		}
+	}
 }
@@ -20,6 +20,7 @@ import io.apiman.gateway.engine.async.IAsyncHandler;
 import io.apiman.gateway.engine.async.IAsyncResult;
 import io.fabric8.gateway.api.apimanager.ApiManagerService;
 import io.fabric8.gateway.api.apimanager.ServiceMapping;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 
 import java.util.Map;
@@ -45,6 +46,9 @@ public class ApiManService implements ApiManagerService {
 	private static final transient Logger LOG = LoggerFactory.getLogger(ApiManService.class);
 	private Vertx vertx;
 	private HttpGateway httpGateway;
+	/** the pooled clients used to call the back-end services */
+	private HttpClientRegistry httpClientRegistry;
+	private boolean ownsHttpClientRegistry;
 
 	/** the APIMan Engine */
 	private ApiManEngine engine;
@@ -59,7 +63,13 @@ public class ApiManService implements ApiManagerService {
 		vertx = (Vertx) config.get(ApiManagerService.VERTX);
 		httpGateway = (HttpGateway) config.get(ApiManagerService.HTTP_GATEWAY);
 		String port = (String) config.get(ApiManagerService.PORT);
-		engine = new Engine().create(vertx, httpGateway, port);
+		httpClientRegistry = (HttpClientRegistry) config.get(ApiManagerService.HTTP_CLIENT_REGISTRY);
+		ownsHttpClientRegistry = httpClientRegistry == null;
+		if (ownsHttpClientRegistry) {
+			httpClientRegistry = new HttpClientRegistry(vertx);
+			httpClientRegistry.init();
+		}
+		engine = new Engine().create(vertx, httpGateway, port, httpClientRegistry);
 		engineRestServer = vertx.createHttpServer();
 		int portRest = Integer.valueOf(port) - 1;
 		if (config.containsKey(ApiManagerService.PORT_REST)) portRest = (Integer) config.get(ApiManagerService.PORT_REST);
@@ -74,6 +84,10 @@ public class ApiManService implements ApiManagerService {
 		engineRestServer.close();
 		engineRestServer = null;
 		engine = null;
+		if (ownsHttpClientRegistry && httpClientRegistry != null) {
+			httpClientRegistry.destroy();
+		}
+		httpClientRegistry = null;
 	}
 
 	/**
@@ -90,14 +104,14 @@ public class ApiManService implements ApiManagerService {
 	@Override
 	public Handler<HttpClientResponse> createServiceResponseHandler(
 			final HttpClient httpClient, final Object apiManagementResponseHandler) {
-			return new ApiManHttpServiceResponseHandler(httpClient, (IAsyncHandler<IAsyncResult<IServiceConnectionResponse>>) apiManagementResponseHandler);
+			return new ApiManHttpServiceResponseHandler(httpClientRegistry, httpClient, (IAsyncHandler<IAsyncResult<IServiceConnectionResponse>>) apiManagementResponseHandler);
 	}
     /**
      * @see ApiManagerService#createHttpGatewayHandler()
      */
 	@Override
 	public Handler<HttpServerRequest> createApiManagerHttpGatewayHandler() {
-		return new ApiManHttpGatewayHandler(vertx, httpGateway, this);
+		return new ApiManHttpGatewayHandler(vertx, httpGateway, this, httpClientRegistry);
 	}
 
 	@Override
@@ -25,6 +25,7 @@ import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Service;
 import io.apiman.gateway.engine.beans.ServiceRequest;
 import io.fabric8.gateway.api.apimanager.ServiceMapping;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 import io.fabric8.gateway.api.handlers.http.IMappedServices;
 
@@ -42,12 +43,14 @@ public class Engine {
 	 *
 	 * @param vertx - a reference to Vert.x
 	 * @param httpGateway - a reference to a HttpGateway implementation.
+	 * @param httpClientRegistry - the pooled clients used to call the back-end services.
 	 * @return IEngine - the APIMan Engine that applies policies.
 	 */
-	public ApiManEngine create(final Vertx vertx, final HttpGateway httpGateway, final String port) {
-		IEngineFactory factory = new EngineFactory(vertx, httpGateway);
+	public ApiManEngine create(final Vertx vertx, final HttpGateway httpGateway, final String port,
+							   final HttpClientRegistry httpClientRegistry) {
+		IEngineFactory factory = new EngineFactory(vertx, httpGateway, httpClientRegistry);
 		if ("in-memory".equals(System.getProperty("fabric8-apiman.engine-factory"))) {
-		    factory = new InMemoryEngineFactory(vertx, httpGateway);
+		    factory = new InMemoryEngineFactory(vertx, httpGateway, httpClientRegistry);
 		}
 		final IEngine engine = factory.createEngine();
 		ApiManEngine apimanEngine = new ApiManEngine() {
@@ -79,8 +82,7 @@ public class Engine {
 				while (keys.hasNext()) {
 					String key = keys.next();
 					IMappedServices services = mappedServices.get(key);
-					String servicePath = services.getProxyMappingDetails().getProxyServiceUrl();
-					if (servicePath.equals(serviceUrl)) {
+					if (services.getServiceUrls().contains(serviceUrl)) {
 						String gatewayUrl = httpGateway.getGatewayUrl() + key;
 						return gatewayUrl;
 					}
@@ -32,6 +32,7 @@ import io.apiman.gateway.engine.impl.DefaultEngineFactory;
 import io.apiman.gateway.vertx.components.BufferFactoryComponentImpl;
 import io.apiman.gateway.vertx.components.HttpClientComponentImpl;
 import io.apiman.gateway.vertx.engine.VertxPluginRegistry;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 import io.fabric8.gateway.api.handlers.http.HttpGatewayServiceClient;
 import io.fabric8.utils.Systems;
@@ -50,16 +51,19 @@ public class EngineFactory extends DefaultEngineFactory {
 
     final Vertx vertx;
     final HttpGateway httpGateway;
+    final HttpClientRegistry httpClientRegistry;
     final Map<String, String> esConfig = new HashMap<>();
 
     /**
      * Constructor.
      * @param vertx
      * @param httpGateway
+     * @param httpClientRegistry
      */
-    public EngineFactory(final Vertx vertx, final HttpGateway httpGateway) {
+    public EngineFactory(final Vertx vertx, final HttpGateway httpGateway, final HttpClientRegistry httpClientRegistry) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.httpClientRegistry = httpClientRegistry;
 
         String host = null;
         try {
@@ -98,7 +102,7 @@ public class EngineFactory extends DefaultEngineFactory {
      */
     @Override
     protected IConnectorFactory createConnectorFactory() {
-        HttpGatewayServiceClient httpGatewayServiceClient = new HttpGatewayServiceClient(vertx, httpGateway);
+        HttpGatewayServiceClient httpGatewayServiceClient = new HttpGatewayServiceClient(vertx, httpGateway, httpClientRegistry);
         return new Fabric8ConnectorFactory(vertx, httpGatewayServiceClient);
     }
 
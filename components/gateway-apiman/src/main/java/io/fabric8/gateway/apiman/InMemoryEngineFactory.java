@@ -27,6 +27,7 @@ import io.apiman.gateway.engine.impl.InMemoryRegistry;
 import io.apiman.gateway.vertx.components.BufferFactoryComponentImpl;
 import io.apiman.gateway.vertx.components.HttpClientComponentImpl;
 import io.apiman.gateway.vertx.engine.VertxPluginRegistry;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 import io.fabric8.gateway.api.handlers.http.HttpGatewayServiceClient;
 
@@ -39,15 +40,18 @@ public class InMemoryEngineFactory extends DefaultEngineFactory {
 
     final Vertx vertx;
     final HttpGateway httpGateway;
+    final HttpClientRegistry httpClientRegistry;
 
     /**
      * Constructor.
      * @param vertx
      * @param httpGateway
+     * @param httpClientRegistry
      */
-    public InMemoryEngineFactory(final Vertx vertx, final HttpGateway httpGateway) {
+    public InMemoryEngineFactory(final Vertx vertx, final HttpGateway httpGateway, final HttpClientRegistry httpClientRegistry) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.httpClientRegistry = httpClientRegistry;
     }
 
     /**
@@ -55,7 +59,7 @@ public class InMemoryEngineFactory extends DefaultEngineFactory {
      */
     @Override
     protected IConnectorFactory createConnectorFactory() {
-        HttpGatewayServiceClient httpGatewayServiceClient = new HttpGatewayServiceClient(vertx, httpGateway);
+        HttpGatewayServiceClient httpGatewayServiceClient = new HttpGatewayServiceClient(vertx, httpGateway, httpClientRegistry);
         return new Fabric8ConnectorFactory(vertx, httpGatewayServiceClient);
     }
 
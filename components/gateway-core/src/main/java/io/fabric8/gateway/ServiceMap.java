@@ -18,57 +18,127 @@ package io.fabric8.gateway;
 import io.fabric8.gateway.api.ServiceDetails;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
  * proxy handlers, or used to create new proxy handers
+ * <br>
+ * Lookups are served from an immutable {@link Snapshot} which is only rebuilt when a
+ * service is updated or removed, so routing a connection does not copy anything.
  */
 public class ServiceMap {
-    private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
+    private final Map<String, Map<String, ServiceDetails>> map = new HashMap<String, Map<String, ServiceDetails>>();
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.<String, List<ServiceDetails>>emptyMap());
 
     /**
-     * Returns a list of all the current services for the given path
+     * Returns a list of all the current services for the given path, the list must not be modified.
      */
     public List<ServiceDetails> getServices(String path) {
-        Map<String, ServiceDetails> pathMap = getPathMap(path);
-        return new ArrayList<ServiceDetails>(pathMap.values());
+        return snapshot.getServices(path);
     }
 
     /**
-     * Returns a list of all the current paths for the services
+     * Returns a list of all the current paths for the services, the list must not be modified.
      */
     public List<String> getPaths() {
-        return new ArrayList<String>(map.keySet());
+        return snapshot.getPaths();
+    }
+
+    /**
+     * Returns the current immutable view of the services.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns a number which changes every time the services change, so that
+     * listeners can cheaply check if anything they cached needs to be refreshed.
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
     }
 
     /**
      * When a service is added or updated
      */
-    public void serviceUpdated(String path, ServiceDetails service) {
+    public synchronized void serviceUpdated(String path, ServiceDetails service) {
         // ignore services with empty services
         if (!service.getServices().isEmpty()) {
-            getPathMap(path).put(service.getId(), service);
+            Map<String, ServiceDetails> pathMap = map.get(path);
+            if (pathMap == null) {
+                pathMap = new LinkedHashMap<String, ServiceDetails>();
+                map.put(path, pathMap);
+            }
+            pathMap.put(service.getId(), service);
+            publish(path);
         }
     }
 
     /**
      * When a service is added or updated
      */
-    public void serviceRemoved(String path, ServiceDetails service) {
-        getPathMap(path).remove(service.getId());
+    public synchronized void serviceRemoved(String path, ServiceDetails service) {
+        Map<String, ServiceDetails> pathMap = map.get(path);
+        if (pathMap != null && pathMap.remove(service.getId()) != null) {
+            if (pathMap.isEmpty()) {
+                map.remove(path);
+            }
+            publish(path);
+        }
 
         // lets update any in progress proxy handlers using this service
     }
 
-    protected Map<String, ServiceDetails> getPathMap(String path) {
-        Map<String, ServiceDetails> initial = new ConcurrentHashMap<String, ServiceDetails>();
-        Map<String, ServiceDetails> answer = map.putIfAbsent(path, initial);
-        if (answer == null) {
-            answer = initial;
+    /**
+     * Publishes a new snapshot sharing the service lists of all the paths which did not change.
+     */
+    private void publish(String path) {
+        Map<String, List<ServiceDetails>> services = new LinkedHashMap<String, List<ServiceDetails>>(snapshot.services);
+        Map<String, ServiceDetails> pathMap = map.get(path);
+        if (pathMap == null) {
+            services.remove(path);
+        } else {
+            ServiceDetails[] array = pathMap.values().toArray(new ServiceDetails[pathMap.size()]);
+            services.put(path, Collections.unmodifiableList(Arrays.asList(array)));
+        }
+        snapshot = new Snapshot(snapshot.version + 1, services);
+    }
+
+    /**
+     * An immutable, versioned view of the services for each path.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Map<String, List<ServiceDetails>> services;
+        private final List<String> paths;
+
+        Snapshot(long version, Map<String, List<ServiceDetails>> services) {
+            this.version = version;
+            this.services = services;
+            this.paths = Collections.unmodifiableList(new ArrayList<String>(services.keySet()));
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public List<ServiceDetails> getServices(String path) {
+            List<ServiceDetails> answer = services.get(path);
+            if (answer == null) {
+                answer = Collections.emptyList();
+            }
+            return answer;
         }
-        return answer;
     }
 }
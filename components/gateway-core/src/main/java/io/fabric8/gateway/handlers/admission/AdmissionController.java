@@ -0,0 +1,274 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.admission;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the gateway should accept a new client connection before spending any
+ * effort on detecting its protocol, so that a client fleet reconnecting in a tight loop
+ * cannot saturate the gateway or the services behind it.
+ * <br>
+ * Connections are limited by a {@link TokenBucket} per source address, or per network when
+ * a prefix length is configured, by a token bucket per virtual host and by a global cap on
+ * the sockets which are still being detected. A rate or limit of 0 disables that check and
+ * all the limits can be changed while the gateway is running.
+ */
+public class AdmissionController {
+    private static final long PRUNE_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConcurrentHashMap<Object, TokenBucket> sourceBuckets = new ConcurrentHashMap<Object, TokenBucket>(256, 0.75f, 64);
+    private final ConcurrentHashMap<String, TokenBucket> virtualHostBuckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final AtomicInteger connecting = new AtomicInteger();
+    private final AtomicLong lastPruned = new AtomicLong(System.nanoTime());
+
+    private volatile double sourceConnectionRate;
+    private volatile int sourceConnectionBurst = 10;
+    private volatile int sourcePrefixLength = 32;
+    private volatile int sourceIPv6PrefixLength = 128;
+    private volatile double virtualHostConnectionRate;
+    private volatile int virtualHostConnectionBurst = 100;
+    private volatile int maxConnectingSockets;
+
+    private final AtomicLong rejectedBySource = new AtomicLong();
+    private final AtomicLong rejectedByVirtualHost = new AtomicLong();
+    private final AtomicLong rejectedByConnectingLimit = new AtomicLong();
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "sourceConnectionRate=" + sourceConnectionRate +
+                ", sourceConnectionBurst=" + sourceConnectionBurst +
+                ", sourcePrefixLength=" + sourcePrefixLength +
+                ", virtualHostConnectionRate=" + virtualHostConnectionRate +
+                ", virtualHostConnectionBurst=" + virtualHostConnectionBurst +
+                ", maxConnectingSockets=" + maxConnectingSockets +
+                '}';
+    }
+
+    /**
+     * Returns true if a new connection from the given address may be accepted.
+     */
+    public boolean admitConnection(InetSocketAddress remoteAddress) {
+        int max = maxConnectingSockets;
+        if (max > 0 && connecting.get() >= max) {
+            rejectedByConnectingLimit.incrementAndGet();
+            return false;
+        }
+        double rate = sourceConnectionRate;
+        if (rate > 0 && remoteAddress != null && remoteAddress.getAddress() != null) {
+            long now = System.nanoTime();
+            Object key = sourceKey(remoteAddress.getAddress());
+            TokenBucket bucket = sourceBuckets.get(key);
+            if (bucket == null) {
+                TokenBucket created = new TokenBucket(now);
+                bucket = sourceBuckets.putIfAbsent(key, created);
+                if (bucket == null) {
+                    bucket = created;
+                }
+            }
+            boolean admitted = bucket.tryAcquire(rate, sourceConnectionBurst, now);
+            pruneIfRequired(now);
+            if (!admitted) {
+                rejectedBySource.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a connection may be routed to the given virtual host.
+     */
+    public boolean admitVirtualHost(String virtualHost) {
+        double rate = virtualHostConnectionRate;
+        if (rate <= 0 || virtualHost == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        TokenBucket bucket = virtualHostBuckets.get(virtualHost);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(now);
+            bucket = virtualHostBuckets.putIfAbsent(virtualHost, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        if (!bucket.tryAcquire(rate, virtualHostConnectionBurst, now)) {
+            rejectedByVirtualHost.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that a socket started protocol detection.
+     */
+    public void connectingStarted() {
+        connecting.incrementAndGet();
+    }
+
+    /**
+     * Records that a socket finished protocol detection, whether it was routed or not.
+     */
+    public void connectingStopped() {
+        connecting.decrementAndGet();
+    }
+
+    /**
+     * Returns the key of the bucket of the address which is the address masked to the
+     * configured prefix length.
+     */
+    Object sourceKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            long ip = ((bytes[0] & 0xffL) << 24) | ((bytes[1] & 0xffL) << 16) | ((bytes[2] & 0xffL) << 8) | (bytes[3] & 0xffL);
+            int prefix = Math.max(0, Math.min(sourcePrefixLength, 32));
+            long mask = prefix == 0 ? 0 : (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+            return ip & mask;
+        }
+        int prefix = Math.max(0, Math.min(sourceIPv6PrefixLength, bytes.length * 8));
+        for (int i = 0; i < bytes.length; i++) {
+            int bits = prefix - i * 8;
+            if (bits <= 0) {
+                bytes[i] = 0;
+            } else if (bits < 8) {
+                bytes[i] &= (byte) (0xff << (8 - bits));
+            }
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void pruneIfRequired(long now) {
+        long last = lastPruned.get();
+        if (now - last > PRUNE_INTERVAL && lastPruned.compareAndSet(last, now)) {
+            prune(sourceBuckets, now);
+            prune(virtualHostBuckets, now);
+        }
+    }
+
+    private static <K> void prune(ConcurrentHashMap<K, TokenBucket> buckets, long now) {
+        for (Map.Entry<K, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isFull(now)) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public int getConnectingSockets() {
+        return connecting.get();
+    }
+
+    public int getTrackedSources() {
+        return sourceBuckets.size();
+    }
+
+    public long getRejectedBySource() {
+        return rejectedBySource.get();
+    }
+
+    public long getRejectedByVirtualHost() {
+        return rejectedByVirtualHost.get();
+    }
+
+    public long getRejectedByConnectingLimit() {
+        return rejectedByConnectingLimit.get();
+    }
+
+    public double getSourceConnectionRate() {
+        return sourceConnectionRate;
+    }
+
+    /**
+     * Sets the number of new connections per second accepted from each source address or network.
+     */
+    public void setSourceConnectionRate(double sourceConnectionRate) {
+        this.sourceConnectionRate = sourceConnectionRate;
+    }
+
+    public int getSourceConnectionBurst() {
+        return sourceConnectionBurst;
+    }
+
+    /**
+     * Sets how many connections a source may open at once above its rate.
+     */
+    public void setSourceConnectionBurst(int sourceConnectionBurst) {
+        this.sourceConnectionBurst = sourceConnectionBurst;
+    }
+
+    public int getSourcePrefixLength() {
+        return sourcePrefixLength;
+    }
+
+    /**
+     * Sets the number of leading bits of an IPv4 source address which identify the source, so
+     * that 24 for example limits each /24 network as a whole rather than each address.
+     */
+    public void setSourcePrefixLength(int sourcePrefixLength) {
+        this.sourcePrefixLength = sourcePrefixLength;
+        sourceBuckets.clear();
+    }
+
+    public int getSourceIPv6PrefixLength() {
+        return sourceIPv6PrefixLength;
+    }
+
+    /**
+     * Sets the number of leading bits of an IPv6 source address which identify the source.
+     */
+    public void setSourceIPv6PrefixLength(int sourceIPv6PrefixLength) {
+        this.sourceIPv6PrefixLength = sourceIPv6PrefixLength;
+        sourceBuckets.clear();
+    }
+
+    public double getVirtualHostConnectionRate() {
+        return virtualHostConnectionRate;
+    }
+
+    /**
+     * Sets the number of new connections per second routed to each virtual host.
+     */
+    public void setVirtualHostConnectionRate(double virtualHostConnectionRate) {
+        this.virtualHostConnectionRate = virtualHostConnectionRate;
+    }
+
+    public int getVirtualHostConnectionBurst() {
+        return virtualHostConnectionBurst;
+    }
+
+    public void setVirtualHostConnectionBurst(int virtualHostConnectionBurst) {
+        this.virtualHostConnectionBurst = virtualHostConnectionBurst;
+    }
+
+    public int getMaxConnectingSockets() {
+        return maxConnectingSockets;
+    }
+
+    /**
+     * Sets the maximum number of sockets whose protocol is being detected at once.
+     */
+    public void setMaxConnectingSockets(int maxConnectingSockets) {
+        this.maxConnectingSockets = maxConnectingSockets;
+    }
+}
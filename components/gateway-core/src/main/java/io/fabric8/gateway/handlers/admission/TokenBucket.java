@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket implemented as the generic cell rate algorithm: the bucket only
+ * stores the theoretical time at which it will be full again, which a single compare and
+ * set advances by the interval of one token for every token taken.
+ * <br>
+ * The rate and burst are passed to {@link #tryAcquire} so that they can be changed at
+ * runtime without recreating the buckets.
+ */
+public class TokenBucket {
+    private final AtomicLong fullAt;
+
+    public TokenBucket() {
+        this(System.nanoTime());
+    }
+
+    TokenBucket(long now) {
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if one is available at the given rate per second and burst size.
+     */
+    public boolean tryAcquire(double ratePerSecond, int burst, long now) {
+        if (ratePerSecond <= 0) {
+            return true;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long tolerance = interval * (Math.max(burst, 1) - 1);
+        while (true) {
+            long current = fullAt.get();
+            long start = Math.max(current, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the bucket has been full since before the given time so it can be forgotten.
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() <= now;
+    }
+}
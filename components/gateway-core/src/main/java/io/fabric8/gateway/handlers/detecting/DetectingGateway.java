@@ -17,26 +17,39 @@ package io.fabric8.gateway.handlers.detecting;
 
 import io.fabric8.utils.ShutdownTracker;
 import io.fabric8.utils.Strings;
+import io.fabric8.utils.ThreadFactory;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.api.ServiceDetails;
+import io.fabric8.gateway.handlers.admission.AdmissionController;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslBufferPool;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
+import io.fabric8.gateway.handlers.health.HealthChecker;
+import io.fabric8.gateway.handlers.http.HttpGatewayServer;
+import io.fabric8.gateway.handlers.metrics.GatewayMetrics;
+import io.fabric8.gateway.handlers.metrics.GatewayMetricsRegistry;
+import io.fabric8.gateway.handlers.metrics.PrometheusMetricsHandler;
 import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import io.fabric8.gateway.handlers.tcp.FlowControl;
+import io.fabric8.gateway.handlers.tcp.GatewayPump;
+import io.fabric8.gateway.handlers.tcp.NetClientRegistry;
+import io.fabric8.gateway.loadbalancer.BackendStatistics;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 import org.vertx.java.core.streams.ReadStream;
 
 import javax.net.ssl.SSLContext;
@@ -45,6 +58,10 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -63,21 +80,34 @@ public class DetectingGateway implements DetectingGatewayMBean {
     String defaultVirtualHost;
     ArrayList<Protocol> protocols;
     int maxProtocolIdentificationLength;
+    ProtocolDetector protocolDetector;
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
+    SslBufferPool sslBufferPool = new SslBufferPool();
     long connectionTimeout = 5000;
+    long detectionTimeoutTick = 100;
 
     final AtomicLong receivedConnectionAttempts = new AtomicLong();
     final AtomicLong successfulConnectionAttempts = new AtomicLong();
     final AtomicLong failedConnectionAttempts = new AtomicLong();
-    HashSet<SocketWrapper> socketsConnecting = new HashSet<SocketWrapper>();
-    HashSet<ConnectedSocketInfo> socketsConnected = new HashSet<ConnectedSocketInfo>();
+    final ConcurrentHashMap<Object, EventLoopConnections> eventLoops = new ConcurrentHashMap<Object, EventLoopConnections>();
     private ShutdownTracker shutdownTacker = new ShutdownTracker();
+    private NetClientRegistry clientRegistry;
+    private boolean ownsClientRegistry;
+    private HealthChecker healthChecker;
+    private boolean ownsHealthChecker;
+    private GatewayMetricsRegistry metrics = new GatewayMetricsRegistry();
+    private AdmissionController admissionController = new AdmissionController();
+    private FlowControl flowControl = new FlowControl();
+    private int metricsPort;
+    private HttpGatewayServer metricsServer;
 
     private int port;
     private String host;
+    private int instances = 1;
     private NetServer server;
+    private final List<NetServer> servers = new ArrayList<NetServer>();
 
     private FutureHandler<AsyncResult<NetServer>> listenFuture = new FutureHandler<AsyncResult<NetServer>>() {
         @Override
@@ -100,21 +130,120 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
 
     public void init() {
-        server = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
-        if (host != null) {
-            server = server.listen(port, host, listenFuture);
-        } else {
-            server = server.listen(port, listenFuture);
+        if (clientRegistry == null) {
+            clientRegistry = new NetClientRegistry(vertx);
+            ownsClientRegistry = true;
+        }
+        clientRegistry.init();
+        if (healthChecker == null) {
+            healthChecker = new HealthChecker(vertx, serviceMap);
+            ownsHealthChecker = true;
+        }
+        healthChecker.init();
+        if (getProtocolNames().contains("ssl")) {
+            initSsl();
+        }
+        if (metricsPort > 0) {
+            metricsServer = new HttpGatewayServer(vertx, null, metricsPort, new PrometheusMetricsHandler(metrics));
+            metricsServer.setHost(host);
+            metricsServer.init();
+        }
+        int count = instances;
+        if (count > 1 && port == 0) {
+            LOG.warn("Only one gateway instance can listen on an ephemeral port, ignoring instances=" + count);
+            count = 1;
+        }
+        // each server created outside of a Vert.x context is bound to the next event loop and
+        // the servers listening on the same port share its connections between them.
+        for (int i = 0; i < count; i++) {
+            NetServer instance = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
+            if (i == 0) {
+                server = instance;
+            }
+            servers.add(instance);
+            Handler<AsyncResult<NetServer>> listenHandler = i == 0 ? listenFuture : new Handler<AsyncResult<NetServer>>() {
+                @Override
+                public void handle(AsyncResult<NetServer> event) {
+                    if (!event.succeeded()) {
+                        LOG.warn("Gateway instance failed to listen on port " + port + ": " + event.cause());
+                    }
+                }
+            };
+            if (host != null) {
+                instance.listen(port, host, listenHandler);
+            } else {
+                instance.listen(port, listenHandler);
+            }
         }
     }
 
     public void destroy() {
-        server.close();
-        for (SocketWrapper socket : new ArrayList<>(socketsConnecting)) {
-            handleConnectFailure(socket, null);
+        for (NetServer instance : servers) {
+            instance.close();
+        }
+        servers.clear();
+        for (EventLoopConnections connections : eventLoops.values()) {
+            if (connections.detectionTimer != -1) {
+                vertx.cancelTimer(connections.detectionTimer);
+                connections.detectionTimer = -1;
+            }
         }
-        for (ConnectedSocketInfo socket : new ArrayList<>(socketsConnected)) {
-            handleShutdown(socket);
+        if (metricsServer != null) {
+            metricsServer.destroy();
+            metricsServer = null;
+        }
+        for (EventLoopConnections connections : eventLoops.values()) {
+            for (SocketWrapper socket : new ArrayList<>(connections.connecting.keySet())) {
+                handleConnectFailure(connections, socket, null);
+            }
+            for (ConnectedSocketInfo socket : new ArrayList<>(connections.connected)) {
+                handleShutdown(socket);
+            }
+        }
+        eventLoops.clear();
+        if (ownsClientRegistry) {
+            clientRegistry.destroy();
+            clientRegistry = null;
+            ownsClientRegistry = false;
+        }
+        if (ownsHealthChecker) {
+            healthChecker.destroy();
+            healthChecker = null;
+            ownsHealthChecker = false;
+        }
+        if (handshakeExecutor != null) {
+            handshakeExecutor.shutdownNow();
+            handshakeExecutor = null;
+        }
+    }
+
+    /**
+     * Builds the SSLContext up front so that the first TLS connection does not pay for
+     * loading the key stores on the event loop.
+     */
+    protected void initSsl() {
+        if (sslContext == null) {
+            try {
+                sslContext = createSSLContext();
+            } catch (Exception e) {
+                // lets try again when the first ssl connection arrives.
+                LOG.error("Could not initialize SSL: " + e, e);
+            }
+        }
+        if (sslConfig != null && sslConfig.getHandshakeThreads() > 0 && handshakeExecutor == null) {
+            int threads = sslConfig.getHandshakeThreads();
+            handshakeExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(sslConfig.getHandshakeQueueSize(), 1)),
+                    new ThreadFactory("DetectingGateway SSL handshake"));
+            handshakeExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    protected SSLContext createSSLContext() throws Exception {
+        if (sslConfig != null) {
+            return sslConfig.createSSLContext();
+        } else {
+            return SSLContext.getDefault();
         }
     }
 
@@ -164,13 +293,8 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     public void setProtocols(ArrayList<Protocol> protocols) {
         this.protocols = new ArrayList<Protocol>(protocols);
-        int max = 0;
-        for (Protocol protocol : protocols) {
-            if( protocol.getMaxIdentificationLength() > max ) {
-                max = protocol.getMaxIdentificationLength();
-            }
-        }
-        maxProtocolIdentificationLength = max;
+        this.protocolDetector = new ProtocolDetector(this.protocols);
+        maxProtocolIdentificationLength = protocolDetector.getMaxIdentificationLength();
     }
 
     public Collection<String> getProtocolNames() {
@@ -181,7 +305,8 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc;
     }
 
-    SSLContext sslContext;
+    volatile SSLContext sslContext;
+    ThreadPoolExecutor handshakeExecutor;
     SslSocketWrapper.ClientAuth clientAuth = SslSocketWrapper.ClientAuth.WANT;
 
     public void setShutdownTacker(ShutdownTracker shutdownTacker) {
@@ -195,29 +320,49 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final URI url;
         private final SocketWrapper from;
         private final NetSocket to;
-
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to) {
+        private final BackendStatistics backend;
+        private final GatewayMetrics metrics;
+        private final EventLoopConnections connections;
+        private final long connectedAt = System.nanoTime();
+        private volatile GatewayPump toBackend;
+        private volatile GatewayPump toClient;
+
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to, BackendStatistics backend, GatewayMetrics metrics, EventLoopConnections connections) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.backend = backend;
+            this.metrics = metrics;
+            this.connections = connections;
         }
     }
 
     public void handle(final SocketWrapper socket) {
+        if (!admissionController.admitConnection(socket.remoteAddress())) {
+            receivedConnectionAttempts.incrementAndGet();
+            LOG.debug("Rejected connection from '{}' by the admission control", socket.remoteAddress());
+            socket.close();
+            return;
+        }
+        accept(socket);
+    }
+
+    private void accept(final SocketWrapper socket) {
+        final long acceptedAt = System.nanoTime();
         shutdownTacker.retain();
         receivedConnectionAttempts.incrementAndGet();
-        socketsConnecting.add(socket);
-
+        final EventLoopConnections connections = getEventLoopConnections();
+        TimeoutWheel.Timeout timeout = TimeoutWheel.Timeout.NEVER;
         if( connectionTimeout > 0 ) {
-            vertx.setTimer(connectionTimeout, new Handler<Long>() {
-                public void handle(Long timerID) {
-                    if( socketsConnecting.contains(socket) ) {
-                        handleConnectFailure(socket, String.format("Gateway client '%s' protocol detection timeout.", socket.remoteAddress()));
-                    }
+            timeout = connections.detectionTimeouts.schedule(connectionTimeout, new Handler<Void>() {
+                public void handle(Void event) {
+                    handleConnectFailure(connections, socket, String.format("Gateway client '%s' protocol detection timeout.", socket.remoteAddress()));
                 }
             });
         }
+        connections.connecting.put(socket, timeout);
+        admissionController.connectingStarted();
 
         ReadStream<ReadStream> readStream = socket.readStream();
         readStream.exceptionHandler(new Handler<Throwable>() {
@@ -233,87 +378,124 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         });
         readStream.dataHandler(new Handler<Buffer>() {
-            Buffer received = new Buffer();
+            Buffer received;
 
             @Override
             public void handle(Buffer event) {
-                received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
-                                }
-                            }
-
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
-                            DetectingGateway.this.handle(sslSocketWrapper);
+                if (received == null) {
+                    received = event;
+                } else {
+                    received.appendBuffer(event);
+                }
+                final Protocol protocol = protocolDetector.detect(received);
+                if (protocol == null) {
+                    if (!protocolDetector.canMatch(received)) {
+                        handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
+                    }
+                    return;
+                }
+                if ("ssl".equals(protocol.getProtocolName())) {
+
+                    LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                    String disabledCypherSuites=null;
+                    String enabledCipherSuites=null;
+                    if (sslConfig != null) {
+                        disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                        enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                    }
+                    if (sslContext == null) {
+                        try {
+                            sslContext = createSSLContext();
+                        } catch (Exception e) {
+                            handleConnectFailure(socket, "Could initialize SSL: " + e);
                             return;
+                        }
+                    }
 
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    ConnectionParameters params = new ConnectionParameters();
-                                    params.protocol = "http";
-                                    createClient(params, socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    handleConnectFailure(socket, "Could not build valid connect URI: "+e);
-                                    return;
-                                }
-                            } else {
-                                handleConnectFailure(socket, "No http gateway available for the http protocol");
-                                return;
-                            }
-                        } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                    // lets wrap it up in a SslSocketWrapper.
+                    SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket, sslBufferPool);
+                    if (handshakeExecutor != null) {
+                        sslSocketWrapper.setTaskExecutor(handshakeExecutor, vertx.currentContext());
+                    }
+                    sslSocketWrapper.putBackHeader(received);
+                    sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                    // the wrapper replaces the socket in the connecting sockets.
+                    if (stopConnecting(connections, socket)) {
+                        shutdownTacker.release();
+                    }
+                    accept(sslSocketWrapper);
+                    return;
+
+                } else if ("http".equals(protocol.getProtocolName())) {
+                    InetSocketAddress target = getHttpGateway();
+                    if (target != null) {
+                        try {
+                            URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
+                            LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                    socket.remoteAddress(), url.getHost(), url.getPort()));
+                            ConnectionParameters params = new ConnectionParameters();
+                            params.protocol = "http";
+                            GatewayMetrics httpMetrics = metrics.getMetrics(null, params.protocol);
+                            httpMetrics.detected(System.nanoTime() - acceptedAt);
+                            createClient(params, socket, url, received, null, httpMetrics);
+                            return;
+                        } catch (URISyntaxException e) {
+                            handleConnectFailure(socket, "Could not build valid connect URI: "+e);
                             return;
                         }
+                    } else {
+                        handleConnectFailure(socket, "No http gateway available for the http protocol");
+                        return;
                     }
-                }
-                if (received.length() >= maxProtocolIdentificationLength) {
-                    handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
+                } else {
+                    protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                        @Override
+                        public void handle(ConnectionParameters connectionParameters) {
+                            // this will install a new dataHandler on the socket.
+                            if (connectionParameters.protocol == null)
+                                connectionParameters.protocol = protocol.getProtocolName();
+                            if (connectionParameters.protocolSchemes == null)
+                                connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                            route(socket, connectionParameters, received, acceptedAt);
+                        }
+                    });
+                    return;
                 }
             }
         });
     }
 
+    /**
+     * Returns the connections handled on the current event loop, creating them and their
+     * detection timer on the first connection the event loop accepts.
+     */
+    EventLoopConnections getEventLoopConnections() {
+        Context context = vertx.currentContext();
+        Object key = context != null ? context : this;
+        EventLoopConnections answer = eventLoops.get(key);
+        if (answer == null) {
+            EventLoopConnections created = new EventLoopConnections(detectionTimeoutTick);
+            answer = eventLoops.putIfAbsent(key, created);
+            if (answer == null) {
+                answer = created;
+                final TimeoutWheel wheel = answer.detectionTimeouts;
+                answer.detectionTimer = vertx.setPeriodic(detectionTimeoutTick, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerID) {
+                        wheel.expire(System.currentTimeMillis());
+                    }
+                });
+            }
+        }
+        return answer;
+    }
+
     private void handleConnectFailure(SocketWrapper socket, String reason) {
-        if( socketsConnecting.remove(socket) ) {
+        handleConnectFailure(getEventLoopConnections(), socket, reason);
+    }
+
+    private void handleConnectFailure(EventLoopConnections connections, SocketWrapper socket, String reason) {
+        if( stopConnecting(connections, socket) ) {
             if( reason!=null ) {
                 LOG.info(reason);
             }
@@ -323,7 +505,29 @@ public class DetectingGateway implements DetectingGatewayMBean {
         }
     }
 
+    /**
+     * Removes the socket from the connecting sockets cancelling its detection timeout,
+     * returns false if it was not connecting.
+     */
+    private boolean stopConnecting(EventLoopConnections connections, SocketWrapper socket) {
+        TimeoutWheel.Timeout timeout = connections.connecting.remove(socket);
+        if (timeout == null) {
+            return false;
+        }
+        timeout.cancel();
+        admissionController.connectingStopped();
+        return true;
+    }
+
     public void route(final SocketWrapper socket, ConnectionParameters params, final Buffer received) {
+        route(socket, params, received, 0);
+    }
+
+    /**
+     * Routes the client to a service for the detected virtual host, recording how long the
+     * detection took since the given start time unless it is 0.
+     */
+    protected void route(final SocketWrapper socket, ConnectionParameters params, final Buffer received, long detectionStart) {
         NetClient client = null;
 
         if( params.protocolVirtualHost==null ) {
@@ -331,12 +535,22 @@ public class DetectingGateway implements DetectingGatewayMBean {
         }
         HashSet<String> schemes = new HashSet<String>(Arrays.asList(params.protocolSchemes));
         if(params.protocolVirtualHost!=null) {
-            List<ServiceDetails> services = serviceMap.getServices(params.protocolVirtualHost);
+            ServiceMap.Snapshot snapshot = serviceMap.getSnapshot();
+            List<ServiceDetails> services = snapshot.getServices(params.protocolVirtualHost);
 
             // Lets try again with the defaultVirtualHost
             if( services.isEmpty() && !params.protocolVirtualHost.equals(defaultVirtualHost) ) {
                 params.protocolVirtualHost = defaultVirtualHost;
-                services = serviceMap.getServices(params.protocolVirtualHost);
+                services = snapshot.getServices(params.protocolVirtualHost);
+            }
+            services = healthChecker.healthyServices(services);
+            if (!admissionController.admitVirtualHost(params.protocolVirtualHost)) {
+                handleConnectFailure(socket, String.format("Connection rate limit of virtual host '%s' exceeded", params.protocolVirtualHost));
+                return;
+            }
+            GatewayMetrics routeMetrics = metrics.getMetrics(params.protocolVirtualHost, params.protocol);
+            if (detectionStart != 0) {
+                routeMetrics.detected(System.nanoTime() - detectionStart);
             }
 
             LOG.debug(String.format("%d services match the virtual host", services.size()));
@@ -344,8 +558,10 @@ public class DetectingGateway implements DetectingGatewayMBean {
                 ClientRequestFacade clientRequestFacade = clientRequestFacadeFactory.create(socket, params);
                 ServiceDetails serviceDetails = serviceLoadBalancer.choose(services, clientRequestFacade);
                 if (serviceDetails != null) {
+                    BackendStatistics backend = LoadAwareLoadBalancer.getBackendStatistics(serviceLoadBalancer, serviceDetails);
                     List<String> urlStrings = serviceDetails.getServices();
                     LOG.debug("Selected service exposes the following URLS: {}", urlStrings);
+                    URI ejected = null;
                     for (String urlString : urlStrings) {
                         if (Strings.notEmpty(urlString)) {
                             // lets create a client for this request...
@@ -354,6 +570,13 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                 //URL url = new URL(urlString);
                                 String urlProtocol = uri.getScheme();
                                 if (schemes.contains(urlProtocol)) {
+                                    if (!healthChecker.isHealthy(urlString)) {
+                                        // lets prefer another healthy URL of the service if it has one.
+                                        if (ejected == null) {
+                                            ejected = uri;
+                                        }
+                                        continue;
+                                    }
                                     if( !socket.remoteAddress().toString().equals(clientRequestFacade.getClientRequestKey())  ) {
                                         LOG.info(String.format("Connecting client from '%s' (with key '%s') requesting virtual host '%s' to '%s:%d' using the %s protocol",
                                             socket.remoteAddress(), clientRequestFacade.getClientRequestKey(), params.protocolVirtualHost, uri.getHost(), uri.getPort(), params.protocol
@@ -364,7 +587,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                           ));
                                     }
 
-                                    client = createClient(params, socket, uri, received);
+                                    client = createClient(params, socket, uri, received, backend, routeMetrics);
                                     break;
                                 }
                             } catch (URISyntaxException e) {
@@ -372,6 +595,11 @@ public class DetectingGateway implements DetectingGatewayMBean {
                             }
                         }
                     }
+                    if (client == null && ejected != null) {
+                        LOG.info(String.format("Connecting client from '%s' requesting virtual host '%s' to ejected backend '%s' as no healthy backend is available",
+                            socket.remoteAddress(), params.protocolVirtualHost, ejected));
+                        client = createClient(params, socket, ejected, received, backend, routeMetrics);
+                    }
                 }
             }
         }
@@ -383,22 +611,34 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Connects a client for the given URL using the shared {@link NetClientRegistry}, recording
+     * the connection in the statistics of the chosen backend if the load balancer uses them.
      */
-    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
-        NetClient netClient = vertx.createNetClient();
-        return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
+    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received, final BackendStatistics backend, final GatewayMetrics vhostMetrics) {
+        final long connectStart = backend != null ? backend.requestStarted() : System.nanoTime();
+        final EventLoopConnections connections = getEventLoopConnections();
+        return clientRegistry.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
 
                 if( !asyncSocket.succeeded() ) {
-                    handleConnectFailure(socketFromClient, String.format("Could not connect to '%s'", url));
+                    if (backend != null) {
+                        backend.requestFailed();
+                    }
+                    healthChecker.connectFailed(url.toString(), String.valueOf(asyncSocket.cause()));
+                    vhostMetrics.connectFailed();
+                    handleConnectFailure(connections, socketFromClient, String.format("Could not connect to '%s'", url));
                 } else {
                     final NetSocket socketToServer = asyncSocket.result();
+                    if (backend != null) {
+                        backend.recordLatency(connectStart);
+                    }
+                    healthChecker.connectSucceeded(url.toString());
+                    vhostMetrics.connected(System.nanoTime() - connectStart);
 
                     successfulConnectionAttempts.incrementAndGet();
-                    socketsConnecting.remove(socketFromClient);
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer);
-                    socketsConnected.add(connectedInfo);
+                    stopConnecting(connections, socketFromClient);
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer, backend, vhostMetrics, connections);
+                    connections.connected.add(connectedInfo);
 
                     Handler<Void> endHandler = new Handler<Void>() {
                         @Override
@@ -417,16 +657,25 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     socketToServer.endHandler(endHandler);
                     socketToServer.exceptionHandler(exceptionHandler);
 
+                    vhostMetrics.getBytesReceived().add(received.length());
                     socketToServer.write(received);
-                    Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
-                    Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    connectedInfo.toClient = flowControl.pumpToClient(socketToServer, socketFromClient.writeStream(), vhostMetrics.getBytesSent());
+                    connectedInfo.toBackend = flowControl.pumpToBackend(socketFromClient.readStream(), socketToServer, vhostMetrics.getBytesReceived());
                 }
             }
         });
     }
 
     private void handleShutdown(ConnectedSocketInfo connectedInfo) {
-        if( socketsConnected.remove(connectedInfo) ) {
+        if( connectedInfo.connections.connected.remove(connectedInfo) ) {
+            if (connectedInfo.backend != null) {
+                connectedInfo.backend.requestCompleted();
+            }
+            connectedInfo.metrics.disconnected(System.nanoTime() - connectedInfo.connectedAt);
+            if (connectedInfo.toClient != null) {
+                connectedInfo.toClient.stop();
+                connectedInfo.toBackend.stop();
+            }
             connectedInfo.from.close();
             connectedInfo.to.close();
             shutdownTacker.release();
@@ -444,6 +693,68 @@ public class DetectingGateway implements DetectingGatewayMBean {
         httpGateway.set(value);
     }
 
+    public NetClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    /**
+     * Sets the registry of backend clients so it can be shared with other gateways;
+     * if none is set then the gateway creates its own on {@link #init()}
+     */
+    public void setClientRegistry(NetClientRegistry clientRegistry) {
+        this.clientRegistry = clientRegistry;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Sets the flow control which bounds the data held for slow clients and backends
+     */
+    public void setFlowControl(FlowControl flowControl) {
+        this.flowControl = flowControl;
+    }
+
+    public GatewayMetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(GatewayMetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Sets the port to serve the metrics on in the Prometheus text format, 0 disables it
+     */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public HealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+
+    /**
+     * Sets the health checker of the backends so it can be shared with other gateways;
+     * if none is set then the gateway creates its own on {@link #init()}
+     */
+    public void setHealthChecker(HealthChecker healthChecker) {
+        this.healthChecker = healthChecker;
+    }
+
     public SslConfig getSslConfig() {
         return sslConfig;
     }
@@ -452,6 +763,14 @@ public class DetectingGateway implements DetectingGatewayMBean {
         this.sslConfig = sslConfig;
     }
 
+    public SslBufferPool getSslBufferPool() {
+        return sslBufferPool;
+    }
+
+    public void setSslBufferPool(SslBufferPool sslBufferPool) {
+        this.sslBufferPool = sslBufferPool;
+    }
+
 
     public long getReceivedConnectionAttempts() {
         return receivedConnectionAttempts.get();
@@ -462,23 +781,176 @@ public class DetectingGateway implements DetectingGatewayMBean {
     public long getFailedConnectionAttempts() {
         return failedConnectionAttempts.get();
     }
+    public long getBackendClientsCreated() {
+        return clientRegistry != null ? clientRegistry.getClientsCreated() : 0;
+    }
+    public long getBackendClientsReused() {
+        return clientRegistry != null ? clientRegistry.getClientsReused() : 0;
+    }
+    public String[] getVirtualHostMetrics() {
+        return metrics.getSummaries();
+    }
+    public String getPrometheusMetrics() {
+        return metrics.toPrometheusText();
+    }
+    public String[] getEjectedBackends() {
+        return healthChecker != null ? healthChecker.getEjectedBackends() : new String[0];
+    }
+    public long getBackendEjections() {
+        return healthChecker != null ? healthChecker.getEjections() : 0;
+    }
+    public long getBackendHealthChecks() {
+        return healthChecker != null ? healthChecker.getChecksPerformed() : 0;
+    }
+    public long getFailedBackendHealthChecks() {
+        return healthChecker != null ? healthChecker.getChecksFailed() : 0;
+    }
 
     public String[] getConnectingClients() {
         ArrayList<String> rc = new ArrayList<>();
-        for (SocketWrapper socket : socketsConnecting) {
-            rc.add(socket.remoteAddress().toString());
+        for (EventLoopConnections connections : eventLoops.values()) {
+            for (SocketWrapper socket : connections.connecting.keySet()) {
+                rc.add(socket.remoteAddress().toString());
+            }
         }
         return rc.toArray(new String[rc.size()]);
     }
 
     public String[] getConnectedClients() {
         ArrayList<String> rc = new ArrayList<>();
-        for (ConnectedSocketInfo info : socketsConnected) {
-            rc.add(info.from.remoteAddress().toString());
+        for (EventLoopConnections connections : eventLoops.values()) {
+            for (ConnectedSocketInfo info : connections.connected) {
+                rc.add(info.from.remoteAddress().toString());
+            }
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    /**
+     * Returns the bytes held by the gateway for each connection as its client or backend is slow
+     */
+    public String[] getConnectionQueues() {
+        ArrayList<String> rc = new ArrayList<>();
+        for (EventLoopConnections connections : eventLoops.values()) {
+            for (ConnectedSocketInfo info : connections.connected) {
+                GatewayPump toBackend = info.toBackend;
+                GatewayPump toClient = info.toClient;
+                if (toBackend != null && toClient != null) {
+                    rc.add(String.format("%s -> %s: backend queued=%d paused=%b, client queued=%d paused=%b",
+                            info.from.remoteAddress(), info.url,
+                            toBackend.getQueuedBytes(), toBackend.isPaused(),
+                            toClient.getQueuedBytes(), toClient.isPaused()));
+                }
+            }
         }
         return rc.toArray(new String[rc.size()]);
     }
 
+    public long getQueuedBytes() {
+        return flowControl.getQueuedBytes();
+    }
+    public long getPumpPauses() {
+        return flowControl.getPauses();
+    }
+    public long getPumpResumes() {
+        return flowControl.getResumes();
+    }
+    public int getBackendHighWatermark() {
+        return flowControl.getBackendHighWatermark();
+    }
+    public void setBackendHighWatermark(int highWatermark) {
+        flowControl.setBackendHighWatermark(highWatermark);
+    }
+    public int getBackendLowWatermark() {
+        return flowControl.getBackendLowWatermark();
+    }
+    public void setBackendLowWatermark(int lowWatermark) {
+        flowControl.setBackendLowWatermark(lowWatermark);
+    }
+    public int getClientHighWatermark() {
+        return flowControl.getClientHighWatermark();
+    }
+    public void setClientHighWatermark(int highWatermark) {
+        flowControl.setClientHighWatermark(highWatermark);
+    }
+    public int getClientLowWatermark() {
+        return flowControl.getClientLowWatermark();
+    }
+    public void setClientLowWatermark(int lowWatermark) {
+        flowControl.setClientLowWatermark(lowWatermark);
+    }
+
+    public long getRejectedBySource() {
+        return admissionController.getRejectedBySource();
+    }
+    public long getRejectedByVirtualHost() {
+        return admissionController.getRejectedByVirtualHost();
+    }
+    public long getRejectedByConnectingLimit() {
+        return admissionController.getRejectedByConnectingLimit();
+    }
+    public double getSourceConnectionRate() {
+        return admissionController.getSourceConnectionRate();
+    }
+    public void setSourceConnectionRate(double rate) {
+        admissionController.setSourceConnectionRate(rate);
+    }
+    public int getSourceConnectionBurst() {
+        return admissionController.getSourceConnectionBurst();
+    }
+    public void setSourceConnectionBurst(int burst) {
+        admissionController.setSourceConnectionBurst(burst);
+    }
+    public int getSourcePrefixLength() {
+        return admissionController.getSourcePrefixLength();
+    }
+    public void setSourcePrefixLength(int prefixLength) {
+        admissionController.setSourcePrefixLength(prefixLength);
+    }
+    public double getVirtualHostConnectionRate() {
+        return admissionController.getVirtualHostConnectionRate();
+    }
+    public void setVirtualHostConnectionRate(double rate) {
+        admissionController.setVirtualHostConnectionRate(rate);
+    }
+    public int getVirtualHostConnectionBurst() {
+        return admissionController.getVirtualHostConnectionBurst();
+    }
+    public void setVirtualHostConnectionBurst(int burst) {
+        admissionController.setVirtualHostConnectionBurst(burst);
+    }
+    public int getMaxConnectingSockets() {
+        return admissionController.getMaxConnectingSockets();
+    }
+    public void setMaxConnectingSockets(int maxConnectingSockets) {
+        admissionController.setMaxConnectingSockets(maxConnectingSockets);
+    }
+
+    public long getDetectionTimeouts() {
+        long answer = 0;
+        for (EventLoopConnections connections : eventLoops.values()) {
+            answer += connections.detectionTimeouts.getFiredCount();
+        }
+        return answer;
+    }
+
+    public int getEventLoops() {
+        return eventLoops.size();
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    /**
+     * Sets the number of servers listening on the port, each on its own event loop when
+     * {@link #init()} is called outside of a Vert.x context, so that the gateway can use
+     * more than one core. The port must not be 0 to use more than one instance.
+     */
+    public void setInstances(int instances) {
+        this.instances = instances;
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -487,6 +959,18 @@ public class DetectingGateway implements DetectingGatewayMBean {
         this.connectionTimeout = connectionTimeout;
     }
 
+    public long getDetectionTimeoutTick() {
+        return detectionTimeoutTick;
+    }
+
+    /**
+     * Sets the resolution in milliseconds of the timer which expires the connections
+     * whose protocol was not detected within the connection timeout.
+     */
+    public void setDetectionTimeoutTick(long detectionTimeoutTick) {
+        this.detectionTimeoutTick = detectionTimeoutTick;
+    }
+
     public int getPort() {
         return port;
     }
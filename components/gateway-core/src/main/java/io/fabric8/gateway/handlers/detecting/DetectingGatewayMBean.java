@@ -30,8 +30,46 @@ public interface DetectingGatewayMBean {
     public long getReceivedConnectionAttempts();
     public long getSuccessfulConnectionAttempts();
     public long getFailedConnectionAttempts();
+    public long getBackendClientsCreated();
+    public long getBackendClientsReused();
+    public String[] getEjectedBackends();
+    public long getBackendEjections();
+    public long getBackendHealthChecks();
+    public long getFailedBackendHealthChecks();
+    public String[] getVirtualHostMetrics();
+    public String getPrometheusMetrics();
     public String[] getConnectingClients();
     public String[] getConnectedClients();
+    public int getInstances();
+    public int getEventLoops();
+    public long getDetectionTimeouts();
+    public String[] getConnectionQueues();
+    public long getQueuedBytes();
+    public long getPumpPauses();
+    public long getPumpResumes();
+    public int getBackendHighWatermark();
+    public void setBackendHighWatermark(int highWatermark);
+    public int getBackendLowWatermark();
+    public void setBackendLowWatermark(int lowWatermark);
+    public int getClientHighWatermark();
+    public void setClientHighWatermark(int highWatermark);
+    public int getClientLowWatermark();
+    public void setClientLowWatermark(int lowWatermark);
+    public long getRejectedBySource();
+    public long getRejectedByVirtualHost();
+    public long getRejectedByConnectingLimit();
+    public double getSourceConnectionRate();
+    public void setSourceConnectionRate(double rate);
+    public int getSourceConnectionBurst();
+    public void setSourceConnectionBurst(int burst);
+    public int getSourcePrefixLength();
+    public void setSourcePrefixLength(int prefixLength);
+    public double getVirtualHostConnectionRate();
+    public void setVirtualHostConnectionRate(double rate);
+    public int getVirtualHostConnectionBurst();
+    public void setVirtualHostConnectionBurst(int burst);
+    public int getMaxConnectingSockets();
+    public void setMaxConnectingSockets(int maxConnectingSockets);
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
 
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.SocketWrapper;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connections a {@link DetectingGateway} is handling on one event loop, together with the
+ * timer wheel expiring their protocol detection, so that the event loops do not share any
+ * bookkeeping while the management views can still safely iterate over them.
+ */
+class EventLoopConnections {
+    final ConcurrentHashMap<SocketWrapper, TimeoutWheel.Timeout> connecting = new ConcurrentHashMap<SocketWrapper, TimeoutWheel.Timeout>();
+    final Set<DetectingGateway.ConnectedSocketInfo> connected = Collections.newSetFromMap(new ConcurrentHashMap<DetectingGateway.ConnectedSocketInfo, Boolean>());
+    final TimeoutWheel detectionTimeouts;
+    long detectionTimer = -1;
+
+    EventLoopConnections(long detectionTimeoutTick) {
+        this.detectionTimeouts = new TimeoutWheel(detectionTimeoutTick, 512);
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopConnections{" +
+                "connecting=" + connecting.size() +
+                ", connected=" + connected.size() +
+                '}';
+    }
+}
@@ -28,6 +28,12 @@ public interface Protocol {
     public String[] getProtocolSchemes();
     public String getProtocolName();
     public int getMaxIdentificationLength();
+
+    /**
+     * Returns the values the first byte of a connection using this protocol can have so that the
+     * gateway can dispatch on it before calling {@link #matches(Buffer)}, or null if it could be any value.
+     */
+    public byte[] getFirstBytes();
     public boolean matches(Buffer buffer);
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, Handler<ConnectionParameters> handler);
 
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects the protocol of a connection using a dispatch table built from the
+ * {@link Protocol#getFirstBytes()} of the registered protocols, so that only the
+ * protocols which could match the first byte received are checked.
+ * <br>
+ * Instances are immutable and can be shared across event loops.
+ */
+public class ProtocolDetector {
+
+    private static final Protocol[] NO_PROTOCOLS = new Protocol[0];
+
+    private final Protocol[][] candidates = new Protocol[256][];
+    private final int[] maxIdentificationLengths = new int[256];
+    private final int maxIdentificationLength;
+
+    public ProtocolDetector(List<Protocol> protocols) {
+        ArrayList<Protocol>[] table = new ArrayList[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = new ArrayList<Protocol>();
+        }
+        int max = 0;
+        // Protocols are added in registration order so that earlier protocols still win.
+        for (Protocol protocol : protocols) {
+            byte[] firstBytes = protocol.getFirstBytes();
+            if (firstBytes == null) {
+                for (ArrayList<Protocol> list : table) {
+                    list.add(protocol);
+                }
+            } else {
+                for (byte b : firstBytes) {
+                    ArrayList<Protocol> list = table[b & 0xFF];
+                    if (!list.contains(protocol)) {
+                        list.add(protocol);
+                    }
+                }
+            }
+            max = Math.max(max, protocol.getMaxIdentificationLength());
+        }
+        for (int i = 0; i < table.length; i++) {
+            int bucketMax = 0;
+            for (Protocol protocol : table[i]) {
+                bucketMax = Math.max(bucketMax, protocol.getMaxIdentificationLength());
+            }
+            candidates[i] = table[i].isEmpty() ? NO_PROTOCOLS : table[i].toArray(new Protocol[table[i].size()]);
+            maxIdentificationLengths[i] = bucketMax;
+        }
+        maxIdentificationLength = max;
+    }
+
+    /**
+     * Returns the protocol matching the header received so far or null if no protocol matches yet.
+     */
+    public Protocol detect(Buffer header) {
+        if (header.length() == 0) {
+            return null;
+        }
+        for (Protocol protocol : candidates[header.getByte(0) & 0xFF]) {
+            if (protocol.matches(header)) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the header received so far could still be matched by one of the protocols
+     * once more data arrives.
+     */
+    public boolean canMatch(Buffer header) {
+        if (header.length() == 0) {
+            return true;
+        }
+        return header.length() < maxIdentificationLengths[header.getByte(0) & 0xFF];
+    }
+
+    /**
+     * Returns the protocols which could match a connection starting with the given byte.
+     */
+    public Protocol[] getCandidates(byte firstByte) {
+        return candidates[firstByte & 0xFF].clone();
+    }
+
+    public int getMaxIdentificationLength() {
+        return maxIdentificationLength;
+    }
+}
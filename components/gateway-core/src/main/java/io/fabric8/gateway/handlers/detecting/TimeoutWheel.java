@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.Handler;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed wheel of timeouts which is swept by a single periodic timer, so that scheduling
+ * and cancelling the timeout of every accepted connection does not create and cancel a
+ * timer each.
+ * <br>
+ * Timeouts are hashed into the bucket of the tick their deadline falls in and each call
+ * to {@link #expire(long)} sweeps the buckets of the ticks which have passed since the last
+ * call, firing the timeouts which are due. Cancelled timeouts are only marked and are
+ * dropped when their bucket is next swept. Timeouts fire up to one tick late.
+ */
+public class TimeoutWheel {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int FIRED = 2;
+
+    private final ConcurrentLinkedQueue<Timeout>[] buckets;
+    private final long tickDuration;
+    private final int mask;
+    private long lastTick = -1;
+
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong firedCount = new AtomicLong();
+
+    /**
+     * @param tickDuration the resolution of the wheel in milliseconds
+     * @param wheelSize the number of buckets which is rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimeoutWheel(long tickDuration, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1) - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.tickDuration = tickDuration;
+        this.mask = size - 1;
+        this.buckets = new ConcurrentLinkedQueue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<Timeout>();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimeoutWheel{" +
+                "tickDuration=" + tickDuration +
+                ", wheelSize=" + buckets.length +
+                ", pending=" + getPendingCount() +
+                '}';
+    }
+
+    /**
+     * Schedules the handler to be invoked by {@link #expire(long)} once the delay in milliseconds has passed.
+     */
+    public Timeout schedule(long delay, Handler<Void> handler) {
+        Timeout timeout = new Timeout(this, System.currentTimeMillis() + Math.max(delay, 0), handler);
+        buckets[(int) (timeout.deadline / tickDuration) & mask].offer(timeout);
+        scheduledCount.incrementAndGet();
+        return timeout;
+    }
+
+    /**
+     * Fires the timeouts which are due at the given time, returning how many fired.
+     */
+    public synchronized int expire(long now) {
+        long tick = now / tickDuration;
+        // the last swept bucket is swept again as timeouts may have been added to it since.
+        long from = lastTick < 0 ? tick - mask : lastTick;
+        if (tick - from > mask) {
+            // the wheel has gone round so lets just sweep every bucket once.
+            from = tick - mask;
+        }
+        int fired = 0;
+        for (long t = from; t <= tick; t++) {
+            fired += expire(buckets[(int) t & mask], now);
+        }
+        if (tick > lastTick) {
+            lastTick = tick;
+        }
+        return fired;
+    }
+
+    private int expire(ConcurrentLinkedQueue<Timeout> bucket, long now) {
+        int fired = 0;
+        for (Iterator<Timeout> iterator = bucket.iterator(); iterator.hasNext(); ) {
+            Timeout timeout = iterator.next();
+            if (timeout.state.get() == CANCELLED) {
+                iterator.remove();
+            } else if (timeout.deadline <= now) {
+                iterator.remove();
+                if (timeout.state.compareAndSet(PENDING, FIRED)) {
+                    firedCount.incrementAndGet();
+                    fired++;
+                    timeout.handler.handle(null);
+                }
+            }
+        }
+        return fired;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int getWheelSize() {
+        return buckets.length;
+    }
+
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    public long getFiredCount() {
+        return firedCount.get();
+    }
+
+    public long getPendingCount() {
+        return scheduledCount.get() - cancelledCount.get() - firedCount.get();
+    }
+
+    /**
+     * A timeout scheduled on the wheel
+     */
+    public static final class Timeout {
+        /**
+         * A timeout which is not scheduled on any wheel so never fires.
+         */
+        public static final Timeout NEVER = new Timeout(null, Long.MAX_VALUE, null);
+
+        private final TimeoutWheel wheel;
+        private final long deadline;
+        private final Handler<Void> handler;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Timeout(TimeoutWheel wheel, long deadline, Handler<Void> handler) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.handler = handler;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Cancels the timeout returning false if it had already fired or been cancelled.
+         */
+        public boolean cancel() {
+            if (wheel != null && state.compareAndSet(PENDING, CANCELLED)) {
+                wheel.cancelledCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == FIRED;
+        }
+    }
+}
@@ -151,6 +151,37 @@ public class BufferSupport {
     }
 
 
+    /**
+     * Returns a buffer which shares the content of the buffer between the start and end
+     * positions, so that a frame can be handed on without copying it. The slice can not
+     * be appended to.
+     */
+    public static Buffer slice(Buffer self, int start, int end) {
+        return new Buffer(getNettyByteBuf(self).slice(start, end - start));
+    }
+
+    /**
+     * Returns a ByteBuffer which shares the content of the buffer from the start position
+     * onwards, so it can be handed to NIO style APIs without copying.
+     */
+    public static ByteBuffer toByteBuffer(Buffer self, int start) {
+        return getNettyByteBuf(self).nioBuffer(start, self.length() - start);
+    }
+
+    /**
+     * Appends the remaining bytes of the ByteBuffer to the buffer, consuming them.
+     */
+    public static Buffer append(Buffer self, ByteBuffer buff) {
+        int len = buff.remaining();
+        if (buff.hasArray()) {
+            self.appendBytes(buff.array(), buff.arrayOffset() + buff.position(), len);
+        } else {
+            self.setBytes(self.length(), buff.slice());
+        }
+        buff.position(buff.limit());
+        return self;
+    }
+
     public static Buffer toBuffer(ByteBuffer buff) {
         Buffer self = new Buffer(buff.remaining());
         while( buff.hasRemaining() ) {
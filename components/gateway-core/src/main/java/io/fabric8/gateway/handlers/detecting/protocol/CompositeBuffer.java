@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.Arrays;
+
+/**
+ * A read buffer made of the chunks of data received from a socket, which are
+ * addressed with a single logical index starting at the first unread byte.
+ * <br>
+ * Appending a chunk does not copy it and a range of bytes within a single chunk is
+ * returned as a slice of it, so the data is only copied when a frame spans chunks.
+ */
+public class CompositeBuffer {
+
+    private Buffer[] chunks = new Buffer[4];
+    // the logical positions of the first byte of each chunk, the first chunk
+    // starts before 0 once some of it was discarded.
+    private int[] starts = new int[4];
+    private int[] lengths = new int[4];
+    private int count;
+    private int length;
+    // the chunk which was last looked up, as most reads are sequential.
+    private int last;
+
+    /**
+     * Adds a chunk of data to the end of the buffer.
+     */
+    public void append(Buffer chunk) {
+        int chunkLength = chunk.length();
+        if (chunkLength == 0) {
+            return;
+        }
+        if (count == chunks.length) {
+            chunks = Arrays.copyOf(chunks, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        chunks[count] = chunk;
+        starts[count] = length;
+        lengths[count] = chunkLength;
+        count++;
+        length += chunkLength;
+    }
+
+    /**
+     * Drops the given number of bytes from the start of the buffer, the position of
+     * the remaining bytes is reduced by the same amount.
+     */
+    public void discard(int size) {
+        if (size < 0 || size > length) {
+            throw new IndexOutOfBoundsException("Can not discard " + size + " of " + length + " bytes");
+        }
+        int dropped = 0;
+        while (dropped < count && starts[dropped] + lengths[dropped] <= size) {
+            dropped++;
+        }
+        if (dropped > 0) {
+            int remaining = count - dropped;
+            System.arraycopy(chunks, dropped, chunks, 0, remaining);
+            System.arraycopy(starts, dropped, starts, 0, remaining);
+            System.arraycopy(lengths, dropped, lengths, 0, remaining);
+            Arrays.fill(chunks, remaining, count, null);
+            count = remaining;
+        }
+        for (int i = 0; i < count; i++) {
+            starts[i] -= size;
+        }
+        length -= size;
+        last = 0;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int getChunkCount() {
+        return count;
+    }
+
+    public byte getByte(int pos) {
+        int i = chunkAt(pos);
+        return chunks[i].getByte(pos - starts[i]);
+    }
+
+    /**
+     * Returns the big endian int at the position, which may span chunks.
+     */
+    public int getInt(int pos) {
+        int i = chunkAt(pos);
+        int offset = pos - starts[i];
+        if (offset + 4 <= lengths[i]) {
+            return chunks[i].getInt(offset);
+        }
+        return ((getByte(pos) & 0xFF) << 24) | ((getByte(pos + 1) & 0xFF) << 16) | ((getByte(pos + 2) & 0xFF) << 8) | (getByte(pos + 3) & 0xFF);
+    }
+
+    /**
+     * Returns the position of the first byte with the value between the start and end
+     * positions or -1 if there is none.
+     */
+    public int indexOf(int start, int end, byte value) {
+        end = Math.min(end, length);
+        if (start >= end) {
+            return -1;
+        }
+        for (int i = chunkAt(start); i < count && starts[i] < end; i++) {
+            Buffer chunk = chunks[i];
+            int chunkEnd = Math.min(end - starts[i], lengths[i]);
+            for (int offset = Math.max(start - starts[i], 0); offset < chunkEnd; offset++) {
+                if (chunk.getByte(offset) == value) {
+                    last = i;
+                    return starts[i] + offset;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bytes between the start and end positions, which share the content
+     * of the chunk they are in and are only copied if they span chunks.
+     */
+    public Buffer getBuffer(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range " + start + " to " + end + " of " + length + " bytes");
+        }
+        if (start == end) {
+            return new Buffer(0);
+        }
+        int i = chunkAt(start);
+        int offset = start - starts[i];
+        if (end - starts[i] <= lengths[i]) {
+            return BufferSupport.slice(chunks[i], offset, end - starts[i]);
+        }
+        Buffer answer = new Buffer(end - start);
+        for (; i < count && starts[i] < end; i++) {
+            int from = Math.max(start - starts[i], 0);
+            int to = Math.min(end - starts[i], lengths[i]);
+            answer.appendBuffer(BufferSupport.slice(chunks[i], from, to));
+        }
+        return answer;
+    }
+
+    private int chunkAt(int pos) {
+        if (pos < 0 || pos >= length) {
+            throw new IndexOutOfBoundsException("Position " + pos + " is outside of the " + length + " bytes");
+        }
+        int i = last;
+        while (pos < starts[i]) {
+            i--;
+        }
+        while (pos >= starts[i] + lengths[i]) {
+            i++;
+        }
+        last = i;
+        return i;
+    }
+}
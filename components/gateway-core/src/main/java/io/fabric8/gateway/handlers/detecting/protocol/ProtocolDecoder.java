@@ -19,15 +19,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
 
 import java.io.IOException;
 import java.net.ProtocolException;
 
-import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.indexOf;
-
 /**
  * An abstract base class used to implement a Vertx handler which
  * decode a buffer stream to a protocol specific frame objects.
+ * <br>
+ * The received data is kept in a {@link CompositeBuffer} so a frame which
+ * arrives in many reads is only copied once, when it is read.
  */
 public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
 
@@ -37,7 +39,7 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
     private Handler<T> codecHander;
     private Handler<String> errorHandler;
 
-    protected Buffer buff = null;
+    protected final CompositeBuffer buff = new CompositeBuffer();
     protected long bytesDecoded;
     protected int readStart;
     protected Action<T> nextDecodeAction;
@@ -62,11 +64,7 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
     @Override
     public void handle(Buffer event) {
         if( error==null ) {
-            if( buff == null ) {
-                buff = event;
-            } else {
-                buff.appendBuffer(event);
-            }
+            buff.append(event);
             try {
                 T rc = read();
                 while( rc !=null ) {
@@ -81,24 +79,33 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
         }
     }
 
+    /**
+     * Decodes the data which was already received and then the data of the read stream.
+     * The data read is appended to the received buffer, so that all of it can be
+     * forwarded once the connection has been routed.
+     */
+    public void snoop(final Buffer received, ReadStream<?> readStream) {
+        readStream.dataHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer event) {
+                received.appendBuffer(event);
+                ProtocolDecoder.this.handle(event);
+            }
+        });
+        handle(received);
+    }
+
     public T read() throws IOException {
         T command = null;
-        if (buff !=null && readEnd < buff.length() ) {
+        if (readStart < buff.length()) {
             if( nextDecodeAction == null ) {
                 nextDecodeAction = initialDecodeAction();
             }
             command = nextDecodeAction.apply();
 
-            // did we fully read the buffer?
-            if( readStart == buff.length() ) {
-                buff = null;
-                readEnd -= readStart;
-                readStart = 0;
-            }
-            // Are we wasting too much space?
-            else if( readStart > 1024*4 ) {
-                // lets compact the buffer...
-                buff = buff.getBuffer(readStart, buff.length());
+            // drop the chunks which were fully read.
+            if( readStart > 0 ) {
+                buff.discard(readStart);
                 readEnd -= readStart;
                 readStart = 0;
             }
@@ -117,7 +124,7 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
     }
 
     protected Buffer readUntil(byte octet, int max, String msg) throws ProtocolException {
-        int pos = indexOf(buff, readEnd, buff.length(), octet);
+        int pos = buff.indexOf(readEnd, buff.length(), octet);
         if (pos >= 0) {
             int offset = readStart;
             readEnd = pos + 1;
@@ -129,7 +136,7 @@ public abstract class ProtocolDecoder<T> implements Handler<Buffer> {
             }
             return buff.getBuffer(offset, readEnd);
         } else {
-            readEnd += buff.length();
+            readEnd = buff.length();
             if (max >= 0 && (readEnd - readStart) > max) {
                 throw new ProtocolException(msg);
             }
@@ -54,6 +54,13 @@ public class AmqpProtocol implements Protocol {
         return PROTOCOL_MAGIC.length();
     }
 
+    private static final byte[] FIRST_BYTES = new byte[]{ 'A' };
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer header) {
       if (header.length() < PROTOCOL_MAGIC.length()) {
@@ -178,8 +185,7 @@ public class AmqpProtocol implements Protocol {
             }
         });
 
-        socket.dataHandler(h);
-        h.handle(received);
+        h.snoop(received, socket);
     }
 
     static private String getHostname(Sasl sasl) {
@@ -25,7 +25,7 @@ import java.io.IOException;
 /**
  * Implements protocol decoding for the AMQP protocol.
  */
-class AmqpProtocolDecoder extends ProtocolDecoder<AmqpEvent> {
+public class AmqpProtocolDecoder extends ProtocolDecoder<AmqpEvent> {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(AmqpProtocolDecoder.class);
 
@@ -58,6 +58,13 @@ public class HttpProtocol implements Protocol {
         return CONNECT.toBuffer().length();
     }
 
+    private static final byte[] FIRST_BYTES = new byte[]{ 'G', 'H', 'P', 'D', 'O', 'T', 'C' };
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer header) {
         return
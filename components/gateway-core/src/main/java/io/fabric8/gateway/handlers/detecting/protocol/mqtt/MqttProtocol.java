@@ -56,6 +56,13 @@ public class MqttProtocol implements Protocol {
         return 13;
     }
 
+    private static final byte[] FIRST_BYTES = new byte[]{ 0x10 };
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer header) {
         if (header.length() < 10) {
@@ -146,8 +153,7 @@ public class MqttProtocol implements Protocol {
                 }
             }
         });
-        socket.readStream().dataHandler(h);
-        h.handle(received);
+        h.snoop(received, socket.readStream());
     }
 
 }
@@ -26,7 +26,7 @@ import java.io.IOException;
 /**
  * Implements protocol decoding for the STOMP protocol.
  */
-class MqttProtocolDecoder extends ProtocolDecoder<MQTTFrame> {
+public class MqttProtocolDecoder extends ProtocolDecoder<MQTTFrame> {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(MqttProtocolDecoder.class);
 
@@ -16,8 +16,6 @@
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
 import io.fabric8.gateway.handlers.detecting.Protocol;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.SocketWrapper;
 import org.slf4j.Logger;
@@ -25,8 +23,6 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
-import java.io.IOException;
-
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.indexOf;
 
 /**
@@ -55,6 +51,15 @@ public class OpenwireProtocol implements Protocol {
         return 5+MAGIC.length();
     }
 
+    // The WireFormatInfo frame is small so the high byte of its size prefix is
+    // zero, or it starts with the command type when the size prefix is disabled.
+    private static final byte[] FIRST_BYTES = new byte[]{ 0x00, 0x01 };
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer buffer) {
         return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, MAGIC) >= 0;
@@ -71,26 +76,8 @@ public class OpenwireProtocol implements Protocol {
                 socket.close();
             }
         });
-        h.codecHandler(new Handler<Command>() {
-            @Override
-            public void handle(Command event) {
-                if( event instanceof WireFormatInfo){
-                    WireFormatInfo info = (WireFormatInfo) event;
-                    ConnectionParameters parameters = new ConnectionParameters();
-                    try {
-                        parameters.protocolVirtualHost = info.getHost();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    handler.handle(parameters);
-                } else {
-                    LOG.info("Expected a WireFormatInfo frame");
-                    socket.close();
-                }
-            }
-        });
-        socket.readStream().dataHandler(h);
-        h.handle(received);
+        h.codecHandler(handler);
+        h.snoop(received, socket.readStream());
     }
 
 }
@@ -16,62 +16,51 @@
 package io.fabric8.gateway.handlers.detecting.protocol.openwire;
 
 import io.fabric8.gateway.handlers.detecting.protocol.ProtocolDecoder;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
-import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.Command;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.vertx.java.core.buffer.Buffer;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 
 import java.io.IOException;
 import java.net.ProtocolException;
 
 /**
  * Implements protocol decoding for the Openwire protocol.
+ * <br>
+ * Only the connection parameters are needed to route a connection, so the frames
+ * are snooped in place by the {@link WireFormatInfoSnooper} rather than unmarshalled
+ * into command objects.
  */
-class OpenwireProtocolDecoder extends ProtocolDecoder<Command> {
-
-    private static final transient Logger LOG = LoggerFactory.getLogger(OpenwireProtocolDecoder.class);
-
-    OpenWireFormat format = new OpenWireFormat(1);
+class OpenwireProtocolDecoder extends ProtocolDecoder<ConnectionParameters> {
 
     private final OpenwireProtocol protocol;
-    public boolean trim = false;
 
     public OpenwireProtocolDecoder(OpenwireProtocol protocol) {
         this.protocol = protocol;
     }
 
     @Override
-    protected Action<Command> initialDecodeAction() {
+    protected Action<ConnectionParameters> initialDecodeAction() {
         return read_action;
     }
 
-    final Action<Command> read_action = new Action<Command>() {
-        public Command apply() throws IOException {
-            Buffer header = peekBytes(4);
-            if( header==null ) {
-              return null;
-            } else {
-              final int length = header.getInt(0);
-              if( length > protocol.maxFrameSize ) {
-                  throw new ProtocolException("Max frame size exceeded.");
-              }
-              nextDecodeAction = new Action<Command>() {
-                public Command apply() throws IOException {
-                  Buffer frame = readBytes(4+length) ;
-                  if( frame==null ) {
-                    return null;
-                  } else {
-                    // TODO: avoid this conversion.
-                    org.fusesource.hawtbuf.Buffer buffer = new org.fusesource.hawtbuf.Buffer(frame.getBytes());
-                    Command command = (Command) format.unmarshal(buffer);
-                    nextDecodeAction = read_action;
-                    return command;
-                  }
-                }
-              };
-              return nextDecodeAction.apply();
+    final Action<ConnectionParameters> read_action = new Action<ConnectionParameters>() {
+        public ConnectionParameters apply() throws IOException {
+            // leave readEnd at readStart until the whole frame has arrived so that
+            // the frame is decoded again when more data is received.
+            int available = buff.length() - readStart;
+            if( available < 4 ) {
+                return null;
+            }
+            final int length = buff.getInt(readStart);
+            if( length < 0 || length > protocol.maxFrameSize ) {
+                throw new ProtocolException("Max frame size exceeded.");
+            }
+            if( available < 4 + length ) {
+                return null;
             }
+            readEnd = readStart + 4 + length;
+            ConnectionParameters parameters = WireFormatInfoSnooper.snoop(buff.getBuffer(readStart + 4, readEnd), 0, length);
+            bytesDecoded += readEnd - readStart;
+            readStart = readEnd;
+            return parameters;
         }
     };
 
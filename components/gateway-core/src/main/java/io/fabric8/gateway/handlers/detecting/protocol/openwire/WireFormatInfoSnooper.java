@@ -0,0 +1,186 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.support.MarshallingSupport;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.net.ProtocolException;
+
+/**
+ * Extracts the connection parameters needed for routing straight from the bytes
+ * of the {@link WireFormatInfo} frame a client sends when it connects, without
+ * creating any command objects or copying the frame.
+ * <br>
+ * The wire format options have not been negotiated at that point, so the frame
+ * always uses the loose encoding and only the properties map needs to be walked.
+ * The client id and user are only sent in the ConnectionInfo which a client sends
+ * once the broker answered with its own WireFormatInfo, so they can not be snooped.
+ */
+public final class WireFormatInfoSnooper {
+
+    private static final byte[] MAGIC = new byte[]{'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q'};
+    private static final byte[] HOST = new byte[]{'H', 'o', 's', 't'};
+
+    private WireFormatInfoSnooper() {
+    }
+
+    /**
+     * Snoops the WireFormatInfo command which starts at the offset of the buffer, just
+     * after the size prefix of the frame.
+     *
+     * @param buffer the received data
+     * @param offset the position of the command type
+     * @param length the size of the command as given by the size prefix
+     */
+    public static ConnectionParameters snoop(Buffer buffer, int offset, int length) throws ProtocolException {
+        int end = offset + length;
+        if (end > buffer.length()) {
+            throw new ProtocolException("Truncated WireFormatInfo frame");
+        }
+        int pos = offset;
+        require(pos, 1 + MAGIC.length + 4 + 1, end);
+        if (buffer.getByte(pos) != WireFormatInfo.DATA_STRUCTURE_TYPE) {
+            throw new ProtocolException("Expected a WireFormatInfo frame");
+        }
+        pos++;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.getByte(pos + i) != MAGIC[i]) {
+                throw new ProtocolException("Invalid WireFormatInfo magic");
+            }
+        }
+        // skip the magic and the version
+        pos += MAGIC.length + 4;
+
+        ConnectionParameters parameters = new ConnectionParameters();
+        boolean hasProperties = buffer.getByte(pos++) != 0;
+        if (hasProperties) {
+            require(pos, 4, end);
+            int size = buffer.getInt(pos);
+            pos += 4;
+            require(pos, size, end);
+            parameters.protocolVirtualHost = snoopHost(buffer, pos, pos + size);
+        }
+        return parameters;
+    }
+
+    private static String snoopHost(Buffer buffer, int pos, int end) throws ProtocolException {
+        require(pos, 4, end);
+        int count = buffer.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < count; i++) {
+            require(pos, 2, end);
+            int nameLength = buffer.getShort(pos) & 0xFFFF;
+            pos += 2;
+            require(pos, nameLength + 1, end);
+            boolean host = nameLength == HOST.length && matches(buffer, pos, HOST);
+            pos += nameLength;
+            if (host) {
+                return readString(buffer, pos, end);
+            }
+            pos = skipValue(buffer, pos, end);
+        }
+        return null;
+    }
+
+    private static String readString(Buffer buffer, int pos, int end) throws ProtocolException {
+        byte type = buffer.getByte(pos++);
+        int length;
+        if (type == MarshallingSupport.STRING_TYPE) {
+            require(pos, 2, end);
+            length = buffer.getShort(pos) & 0xFFFF;
+            pos += 2;
+        } else if (type == MarshallingSupport.BIG_STRING_TYPE) {
+            require(pos, 4, end);
+            length = buffer.getInt(pos);
+            pos += 4;
+        } else if (type == MarshallingSupport.NULL) {
+            return null;
+        } else {
+            throw new ProtocolException("Expected a string value but was type " + type);
+        }
+        require(pos, length, end);
+        // the modified UTF-8 of java only differs for characters which are not valid in host names.
+        return buffer.getString(pos, pos + length, "UTF-8");
+    }
+
+    /**
+     * Returns the position after the type tagged primitive value at the position.
+     */
+    private static int skipValue(Buffer buffer, int pos, int end) throws ProtocolException {
+        require(pos, 1, end);
+        byte type = buffer.getByte(pos++);
+        switch (type) {
+            case MarshallingSupport.NULL:
+                return pos;
+            case MarshallingSupport.BOOLEAN_TYPE:
+            case MarshallingSupport.BYTE_TYPE:
+                return require(pos, 1, end);
+            case MarshallingSupport.CHAR_TYPE:
+            case MarshallingSupport.SHORT_TYPE:
+                return require(pos, 2, end);
+            case MarshallingSupport.INTEGER_TYPE:
+            case MarshallingSupport.FLOAT_TYPE:
+                return require(pos, 4, end);
+            case MarshallingSupport.LONG_TYPE:
+            case MarshallingSupport.DOUBLE_TYPE:
+                return require(pos, 8, end);
+            case MarshallingSupport.STRING_TYPE:
+                require(pos, 2, end);
+                return require(pos + 2, buffer.getShort(pos) & 0xFFFF, end);
+            case MarshallingSupport.BYTE_ARRAY_TYPE:
+            case MarshallingSupport.BIG_STRING_TYPE:
+                require(pos, 4, end);
+                return require(pos + 4, buffer.getInt(pos), end);
+            case MarshallingSupport.MAP_TYPE:
+            case MarshallingSupport.LIST_TYPE:
+                require(pos, 4, end);
+                int count = buffer.getInt(pos);
+                pos += 4;
+                for (int i = 0; i < count; i++) {
+                    if (type == MarshallingSupport.MAP_TYPE) {
+                        require(pos, 2, end);
+                        pos = require(pos + 2, buffer.getShort(pos) & 0xFFFF, end);
+                    }
+                    pos = skipValue(buffer, pos, end);
+                }
+                return pos;
+            default:
+                throw new ProtocolException("Unknown primitive type: " + type);
+        }
+    }
+
+    private static boolean matches(Buffer buffer, int pos, byte[] needle) {
+        for (int i = 0; i < needle.length; i++) {
+            if (buffer.getByte(pos + i) != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the given number of bytes are available and returns the position after them.
+     */
+    private static int require(int pos, int length, int end) throws ProtocolException {
+        if (length < 0 || length > end - pos) {
+            throw new ProtocolException("Truncated WireFormatInfo frame");
+        }
+        return pos + length;
+    }
+}
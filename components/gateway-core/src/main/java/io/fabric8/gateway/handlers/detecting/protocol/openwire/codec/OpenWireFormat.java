@@ -31,10 +31,13 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 
+ * Marshals openwire commands.
+ * <br>
+ * A format holds the negotiated options and value caches of a single connection and
+ * reuses its stream buffers between commands, so it is not thread safe: create one
+ * per connection, for example with {@link #copy()}, rather than sharing an instance.
  */
 public final class OpenWireFormat {
 
@@ -64,8 +67,6 @@ public final class OpenWireFormat {
     private DataByteArrayOutputStream bytesOut = new DataByteArrayOutputStream();
     private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
 
-    private AtomicBoolean receivingMessage = new AtomicBoolean(false);
-
     public OpenWireFormat() {
         this(DEFAULT_VERSION);
     }
@@ -80,13 +81,14 @@ public final class OpenWireFormat {
     }
 
     public OpenWireFormat copy() {
-        OpenWireFormat answer = new OpenWireFormat();
-        answer.version = version;
+        // only the marshallers of the version in use are available.
+        OpenWireFormat answer = new OpenWireFormat(version);
         answer.stackTraceEnabled = stackTraceEnabled;
         answer.tcpNoDelayEnabled = tcpNoDelayEnabled;
         answer.cacheEnabled = cacheEnabled;
         answer.tightEncodingEnabled = tightEncodingEnabled;
         answer.sizePrefixDisabled = sizePrefixDisabled;
+        answer.maxFrameSize = maxFrameSize;
         return answer;
     }
 
@@ -114,7 +116,7 @@ public final class OpenWireFormat {
         return WIREFORMAT_NAME;
     }
 
-    public synchronized Buffer marshal(Object command) throws IOException {
+    public Buffer marshal(Object command) throws IOException {
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -192,7 +194,7 @@ public final class OpenWireFormat {
         return sequence;
     }
 
-    public synchronized Object unmarshal(Buffer sequence) throws IOException {
+    public Object unmarshal(Buffer sequence) throws IOException {
         bytesIn.restart(sequence);
         // DataByteArrayInputStreamStream dis = new DataByteArrayInputStreamStream(new
         // ByteArrayInputStream(sequence));
@@ -219,7 +221,7 @@ public final class OpenWireFormat {
         return command;
     }
 
-    public synchronized void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
+    public void marshal(Object o, DataByteArrayOutputStream dataOut) throws IOException {
 
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
@@ -366,7 +368,6 @@ public final class OpenWireFormat {
 
     public Object doUnmarshal(DataByteArrayInputStream dis) throws IOException {
         byte dataType = dis.readByte();
-        receivingMessage.set(true);
         if (dataType != NULL_TYPE) {
             DataStreamMarshaller dsm = (DataStreamMarshaller) dataMarshallers[dataType & 0xFF];
             if (dsm == null) {
@@ -380,10 +381,8 @@ public final class OpenWireFormat {
             } else {
                 dsm.looseUnmarshal(this, data, dis);
             }
-            receivingMessage.set(false);
             return data;
         } else {
-            receivingMessage.set(false);
             return null;
         }
     }
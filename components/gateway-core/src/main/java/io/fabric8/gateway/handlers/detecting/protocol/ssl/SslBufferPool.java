@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of the ByteBuffers used by {@link SslSocketWrapper} to wrap
+ * and unwrap TLS records, so that the buffers are recycled between connections
+ * rather than allocated on every read and write.
+ * <br>
+ * Idle buffers are kept in one queue per capacity, as the application and
+ * packet buffers of a TLS session have different sizes, so acquiring a buffer
+ * never discards a pooled buffer of another size.
+ * <br>
+ * Buffers which are not returned to the pool are simply garbage collected and
+ * buffers released while the pool is full are dropped.
+ */
+public class SslBufferPool {
+
+    private final ConcurrentMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> buffers = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    private int maxPooledBuffers = 256;
+    private boolean directBuffers = false;
+
+    public SslBufferPool() {
+    }
+
+    public SslBufferPool(int maxPooledBuffers, boolean directBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.directBuffers = directBuffers;
+    }
+
+    @Override
+    public String toString() {
+        return "SslBufferPool{" +
+                "pooled=" + pooled.get() +
+                ", maxPooledBuffers=" + maxPooledBuffers +
+                ", directBuffers=" + directBuffers +
+                '}';
+    }
+
+    /**
+     * Returns a cleared buffer with the given capacity.
+     */
+    public ByteBuffer acquire(int size) {
+        ConcurrentLinkedQueue<ByteBuffer> queue = buffers.get(size);
+        if (queue != null) {
+            ByteBuffer buffer;
+            while ((buffer = queue.poll()) != null) {
+                pooled.decrementAndGet();
+                if (buffer.isDirect() == directBuffers) {
+                    buffer.clear();
+                    reused.incrementAndGet();
+                    return buffer;
+                }
+            }
+        }
+        allocated.incrementAndGet();
+        return directBuffers ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooledBuffers) {
+            pooled.decrementAndGet();
+            return;
+        }
+        Integer size = buffer.capacity();
+        ConcurrentLinkedQueue<ByteBuffer> queue = buffers.get(size);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<ByteBuffer>();
+            ConcurrentLinkedQueue<ByteBuffer> previous = buffers.putIfAbsent(size, queue);
+            if (previous != null) {
+                queue = previous;
+            }
+        }
+        queue.offer(buffer);
+    }
+
+    public int getMaxPooledBuffers() {
+        return maxPooledBuffers;
+    }
+
+    /**
+     * Sets the maximum number of idle buffers kept in the pool.
+     */
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * Sets whether direct buffers are allocated, which avoids a copy when the
+     * TLS provider works on native memory.
+     */
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+}
@@ -53,6 +53,11 @@ public class SslConfig {
     String disabledCypherSuites;
     String enabledCipherSuites;
 
+    private int sessionCacheSize = -1;
+    private int sessionTimeout = -1;
+    private int handshakeThreads = 0;
+    private int handshakeQueueSize = 1000;
+
     public SslConfig() {
     }
 
@@ -167,6 +172,24 @@ public class SslConfig {
       return keyManagers;
     }
 
+    /**
+     * Creates a server SSLContext from this configuration with the session cache settings applied.
+     */
+    public SSLContext createSSLContext() throws GeneralSecurityException, IOException {
+        SSLContext sslContext = SSLContext.getInstance(getProtocol());
+        sslContext.init(getKeyManagers(), getTrustManagers(), null);
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        if( sessionContext!=null ) {
+            if( sessionCacheSize >= 0 ) {
+                sessionContext.setSessionCacheSize(sessionCacheSize);
+            }
+            if( sessionTimeout >= 0 ) {
+                sessionContext.setSessionTimeout(sessionTimeout);
+            }
+        }
+        return sslContext;
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -305,4 +328,52 @@ public class SslConfig {
         this.enabledCipherSuites = enabledCipherSuites;
     }
 
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of TLS sessions cached for resumption, zero means no limit
+     * and a negative value keeps the provider's default.
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets how long in seconds a cached TLS session can be resumed for, zero means no limit
+     * and a negative value keeps the provider's default.
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+
+    /**
+     * Sets the number of threads which run the expensive parts of TLS handshakes off the
+     * event loop, zero runs them on the event loop.
+     */
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
+    public int getHandshakeQueueSize() {
+        return handshakeQueueSize;
+    }
+
+    /**
+     * Sets how many handshake tasks can wait for a handshake thread before new
+     * connections are rejected.
+     */
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
 }
@@ -48,6 +48,23 @@ public class SslProtocol implements Protocol {
         return 6;
     }
 
+    private static final byte[] FIRST_BYTES = firstBytes();
+
+    private static byte[] firstBytes() {
+        // A TLS handshake record or an SSLv2 header with the record length in the low bits.
+        byte[] rc = new byte[0x40 + 1];
+        rc[0] = 0x16;
+        for (int i = 0; i < 0x40; i++) {
+            rc[i + 1] = (byte) (0x80 | i);
+        }
+        return rc;
+    }
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer buffer) {
         if( buffer.length() >= 6 ) {
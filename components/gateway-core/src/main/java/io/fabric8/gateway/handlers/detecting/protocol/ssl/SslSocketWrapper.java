@@ -16,6 +16,8 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
+import io.fabric8.gateway.handlers.detecting.protocol.BufferSupport;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.streams.ReadStream;
@@ -28,10 +30,15 @@ import javax.net.ssl.SSLException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
 
 /**
+ * Terminates TLS on top of another socket. Records are unwrapped straight out of the
+ * buffers received from the socket and the engine's working buffers come from a
+ * {@link SslBufferPool}, so only partial records are ever copied.
  */
 public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSocketWrapper>, WriteStream<SslSocketWrapper> {
 
@@ -42,17 +49,26 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     };
 
     final private SocketWrapper next;
+    final private SslBufferPool bufferPool;
 
     private SSLEngine engine;
     private Handler<Throwable> plainExceptionHandler;
     private boolean failed = false;
+    private Executor taskExecutor;
+    private Context context;
+    private boolean taskRunning = false;
 
     //////////////////////////////////////////////////////////////////////////
     //
     // ReadStream<SslSocketWrapper> interface impl.
     //
     //////////////////////////////////////////////////////////////////////////
-    private Buffer encryptedReadBuffer;
+
+    // the encrypted bytes not yet unwrapped, either a view of the last buffer
+    // received or the pooled encryptedReadPool when a partial record is kept.
+    private ByteBuffer encryptedReadBuffer;
+    private ByteBuffer encryptedReadPool;
+    private ByteBuffer plainReadOutput;
     private boolean encryptedReadBufferUnderflow;
     private boolean encryptedReadEOF = false;
     private Buffer plainReadBuffer;
@@ -64,7 +80,34 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         if( engine!=null ) {
             throw new IllegalStateException("putBackHeader must be called before init");
         }
-        encryptedReadBuffer = buffer;
+        appendEncrypted(buffer);
+    }
+
+    private void appendEncrypted(Buffer buffer) {
+        if( encryptedReadBuffer==null || !encryptedReadBuffer.hasRemaining() ) {
+            // nothing is pending so we can unwrap straight out of the received buffer.
+            encryptedReadBuffer = BufferSupport.toByteBuffer(buffer, 0);
+            return;
+        }
+        int required = encryptedReadBuffer.remaining() + buffer.length();
+        if( encryptedReadBuffer == encryptedReadPool ) {
+            encryptedReadPool.compact();
+            if( encryptedReadPool.remaining() < buffer.length() ) {
+                encryptedReadPool.flip();
+                encryptedReadPool = enlarge(encryptedReadPool, required);
+            }
+        } else {
+            if( encryptedReadPool==null || encryptedReadPool.capacity() < required ) {
+                bufferPool.release(encryptedReadPool);
+                encryptedReadPool = bufferPool.acquire(Math.max(required, packetBufferSize()));
+            } else {
+                encryptedReadPool.clear();
+            }
+            encryptedReadPool.put(encryptedReadBuffer);
+        }
+        encryptedReadPool.put(BufferSupport.toByteBuffer(buffer, 0));
+        encryptedReadPool.flip();
+        encryptedReadBuffer = encryptedReadPool;
     }
 
     private void pumpReads() {
@@ -81,8 +124,11 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
-                ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                ByteBuffer input = encryptedReadBuffer;
+                if( plainReadOutput==null ) {
+                    plainReadOutput = bufferPool.acquire(engine.getSession().getApplicationBufferSize());
+                }
+                ByteBuffer output = plainReadOutput;
 
                 try {
                     boolean done = false;
@@ -106,19 +152,27 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                                         done = !input.hasRemaining();
                                 }
                                 break;
-                            case BUFFER_OVERFLOW:
-                                throw new SSLException("BUFFER_OVERFLOW");
+                            case BUFFER_OVERFLOW: {
+                                int size = engine.getSession().getApplicationBufferSize();
+                                if( output.position()!=0 || output.capacity() >= size ) {
+                                    throw new SSLException("BUFFER_OVERFLOW");
+                                }
+                                // the session now needs a bigger buffer than the one we started with.
+                                bufferPool.release(output);
+                                output = plainReadOutput = bufferPool.acquire(size);
+                                done = false;
+                                continue;
+                            }
                         }
 
                         // Lets fill the plain buffer..
                         output.flip();
                         if( output.remaining() > 0 ) {
                             pump = true;
-                            int len = output.remaining();
                             if( plainReadBuffer == null ) {
-                                plainReadBuffer = new Buffer(len);
+                                plainReadBuffer = new Buffer(output.remaining());
                             }
-                            plainReadBuffer.appendBytes(output.array(), output.arrayOffset()+ output.position(), len);
+                            BufferSupport.append(plainReadBuffer, output);
                         }
                         output.clear();
 
@@ -127,14 +181,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     onFailure(e);
                     return;
                 } finally {
-                    int len = input.remaining();
-                    if( len > 0 ) {
-                        // we need to compact the encryptedReadBuffer
-                        if( input.position()!=0  ) {
-                            encryptedReadBuffer = new Buffer(len);
-                            encryptedReadBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
-                        }
-                    } else {
+                    if( !input.hasRemaining() ) {
                         // everything was consumed.
                         encryptedReadBuffer = null;
                     }
@@ -154,6 +201,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
             if( encryptedReadBuffer==null && plainReadBuffer==null && encryptedReadEOF ) {
                 encryptedReadEOF = false;
+                releaseBuffers();
                 Handler<Void> handler = plainEndHandler;
                 if( handler !=null ) {
                     handler.handle(null);
@@ -221,6 +269,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     private boolean writeOverflow;
     private Buffer plainWriteBuffer;
+    private int plainWriteOffset;
+    private ByteBuffer encryptedWriteOutput;
     private Buffer encryptedWriteBuffer;
 
     @Override
@@ -272,8 +322,11 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( plainWriteBuffer!=null ) {
-                ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                ByteBuffer input = BufferSupport.toByteBuffer(plainWriteBuffer, plainWriteOffset);
+                if( encryptedWriteOutput==null ) {
+                    encryptedWriteOutput = bufferPool.acquire(packetBufferSize());
+                }
+                ByteBuffer output = encryptedWriteOutput;
 
                 try {
                     boolean done = false;
@@ -295,10 +348,15 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                             case BUFFER_UNDERFLOW:
                                 break;
                             case BUFFER_OVERFLOW:
+                                if( output.position()==0 ) {
+                                    // the session now needs a bigger buffer than the one we started with.
+                                    bufferPool.release(output);
+                                    output = encryptedWriteOutput = bufferPool.acquire(packetBufferSize());
+                                }
                                 done = false;
                         }
 
-                        // Lets fill the plain buffer..
+                        // Lets fill the encrypted buffer..
                         output.flip();
                         int len = output.remaining();
                         if( len > 0 ) {
@@ -306,7 +364,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                             if( encryptedWriteBuffer == null ) {
                                 encryptedWriteBuffer = new Buffer(len);
                             }
-                            encryptedWriteBuffer.appendBytes(output.array(), output.arrayOffset()+ output.position(), len);
+                            BufferSupport.append(encryptedWriteBuffer, output);
                         }
                         output.clear();
                     }
@@ -316,14 +374,12 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 } finally {
                     int len = input.remaining();
                     if( len > 0 ) {
-                        // we need to compact the plainWriteBuffer
-                        if( input.position()!=0  ) {
-                            plainWriteBuffer = new Buffer(len);
-                            plainWriteBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
-                        }
+                        // remember where we got to rather than compacting the plainWriteBuffer
+                        plainWriteOffset = plainWriteBuffer.length() - len;
                     } else {
                         // everything was consumed.
                         plainWriteBuffer = null;
+                        plainWriteOffset = 0;
                     }
                 }
             }
@@ -366,6 +422,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     @Override
     public void close() {
+        releaseBuffers();
         next.close();
     }
 
@@ -391,7 +448,12 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     //////////////////////////////////////////////////////////////////////////
 
     public SslSocketWrapper(SocketWrapper plainWrapper) {
+        this(plainWrapper, new SslBufferPool(0, false));
+    }
+
+    public SslSocketWrapper(SocketWrapper plainWrapper, SslBufferPool bufferPool) {
         this.next = plainWrapper;
+        this.bufferPool = bufferPool;
         pause();
     }
 
@@ -416,6 +478,15 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         init();
     }
 
+    /**
+     * Runs the delegated tasks of the handshake on the given executor instead of the event loop,
+     * the handshake is then resumed on the given context. Must be called before init.
+     */
+    public void setTaskExecutor(Executor taskExecutor, Context context) {
+        this.taskExecutor = taskExecutor;
+        this.context = context;
+    }
+
     private void initCipherSuites(String disabledCypherSuites, String enabledCipherSuites) {
         if (enabledCipherSuites != null) {
             engine.setEnabledCipherSuites(splitOnCommas(enabledCipherSuites));
@@ -446,11 +517,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         this.next.readStream().dataHandler(new Handler<Buffer>() {
             @Override
             public void handle(Buffer buffer) {
-                if( encryptedReadBuffer == null ) {
-                    encryptedReadBuffer = buffer;
-                } else {
-                    encryptedReadBuffer.appendBuffer(buffer);
-                }
+                appendEncrypted(buffer);
                 encryptedReadBufferUnderflow = false;
                 pumpReads();
             }
@@ -478,7 +545,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     }
 
     public void handshake() {
-        if( failed )
+        if( failed || taskRunning )
             return;
         try {
             while( true ) {
@@ -489,6 +556,10 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                         return;
 
                     case NEED_TASK:
+                        if( taskExecutor!=null ) {
+                            runDelegatedTasks();
+                            return;
+                        }
                         final Runnable task = engine.getDelegatedTask();
                         if( task!=null ) {
                             task.run();
@@ -524,8 +595,77 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         }
     }
 
+    private void runDelegatedTasks() {
+        taskRunning = true;
+        try {
+            taskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable error = null;
+                    try {
+                        Runnable task;
+                        while( (task = engine.getDelegatedTask())!=null ) {
+                            task.run();
+                        }
+                    } catch (Throwable e) {
+                        error = e;
+                    }
+                    final Throwable failure = error;
+                    context.runOnContext(new Handler<Void>() {
+                        @Override
+                        public void handle(Void event) {
+                            taskRunning = false;
+                            if( failure!=null ) {
+                                onFailure(failure);
+                            } else {
+                                handshake();
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // too many handshakes are in progress, drop the connection rather than
+            // doing the work on the event loop.
+            taskRunning = false;
+            onFailure(new SSLException("Too many TLS handshakes in progress", e));
+            close();
+        }
+    }
+
+    private int packetBufferSize() {
+        return engine!=null ? engine.getSession().getPacketBufferSize() : 0;
+    }
+
+    /**
+     * Moves the remaining bytes of the buffer to a pooled buffer of at least the given
+     * size, which is returned ready to be written to.
+     */
+    private ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer rc = bufferPool.acquire(size);
+        rc.put(buffer);
+        bufferPool.release(buffer);
+        return rc;
+    }
+
+    /**
+     * Returns the pooled buffers, they are acquired again if the connection is still used.
+     */
+    private void releaseBuffers() {
+        if( encryptedReadBuffer!=null && encryptedReadBuffer == encryptedReadPool ) {
+            encryptedReadBuffer = null;
+        }
+        bufferPool.release(encryptedReadPool);
+        encryptedReadPool = null;
+        bufferPool.release(plainReadOutput);
+        plainReadOutput = null;
+        bufferPool.release(encryptedWriteOutput);
+        encryptedWriteOutput = null;
+    }
+
     private void onFailure(Throwable error) {
         failed = true;
+        releaseBuffers();
         Handler<Throwable> handler = plainExceptionHandler;
         if( handler!=null ) {
             handler.handle(error);
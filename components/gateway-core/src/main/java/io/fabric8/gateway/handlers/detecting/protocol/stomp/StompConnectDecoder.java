@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.stomp;
+
+import io.fabric8.gateway.handlers.detecting.protocol.ProtocolDecoder;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.Charset;
+
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.CLIENT_ID;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.COLON_BYTE;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.CONNECT;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.HOST;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.LOGIN;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.NEWLINE_BYTE;
+import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.STOMP;
+
+/**
+ * Decodes just the connection parameters needed for routing from the CONNECT
+ * or STOMP frame a client starts with.
+ * <br>
+ * The header lines are scanned in place in the received data and only the values
+ * of the host, login and client-id headers are decoded, so no buffers are created
+ * for the other headers. Decoding stops at the blank line which ends the headers.
+ */
+class StompConnectDecoder extends ProtocolDecoder<ConnectionParameters> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] CONNECT_BYTES = CONNECT.toBuffer().getBytes();
+    private static final byte[] STOMP_BYTES = STOMP.toBuffer().getBytes();
+    private static final byte[] HOST_BYTES = HOST.toBuffer().getBytes();
+    private static final byte[] LOGIN_BYTES = LOGIN.toBuffer().getBytes();
+    private static final byte[] CLIENT_ID_BYTES = CLIENT_ID.toBuffer().getBytes();
+
+    private final StompProtocol protocol;
+    private ConnectionParameters parameters;
+    private int headers;
+
+    public StompConnectDecoder(StompProtocol protocol) {
+        this.protocol = protocol;
+    }
+
+    @Override
+    protected Action<ConnectionParameters> initialDecodeAction() {
+        return read_command;
+    }
+
+    final Action<ConnectionParameters> read_command = new Action<ConnectionParameters>() {
+        public ConnectionParameters apply() throws IOException {
+            int lineEnd;
+            while ((lineEnd = readLine(StompProtocol.maxCommandLength, "The maximum command length was exceeded")) >= 0) {
+                int end = chompCarriageReturn(readStart, lineEnd);
+                int start = readStart;
+                consumeLine(lineEnd);
+                // skip the heart beats a client may send before the frame
+                if (end > start) {
+                    if (!matches(start, end, CONNECT_BYTES) && !matches(start, end, STOMP_BYTES)) {
+                        throw new ProtocolException("Expected a CONNECT or STOMP frame");
+                    }
+                    parameters = new ConnectionParameters();
+                    nextDecodeAction = read_headers;
+                    return nextDecodeAction.apply();
+                }
+            }
+            return null;
+        }
+    };
+
+    final Action<ConnectionParameters> read_headers = new Action<ConnectionParameters>() {
+        public ConnectionParameters apply() throws IOException {
+            int lineEnd;
+            while ((lineEnd = readLine(protocol.maxHeaderLength, "The maximum header length was exceeded")) >= 0) {
+                int start = readStart;
+                int end = chompCarriageReturn(start, lineEnd);
+                consumeLine(lineEnd);
+                if (end == start) {
+                    ConnectionParameters answer = parameters;
+                    parameters = null;
+                    nextDecodeAction = skip_remaining;
+                    return answer;
+                }
+                if (protocol.maxHeaders != -1 && ++headers > protocol.maxHeaders) {
+                    throw new IOException("The maximum number of headers was exceeded");
+                }
+                int separator = buff.indexOf(start, end, COLON_BYTE);
+                if (separator < 0) {
+                    throw new IOException("Header line missing separator");
+                }
+                // the first occurrence of a repeated header is the one used
+                if (parameters.protocolVirtualHost == null && matches(start, separator, HOST_BYTES)) {
+                    parameters.protocolVirtualHost = decodeValue(separator + 1, end);
+                } else if (parameters.protocolUser == null && matches(start, separator, LOGIN_BYTES)) {
+                    parameters.protocolUser = decodeValue(separator + 1, end);
+                } else if (parameters.protocolClientId == null && matches(start, separator, CLIENT_ID_BYTES)) {
+                    parameters.protocolClientId = decodeValue(separator + 1, end);
+                }
+            }
+            return null;
+        }
+    };
+
+    /**
+     * The rest of the data is forwarded to the broker as it is.
+     */
+    final Action<ConnectionParameters> skip_remaining = new Action<ConnectionParameters>() {
+        public ConnectionParameters apply() throws IOException {
+            readStart = readEnd = buff.length();
+            return null;
+        }
+    };
+
+    /**
+     * Returns the position of the newline which ends the current line or -1 if it
+     * was not received yet.
+     */
+    private int readLine(int max, String message) throws ProtocolException {
+        int pos = buff.indexOf(readEnd, buff.length(), NEWLINE_BYTE);
+        readEnd = pos >= 0 ? pos : buff.length();
+        if (max >= 0 && readEnd - readStart > max) {
+            throw new ProtocolException(message);
+        }
+        return pos;
+    }
+
+    private void consumeLine(int lineEnd) {
+        readEnd = lineEnd + 1;
+        bytesDecoded += readEnd - readStart;
+        readStart = readEnd;
+    }
+
+    private int chompCarriageReturn(int start, int end) {
+        if (end > start && buff.getByte(end - 1) == '\r') {
+            return end - 1;
+        }
+        return end;
+    }
+
+    private boolean matches(int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buff.getByte(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the UTF-8 header value between the positions, which is copied as it is
+     * since the headers of the CONNECT and STOMP frames are not escaped.
+     */
+    private String decodeValue(int start, int end) {
+        byte[] value = new byte[end - start];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = buff.getByte(start + i);
+        }
+        return new String(value, UTF_8);
+    }
+}
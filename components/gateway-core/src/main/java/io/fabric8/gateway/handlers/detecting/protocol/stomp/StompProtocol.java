@@ -53,6 +53,13 @@ public class StompProtocol implements Protocol {
         return 10;
     }
 
+    private static final byte[] FIRST_BYTES = new byte[]{ 'C', 'S' };
+
+    @Override
+    public byte[] getFirstBytes() {
+        return FIRST_BYTES;
+    }
+
     @Override
     public boolean matches(Buffer header) {
         return startsWith(header, 0, CONNECT.toBuffer()) ||
@@ -62,7 +69,7 @@ public class StompProtocol implements Protocol {
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
-        StompProtocolDecoder h = new StompProtocolDecoder(this);
+        StompConnectDecoder h = new StompConnectDecoder(this);
         h.errorHandler(new Handler<String>() {
             @Override
             public void handle(String error) {
@@ -70,23 +77,8 @@ public class StompProtocol implements Protocol {
                 socket.close();
             }
         });
-        h.codecHandler(new Handler<StompFrame>() {
-            @Override
-            public void handle(StompFrame event) {
-                if( event.action().equals(CONNECT) || event.action().equals(STOMP)) {
-                    ConnectionParameters parameters = new ConnectionParameters();
-                    parameters.protocolVirtualHost = event.getHeaderAsString(HOST);
-                    parameters.protocolUser = event.getHeaderAsString(USERID);
-                    parameters.protocolClientId = event.getHeaderAsString(CLIENT_ID);
-                    handler.handle(parameters);
-                } else {
-                    LOG.info("Expected a CONNECT or STOMP frame");
-                    socket.close();
-                }
-            }
-        });
-        socket.readStream().dataHandler(h);
-        h.handle(received);
+        h.codecHandler(handler);
+        h.snoop(received, socket.readStream());
     }
 
 }
@@ -34,7 +34,7 @@ import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.CON
 /**
  * Implements protocol decoding for the STOMP protocol.
  */
-class StompProtocolDecoder extends ProtocolDecoder<StompFrame> {
+public class StompProtocolDecoder extends ProtocolDecoder<StompFrame> {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(StompProtocolDecoder.class);
 
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.health;
+
+/**
+ * The health of a single back end service URL as seen by the {@link HealthChecker}.
+ * <br>
+ * A backend is ejected after a number of consecutive failures and stays ejected for an
+ * ejection time which doubles each time it is ejected again without having succeeded in
+ * between. Once re-admitted a single failure ejects it again until it has succeeded.
+ */
+public class BackendHealth {
+    private final String url;
+    private volatile long ejectedUntil;
+
+    // guarded by this
+    private int consecutiveFailures;
+    private int ejections;
+    private long totalEjections;
+    private String lastFailure;
+
+    public BackendHealth(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String toString() {
+        return "BackendHealth{" +
+                "url='" + url + '\'' +
+                ", ejectedUntil=" + ejectedUntil +
+                '}';
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns true if the backend should not be used at the given time.
+     */
+    public boolean isEjected(long now) {
+        return ejectedUntil > now;
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * Records a successful connection or health check.
+     */
+    public synchronized void succeeded(long now) {
+        consecutiveFailures = 0;
+        if (!isEjected(now)) {
+            ejections = 0;
+        }
+    }
+
+    /**
+     * Records a failed connection or health check and returns the time the backend is
+     * ejected until if this failure ejected it, otherwise 0.
+     */
+    public synchronized long failed(long now, String reason, int maxConsecutiveFailures, long baseEjectionTime, long maxEjectionTime) {
+        lastFailure = reason;
+        if (isEjected(now)) {
+            return 0;
+        }
+        consecutiveFailures++;
+        // a backend which has been re-admitted after an ejection is on probation until it succeeds.
+        if (consecutiveFailures < maxConsecutiveFailures && ejections == 0) {
+            return 0;
+        }
+        long ejectionTime = baseEjectionTime << Math.min(ejections, 30);
+        if (ejectionTime <= 0 || ejectionTime > maxEjectionTime) {
+            ejectionTime = maxEjectionTime;
+        }
+        ejections++;
+        totalEjections++;
+        consecutiveFailures = 0;
+        ejectedUntil = now + ejectionTime;
+        return ejectedUntil;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getTotalEjections() {
+        return totalEjections;
+    }
+
+    public synchronized String getLastFailure() {
+        return lastFailure;
+    }
+}
@@ -0,0 +1,416 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.health;
+
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.api.ServiceDetails;
+import io.fabric8.utils.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetSocket;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the health of the back end service URLs in a {@link ServiceMap} so that the gateways
+ * stop routing to a backend which is down before it is removed from the registry.
+ * <br>
+ * Backends are ejected passively when the gateways report a number of consecutive connect
+ * failures and, if a check interval is configured, actively by periodically connecting to
+ * every backend over TCP or, when a check path is configured, with an HTTP GET for http URLs.
+ * Ejected backends are re-admitted after an exponentially increasing ejection time.
+ * <br>
+ * Can be shared by several gateways in the same way as the
+ * {@link io.fabric8.gateway.handlers.tcp.NetClientRegistry}.
+ */
+public class HealthChecker {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+    private final Vertx vertx;
+    private final ServiceMap serviceMap;
+    private final ConcurrentHashMap<String, BackendHealth> backends = new ConcurrentHashMap<String, BackendHealth>();
+    private final Set<String> checking = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private int consecutiveFailures = 5;
+    private long baseEjectionTime = 30 * 1000;
+    private long maxEjectionTime = 5 * 60 * 1000;
+    private volatile long checkInterval = 0;
+    private int checkTimeout = 2000;
+    private String checkPath;
+
+    private volatile long lastEjectedUntil;
+    private final AtomicLong ejections = new AtomicLong();
+    private final AtomicLong checksPerformed = new AtomicLong();
+    private final AtomicLong checksFailed = new AtomicLong();
+    private NetClient checkClient;
+    private long checkTimer = -1;
+
+    public HealthChecker(Vertx vertx, ServiceMap serviceMap) {
+        this.vertx = vertx;
+        this.serviceMap = serviceMap;
+    }
+
+    @Override
+    public String toString() {
+        return "HealthChecker{" +
+                "consecutiveFailures=" + consecutiveFailures +
+                ", baseEjectionTime=" + baseEjectionTime +
+                ", maxEjectionTime=" + maxEjectionTime +
+                ", checkInterval=" + checkInterval +
+                ", checkPath='" + checkPath + '\'' +
+                '}';
+    }
+
+    public synchronized void init() {
+        if (checkTimer == -1) {
+            startTimer();
+        }
+    }
+
+    private void startTimer() {
+        // without active checks the timer is only used to forget removed backends.
+        long interval = checkInterval > 0 ? checkInterval : Math.max(baseEjectionTime, 1000);
+        checkTimer = vertx.setPeriodic(interval, new Handler<Long>() {
+            @Override
+            public void handle(Long timerID) {
+                checkBackends();
+            }
+        });
+    }
+
+    public synchronized void destroy() {
+        if (checkTimer != -1) {
+            vertx.cancelTimer(checkTimer);
+            checkTimer = -1;
+        }
+        if (checkClient != null) {
+            checkClient.close();
+            checkClient = null;
+        }
+    }
+
+    /**
+     * Returns true unless the backend with the given URL is currently ejected.
+     */
+    public boolean isHealthy(String url) {
+        long now = System.currentTimeMillis();
+        if (now >= lastEjectedUntil) {
+            return true;
+        }
+        BackendHealth backend = backends.get(url);
+        return backend == null || !backend.isEjected(now);
+    }
+
+    /**
+     * Returns the services which expose at least one healthy URL so that the load balancers
+     * only choose between healthy services. If none of the services are healthy then they
+     * are all returned, as routing to a backend which may have recovered is better than
+     * failing every client.
+     */
+    public List<ServiceDetails> healthyServices(List<ServiceDetails> services) {
+        long now = System.currentTimeMillis();
+        if (now >= lastEjectedUntil) {
+            return services;
+        }
+        List<ServiceDetails> answer = null;
+        int size = services.size();
+        for (int i = 0; i < size; i++) {
+            ServiceDetails service = services.get(i);
+            boolean healthy = isHealthy(service, now);
+            if (!healthy && answer == null) {
+                answer = new ArrayList<ServiceDetails>(services.subList(0, i));
+            } else if (healthy && answer != null) {
+                answer.add(service);
+            }
+        }
+        if (answer == null || answer.isEmpty()) {
+            return services;
+        }
+        return answer;
+    }
+
+    private boolean isHealthy(ServiceDetails service, long now) {
+        for (String url : service.getServices()) {
+            BackendHealth backend = backends.get(url);
+            if (backend == null || !backend.isEjected(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that a gateway connected to the backend with the given URL.
+     */
+    public void connectSucceeded(String url) {
+        BackendHealth backend = backends.get(url);
+        if (backend != null) {
+            backend.succeeded(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Records that a gateway or a health check could not connect to the backend with the given URL.
+     */
+    public void connectFailed(String url, String reason) {
+        BackendHealth backend = backends.get(url);
+        if (backend == null) {
+            BackendHealth created = new BackendHealth(url);
+            backend = backends.putIfAbsent(url, created);
+            if (backend == null) {
+                backend = created;
+            }
+        }
+        long now = System.currentTimeMillis();
+        long ejectedUntil = backend.failed(now, reason, consecutiveFailures, baseEjectionTime, maxEjectionTime);
+        if (ejectedUntil > 0) {
+            ejections.incrementAndGet();
+            synchronized (this) {
+                if (ejectedUntil > lastEjectedUntil) {
+                    lastEjectedUntil = ejectedUntil;
+                }
+            }
+            LOG.warn("Ejected backend " + url + " for " + (ejectedUntil - now) + " ms due to: " + reason);
+        }
+    }
+
+    /**
+     * Forgets the backends which are no longer registered and probes the registered ones
+     * if active checks are enabled.
+     */
+    protected void checkBackends() {
+        Set<String> urls = new HashSet<String>();
+        ServiceMap.Snapshot snapshot = serviceMap.getSnapshot();
+        for (String path : snapshot.getPaths()) {
+            for (ServiceDetails service : snapshot.getServices(path)) {
+                for (String url : service.getServices()) {
+                    if (Strings.isNotBlank(url)) {
+                        urls.add(url);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, BackendHealth> entry : backends.entrySet()) {
+            if (!urls.contains(entry.getKey())) {
+                backends.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (checkInterval > 0) {
+            for (String url : urls) {
+                if (checking.add(url)) {
+                    check(url);
+                }
+            }
+        }
+    }
+
+    protected void check(final String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            checking.remove(url);
+            return;
+        }
+        if (uri.getHost() == null || uri.getPort() <= 0) {
+            checking.remove(url);
+            return;
+        }
+        checksPerformed.incrementAndGet();
+        if (checkPath != null && "http".equals(uri.getScheme())) {
+            checkHttp(url, uri);
+        } else {
+            checkTcp(url, uri);
+        }
+    }
+
+    protected void checkTcp(final String url, URI uri) {
+        getCheckClient().connect(uri.getPort(), uri.getHost(), new Handler<AsyncResult<NetSocket>>() {
+            @Override
+            public void handle(AsyncResult<NetSocket> event) {
+                if (event.succeeded()) {
+                    event.result().close();
+                    checkSucceeded(url);
+                } else {
+                    checkFailed(url, "Health check could not connect: " + event.cause());
+                }
+            }
+        });
+    }
+
+    protected void checkHttp(final String url, URI uri) {
+        final HttpClient client = vertx.createHttpClient()
+                .setHost(uri.getHost())
+                .setPort(uri.getPort())
+                .setConnectTimeout(checkTimeout)
+                .setKeepAlive(false);
+        final Handler<Throwable> exceptionHandler = new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable e) {
+                client.close();
+                checkFailed(url, "Health check failed: " + e);
+            }
+        };
+        client.exceptionHandler(exceptionHandler);
+        HttpClientRequest request = client.get(checkPath, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                client.close();
+                if (response.statusCode() < 500) {
+                    checkSucceeded(url);
+                } else {
+                    checkFailed(url, "Health check returned status " + response.statusCode());
+                }
+            }
+        });
+        request.exceptionHandler(exceptionHandler);
+        request.setTimeout(checkTimeout);
+        request.end();
+    }
+
+    private void checkSucceeded(String url) {
+        checking.remove(url);
+        connectSucceeded(url);
+    }
+
+    private void checkFailed(String url, String reason) {
+        if (checking.remove(url)) {
+            checksFailed.incrementAndGet();
+            LOG.debug("Backend {} failed its health check: {}", url, reason);
+            connectFailed(url, reason);
+        }
+    }
+
+    private synchronized NetClient getCheckClient() {
+        if (checkClient == null) {
+            checkClient = vertx.createNetClient().setConnectTimeout(checkTimeout);
+        }
+        return checkClient;
+    }
+
+    /**
+     * Returns the URLs of the backends which are currently ejected.
+     */
+    public String[] getEjectedBackends() {
+        long now = System.currentTimeMillis();
+        ArrayList<String> rc = new ArrayList<String>();
+        for (BackendHealth backend : backends.values()) {
+            if (backend.isEjected(now)) {
+                rc.add(backend.getUrl());
+            }
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    public BackendHealth getBackend(String url) {
+        return backends.get(url);
+    }
+
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    public long getChecksPerformed() {
+        return checksPerformed.get();
+    }
+
+    public long getChecksFailed() {
+        return checksFailed.get();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Sets the number of consecutive connect failures after which a backend is ejected.
+     */
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public long getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    /**
+     * Sets how long in milliseconds a backend is ejected the first time, the time doubles
+     * each time it is ejected again before it has succeeded.
+     */
+    public void setBaseEjectionTime(long baseEjectionTime) {
+        this.baseEjectionTime = baseEjectionTime;
+    }
+
+    public long getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    public void setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Sets the interval in milliseconds between active health checks, 0 disables them so
+     * backends are only ejected by the failures the gateways see. Takes effect immediately
+     * if the checker has already been started.
+     */
+    public synchronized void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+        if (checkTimer != -1) {
+            vertx.cancelTimer(checkTimer);
+            startTimer();
+        }
+    }
+
+    public int getCheckTimeout() {
+        return checkTimeout;
+    }
+
+    public void setCheckTimeout(int checkTimeout) {
+        this.checkTimeout = checkTimeout;
+    }
+
+    public String getCheckPath() {
+        return checkPath;
+    }
+
+    /**
+     * Sets the path requested to check http backends, if not set they are checked over TCP.
+     */
+    public void setCheckPath(String checkPath) {
+        this.checkPath = checkPath;
+    }
+}
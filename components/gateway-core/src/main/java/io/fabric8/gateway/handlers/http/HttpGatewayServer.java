@@ -15,6 +15,7 @@
  */
 package io.fabric8.gateway.handlers.http;
 
+import io.fabric8.gateway.api.handlers.http.HttpGatewayHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
@@ -71,6 +72,9 @@ public class HttpGatewayServer {
 
     public void destroy() {
         server.close();
+        if (handler instanceof HttpGatewayHandler) {
+            ((HttpGatewayHandler) handler).destroy();
+        }
     }
 
     public int getPort() {
@@ -18,7 +18,10 @@ package io.fabric8.gateway.handlers.http;
 import io.fabric8.gateway.api.ServiceDetails;
 import io.fabric8.gateway.api.handlers.http.IMappedServices;
 import io.fabric8.gateway.api.handlers.http.ProxyMappingDetails;
+import io.fabric8.gateway.handlers.http.policy.LoadBalancerStatisticsPolicy;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
+import io.fabric8.gateway.loadbalancer.BackendStatistics;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 
 import java.util.ArrayList;
@@ -38,7 +41,6 @@ public class MappedServices implements IMappedServices {
     private final LoadBalancer loadBalancer;
     private final boolean reverseHeaders;
     private Set<String> serviceUrls = new CopyOnWriteArraySet<String>();
-    private ProxyMappingDetails proxyMappingDetails;
 
     public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer loadBalancer, boolean reverseHeaders) {
         this.serviceDetails = serviceDetails;
@@ -73,9 +75,23 @@ public class MappedServices implements IMappedServices {
         if (reverseHeaders) {
             responseHandler = new ReverseUriPolicy(this, request, responseHandler, proxyMappingDetails);
         }
+        BackendStatistics backend = LoadAwareLoadBalancer.getBackendStatistics(loadBalancer, proxyMappingDetails.getProxyServiceUrl());
+        if (backend != null) {
+            responseHandler = new LoadBalancerStatisticsPolicy(backend, responseHandler);
+        }
         return responseHandler;
     }
 
+    /**
+     * Notifies the policies returned by {@link #wrapResponseHandlerInPolicies} that the request
+     * to the service failed without a response
+     */
+    public void serviceRequestFailed(Handler<HttpClientResponse> responseHandler, Throwable cause) {
+        if (responseHandler instanceof LoadBalancerStatisticsPolicy) {
+            ((LoadBalancerStatisticsPolicy) responseHandler).failed();
+        }
+    }
+
     /**
      * Rewrites the URI response from a request to a URI in the gateway namespace
      */
@@ -106,12 +122,4 @@ public class MappedServices implements IMappedServices {
         return serviceUrls;
     }
 
-	public ProxyMappingDetails getProxyMappingDetails() {
-		return proxyMappingDetails;
-	}
-
-	public void setProxyMappingDetails(ProxyMappingDetails proxyMappingDetails) {
-		this.proxyMappingDetails = proxyMappingDetails;
-	}
-
 }
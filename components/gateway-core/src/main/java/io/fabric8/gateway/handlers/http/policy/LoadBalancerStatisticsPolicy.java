@@ -0,0 +1,63 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import io.fabric8.gateway.loadbalancer.BackendStatistics;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpClientResponse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the outstanding requests and the response latency of a back end service in the
+ * {@link BackendStatistics} used by the load aware load balancers such as
+ * {@link io.fabric8.gateway.loadbalancer.LeastConnectionsLoadBalancer} and
+ * {@link io.fabric8.gateway.loadbalancer.PeakEwmaLoadBalancer}.
+ * <br>
+ * The request is counted as active from when it is sent until the response headers are received
+ * or the request fails.
+ */
+public class LoadBalancerStatisticsPolicy implements Handler<HttpClientResponse> {
+    private final BackendStatistics backend;
+    private final Handler<HttpClientResponse> delegate;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final long start;
+
+    public LoadBalancerStatisticsPolicy(BackendStatistics backend, Handler<HttpClientResponse> delegate) {
+        this.backend = backend;
+        this.delegate = delegate;
+        this.start = backend.requestStarted();
+    }
+
+    @Override
+    public void handle(HttpClientResponse clientResponse) {
+        if (completed.compareAndSet(false, true)) {
+            backend.recordLatency(start);
+            backend.requestCompleted();
+        }
+        delegate.handle(clientResponse);
+    }
+
+    /**
+     * Invoked if the request to the back end service failed before a response was received.
+     */
+    public void failed() {
+        if (completed.compareAndSet(false, true)) {
+            backend.requestFailed();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of the connections a gateway proxied for one virtual host and protocol.
+ */
+public class GatewayMetrics {
+    private final String virtualHost;
+    private final String protocol;
+
+    private final StripedCounter connections = new StripedCounter();
+    private final StripedCounter connectFailures = new StripedCounter();
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final StripedCounter bytesReceived = new StripedCounter();
+    private final StripedCounter bytesSent = new StripedCounter();
+    private final Histogram detectionTime = new Histogram();
+    private final Histogram connectTime = new Histogram();
+    private final Histogram connectionDuration = new Histogram();
+
+    public GatewayMetrics(String virtualHost, String protocol) {
+        this.virtualHost = virtualHost;
+        this.protocol = protocol;
+    }
+
+    @Override
+    public String toString() {
+        return virtualHost + "/" + protocol + ":" +
+                " connections=" + connections +
+                " active=" + activeConnections +
+                " connectFailures=" + connectFailures +
+                " bytesReceived=" + bytesReceived +
+                " bytesSent=" + bytesSent +
+                " detectionTime{" + detectionTime + "}" +
+                " connectTime{" + connectTime + "}" +
+                " connectionDuration{" + connectionDuration + "}";
+    }
+
+    /**
+     * Records that a client connection was routed after the given protocol detection time.
+     */
+    public void detected(long detectionNanos) {
+        detectionTime.recordNanos(detectionNanos);
+    }
+
+    public void connected(long connectNanos) {
+        connections.increment();
+        activeConnections.incrementAndGet();
+        connectTime.recordNanos(connectNanos);
+    }
+
+    public void connectFailed() {
+        connectFailures.increment();
+    }
+
+    public void disconnected(long connectionNanos) {
+        activeConnections.decrementAndGet();
+        connectionDuration.recordNanos(connectionNanos);
+    }
+
+    public String getVirtualHost() {
+        return virtualHost;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getConnectFailures() {
+        return connectFailures.get();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Returns the counter of the bytes received from the clients and sent to the backends.
+     */
+    public StripedCounter getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the counter of the bytes received from the backends and sent to the clients.
+     */
+    public StripedCounter getBytesSent() {
+        return bytesSent;
+    }
+
+    public Histogram getDetectionTime() {
+        return detectionTime;
+    }
+
+    public Histogram getConnectTime() {
+        return connectTime;
+    }
+
+    public Histogram getConnectionDuration() {
+        return connectionDuration;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the {@link GatewayMetrics} of each virtual host and protocol a gateway routes and
+ * renders them in the Prometheus text exposition format.
+ */
+public class GatewayMetricsRegistry {
+    private final ConcurrentHashMap<MetricsKey, GatewayMetrics> metrics = new ConcurrentHashMap<MetricsKey, GatewayMetrics>();
+    private String prefix = "fabric8_gateway_";
+
+    /**
+     * Returns the metrics for the given virtual host and protocol, creating them if required.
+     */
+    public GatewayMetrics getMetrics(String virtualHost, String protocol) {
+        MetricsKey key = new MetricsKey(virtualHost != null ? virtualHost : "", protocol != null ? protocol : "");
+        GatewayMetrics answer = metrics.get(key);
+        if (answer == null) {
+            GatewayMetrics created = new GatewayMetrics(key.virtualHost, key.protocol);
+            answer = metrics.putIfAbsent(key, created);
+            if (answer == null) {
+                answer = created;
+            }
+        }
+        return answer;
+    }
+
+    public Collection<GatewayMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Returns a summary line of the metrics of each virtual host and protocol.
+     */
+    public String[] getSummaries() {
+        List<String> rc = new ArrayList<String>();
+        for (GatewayMetrics value : metrics.values()) {
+            rc.add(value.toString());
+        }
+        Collections.sort(rc);
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text format
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        Collection<GatewayMetrics> values = metrics.values();
+        counter(out, "connections_total", "Connections routed to a backend", values, 0);
+        counter(out, "connect_failures_total", "Connections which failed to connect to a backend", values, 1);
+        counter(out, "active_connections", "Connections currently routed to a backend", values, 2);
+        counter(out, "received_bytes_total", "Bytes received from clients", values, 3);
+        counter(out, "sent_bytes_total", "Bytes sent to clients", values, 4);
+        histogram(out, "protocol_detection_seconds", "Time taken to detect the protocol and virtual host of a client", values, 0);
+        histogram(out, "backend_connect_seconds", "Time taken to connect to a backend", values, 1);
+        histogram(out, "connection_duration_seconds", "How long proxied connections stayed open", values, 2);
+        return out.toString();
+    }
+
+    private void counter(StringBuilder out, String name, String help, Collection<GatewayMetrics> values, int which) {
+        String type = which == 2 ? "gauge" : "counter";
+        out.append("# HELP ").append(prefix).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(prefix).append(name).append(' ').append(type).append('\n');
+        for (GatewayMetrics value : values) {
+            long number;
+            switch (which) {
+                case 0: number = value.getConnections(); break;
+                case 1: number = value.getConnectFailures(); break;
+                case 2: number = value.getActiveConnections(); break;
+                case 3: number = value.getBytesReceived().get(); break;
+                default: number = value.getBytesSent().get(); break;
+            }
+            out.append(prefix).append(name);
+            labels(out, value, null).append(' ').append(number).append('\n');
+        }
+    }
+
+    private void histogram(StringBuilder out, String name, String help, Collection<GatewayMetrics> values, int which) {
+        out.append("# HELP ").append(prefix).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(prefix).append(name).append(" histogram\n");
+        for (GatewayMetrics value : values) {
+            Histogram histogram;
+            switch (which) {
+                case 0: histogram = value.getDetectionTime(); break;
+                case 1: histogram = value.getConnectTime(); break;
+                default: histogram = value.getConnectionDuration(); break;
+            }
+            long cumulative = 0;
+            for (int i = 0; i < Histogram.BUCKETS; i++) {
+                cumulative += histogram.getBucketCount(i);
+                out.append(prefix).append(name).append("_bucket");
+                labels(out, value, seconds(Histogram.getUpperBound(i))).append(' ').append(cumulative).append('\n');
+            }
+            cumulative += histogram.getBucketCount(Histogram.BUCKETS);
+            out.append(prefix).append(name).append("_bucket");
+            labels(out, value, "+Inf").append(' ').append(cumulative).append('\n');
+            out.append(prefix).append(name).append("_sum");
+            labels(out, value, null).append(' ').append(seconds(histogram.getSum())).append('\n');
+            out.append(prefix).append(name).append("_count");
+            labels(out, value, null).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1000000.0);
+    }
+
+    private static StringBuilder labels(StringBuilder out, GatewayMetrics value, String le) {
+        out.append("{virtual_host=\"");
+        escape(out, value.getVirtualHost());
+        out.append("\",protocol=\"");
+        escape(out, value.getProtocol());
+        out.append('"');
+        if (le != null) {
+            out.append(",le=\"").append(le).append('"');
+        }
+        return out.append('}');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Sets the prefix of the Prometheus metric names
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    static final class MetricsKey {
+        private final String virtualHost;
+        private final String protocol;
+
+        MetricsKey(String virtualHost, String protocol) {
+            this.virtualHost = virtualHost;
+            this.protocol = protocol;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MetricsKey that = (MetricsKey) o;
+            return virtualHost.equals(that.virtualHost) && protocol.equals(that.protocol);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * virtualHost.hashCode() + protocol.hashCode();
+        }
+    }
+}
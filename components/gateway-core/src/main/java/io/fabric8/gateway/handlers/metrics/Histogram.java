@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations which counts the samples in buckets whose upper
+ * bounds are the powers of two in microseconds, from 1 microsecond up to about 35 minutes.
+ */
+public class Histogram {
+    public static final int BUCKETS = 32;
+
+    // the last bucket counts the samples above the largest bound
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter sum = new StripedCounter();
+
+    /**
+     * Records a duration given in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sum.add(micros);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros - 1), BUCKETS);
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the given bucket.
+     */
+    public static long getUpperBound(int bucket) {
+        return 1L << bucket;
+    }
+
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of the samples in microseconds.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the bucket containing the given
+     * percentile of the samples, or 0 if there are none.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS + 1];
+        long total = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " p50=" + format(getPercentile(50)) + " p99=" + format(getPercentile(99));
+    }
+
+    static String format(long micros) {
+        if (micros == Long.MAX_VALUE) {
+            return "overflow";
+        } else if (micros < 1000) {
+            return micros + "us";
+        }
+        return (micros / 1000) + "ms";
+    }
+}
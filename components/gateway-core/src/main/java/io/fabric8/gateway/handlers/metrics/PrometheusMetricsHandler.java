@@ -0,0 +1,44 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+/**
+ * Serves the metrics of a {@link GatewayMetricsRegistry} in the Prometheus text format
+ * for any GET request.
+ */
+public class PrometheusMetricsHandler implements Handler<HttpServerRequest> {
+    private final GatewayMetricsRegistry registry;
+
+    public PrometheusMetricsHandler(GatewayMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(HttpServerRequest request) {
+        HttpServerResponse response = request.response();
+        if (!"GET".equals(request.method())) {
+            response.setStatusCode(405);
+            response.end();
+            return;
+        }
+        response.putHeader("Content-Type", "text/plain; version=0.0.4");
+        response.end(registry.toPrometheusText());
+    }
+}
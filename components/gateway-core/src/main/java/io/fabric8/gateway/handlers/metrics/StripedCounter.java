@@ -0,0 +1,53 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which spreads its updates over several cache line padded cells picked by
+ * the updating thread, so that the event loops can count the same metric without
+ * contending on one atomic value.
+ */
+public class StripedCounter {
+    private static final int STRIPES = 16;
+    // a long per cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void add(long value) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long get() {
+        long answer = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            answer += cells.get(i * PADDING);
+        }
+        return answer;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
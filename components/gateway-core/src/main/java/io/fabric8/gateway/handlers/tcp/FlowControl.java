@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import io.fabric8.gateway.handlers.metrics.StripedCounter;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configures how much data the gateway holds for each direction of a proxied
+ * connection, creates the {@link GatewayPump}s which enforce it and keeps the
+ * totals of all of them.
+ * <br>
+ * The backend settings apply to the data sent to a backend and the client settings
+ * to the data sent back to a client. The watermarks can be changed at runtime and
+ * apply to the connections made afterwards.
+ */
+public class FlowControl {
+
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private volatile int backendHighWatermark = 64 * 1024;
+    private volatile int backendLowWatermark = 16 * 1024;
+    private volatile int backendWriteQueueMaxSize;
+    private volatile int clientHighWatermark = 64 * 1024;
+    private volatile int clientLowWatermark = 16 * 1024;
+    private volatile int clientWriteQueueMaxSize;
+
+    @Override
+    public String toString() {
+        return "FlowControl{" +
+                "backendHighWatermark=" + backendHighWatermark +
+                ", backendLowWatermark=" + backendLowWatermark +
+                ", clientHighWatermark=" + clientHighWatermark +
+                ", clientLowWatermark=" + clientLowWatermark +
+                '}';
+    }
+
+    /**
+     * Creates a started pump of the data a client sends to a backend.
+     *
+     * @param bytesCounter an optional counter of the bytes sent
+     */
+    public GatewayPump pumpToBackend(ReadStream<?> fromClient, WriteStream<?> toBackend, StripedCounter bytesCounter) {
+        return new GatewayPump(fromClient, toBackend, this, true, bytesCounter).start();
+    }
+
+    /**
+     * Creates a started pump of the data a backend sends to a client.
+     *
+     * @param bytesCounter an optional counter of the bytes sent
+     */
+    public GatewayPump pumpToClient(ReadStream<?> fromBackend, WriteStream<?> toClient, StripedCounter bytesCounter) {
+        return new GatewayPump(fromBackend, toClient, this, false, bytesCounter).start();
+    }
+
+    void paused() {
+        pauses.incrementAndGet();
+    }
+
+    void resumed() {
+        resumes.incrementAndGet();
+    }
+
+    void queued(int bytes) {
+        if (bytes != 0) {
+            queuedBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Returns how often a read stream was paused as the data held for its write stream reached the high watermark.
+     */
+    public long getPauses() {
+        return pauses.get();
+    }
+
+    public long getResumes() {
+        return resumes.get();
+    }
+
+    /**
+     * Returns the bytes currently held by all the pumps.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public int getBackendHighWatermark() {
+        return backendHighWatermark;
+    }
+
+    /**
+     * Sets the number of bytes held for a backend at which the client is paused.
+     */
+    public void setBackendHighWatermark(int backendHighWatermark) {
+        this.backendHighWatermark = backendHighWatermark;
+    }
+
+    public int getBackendLowWatermark() {
+        return backendLowWatermark;
+    }
+
+    /**
+     * Sets the number of bytes held for a backend at which a paused client is resumed.
+     */
+    public void setBackendLowWatermark(int backendLowWatermark) {
+        this.backendLowWatermark = backendLowWatermark;
+    }
+
+    public int getBackendWriteQueueMaxSize() {
+        return backendWriteQueueMaxSize;
+    }
+
+    /**
+     * Sets the write queue size of the backend sockets, or 0 to keep the vert.x default.
+     */
+    public void setBackendWriteQueueMaxSize(int backendWriteQueueMaxSize) {
+        this.backendWriteQueueMaxSize = backendWriteQueueMaxSize;
+    }
+
+    public int getClientHighWatermark() {
+        return clientHighWatermark;
+    }
+
+    /**
+     * Sets the number of bytes held for a client at which the backend is paused.
+     */
+    public void setClientHighWatermark(int clientHighWatermark) {
+        this.clientHighWatermark = clientHighWatermark;
+    }
+
+    public int getClientLowWatermark() {
+        return clientLowWatermark;
+    }
+
+    /**
+     * Sets the number of bytes held for a client at which a paused backend is resumed.
+     */
+    public void setClientLowWatermark(int clientLowWatermark) {
+        this.clientLowWatermark = clientLowWatermark;
+    }
+
+    public int getClientWriteQueueMaxSize() {
+        return clientWriteQueueMaxSize;
+    }
+
+    /**
+     * Sets the write queue size of the client sockets, or 0 to keep the vert.x default.
+     */
+    public void setClientWriteQueueMaxSize(int clientWriteQueueMaxSize) {
+        this.clientWriteQueueMaxSize = clientWriteQueueMaxSize;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import io.fabric8.gateway.handlers.metrics.StripedCounter;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pumps the data of a read stream to a write stream like {@link org.vertx.java.core.streams.Pump}
+ * but bounds the data held by the gateway when the write stream can not keep up.
+ * <br>
+ * Data received while the write queue of the write stream is full is held by the pump.
+ * Once more than the high watermark is held the read stream is paused, and it is only
+ * resumed when the write stream drained enough to get below the low watermark, so a
+ * stalled client or backend costs at most the write queue plus the high watermark.
+ * The received buffers are handed on as they are, so data is never copied.
+ * <br>
+ * A pump is only used from the event loop of its sockets so it does not need to lock.
+ */
+public class GatewayPump {
+
+    private final ReadStream<?> readStream;
+    private final WriteStream<?> writeStream;
+    private final FlowControl flowControl;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final StripedCounter bytesCounter;
+    private final ArrayDeque<Buffer> pending = new ArrayDeque<Buffer>();
+    private volatile int pendingBytes;
+    private volatile long bytesPumped;
+    private volatile int pauses;
+    private boolean paused;
+    private boolean waitingForDrain;
+
+    private final Handler<Buffer> dataHandler = new Handler<Buffer>() {
+        @Override
+        public void handle(Buffer buffer) {
+            if (bytesCounter != null) {
+                bytesCounter.add(buffer.length());
+            }
+            if (pending.isEmpty() && !writeStream.writeQueueFull()) {
+                write(buffer);
+            } else {
+                pending.add(buffer);
+                pendingBytes += buffer.length();
+                flowControl.queued(buffer.length());
+                if (!paused && pendingBytes >= highWatermark) {
+                    paused = true;
+                    pauses++;
+                    flowControl.paused();
+                    readStream.pause();
+                }
+            }
+            awaitDrain();
+        }
+    };
+
+    private final Handler<Void> drainHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+            waitingForDrain = false;
+            Buffer buffer;
+            while (!writeStream.writeQueueFull() && (buffer = pending.poll()) != null) {
+                pendingBytes -= buffer.length();
+                flowControl.queued(-buffer.length());
+                write(buffer);
+            }
+            if (paused && pendingBytes <= lowWatermark) {
+                paused = false;
+                flowControl.resumed();
+                readStream.resume();
+            }
+            awaitDrain();
+        }
+    };
+
+    /**
+     * Creates a pump using the watermarks of the flow control.
+     *
+     * @param toBackend whether the data is sent to the backend, or else to the client
+     * @param bytesCounter an optional counter of the bytes read
+     */
+    public GatewayPump(ReadStream<?> readStream, WriteStream<?> writeStream, FlowControl flowControl, boolean toBackend, StripedCounter bytesCounter) {
+        this.readStream = readStream;
+        this.writeStream = writeStream;
+        this.flowControl = flowControl;
+        this.bytesCounter = bytesCounter;
+        int writeQueueMaxSize;
+        if (toBackend) {
+            highWatermark = flowControl.getBackendHighWatermark();
+            lowWatermark = flowControl.getBackendLowWatermark();
+            writeQueueMaxSize = flowControl.getBackendWriteQueueMaxSize();
+        } else {
+            highWatermark = flowControl.getClientHighWatermark();
+            lowWatermark = flowControl.getClientLowWatermark();
+            writeQueueMaxSize = flowControl.getClientWriteQueueMaxSize();
+        }
+        if (writeQueueMaxSize > 0) {
+            writeStream.setWriteQueueMaxSize(writeQueueMaxSize);
+        }
+    }
+
+    public GatewayPump start() {
+        readStream.dataHandler(dataHandler);
+        return this;
+    }
+
+    public GatewayPump stop() {
+        readStream.dataHandler(null);
+        writeStream.drainHandler(null);
+        flowControl.queued(-pendingBytes);
+        pending.clear();
+        pendingBytes = 0;
+        return this;
+    }
+
+    private void write(Buffer buffer) {
+        writeStream.write(buffer);
+        bytesPumped += buffer.length();
+    }
+
+    private void awaitDrain() {
+        if (!waitingForDrain && (!pending.isEmpty() || paused)) {
+            waitingForDrain = true;
+            writeStream.drainHandler(drainHandler);
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the pump as the write stream is full.
+     */
+    public int getQueuedBytes() {
+        return pendingBytes;
+    }
+
+    public long getBytesPumped() {
+        return bytesPumped;
+    }
+
+    public int getPauses() {
+        return pauses;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+}
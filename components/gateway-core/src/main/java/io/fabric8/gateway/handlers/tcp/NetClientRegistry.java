@@ -0,0 +1,310 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetSocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one {@link NetClient} per event loop and backend host:port so that the gateways
+ * do not create a new client for every proxied connection and so that the TCP options
+ * used to connect to the backends can be configured in one place.
+ * <br>
+ * A Vert.x NetClient closes all of its sockets when it is closed, so a client is only
+ * evicted once it has no open connections and has been idle for {@link #getIdleTimeout()}.
+ */
+public class NetClientRegistry {
+    private static final transient Logger LOG = LoggerFactory.getLogger(NetClientRegistry.class);
+
+    private final Vertx vertx;
+    private final ConcurrentHashMap<ClientKey, ClientEntry> clients = new ConcurrentHashMap<ClientKey, ClientEntry>();
+
+    private int connectTimeout = 5000;
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize = -1;
+    private int receiveBufferSize = -1;
+    private long idleTimeout = 60 * 1000;
+
+    private final AtomicLong clientsCreated = new AtomicLong();
+    private final AtomicLong clientsReused = new AtomicLong();
+    private final AtomicLong clientsEvicted = new AtomicLong();
+    private long evictionTimer = -1;
+
+    public NetClientRegistry(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "NetClientRegistry{" +
+                "clients=" + clients.size() +
+                ", connectTimeout=" + connectTimeout +
+                ", tcpNoDelay=" + tcpNoDelay +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+
+    public synchronized void init() {
+        if (idleTimeout > 0 && evictionTimer == -1) {
+            evictionTimer = vertx.setPeriodic(Math.max(idleTimeout / 2, 1), new Handler<Long>() {
+                @Override
+                public void handle(Long timerID) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    public synchronized void destroy() {
+        if (evictionTimer != -1) {
+            vertx.cancelTimer(evictionTimer);
+            evictionTimer = -1;
+        }
+        for (Map.Entry<ClientKey, ClientEntry> entry : clients.entrySet()) {
+            if (clients.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /**
+     * Connects to the given backend using the client registered for the current event loop,
+     * creating the client if required.
+     */
+    public NetClient connect(int port, String host, final Handler<AsyncResult<NetSocket>> handler) {
+        final ClientEntry entry = acquire(new ClientKey(vertx.currentContext(), host, port));
+        return entry.client.connect(port, host, new Handler<AsyncResult<NetSocket>>() {
+            @Override
+            public void handle(AsyncResult<NetSocket> event) {
+                if (event.succeeded()) {
+                    event.result().closeHandler(new Handler<Void>() {
+                        @Override
+                        public void handle(Void event) {
+                            entry.release();
+                        }
+                    });
+                } else {
+                    entry.release();
+                }
+                handler.handle(event);
+            }
+        });
+    }
+
+    private ClientEntry acquire(ClientKey key) {
+        while (true) {
+            ClientEntry entry = clients.get(key);
+            if (entry == null) {
+                ClientEntry created = new ClientEntry(createClient());
+                entry = clients.putIfAbsent(key, created);
+                if (entry == null) {
+                    clientsCreated.incrementAndGet();
+                    entry = created;
+                } else {
+                    created.close();
+                }
+                if (entry.retain()) {
+                    return entry;
+                }
+            } else if (entry.retain()) {
+                clientsReused.incrementAndGet();
+                return entry;
+            }
+            // the entry was evicted concurrently so lets drop it and try again.
+            clients.remove(key, entry);
+        }
+    }
+
+    protected NetClient createClient() {
+        NetClient client = vertx.createNetClient();
+        client.setTCPNoDelay(tcpNoDelay);
+        if (connectTimeout > 0) {
+            client.setConnectTimeout(connectTimeout);
+        }
+        if (sendBufferSize > 0) {
+            client.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            client.setReceiveBufferSize(receiveBufferSize);
+        }
+        return client;
+    }
+
+    protected void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ClientKey, ClientEntry> entry : clients.entrySet()) {
+            ClientEntry value = entry.getValue();
+            if (now - value.lastUsed >= idleTimeout && value.evict()) {
+                clients.remove(entry.getKey(), value);
+                value.client.close();
+                clientsEvicted.incrementAndGet();
+                LOG.debug("Evicted idle client for {}", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Identifies a client by the event loop context it was created on and the backend it connects to.
+     */
+    static final class ClientKey {
+        private final Context context;
+        private final String host;
+        private final int port;
+
+        ClientKey(Context context, String host, int port) {
+            this.context = context;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ClientKey that = (ClientKey) o;
+            return context == that.context && port == that.port && host.equals(that.host);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(context);
+            result = 31 * result + host.hashCode();
+            result = 31 * result + port;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * A registered client along with the number of connections it currently has open.
+     * A negative count marks a client which has been evicted.
+     */
+    static final class ClientEntry {
+        final NetClient client;
+        final AtomicInteger active = new AtomicInteger();
+        volatile long lastUsed = System.currentTimeMillis();
+
+        ClientEntry(NetClient client) {
+            this.client = client;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = active.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            lastUsed = System.currentTimeMillis();
+            active.decrementAndGet();
+        }
+
+        boolean evict() {
+            return active.compareAndSet(0, -1);
+        }
+
+        void close() {
+            active.set(-1);
+            client.close();
+        }
+    }
+
+    public Vertx getVertx() {
+        return vertx;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long in milliseconds a client without open connections is kept before it is closed.
+     * Must be set before {@link #init()}; a value of zero or less disables eviction.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getClientsCreated() {
+        return clientsCreated.get();
+    }
+
+    public long getClientsReused() {
+        return clientsReused.get();
+    }
+
+    public long getClientsEvicted() {
+        return clientsEvicted.get();
+    }
+}
@@ -67,6 +67,9 @@ public class TcpGateway {
 
     public void destroy() {
         server.close();
+        if (handler instanceof TcpGatewayHandler) {
+            ((TcpGatewayHandler) handler).destroy();
+        }
     }
 
     public int getPort() {
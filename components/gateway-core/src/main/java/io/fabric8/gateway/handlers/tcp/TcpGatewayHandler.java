@@ -28,7 +28,6 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -46,23 +45,37 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
     private final String protocol;
     private final LoadBalancer pathLoadBalancer;
     private final LoadBalancer serviceLoadBalancer;
+    private final NetClientRegistry clientRegistry;
+    private FlowControl flowControl = new FlowControl();
+    private boolean ownsClientRegistry;
 
+    /**
+     * Creates a handler with its own {@link NetClientRegistry} which must be closed with {@link #destroy()}
+     */
     public TcpGatewayHandler(Vertx vertx, ServiceMap serviceMap, String protocol, LoadBalancer pathLoadBalancer, LoadBalancer serviceLoadBalancer) {
+        this(vertx, serviceMap, protocol, pathLoadBalancer, serviceLoadBalancer, new NetClientRegistry(vertx));
+        ownsClientRegistry = true;
+        clientRegistry.init();
+    }
+
+    public TcpGatewayHandler(Vertx vertx, ServiceMap serviceMap, String protocol, LoadBalancer pathLoadBalancer, LoadBalancer serviceLoadBalancer, NetClientRegistry clientRegistry) {
         this.vertx = vertx;
         this.serviceMap = serviceMap;
         this.protocol = protocol;
         this.pathLoadBalancer = pathLoadBalancer;
         this.serviceLoadBalancer = serviceLoadBalancer;
+        this.clientRegistry = clientRegistry;
     }
 
     @Override
     public void handle(final NetSocket socket) {
         NetClient client = null;
-        List<String> paths = serviceMap.getPaths();
+        ServiceMap.Snapshot snapshot = serviceMap.getSnapshot();
+        List<String> paths = snapshot.getPaths();
         TcpClientRequestFacade requestFacade = new TcpClientRequestFacade(socket);
         String path = pathLoadBalancer.choose(paths, requestFacade);
         if (path != null) {
-            List<ServiceDetails> services = serviceMap.getServices(path);
+            List<ServiceDetails> services = snapshot.getServices(path);
             if (!services.isEmpty()) {
                 ServiceDetails serviceDetails = serviceLoadBalancer.choose(services, requestFacade);
                 if (serviceDetails != null) {
@@ -75,11 +88,17 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
                                 //URL url = new URL(urlString);
                                 String urlProtocol = uri.getScheme();
                                 if (Objects.equal(protocol, urlProtocol)) {
+                                    final String backendUrl = urlString;
                                     Handler<AsyncResult<NetSocket>> handler = new Handler<AsyncResult<NetSocket>>() {
                                         public void handle(final AsyncResult<NetSocket> asyncSocket) {
+                                            if (!asyncSocket.succeeded()) {
+                                                LOG.info("Could not connect " + socket.remoteAddress() + " to " + backendUrl + ". " + asyncSocket.cause());
+                                                socket.close();
+                                                return;
+                                            }
                                             NetSocket clientSocket = asyncSocket.result();
-                                            Pump.createPump(clientSocket, socket).start();
-                                            Pump.createPump(socket, clientSocket).start();
+                                            flowControl.pumpToClient(clientSocket, socket, null);
+                                            flowControl.pumpToBackend(socket, clientSocket, null);
                                         }
                                     };
                                     client = createClient(socket, uri, handler);
@@ -103,13 +122,37 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Connects a client for the given URL and handler using the shared {@link NetClientRegistry}
      */
     protected NetClient createClient(NetSocket socket, URI url, Handler<AsyncResult<NetSocket>> handler) throws MalformedURLException {
-        NetClient client = vertx.createNetClient();
         int port = url.getPort();
         String host = url.getHost();
         LOG.info("Connecting " + socket.remoteAddress() + " to host " + host + " port " + port + " protocol " + protocol);
-        return client.connect(port, host, handler);
+        return clientRegistry.connect(port, host, handler);
+    }
+
+    /**
+     * Destroys the client registry if it was created by this handler; a registry passed in
+     * is left to its owner as it may be shared with other handlers
+     */
+    public void destroy() {
+        if (ownsClientRegistry) {
+            clientRegistry.destroy();
+        }
+    }
+
+    public NetClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Sets the flow control which bounds the data held for slow clients and backends
+     */
+    public void setFlowControl(FlowControl flowControl) {
+        this.flowControl = flowControl;
     }
 }
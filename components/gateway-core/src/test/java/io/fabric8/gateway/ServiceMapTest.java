@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ServiceMapTest {
+
+    @Test
+    public void testSnapshotsAreOnlyRebuiltOnChanges() throws Exception {
+        ServiceMap serviceMap = new ServiceMap();
+        assertEquals(0, serviceMap.getVersion());
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        assertTrue("Looking up a path should not add it", serviceMap.getPaths().isEmpty());
+
+        ServiceDTO service1 = createService("1", "tcp://localhost:61616");
+        ServiceDTO service2 = createService("2", "tcp://localhost:61617");
+        serviceMap.serviceUpdated("broker", service1);
+        serviceMap.serviceUpdated("broker", service2);
+        assertEquals(2, serviceMap.getVersion());
+        assertEquals(Arrays.asList("broker"), serviceMap.getPaths());
+        assertEquals(Arrays.asList(service1, service2), serviceMap.getServices("broker"));
+
+        ServiceMap.Snapshot snapshot = serviceMap.getSnapshot();
+        assertSame("Lookups should not copy the services", snapshot.getServices("broker"), serviceMap.getServices("broker"));
+
+        // services without endpoints are ignored.
+        serviceMap.serviceUpdated("broker", createService("3"));
+        assertSame(snapshot, serviceMap.getSnapshot());
+
+        serviceMap.serviceRemoved("broker", service1);
+        assertEquals(3, serviceMap.getVersion());
+        assertEquals(Arrays.asList(service2), serviceMap.getServices("broker"));
+        assertEquals("The old snapshot should not change", 2, snapshot.getServices("broker").size());
+
+        serviceMap.serviceRemoved("broker", service2);
+        assertTrue(serviceMap.getPaths().isEmpty());
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+    }
+
+    protected ServiceDTO createService(String id, String... urls) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        List<String> services = urls.length == 0 ? Collections.<String>emptyList() : Arrays.asList(urls);
+        answer.setServices(services);
+        return answer;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import org.junit.Test;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class HttpClientRegistryTest {
+
+    private final List<FakeHttpClient> created = new ArrayList<FakeHttpClient>();
+    private int cancelledTimers;
+    private Context context = newContext();
+
+    @Test
+    public void testClientsArePooledPerBackend() throws Exception {
+        HttpClientRegistry registry = new HttpClientRegistry(createVertx());
+        registry.setMaxPoolSize(8);
+        registry.setPipelining(true);
+
+        HttpClient client = registry.acquire(new URL("http://backend:8080/foo"));
+        registry.release(client);
+        assertSame("The client should be reused", client, registry.acquire(new URL("http://backend:8080/bar?x=1")));
+        assertNotSame(client, registry.acquire(new URL("http://backend:8181/foo")));
+        assertNotSame(client, registry.acquire(new URL("https://backend:8080/foo")));
+        assertEquals(3, registry.getClientCount());
+        assertEquals(3, registry.getActiveRequests());
+        assertEquals(1, registry.getClientsReused());
+
+        FakeHttpClient plain = created.get(0);
+        assertEquals("backend", plain.settings.get("setHost"));
+        assertEquals(8080, plain.settings.get("setPort"));
+        assertEquals(true, plain.settings.get("setKeepAlive"));
+        assertEquals(true, plain.settings.get("setPipelining"));
+        assertEquals(8, plain.settings.get("setMaxPoolSize"));
+        assertEquals(null, plain.settings.get("setSSL"));
+        assertEquals(true, created.get(2).settings.get("setSSL"));
+
+        // clients can only be used from the event loop which created them
+        context = newContext();
+        assertNotSame(client, registry.acquire(new URL("http://backend:8080/foo")));
+    }
+
+    @Test
+    public void testDefaultPorts() throws Exception {
+        HttpClientRegistry registry = new HttpClientRegistry(createVertx());
+        HttpClient client = registry.acquire(new URL("http://backend/foo"));
+        assertSame(client, registry.acquire(new URL("http://backend:80/foo")));
+        registry.acquire(new URL("https://backend/foo"));
+        assertEquals(80, created.get(0).settings.get("setPort"));
+        assertEquals(443, created.get(1).settings.get("setPort"));
+    }
+
+    @Test
+    public void testOnlyIdleClientsAreEvicted() throws Exception {
+        HttpClientRegistry registry = new HttpClientRegistry(createVertx());
+        registry.setIdleTimeout(1);
+        HttpClient busy = registry.acquire(new URL("http://backend:8080/"));
+        HttpClient idle = registry.acquire(new URL("http://backend:8181/"));
+        registry.release(idle);
+        // a stray release must not mark the idle client as evicted
+        registry.release(idle);
+        Thread.sleep(5);
+
+        registry.evictIdleClients();
+        assertEquals(1, registry.getClientsEvicted());
+        assertEquals(1, registry.getClientCount());
+        assertEquals(0, created.get(0).closed);
+        assertEquals(1, created.get(1).closed);
+
+        assertNotSame(idle, registry.acquire(new URL("http://backend:8181/")));
+
+        registry.release(busy);
+        registry.destroy();
+        assertEquals(0, registry.getClientCount());
+        assertEquals(1, created.get(0).closed);
+    }
+
+    @Test
+    public void testUnknownClientsAreClosedOnRelease() throws Exception {
+        HttpClientRegistry registry = new HttpClientRegistry(createVertx());
+        FakeHttpClient fake = new FakeHttpClient();
+        registry.release(fake.proxy);
+        assertEquals(1, fake.closed);
+    }
+
+    @Test
+    public void testServiceClientOnlyDestroysItsOwnRegistry() throws Exception {
+        Vertx vertx = createVertx();
+        new HttpGatewayServiceClient(vertx, null).destroy();
+        assertEquals(1, cancelledTimers);
+
+        HttpClientRegistry shared = new HttpClientRegistry(vertx);
+        shared.init();
+        new HttpGatewayServiceClient(vertx, null, shared).destroy();
+        assertEquals(1, cancelledTimers);
+        shared.destroy();
+        assertEquals(2, cancelledTimers);
+    }
+
+    protected Vertx createVertx() {
+        return (Vertx) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Vertx.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("currentContext")) {
+                    return context;
+                } else if (method.getName().equals("createHttpClient")) {
+                    FakeHttpClient client = new FakeHttpClient();
+                    created.add(client);
+                    return client.proxy;
+                } else if (method.getName().equals("setPeriodic")) {
+                    return 1L;
+                } else if (method.getName().equals("cancelTimer")) {
+                    cancelledTimers++;
+                    return true;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    protected static Context newContext() {
+        return (Context) Proxy.newProxyInstance(HttpClientRegistryTest.class.getClassLoader(), new Class[]{Context.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    static class FakeHttpClient implements InvocationHandler {
+        final Map<String, Object> settings = new HashMap<String, Object>();
+        final HttpClient proxy = (HttpClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{HttpClient.class}, this);
+        int closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                closed++;
+                return null;
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.startsWith("set") && args != null && args.length == 1) {
+                settings.put(name, args[0]);
+                return proxy;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class HttpMappingTrieTest {
+
+    private final Map<String, IMappedServices> mappedServices = new HashMap<String, IMappedServices>();
+
+    @Test
+    public void testLongestPrefixWins() throws Exception {
+        IMappedServices api = addMapping("/api");
+        IMappedServices customers = addMapping("/api/customers");
+        IMappedServices customersV2 = addMapping("/api/customers/v2");
+        IMappedServices orders = addMapping("/api/orders/");
+        HttpMappingTrie trie = new HttpMappingTrie(mappedServices);
+
+        assertMatch(trie, customersV2, "/api/customers/v2/123");
+        assertMatch(trie, customers, "/api/customers/v1/123");
+        assertMatch(trie, customers, "/api/customers");
+        assertMatch(trie, api, "/api/cust");
+        assertMatch(trie, api, "/api");
+        assertMatch(trie, orders, "/api/orders/1");
+        // the URI is also matched with a trailing slash
+        assertMatch(trie, orders, "/api/orders");
+        assertMatch(trie, api, "/api/ordersX");
+        assertNull(trie.match("/ap"));
+        assertNull(trie.match("/other/api"));
+        assertNull(trie.match(""));
+
+        HttpMappingTrie.Route route = trie.match("/api/customers/v2/123");
+        assertSame(customers, route.getShorterMatch().getMappedServices());
+        assertSame(api, route.getShorterMatch().getShorterMatch().getMappedServices());
+        assertNull(route.getShorterMatch().getShorterMatch().getShorterMatch());
+    }
+
+    @Test
+    public void testSplitEdges() throws Exception {
+        IMappedServices abcd = addMapping("/abcd");
+        IMappedServices abxy = addMapping("/abxy");
+        IMappedServices ab = addMapping("/ab");
+        IMappedServices root = addMapping("/");
+        HttpMappingTrie trie = new HttpMappingTrie(mappedServices);
+
+        assertMatch(trie, abcd, "/abcd/e");
+        assertMatch(trie, abxy, "/abxy");
+        assertMatch(trie, ab, "/abx");
+        assertMatch(trie, ab, "/abc");
+        assertMatch(trie, root, "/a");
+        assertMatch(trie, root, "");
+        assertEquals("/", trie.match("/abx").getShorterMatch().getPath());
+    }
+
+    @Test
+    public void testTrieIsReusedForItsOwnMap() throws Exception {
+        addMapping("/api");
+        HttpMappingTrie trie = new HttpMappingTrie(mappedServices);
+        Map<String, IMappedServices> snapshot = trie.getMappedServices();
+        assertSame(trie, HttpMappingTrie.of(snapshot));
+        assertEquals(mappedServices, snapshot);
+
+        // changes to the source map are not seen by the trie
+        addMapping("/other");
+        assertEquals(1, snapshot.size());
+        assertNull(trie.match("/other"));
+        assertEquals("/other", HttpMappingTrie.of(mappedServices).match("/other").getPath());
+    }
+
+    protected void assertMatch(HttpMappingTrie trie, IMappedServices expected, String uri) {
+        HttpMappingTrie.Route route = trie.match(uri);
+        assertSame("Route for " + uri, expected, route.getMappedServices());
+    }
+
+    protected IMappedServices addMapping(String path) {
+        MappedServices answer = new MappedServices("http://localhost:8080" + path, null, new RoundRobinLoadBalancer(), false);
+        mappedServices.put(path, answer);
+        return answer;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import org.junit.Test;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class HttpServiceResponseHandlerTest {
+
+    private final Context context = HttpClientRegistryTest.newContext();
+    private final HttpClientRegistry registry = new HttpClientRegistry(createVertx());
+
+    @Test
+    public void testFailureAfterTheResponseStartedReleasesTheClientOnce() throws Exception {
+        HttpClient client = registry.acquire(new URL("http://backend:8080/"));
+        // another request is in flight on the same client
+        registry.acquire(new URL("http://backend:8080/"));
+        assertEquals(2, registry.getActiveRequests());
+
+        Fake serverResponse = new Fake();
+        HttpServiceResponseHandler handler = new HttpServiceResponseHandler(registry, client, serverRequest(serverResponse));
+        Fake clientResponse = new Fake();
+        handler.handle(clientResponse.proxy(HttpClientResponse.class));
+        clientResponse.<Buffer>handler("dataHandler").handle(new Buffer("partial"));
+
+        // the backend resets the connection and the request fails too
+        clientResponse.<Throwable>handler("exceptionHandler").handle(new Exception("Connection reset"));
+        handler.releaseClient();
+        assertEquals(1, serverResponse.count("close"));
+        assertEquals(1, registry.getActiveRequests());
+
+        // the client of the other request must not be evicted
+        registry.setIdleTimeout(1);
+        Thread.sleep(5);
+        registry.evictIdleClients();
+        assertEquals(0, registry.getClientsEvicted());
+    }
+
+    @Test
+    public void testFailureAfterTheResponseEndedDoesNotReleaseTheClientAgain() throws Exception {
+        HttpClient client = registry.acquire(new URL("http://backend:8080/"));
+        registry.acquire(new URL("http://backend:8080/"));
+
+        Fake serverResponse = new Fake();
+        HttpServiceResponseHandler handler = new HttpServiceResponseHandler(registry, client, serverRequest(serverResponse));
+        Fake clientResponse = new Fake();
+        handler.handle(clientResponse.proxy(HttpClientResponse.class));
+        clientResponse.<Void>handler("endHandler").handle(null);
+        assertEquals(1, serverResponse.count("end"));
+        assertEquals(1, registry.getActiveRequests());
+
+        clientResponse.<Throwable>handler("exceptionHandler").handle(new Exception("Connection reset"));
+        handler.releaseClient();
+        assertEquals(1, registry.getActiveRequests());
+    }
+
+    @Test
+    public void testFailedRequestsAreAnsweredWithBadGateway() throws Exception {
+        HttpGatewayServiceClient serviceClient = new HttpGatewayServiceClient(createVertx(), null, registry);
+        Fake serverResponse = new Fake();
+        serviceClient.respondFailed(serverRequest(serverResponse), null);
+        assertEquals(502, serverResponse.arguments.get("setStatusCode")[0]);
+        assertEquals(1, serverResponse.count("end"));
+
+        // a response which already started can only be cut short
+        HttpClient client = registry.acquire(new URL("http://backend:8080/"));
+        serverResponse = new Fake();
+        HttpServiceResponseHandler handler = new HttpServiceResponseHandler(registry, client, serverRequest(serverResponse));
+        handler.handle(new Fake().proxy(HttpClientResponse.class));
+        serviceClient.respondFailed(serverRequest(serverResponse), handler);
+        assertEquals(1, serverResponse.count("close"));
+        assertEquals(0, serverResponse.count("end"));
+    }
+
+    protected HttpServerRequest serverRequest(final Fake response) {
+        Fake request = new Fake() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("response")) {
+                    return response.proxy(HttpServerResponse.class);
+                } else if (method.getName().equals("uri")) {
+                    return "/foo";
+                }
+                return super.invoke(proxy, method, args);
+            }
+        };
+        return request.proxy(HttpServerRequest.class);
+    }
+
+    protected Vertx createVertx() {
+        return (Vertx) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Vertx.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("currentContext")) {
+                    return context;
+                } else if (method.getName().equals("createHttpClient")) {
+                    return new HttpClientRegistryTest.FakeHttpClient().proxy;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Records the calls and handlers of a Vert.x stream, returning itself from the fluent methods
+     */
+    static class Fake implements InvocationHandler {
+        final Map<String, Object> handlers = new HashMap<String, Object>();
+        final List<String> calls = new ArrayList<String>();
+        final Map<String, Object[]> arguments = new HashMap<String, Object[]>();
+        private Object proxy;
+
+        <T> T proxy(Class<T> type) {
+            if (proxy == null) {
+                proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, this);
+            }
+            return type.cast(proxy);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> Handler<T> handler(String name) {
+            return (Handler<T>) handlers.get(name);
+        }
+
+        int count(String name) {
+            return Collections.frequency(calls, name);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            calls.add(name);
+            arguments.put(name, args);
+            Class<?> returnType = method.getReturnType();
+            if (name.endsWith("Handler") && args != null && args.length == 1) {
+                handlers.put(name, args[0]);
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (returnType == MultiMap.class) {
+                return new Fake().proxy(MultiMap.class);
+            } else if (returnType == List.class) {
+                return Collections.emptyList();
+            } else if (returnType == int.class) {
+                return 200;
+            }
+            return returnType.isInstance(proxy) ? proxy : null;
+        }
+    }
+}
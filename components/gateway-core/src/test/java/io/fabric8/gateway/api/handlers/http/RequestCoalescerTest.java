@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.api.handlers.http;
+
+import io.fabric8.gateway.cache.RequestHeaders;
+import org.junit.Test;
+import org.vertx.java.core.VoidHandler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
+    @Test
+    public void testKeys() throws Exception {
+        String key = coalescer.key("GET", "/api/a", headers("Accept", "text/plain"));
+        assertNotNull(key);
+        assertEquals(key, coalescer.key("GET", "/api/a", headers("Accept", "text/plain", "User-Agent", "curl")));
+        assertNotEquals(key, coalescer.key("GET", "/api/a", headers("Accept", "text/html")));
+        assertNotEquals(key, coalescer.key("GET", "/api/a", headers("Accept", "text/plain", "Authorization", "Basic Zm9vOmJhcg==")));
+        assertNotEquals(key, coalescer.key("GET", "/api/b", headers("Accept", "text/plain")));
+
+        assertNull(coalescer.key("POST", "/api/a", headers()));
+        assertNull(coalescer.key("GET", "/api/a", headers("Content-Length", "10")));
+        assertNull(coalescer.key("GET", "/api/a", headers("If-None-Match", "\"v1\"")));
+        assertNull(coalescer.key("GET", "/api/a", headers("Range", "bytes=0-10")));
+
+        coalescer.setKeyHeaders(Arrays.asList("X-Tenant"));
+        assertNotEquals(coalescer.key("GET", "/api/a", headers("X-Tenant", "a")), coalescer.key("GET", "/api/a", headers("X-Tenant", "b")));
+    }
+
+    @Test
+    public void testRoutes() throws Exception {
+        assertTrue(coalescer.isEnabled("/api"));
+        coalescer.setRoutes(new HashSet<String>(Arrays.asList("/api")));
+        assertTrue(coalescer.isEnabled("/api"));
+        assertFalse(coalescer.isEnabled("/other"));
+    }
+
+    @Test
+    public void testResponseIsFannedOutToWaiters() throws Exception {
+        FakeWaiter first = new FakeWaiter();
+        FakeWaiter second = new FakeWaiter();
+        RequestCoalescer.Flight flight = coalescer.join("/api", "key", new FakeWaiter());
+        assertNotNull(flight);
+        assertNull(coalescer.join("/api", "key", first));
+        assertNull(coalescer.join("/api", "key", second));
+        assertEquals(2, flight.getWaiterCount());
+        assertEquals(1, coalescer.getFlightCount());
+
+        assertTrue(flight.start(200, entries("Content-Type", "text/plain", "Transfer-Encoding", "chunked")));
+        flight.data(new Buffer("hello "));
+        flight.data(new Buffer("world"));
+        flight.complete();
+
+        for (FakeWaiter waiter : Arrays.asList(first, second)) {
+            assertEquals(200, waiter.status);
+            assertEquals("hello world", waiter.body.toString());
+            assertEquals(entries("Content-Type", "text/plain"), waiter.headers);
+            assertFalse(waiter.proceeded);
+        }
+        first.body.appendString("!");
+        assertEquals("each waiter has its own body", "hello world", second.body.toString());
+        assertEquals(0, coalescer.getFlightCount());
+
+        // a later request starts a new flight
+        assertNotNull(coalescer.join("/api", "key", new FakeWaiter()));
+        RequestCoalescer.Counters counters = coalescer.getCounters("/api");
+        assertEquals(2, counters.getFlights());
+        assertEquals(2, counters.getCoalesced());
+        assertEquals(0, counters.getFallbacks());
+        assertEquals(2, coalescer.getCoalescedRequests());
+    }
+
+    @Test
+    public void testTooBigResponsesAreNotShared() throws Exception {
+        coalescer.setMaxResponseBytes(8);
+        FakeWaiter waiter = new FakeWaiter();
+        RequestCoalescer.Flight flight = coalescer.join("/api", "key", new FakeWaiter());
+        coalescer.join("/api", "key", waiter);
+        assertTrue(flight.start(200, entries("Content-Type", "text/plain")));
+        flight.data(new Buffer("hello "));
+        assertFalse(waiter.proceeded);
+        flight.data(new Buffer("world"));
+        assertTrue(waiter.proceeded);
+        assertEquals(0, coalescer.getFlightCount());
+        // a new request is not coalesced with the flight which gave up
+        assertNotNull(coalescer.join("/api", "key", new FakeWaiter()));
+        flight.complete();
+        assertEquals(-1, waiter.status);
+
+        waiter = new FakeWaiter();
+        flight = coalescer.join("/api", "other", new FakeWaiter());
+        coalescer.join("/api", "other", waiter);
+        assertFalse(flight.start(200, entries("Content-Length", "100")));
+        assertTrue(waiter.proceeded);
+        assertEquals(2, coalescer.getFallbacks());
+    }
+
+    @Test
+    public void testResponsesSettingCookiesAreNotShared() throws Exception {
+        FakeWaiter waiter = new FakeWaiter();
+        RequestCoalescer.Flight flight = coalescer.join("/api", "key", new FakeWaiter());
+        coalescer.join("/api", "key", waiter);
+        assertFalse(flight.start(200, entries("Set-Cookie", "session=1")));
+        assertTrue(waiter.proceeded);
+    }
+
+    @Test
+    public void testFailedRequestsReleaseTheWaiters() throws Exception {
+        FakeWaiter waiter = new FakeWaiter();
+        RequestCoalescer.Flight flight = coalescer.join("/api", "key", new FakeWaiter());
+        coalescer.join("/api", "key", waiter);
+        flight.fail();
+        assertTrue(waiter.proceeded);
+        assertEquals(1, coalescer.getCounters("/api").getFallbacks());
+        // completing a failed flight has no effect
+        flight.complete();
+        assertEquals(-1, waiter.status);
+        assertEquals(0, coalescer.getFlightCount());
+    }
+
+    @Test
+    public void testLeaderFailingAfterStartReleasesTheWaiters() throws Exception {
+        FakeWaiter waiter = new FakeWaiter();
+        final boolean[] closed = {false};
+        RequestCoalescer.Flight flight = coalescer.join("/api", "key", new FakeWaiter());
+        flight.closeHandler(new VoidHandler() {
+            public void handle() {
+                closed[0] = true;
+            }
+        });
+        coalescer.join("/api", "key", waiter);
+        assertTrue(flight.start(200, entries("Content-Type", "text/plain")));
+        flight.data(new Buffer("partial"));
+
+        // the back end service resets the connection or the leader times out
+        flight.fail();
+        assertTrue(waiter.proceeded);
+        assertTrue(closed[0]);
+        assertTrue(flight.isClosed());
+        assertEquals(0, coalescer.getFlightCount());
+
+        // the next identical request leads a new flight
+        RequestCoalescer.Flight next = coalescer.join("/api", "key", new FakeWaiter());
+        assertNotNull(next);
+        assertNotSame(flight, next);
+
+        // the rest of the failed response is ignored
+        flight.data(new Buffer("rest"));
+        flight.complete();
+        assertEquals(-1, waiter.status);
+        assertEquals(1, coalescer.getFlightCount());
+    }
+
+    protected static RequestHeaders headers(String... namesAndValues) {
+        final Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            map.put(namesAndValues[i].toLowerCase(), namesAndValues[i + 1]);
+        }
+        return new RequestHeaders() {
+            @Override
+            public String getHeader(String name) {
+                return map.get(name.toLowerCase());
+            }
+        };
+    }
+
+    protected static List<Map.Entry<String, String>> entries(String... namesAndValues) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            answer.add(new AbstractMap.SimpleImmutableEntry<String, String>(namesAndValues[i], namesAndValues[i + 1]));
+        }
+        return answer;
+    }
+
+    static class FakeWaiter implements RequestCoalescer.Waiter {
+        int status = -1;
+        List<Map.Entry<String, String>> headers = Collections.emptyList();
+        Buffer body;
+        boolean proceeded;
+
+        @Override
+        public void respond(int status, List<Map.Entry<String, String>> headers, Buffer body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public void proceed() {
+            proceeded = true;
+        }
+    }
+}
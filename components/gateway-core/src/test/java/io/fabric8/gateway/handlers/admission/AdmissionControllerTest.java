@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.admission;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void testTokenBucket() throws Exception {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(now);
+        for (int i = 0; i < 5; i++) {
+            assertTrue("Should allow a burst of 5 but failed at " + i, bucket.tryAcquire(10, 5, now));
+        }
+        assertFalse(bucket.tryAcquire(10, 5, now));
+        assertFalse(bucket.isFull(now));
+
+        // a token is added every 100ms
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(bucket.tryAcquire(10, 5, now));
+        assertFalse(bucket.tryAcquire(10, 5, now));
+
+        // raising the rate applies straight away
+        assertTrue(bucket.tryAcquire(0, 5, now));
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertTrue(bucket.isFull(now));
+    }
+
+    @Test
+    public void testSourcesAreLimitedPerNetwork() throws Exception {
+        AdmissionController controller = new AdmissionController();
+        InetSocketAddress client1 = address("10.0.0.1");
+        InetSocketAddress client2 = address("10.0.0.2");
+        InetSocketAddress other = address("10.0.1.1");
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue("Unlimited by default", controller.admitConnection(client1));
+        }
+
+        controller.setSourceConnectionRate(0.001);
+        controller.setSourceConnectionBurst(2);
+        assertTrue(controller.admitConnection(client1));
+        assertTrue(controller.admitConnection(client1));
+        assertFalse(controller.admitConnection(client1));
+        assertTrue(controller.admitConnection(client2));
+
+        controller.setSourcePrefixLength(24);
+        assertTrue(controller.admitConnection(client1));
+        assertTrue(controller.admitConnection(client2));
+        assertFalse("The /24 network should share a bucket", controller.admitConnection(client2));
+        assertTrue(controller.admitConnection(other));
+        assertEquals(2, controller.getRejectedBySource());
+
+        assertEquals(controller.sourceKey(InetAddress.getByName("fe80::1:2")), controller.sourceKey(InetAddress.getByName("fe80::1:2")));
+        controller.setSourceIPv6PrefixLength(64);
+        assertEquals(controller.sourceKey(InetAddress.getByName("fe80::1:2")), controller.sourceKey(InetAddress.getByName("fe80::3:4")));
+    }
+
+    @Test
+    public void testConnectingLimitAndVirtualHosts() throws Exception {
+        AdmissionController controller = new AdmissionController();
+        controller.setMaxConnectingSockets(1);
+        InetSocketAddress client = address("10.0.0.1");
+        assertTrue(controller.admitConnection(client));
+        controller.connectingStarted();
+        assertFalse(controller.admitConnection(client));
+        controller.connectingStopped();
+        assertTrue(controller.admitConnection(client));
+        assertEquals(1, controller.getRejectedByConnectingLimit());
+
+        controller.setVirtualHostConnectionRate(0.001);
+        controller.setVirtualHostConnectionBurst(1);
+        assertTrue(controller.admitVirtualHost("broker1"));
+        assertFalse(controller.admitVirtualHost("broker1"));
+        assertTrue(controller.admitVirtualHost("broker2"));
+        assertEquals(1, controller.getRejectedByVirtualHost());
+    }
+
+    protected InetSocketAddress address(String host) throws Exception {
+        return new InetSocketAddress(InetAddress.getByName(host), 1234);
+    }
+}
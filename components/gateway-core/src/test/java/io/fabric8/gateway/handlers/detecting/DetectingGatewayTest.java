@@ -197,6 +197,7 @@ public class DetectingGatewayTest {
 
         assertEquals(1, gateway.getSuccessfulConnectionAttempts());
         assertEquals(1, gateway.getConnectedClients().length);
+        assertEquals(1, gateway.getBackendClientsCreated());
         assertConnectedToBroker(0);
         connection.kill();
     }
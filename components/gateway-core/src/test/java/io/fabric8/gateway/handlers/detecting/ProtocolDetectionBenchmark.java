@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the first byte dispatch done by {@link ProtocolDetector} with checking
+ * every protocol in turn as the {@link DetectingGateway} used to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.fabric8.gateway.handlers.detecting.ProtocolDetectionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolDetectionBenchmark {
+
+    @Param({"stomp", "mqtt", "amqp", "openwire", "http", "ssl"})
+    public String protocol;
+
+    ArrayList<Protocol> protocols;
+    ProtocolDetector detector;
+    byte[] header;
+
+    @Setup
+    public void setup() {
+        protocols = new ArrayList<Protocol>();
+        protocols.add(new StompProtocol());
+        protocols.add(new MqttProtocol());
+        protocols.add(new AmqpProtocol());
+        protocols.add(new OpenwireProtocol());
+        protocols.add(new HttpProtocol());
+        protocols.add(new SslProtocol());
+        detector = new ProtocolDetector(protocols);
+        header = sampleHeader(protocol);
+        if (detectByLoop() == null || detectByDispatch() == null) {
+            throw new IllegalStateException("Sample header was not detected for " + protocol);
+        }
+    }
+
+    static byte[] sampleHeader(String protocol) {
+        if ("stomp".equals(protocol)) {
+            return "CONNECT\naccept-version:1.1\nhost:broker0\n\n\u0000".getBytes();
+        } else if ("mqtt".equals(protocol)) {
+            return new byte[]{0x10, 0x10, 0x00, 0x04, 'M', 'Q', 'T', 'T', 0x04, 0x02, 0x00, 0x3C, 0x00, 0x04, 't', 'e', 's', 't'};
+        } else if ("amqp".equals(protocol)) {
+            return new byte[]{'A', 'M', 'Q', 'P', 0x00, 0x01, 0x00, 0x00};
+        } else if ("openwire".equals(protocol)) {
+            return new byte[]{0x00, 0x00, 0x00, 0x20, 0x01, 'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q', 0x00, 0x00, 0x00, 0x0A};
+        } else if ("http".equals(protocol)) {
+            return "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+        } else if ("ssl".equals(protocol)) {
+            return new byte[]{0x16, 0x03, 0x01, 0x00, 0x50, 0x01, 0x00, 0x00, 0x4C, 0x03, 0x03};
+        }
+        throw new IllegalArgumentException("Unknown protocol: " + protocol);
+    }
+
+    @Benchmark
+    public Protocol detectByLoop() {
+        // a new connection starts with an empty buffer which the first read is appended to.
+        Buffer received = new Buffer();
+        received.appendBuffer(new Buffer(header));
+        for (Protocol protocol : protocols) {
+            if (protocol.matches(received)) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Protocol detectByDispatch() {
+        Buffer received = new Buffer(header);
+        return detector.detect(received);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ProtocolDetectionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class TimeoutWheelTest {
+
+    protected List<Integer> fired = new ArrayList<Integer>();
+
+    @Test
+    public void testTimeoutsFireWhenDueUnlessCancelled() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8);
+        assertEquals(8, wheel.getWheelSize());
+        long now = System.currentTimeMillis();
+
+        TimeoutWheel.Timeout first = wheel.schedule(50, record(1));
+        TimeoutWheel.Timeout cancelled = wheel.schedule(50, record(2));
+        // longer than a rotation of the wheel
+        TimeoutWheel.Timeout later = wheel.schedule(500, record(3));
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(0, wheel.expire(now));
+        assertEquals(2, wheel.getPendingCount());
+
+        assertEquals(1, wheel.expire(first.getDeadline()));
+        assertTrue(first.isExpired());
+        assertFalse(first.cancel());
+        assertEquals(1, wheel.expire(later.getDeadline() + 100));
+        assertEquals(0, wheel.expire(later.getDeadline() + 200));
+
+        assertEquals("[1, 3]", fired.toString());
+        assertEquals(3, wheel.getScheduledCount());
+        assertEquals(1, wheel.getCancelledCount());
+        assertEquals(2, wheel.getFiredCount());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void testTimeoutAddedToTheCurrentTickFires() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel(1000, 4);
+        long now = System.currentTimeMillis();
+        wheel.expire(now);
+        TimeoutWheel.Timeout timeout = wheel.schedule(0, record(1));
+        assertEquals(1, wheel.expire(Math.max(now, timeout.getDeadline())));
+    }
+
+    protected Handler<Void> record(final int id) {
+        return new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                fired.add(id);
+            }
+        };
+    }
+}
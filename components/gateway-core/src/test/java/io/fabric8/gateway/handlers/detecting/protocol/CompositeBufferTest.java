@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol;
+
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompFrame;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocolDecoder;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class CompositeBufferTest {
+
+    @Test
+    public void testReadsAcrossChunks() throws Exception {
+        CompositeBuffer buffer = new CompositeBuffer();
+        buffer.append(new Buffer("abc"));
+        buffer.append(new Buffer(""));
+        buffer.append(new Buffer("de\n"));
+        buffer.append(new Buffer(new byte[]{0, 0, 1, 2}));
+        assertEquals(3, buffer.getChunkCount());
+        assertEquals(10, buffer.length());
+
+        assertEquals('d', buffer.getByte(3));
+        assertEquals('a', buffer.getByte(0));
+        assertEquals(5, buffer.indexOf(0, 10, (byte) '\n'));
+        assertEquals(-1, buffer.indexOf(0, 5, (byte) '\n'));
+        assertEquals(6, buffer.indexOf(2, 10, (byte) 0));
+        assertEquals(0x0A000001, buffer.getInt(5));
+        assertEquals(0x0102, buffer.getInt(6));
+
+        assertEquals("bc", buffer.getBuffer(1, 3).toString());
+        assertEquals("bcde", buffer.getBuffer(1, 5).toString());
+        assertEquals(0, buffer.getBuffer(4, 4).length());
+
+        buffer.discard(4);
+        assertEquals(2, buffer.getChunkCount());
+        assertEquals(6, buffer.length());
+        assertEquals('e', buffer.getByte(0));
+        assertEquals(1, buffer.indexOf(0, 6, (byte) '\n'));
+        assertEquals("e\n", buffer.getBuffer(0, 2).toString());
+
+        buffer.discard(6);
+        assertEquals(0, buffer.getChunkCount());
+        assertEquals(0, buffer.length());
+        buffer.append(new Buffer("f"));
+        assertEquals('f', buffer.getByte(0));
+    }
+
+    @Test
+    public void testStompFramesSplitAcrossReads() throws Exception {
+        String body = "0123456789";
+        String frames = "CONNECT\nhost:broker1\n\n\u0000"
+                + "SEND\ndestination:/queue/a\ncontent-length:" + body.length() + "\n\n" + body + "\u0000"
+                + "SEND\ndestination:/queue/b\n\n" + body + "\u0000";
+        for (int chunkSize = 1; chunkSize <= frames.length(); chunkSize++) {
+            final List<StompFrame> decoded = new ArrayList<StompFrame>();
+            StompProtocolDecoder decoder = new StompProtocolDecoder(new StompProtocol());
+            decoder.codecHandler(new Handler<StompFrame>() {
+                @Override
+                public void handle(StompFrame event) {
+                    decoded.add(event);
+                }
+            });
+            decoder.errorHandler(new Handler<String>() {
+                @Override
+                public void handle(String error) {
+                    throw new AssertionError(error);
+                }
+            });
+            for (int i = 0; i < frames.length(); i += chunkSize) {
+                decoder.handle(new Buffer(frames.substring(i, Math.min(i + chunkSize, frames.length()))));
+            }
+            assertEquals("Frames decoded from chunks of " + chunkSize, 3, decoded.size());
+            assertEquals("CONNECT", decoded.get(0).action().toString());
+            assertEquals(body, decoded.get(1).contentAsString());
+            assertEquals(body, decoded.get(2).contentAsString());
+            assertEquals(frames.length(), decoder.getBytesDecoded());
+        }
+    }
+}
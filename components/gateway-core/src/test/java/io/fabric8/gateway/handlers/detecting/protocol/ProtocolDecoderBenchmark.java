@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocolDecoder;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocolDecoder;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocolDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding a stream of large STOMP, MQTT and AMQP frames which arrive
+ * split into TCP sized reads.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.fabric8.gateway.handlers.detecting.protocol.ProtocolDecoderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolDecoderBenchmark {
+
+    @Param({"stomp", "mqtt", "amqp"})
+    public String protocol;
+
+    @Param({"1024", "65536"})
+    public int frameSize;
+
+    @Param({"1460"})
+    public int readSize;
+
+    static final int FRAMES = 16;
+
+    Buffer[] reads;
+    int frames;
+
+    @Setup
+    public void setup() {
+        Buffer stream = new Buffer();
+        if ("amqp".equals(protocol)) {
+            stream.appendBytes(new byte[]{'A', 'M', 'Q', 'P', 0, 1, 0, 0});
+        }
+        for (int i = 0; i < FRAMES; i++) {
+            stream.appendBuffer(frame(protocol, frameSize));
+        }
+        int count = (stream.length() + readSize - 1) / readSize;
+        reads = new Buffer[count];
+        for (int i = 0; i < count; i++) {
+            reads[i] = stream.getBuffer(i * readSize, Math.min((i + 1) * readSize, stream.length()));
+        }
+        if (decode() < FRAMES) {
+            throw new IllegalStateException("Could not decode the " + protocol + " frames");
+        }
+    }
+
+    static Buffer frame(String protocol, int size) {
+        byte[] body = new byte[size];
+        Buffer frame = new Buffer();
+        if ("stomp".equals(protocol)) {
+            frame.appendString("SEND\ndestination:/queue/test\ncontent-length:" + size + "\n\n");
+            frame.appendBytes(body);
+            frame.appendByte((byte) 0);
+        } else if ("mqtt".equals(protocol)) {
+            // a QoS 0 PUBLISH with the remaining length encoded as a variable length integer
+            byte[] topic = "test".getBytes();
+            int remaining = 2 + topic.length + size;
+            frame.appendByte((byte) 0x30);
+            do {
+                byte digit = (byte) (remaining & 0x7F);
+                remaining >>>= 7;
+                frame.appendByte(remaining > 0 ? (byte) (digit | 0x80) : digit);
+            } while (remaining > 0);
+            frame.appendByte((byte) 0);
+            frame.appendByte((byte) topic.length);
+            frame.appendBytes(topic);
+            frame.appendBytes(body);
+        } else if ("amqp".equals(protocol)) {
+            // the frame size includes the 8 byte frame header
+            frame.appendInt(8 + size);
+            frame.appendBytes(new byte[]{2, 0, 0, 0});
+            frame.appendBytes(body);
+        } else {
+            throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public int decode() {
+        frames = 0;
+        ProtocolDecoder<?> decoder = createDecoder();
+        decoder.errorHandler(new Handler<String>() {
+            @Override
+            public void handle(String error) {
+                throw new IllegalStateException(error);
+            }
+        });
+        for (Buffer read : reads) {
+            decoder.handle(read);
+        }
+        return frames;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProtocolDecoder<?> createDecoder() {
+        ProtocolDecoder decoder;
+        if ("stomp".equals(protocol)) {
+            decoder = new StompProtocolDecoder(new StompProtocol());
+        } else if ("mqtt".equals(protocol)) {
+            decoder = new MqttProtocolDecoder(new MqttProtocol());
+        } else {
+            decoder = new AmqpProtocolDecoder(new AmqpProtocol());
+        }
+        decoder.codecHandler(new Handler<Object>() {
+            @Override
+            public void handle(Object event) {
+                frames++;
+            }
+        });
+        return decoder;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ProtocolDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.openwire;
+
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.support.MarshallingSupport;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class WireFormatInfoSnooperTest {
+
+    @Test
+    public void testSnoopHost() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("TcpNoDelayEnabled", Boolean.TRUE);
+        properties.put("CacheSize", 1024);
+        properties.put("MaxInactivityDuration", 30000L);
+        properties.put("StackTraceEnabled", Boolean.TRUE);
+        properties.put("Nested", Arrays.<Object>asList("a", 1, new byte[]{1, 2, 3}));
+        properties.put("Host", "broker1");
+        properties.put("After", "ignored");
+
+        Buffer frame = wireFormatInfo(properties);
+        ConnectionParameters parameters = WireFormatInfoSnooper.snoop(frame, 4, frame.length() - 4);
+        assertEquals("broker1", parameters.protocolVirtualHost);
+
+        properties.remove("Host");
+        frame = wireFormatInfo(properties);
+        assertNull(WireFormatInfoSnooper.snoop(frame, 4, frame.length() - 4).protocolVirtualHost);
+        frame = wireFormatInfo(null);
+        assertNull(WireFormatInfoSnooper.snoop(frame, 4, frame.length() - 4).protocolVirtualHost);
+    }
+
+    @Test
+    public void testTruncatedFrames() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("MaxInactivityDuration", 30000L);
+        properties.put("Host", "broker1");
+        Buffer frame = wireFormatInfo(properties);
+        for (int length = 0; length < frame.length() - 4; length++) {
+            try {
+                WireFormatInfoSnooper.snoop(frame.getBuffer(0, 4 + length), 4, length);
+                fail("Should not snoop a frame truncated to " + length + " bytes");
+            } catch (ProtocolException expected) {
+            }
+        }
+
+        Buffer other = frame.copy();
+        other.setByte(4, (byte) 3);
+        try {
+            WireFormatInfoSnooper.snoop(other, 4, other.length() - 4);
+            fail("Should only accept a WireFormatInfo");
+        } catch (ProtocolException expected) {
+        }
+    }
+
+    @Test
+    public void testDecoderWaitsForTheWholeFrame() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("Host", "broker2");
+        Buffer frame = wireFormatInfo(properties);
+
+        final List<ConnectionParameters> decoded = new ArrayList<ConnectionParameters>();
+        OpenwireProtocolDecoder decoder = new OpenwireProtocolDecoder(new OpenwireProtocol());
+        decoder.codecHandler(new Handler<ConnectionParameters>() {
+            @Override
+            public void handle(ConnectionParameters event) {
+                decoded.add(event);
+            }
+        });
+        decoder.errorHandler(new Handler<String>() {
+            @Override
+            public void handle(String error) {
+                fail(error);
+            }
+        });
+        for (int i = 0; i < frame.length(); i += 3) {
+            assertEquals(0, decoded.size());
+            decoder.handle(frame.getBuffer(i, Math.min(i + 3, frame.length())));
+        }
+        assertEquals(1, decoded.size());
+        assertEquals("broker2", decoded.get(0).protocolVirtualHost);
+    }
+
+    /**
+     * Creates a loose encoded WireFormatInfo frame the way a client sends it.
+     */
+    protected Buffer wireFormatInfo(Map<String, Object> properties) throws Exception {
+        ByteArrayOutputStream marshalledProperties = new ByteArrayOutputStream();
+        if (properties != null) {
+            MarshallingSupport.marshalPrimitiveMap(properties, new DataOutputStream(marshalledProperties));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(WireFormatInfo.DATA_STRUCTURE_TYPE);
+        out.write(OpenwireProtocol.MAGIC.getBytes());
+        out.writeInt(10);
+        out.writeBoolean(properties != null);
+        if (properties != null) {
+            out.writeInt(marshalledProperties.size());
+            marshalledProperties.writeTo(out);
+        }
+        out.close();
+
+        Buffer frame = new Buffer();
+        frame.appendInt(bytes.size());
+        frame.appendBytes(bytes.toByteArray());
+        return frame;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class SslBufferPoolTest {
+
+    @Test
+    public void testBuffersOfEachSizeAreReused() throws Exception {
+        SslBufferPool pool = new SslBufferPool(8, false);
+        ByteBuffer app = pool.acquire(16916);
+        ByteBuffer packet = pool.acquire(16709);
+        pool.release(packet);
+        pool.release(app);
+        assertEquals(2, pool.getPooledCount());
+
+        // acquiring the bigger application buffer must not drop the pooled packet buffer
+        assertSame(app, pool.acquire(16916));
+        assertSame(packet, pool.acquire(16709));
+        assertEquals(2, pool.getAllocatedCount());
+        assertEquals(2, pool.getReusedCount());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testReleasedBuffersAreBounded() throws Exception {
+        SslBufferPool pool = new SslBufferPool(1, false);
+        pool.release(ByteBuffer.allocate(16));
+        pool.release(ByteBuffer.allocate(32));
+        assertEquals(1, pool.getPooledCount());
+        assertEquals(32, pool.acquire(32).capacity());
+        assertEquals(1, pool.getAllocatedCount());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.stomp;
+
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class StompConnectDecoderTest {
+
+    List<ConnectionParameters> decoded = new ArrayList<ConnectionParameters>();
+    List<String> errors = new ArrayList<String>();
+
+    @Test
+    public void testDecodesRoutingHeaders() throws Exception {
+        String frame = "\n\r\nCONNECT\r\naccept-version:1.2\r\nhost:broker1\r\nlogin:admin\r\nhost:ignored\r\n"
+                + "client-id:c1\r\npasscode:secret\r\n\r\nthe body is not decoded\u0000SEND";
+        for (int chunkSize = 1; chunkSize <= frame.length(); chunkSize++) {
+            decoded.clear();
+            StompConnectDecoder decoder = createDecoder(new StompProtocol());
+            for (int i = 0; i < frame.length(); i += chunkSize) {
+                decoder.handle(new Buffer(frame.substring(i, Math.min(i + chunkSize, frame.length()))));
+            }
+            assertEquals("Decoded from chunks of " + chunkSize, 1, decoded.size());
+            ConnectionParameters parameters = decoded.get(0);
+            assertEquals("broker1", parameters.protocolVirtualHost);
+            assertEquals("admin", parameters.protocolUser);
+            assertEquals("c1", parameters.protocolClientId);
+        }
+        assertEquals(0, errors.size());
+
+        createDecoder(new StompProtocol()).handle(new Buffer("STOMP\nlogin:guest\n\n\u0000"));
+        ConnectionParameters parameters = decoded.get(decoded.size() - 1);
+        assertEquals("guest", parameters.protocolUser);
+        assertNull(parameters.protocolVirtualHost);
+        assertNull(parameters.protocolClientId);
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        StompProtocol protocol = new StompProtocol();
+        protocol.maxHeaders = 2;
+        protocol.maxHeaderLength = 20;
+
+        createDecoder(protocol).handle(new Buffer("SEND\ndestination:/queue/a\n\n\u0000"));
+        createDecoder(protocol).handle(new Buffer("CONNECT\na:1\nb:2\nc:3\n\n\u0000"));
+        createDecoder(protocol).handle(new Buffer("CONNECT\nhost:a-very-long-virtual-host"));
+        createDecoder(protocol).handle(new Buffer("CONNECT\nhost\n\n\u0000"));
+        createDecoder(protocol).handle(new Buffer("CONNECT\na:1\nb:2\n\n\u0000"));
+        assertEquals(1, decoded.size());
+        assertEquals(4, errors.size());
+        assertEquals("Expected a CONNECT or STOMP frame", errors.get(0));
+        assertEquals("The maximum number of headers was exceeded", errors.get(1));
+        assertEquals("The maximum header length was exceeded", errors.get(2));
+    }
+
+    protected StompConnectDecoder createDecoder(StompProtocol protocol) {
+        StompConnectDecoder decoder = new StompConnectDecoder(protocol);
+        decoder.codecHandler(new Handler<ConnectionParameters>() {
+            @Override
+            public void handle(ConnectionParameters event) {
+                decoded.add(event);
+            }
+        });
+        decoder.errorHandler(new Handler<String>() {
+            @Override
+            public void handle(String error) {
+                errors.add(error);
+            }
+        });
+        return decoder;
+    }
+}
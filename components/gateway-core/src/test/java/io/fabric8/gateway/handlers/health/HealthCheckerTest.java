@@ -0,0 +1,207 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.health;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.api.ServiceDetails;
+import org.junit.After;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HealthCheckerTest {
+
+    protected ServiceDetails service1 = createService("1", "tcp://localhost:61616");
+    protected ServiceDetails service2 = createService("2", "tcp://localhost:61617");
+    protected List<ServiceDetails> services = Arrays.asList(service1, service2);
+
+    protected Vertx vertx;
+    protected HealthChecker healthChecker;
+
+    @After
+    public void stopVertx() {
+        if (healthChecker != null) {
+            healthChecker.destroy();
+            healthChecker = null;
+        }
+        if (vertx != null) {
+            vertx.stop();
+            vertx = null;
+        }
+    }
+
+    @Test
+    public void testBackendIsEjectedAfterConsecutiveFailures() throws Exception {
+        HealthChecker healthChecker = new HealthChecker(null, new ServiceMap());
+        healthChecker.setConsecutiveFailures(3);
+        String url = "tcp://localhost:61616";
+
+        assertSame("Should not copy the services while all are healthy", services, healthChecker.healthyServices(services));
+
+        healthChecker.connectFailed(url, "refused");
+        healthChecker.connectFailed(url, "refused");
+        healthChecker.connectSucceeded(url);
+        healthChecker.connectFailed(url, "refused");
+        healthChecker.connectFailed(url, "refused");
+        assertTrue("A success should reset the failures", healthChecker.isHealthy(url));
+
+        healthChecker.connectFailed(url, "refused");
+        assertFalse(healthChecker.isHealthy(url));
+        assertEquals(1, healthChecker.getEjections());
+        assertArrayEquals(new String[]{url}, healthChecker.getEjectedBackends());
+        assertEquals(Arrays.asList(service2), healthChecker.healthyServices(services));
+        assertTrue(healthChecker.isHealthy("tcp://localhost:61617"));
+    }
+
+    @Test
+    public void testAllServicesAreReturnedIfNoneAreHealthy() throws Exception {
+        HealthChecker healthChecker = new HealthChecker(null, new ServiceMap());
+        healthChecker.setConsecutiveFailures(1);
+        healthChecker.connectFailed("tcp://localhost:61616", "refused");
+        healthChecker.connectFailed("tcp://localhost:61617", "refused");
+        assertEquals(2, healthChecker.getEjectedBackends().length);
+        assertSame(services, healthChecker.healthyServices(services));
+    }
+
+    @Test
+    public void testEjectionTimeBacksOffExponentially() throws Exception {
+        BackendHealth backend = new BackendHealth("tcp://localhost:61616");
+        long now = 1000000;
+        assertEquals(0, backend.failed(now, "refused", 2, 100, 1000));
+        assertEquals(now + 100, backend.failed(now, "refused", 2, 100, 1000));
+        assertTrue(backend.isEjected(now + 99));
+        assertFalse(backend.isEjected(now + 100));
+
+        // failures while ejected are ignored and a re-admitted backend is on probation
+        assertEquals(0, backend.failed(now + 50, "refused", 2, 100, 1000));
+        now += 100;
+        assertEquals(now + 200, backend.failed(now, "refused", 2, 100, 1000));
+        now += 200;
+        assertEquals(now + 400, backend.failed(now, "refused", 2, 100, 1000));
+        now += 400;
+        assertEquals(now + 800, backend.failed(now, "refused", 2, 100, 1000));
+        now += 800;
+        assertEquals(now + 1000, backend.failed(now, "refused", 2, 100, 1000));
+        assertEquals(5, backend.getTotalEjections());
+
+        // a success once re-admitted resets the back off
+        now += 1000;
+        backend.succeeded(now);
+        assertEquals(0, backend.failed(now, "refused", 2, 100, 1000));
+        assertEquals(now + 100, backend.failed(now, "refused", 2, 100, 1000));
+    }
+
+    @Test
+    public void testCheckSucceedsAgainstListeningPort() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        try {
+            String url = "tcp://localhost:" + server.getLocalPort();
+            healthChecker = createActiveHealthChecker(url);
+            healthChecker.setConsecutiveFailures(3);
+            healthChecker.connectFailed(url, "refused");
+            healthChecker.connectFailed(url, "refused");
+            assertEquals(2, healthChecker.getBackend(url).getConsecutiveFailures());
+
+            healthChecker.checkBackends();
+            waitFor(healthChecker.getBackend(url), 0);
+            assertEquals(1, healthChecker.getChecksPerformed());
+            assertEquals(0, healthChecker.getChecksFailed());
+            assertTrue(healthChecker.isHealthy(url));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCheckEjectsBackendOnClosedPort() throws Exception {
+        String url = "tcp://localhost:" + closedPort();
+        healthChecker = createActiveHealthChecker(url);
+        healthChecker.setConsecutiveFailures(1);
+
+        healthChecker.checkBackends();
+        waitForEjection(healthChecker, url);
+        assertEquals(1, healthChecker.getChecksPerformed());
+        assertEquals(1, healthChecker.getChecksFailed());
+        assertNotNull(healthChecker.getBackend(url).getLastFailure());
+    }
+
+    @Test
+    public void testCheckIntervalCanBeChangedAfterInit() throws Exception {
+        String url = "tcp://localhost:" + closedPort();
+        healthChecker = createActiveHealthChecker(url);
+        healthChecker.setConsecutiveFailures(1);
+        healthChecker.setCheckInterval(0);
+        healthChecker.init();
+
+        healthChecker.setCheckInterval(50);
+        waitForEjection(healthChecker, url);
+        assertTrue(healthChecker.getChecksPerformed() > 0);
+    }
+
+    protected HealthChecker createActiveHealthChecker(String url) {
+        vertx = VertxFactory.newVertx();
+        ServiceMap serviceMap = new ServiceMap();
+        serviceMap.serviceUpdated("backend", createService("backend", url));
+        HealthChecker answer = new HealthChecker(vertx, serviceMap);
+        answer.setCheckInterval(60 * 1000);
+        answer.setCheckTimeout(1000);
+        return answer;
+    }
+
+    protected int closedPort() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        int port = server.getLocalPort();
+        server.close();
+        return port;
+    }
+
+    protected void waitFor(BackendHealth backend, int consecutiveFailures) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backend.getConsecutiveFailures() != consecutiveFailures && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(consecutiveFailures, backend.getConsecutiveFailures());
+    }
+
+    protected void waitForEjection(HealthChecker healthChecker, String url) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (healthChecker.isHealthy(url) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("The backend should have been ejected by its health check", healthChecker.isHealthy(url));
+    }
+
+    protected ServiceDetails createService(String id, String... urls) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        answer.setServices(Arrays.asList(urls));
+        return answer;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class GatewayMetricsRegistryTest {
+
+    @Test
+    public void testHistogramPercentiles() throws Exception {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (int i = 0; i < 99; i++) {
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(100, histogram.getCount());
+        assertEquals(99 * 100 + 10000, histogram.getSum());
+        assertEquals(128, histogram.getPercentile(50));
+        assertEquals(128, histogram.getPercentile(99));
+        assertEquals(16384, histogram.getPercentile(100));
+
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(0, Histogram.bucketOf(1));
+        assertEquals(1, Histogram.bucketOf(2));
+        assertEquals(2, Histogram.bucketOf(3));
+        assertEquals(Histogram.BUCKETS, Histogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPrometheusText() throws Exception {
+        GatewayMetricsRegistry registry = new GatewayMetricsRegistry();
+        GatewayMetrics metrics = registry.getMetrics("broker\"1", "stomp");
+        assertSame(metrics, registry.getMetrics("broker\"1", "stomp"));
+
+        metrics.detected(TimeUnit.MICROSECONDS.toNanos(3));
+        metrics.connected(TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.getBytesReceived().add(100);
+        metrics.getBytesSent().add(200);
+        metrics.connected(TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.disconnected(TimeUnit.SECONDS.toNanos(1));
+        registry.getMetrics(null, "http").connectFailed();
+
+        String text = registry.toPrometheusText();
+        assertContains(text, "# TYPE fabric8_gateway_connections_total counter\n");
+        assertContains(text, "fabric8_gateway_connections_total{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 2\n");
+        assertContains(text, "fabric8_gateway_active_connections{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 1\n");
+        assertContains(text, "fabric8_gateway_connect_failures_total{virtual_host=\"\",protocol=\"http\"} 1\n");
+        assertContains(text, "fabric8_gateway_received_bytes_total{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 100\n");
+        assertContains(text, "fabric8_gateway_sent_bytes_total{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 200\n");
+        assertContains(text, "fabric8_gateway_protocol_detection_seconds_bucket{virtual_host=\"broker\\\"1\",protocol=\"stomp\",le=\"2.0E-6\"} 0\n");
+        assertContains(text, "fabric8_gateway_protocol_detection_seconds_bucket{virtual_host=\"broker\\\"1\",protocol=\"stomp\",le=\"4.0E-6\"} 1\n");
+        assertContains(text, "fabric8_gateway_protocol_detection_seconds_bucket{virtual_host=\"broker\\\"1\",protocol=\"stomp\",le=\"+Inf\"} 1\n");
+        assertContains(text, "fabric8_gateway_backend_connect_seconds_count{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 2\n");
+        assertContains(text, "fabric8_gateway_connection_duration_seconds_sum{virtual_host=\"broker\\\"1\",protocol=\"stomp\"} 1.0\n");
+        assertEquals(2, registry.getSummaries().length);
+    }
+
+    protected void assertContains(String text, String expected) {
+        assertTrue("Should contain " + expected + " but was:\n" + text, text.contains(expected));
+    }
+}
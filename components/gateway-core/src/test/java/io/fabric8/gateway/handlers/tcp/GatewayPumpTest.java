@@ -0,0 +1,168 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import io.fabric8.gateway.handlers.metrics.StripedCounter;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class GatewayPumpTest {
+
+    @Test
+    public void testPausesAtTheHighWatermark() throws Exception {
+        FlowControl flowControl = new FlowControl();
+        flowControl.setBackendHighWatermark(30);
+        flowControl.setBackendLowWatermark(10);
+        flowControl.setBackendWriteQueueMaxSize(1000);
+        StripedCounter counter = new StripedCounter();
+        FakeReadStream in = new FakeReadStream();
+        FakeWriteStream out = new FakeWriteStream();
+
+        GatewayPump pump = flowControl.pumpToBackend(in, out, counter);
+        assertEquals(1000, out.maxSize);
+        in.send(10);
+        assertEquals(10, out.written);
+
+        // the backend stalls
+        out.full = true;
+        in.send(10);
+        in.send(10);
+        assertFalse(in.paused);
+        assertEquals(20, pump.getQueuedBytes());
+        in.send(10);
+        assertTrue(in.paused);
+        assertEquals(30, flowControl.getQueuedBytes());
+        assertEquals(1, flowControl.getPauses());
+        assertEquals(40, counter.get());
+
+        // drains a single buffer before being full again, still above the low watermark
+        out.full = false;
+        out.fullAfter = 1;
+        out.drain();
+        assertEquals(20, out.written);
+        assertEquals(20, pump.getQueuedBytes());
+        assertTrue(in.paused);
+
+        out.full = false;
+        out.drain();
+        assertEquals(40, out.written);
+        assertEquals(0, pump.getQueuedBytes());
+        assertFalse(in.paused);
+        assertEquals(1, flowControl.getResumes());
+        assertEquals(40, pump.getBytesPumped());
+
+        in.send(5);
+        assertEquals(45, out.written);
+        pump.stop();
+        assertEquals(0, flowControl.getQueuedBytes());
+    }
+
+    @Test
+    public void testStopReleasesQueuedBytes() throws Exception {
+        FlowControl flowControl = new FlowControl();
+        FakeReadStream in = new FakeReadStream();
+        FakeWriteStream out = new FakeWriteStream();
+        out.full = true;
+        GatewayPump pump = flowControl.pumpToClient(in, out, null);
+        in.send(100);
+        assertEquals(100, flowControl.getQueuedBytes());
+        pump.stop();
+        assertEquals(0, flowControl.getQueuedBytes());
+        assertEquals(null, in.handler);
+    }
+
+    static class FakeReadStream implements ReadStream<FakeReadStream> {
+        Handler<Buffer> handler;
+        boolean paused;
+
+        void send(int size) {
+            handler.handle(new Buffer(new byte[size]));
+        }
+
+        public FakeReadStream endHandler(Handler<Void> handler) {
+            return this;
+        }
+
+        public FakeReadStream dataHandler(Handler<Buffer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        public FakeReadStream pause() {
+            paused = true;
+            return this;
+        }
+
+        public FakeReadStream resume() {
+            paused = false;
+            return this;
+        }
+
+        public FakeReadStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+    }
+
+    static class FakeWriteStream implements WriteStream<FakeWriteStream> {
+        int maxSize;
+        int written;
+        boolean full;
+        int fullAfter = -1;
+        Handler<Void> drainHandler;
+
+        void drain() {
+            Handler<Void> handler = drainHandler;
+            drainHandler = null;
+            handler.handle(null);
+        }
+
+        public FakeWriteStream write(Buffer data) {
+            written += data.length();
+            if (fullAfter > 0 && --fullAfter == 0) {
+                full = true;
+                fullAfter = -1;
+            }
+            return this;
+        }
+
+        public FakeWriteStream setWriteQueueMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public boolean writeQueueFull() {
+            return full;
+        }
+
+        public FakeWriteStream drainHandler(Handler<Void> handler) {
+            this.drainHandler = handler;
+            return this;
+        }
+
+        public FakeWriteStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+    }
+}
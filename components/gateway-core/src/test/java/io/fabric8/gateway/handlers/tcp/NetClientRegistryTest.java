@@ -0,0 +1,237 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetSocket;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class NetClientRegistryTest {
+
+    private final List<FakeNetClient> created = new ArrayList<FakeNetClient>();
+    private final List<Long> cancelledTimers = new ArrayList<Long>();
+    private Context context = newContext();
+
+    @Test
+    public void testClientsAreSharedPerBackend() throws Exception {
+        NetClientRegistry registry = new NetClientRegistry(createVertx());
+        registry.setConnectTimeout(1000);
+
+        NetClient client = registry.connect(61616, "broker", handler());
+        assertSame("The client should be reused", client, registry.connect(61616, "broker", handler()));
+        assertNotSame(client, registry.connect(61617, "broker", handler()));
+        assertEquals(2, registry.getClientCount());
+        assertEquals(2, registry.getClientsCreated());
+        assertEquals(1, registry.getClientsReused());
+        assertEquals(1000, created.get(0).settings.get("setConnectTimeout"));
+        assertEquals(true, created.get(0).settings.get("setTCPNoDelay"));
+
+        // clients can only be used from the event loop which created them
+        context = newContext();
+        assertNotSame(client, registry.connect(61616, "broker", handler()));
+    }
+
+    @Test
+    public void testClientsWithOpenConnectionsAreNotEvicted() throws Exception {
+        NetClientRegistry registry = new NetClientRegistry(createVertx());
+        registry.setIdleTimeout(1);
+        registry.connect(61616, "broker", handler());
+        registry.connect(61616, "broker", handler());
+        registry.connect(61617, "broker", handler());
+        FakeNetClient shared = created.get(0);
+        FakeNetClient failing = created.get(1);
+
+        // one connection of the shared client is opened and the other fails
+        FakeNetSocket socket = new FakeNetSocket();
+        shared.connected(0, socket);
+        shared.failed(1);
+        failing.failed(0);
+        Thread.sleep(5);
+
+        registry.evictIdleClients();
+        assertEquals(1, registry.getClientsEvicted());
+        assertEquals(1, registry.getClientCount());
+        assertEquals(0, shared.closed);
+        assertEquals(1, failing.closed);
+
+        // the client is evicted once its last connection is closed
+        socket.closeHandler.handle(null);
+        Thread.sleep(5);
+        registry.evictIdleClients();
+        assertEquals(2, registry.getClientsEvicted());
+        assertEquals(0, registry.getClientCount());
+        assertEquals(1, shared.closed);
+    }
+
+    @Test
+    public void testDestroyClosesClientsAndCancelsTheEvictionTimer() throws Exception {
+        NetClientRegistry registry = new NetClientRegistry(createVertx());
+        registry.init();
+        registry.connect(61616, "broker", handler());
+        registry.destroy();
+        assertEquals(0, registry.getClientCount());
+        assertEquals(1, created.get(0).closed);
+        assertEquals(1, cancelledTimers.size());
+    }
+
+    @Test
+    public void testHandlerOnlyDestroysItsOwnRegistry() throws Exception {
+        Vertx vertx = createVertx();
+        RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+        TcpGatewayHandler handler = new TcpGatewayHandler(vertx, new ServiceMap(), "tcp", loadBalancer, loadBalancer);
+        handler.destroy();
+        assertEquals(1, cancelledTimers.size());
+
+        NetClientRegistry shared = new NetClientRegistry(vertx);
+        shared.init();
+        new TcpGatewayHandler(vertx, new ServiceMap(), "tcp", loadBalancer, loadBalancer, shared).destroy();
+        assertEquals(1, cancelledTimers.size());
+        shared.destroy();
+        assertEquals(2, cancelledTimers.size());
+    }
+
+    protected Handler<AsyncResult<NetSocket>> handler() {
+        return new Handler<AsyncResult<NetSocket>>() {
+            @Override
+            public void handle(AsyncResult<NetSocket> event) {
+            }
+        };
+    }
+
+    protected Vertx createVertx() {
+        return (Vertx) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Vertx.class}, new InvocationHandler() {
+            private long timers;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("currentContext")) {
+                    return context;
+                } else if (name.equals("createNetClient")) {
+                    FakeNetClient client = new FakeNetClient();
+                    created.add(client);
+                    return client.proxy;
+                } else if (name.equals("setPeriodic")) {
+                    return ++timers;
+                } else if (name.equals("cancelTimer")) {
+                    cancelledTimers.add((Long) args[0]);
+                    return true;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    protected static Context newContext() {
+        return (Context) Proxy.newProxyInstance(NetClientRegistryTest.class.getClassLoader(), new Class[]{Context.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    protected static <T> AsyncResult<T> result(final T value, final Throwable cause) {
+        return new AsyncResult<T>() {
+            @Override
+            public T result() {
+                return value;
+            }
+
+            @Override
+            public Throwable cause() {
+                return cause;
+            }
+
+            @Override
+            public boolean succeeded() {
+                return cause == null;
+            }
+
+            @Override
+            public boolean failed() {
+                return cause != null;
+            }
+        };
+    }
+
+    static class FakeNetClient implements InvocationHandler {
+        final Map<String, Object> settings = new HashMap<String, Object>();
+        final List<Handler<AsyncResult<NetSocket>>> connects = new ArrayList<Handler<AsyncResult<NetSocket>>>();
+        final NetClient proxy = (NetClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{NetClient.class}, this);
+        int closed;
+
+        void connected(int index, FakeNetSocket socket) {
+            connects.get(index).handle(result(socket.proxy, null));
+        }
+
+        void failed(int index) {
+            connects.get(index).handle(NetClientRegistryTest.<NetSocket>result(null, new Exception("Connection refused")));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                closed++;
+                return null;
+            } else if (name.equals("connect")) {
+                connects.add((Handler<AsyncResult<NetSocket>>) args[args.length - 1]);
+                return proxy;
+            } else if (name.startsWith("set") && args != null && args.length == 1) {
+                settings.put(name, args[0]);
+                return proxy;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    static class FakeNetSocket implements InvocationHandler {
+        final NetSocket proxy = (NetSocket) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{NetSocket.class}, this);
+        Handler<Void> closeHandler;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("closeHandler")) {
+                closeHandler = (Handler<Void>) args[0];
+                return proxy;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
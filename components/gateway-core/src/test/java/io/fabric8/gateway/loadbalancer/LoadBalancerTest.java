@@ -15,6 +15,7 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
+import io.fabric8.gateway.ServiceDTO;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RandomLoadBalancer;
@@ -30,6 +31,7 @@ import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -102,6 +104,124 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testRendezvousHashLoadBalancer() throws Exception {
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(new RendezvousHashLoadBalancer());
+
+        LoadBalancer loadBalancer = new RendezvousHashLoadBalancer();
+        List<String> fewerServices = services.subList(0, services.size() - 1);
+        Set<String> allRequests = new HashSet<String>();
+        int numberOfClients = 1000;
+        int moved = 0;
+        for (int i = 0; i < numberOfClients; i++) {
+            clientRequestKey = "newClient:" + i;
+
+            List<String> results = performRequests(loadBalancer);
+            Set<String> set = asSet(results);
+            assertEquals("All values should be the same for client: " + clientRequestKey + " but got: " + set, 1, set.size());
+            String service = results.get(0);
+            allRequests.add(service);
+
+            // a new balancer should bind the client to the same service
+            assertEquals(service, new RendezvousHashLoadBalancer().choose(services, clientRequestFacade));
+
+            // removing a service should only move the clients using it
+            String remaining = loadBalancer.choose(fewerServices, clientRequestFacade);
+            if (fewerServices.contains(service)) {
+                assertEquals("Client " + clientRequestKey + " should not move", service, remaining);
+            } else {
+                moved++;
+            }
+        }
+
+        assertEquals("Should have all of the values: " + allRequests, services.size(), allRequests.size());
+        int expected = numberOfClients / services.size();
+        assertTrue("About " + expected + " clients should move but was: " + moved, moved > expected / 2 && moved < expected * 2);
+    }
+
+    @Test
+    public void testRendezvousHashLoadBalancerIdentifiesServicesById() throws Exception {
+        LoadBalancer loadBalancer = new RendezvousHashLoadBalancer();
+        for (int i = 0; i < 100; i++) {
+            clientRequestKey = "newClient:" + i;
+            ServiceDTO service = loadBalancer.choose(serviceDetails("1.0"), clientRequestFacade);
+
+            // updating the metadata of the services recreates them but should not move the client
+            ServiceDTO updated = loadBalancer.choose(serviceDetails("1.1"), clientRequestFacade);
+            assertEquals("Client " + clientRequestKey + " should not move", service.getId(), updated.getId());
+        }
+    }
+
+    @Test
+    public void testLeastConnectionsLoadBalancer() throws Exception {
+        LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // with no load recorded all the services should be used
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertEquals("Should have all of the values: " + set, services.size(), set.size());
+
+        // keep all but the last service busy
+        LoadBalancerStatistics statistics = loadBalancer.getStatistics();
+        String idle = services.get(services.size() - 1);
+        for (String service : services) {
+            if (!service.equals(idle)) {
+                statistics.getBackend(service).requestStarted();
+            }
+        }
+        set = asSet(performRequests(loadBalancer));
+        assertEquals("Should only use the idle service", asSet(Arrays.asList(idle)), set);
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancer() throws Exception {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // the first service is slow to respond
+        LoadBalancerStatistics statistics = loadBalancer.getStatistics();
+        String slow = services.get(0);
+        BackendStatistics slowBackend = statistics.getBackend(slow);
+        slowBackend.recordLatency(slowBackend.requestStarted() - 5000000000L);
+        slowBackend.requestCompleted();
+        for (String service : services) {
+            if (!service.equals(slow)) {
+                BackendStatistics backend = statistics.getBackend(service);
+                backend.recordLatency(backend.requestStarted());
+                backend.requestCompleted();
+            }
+        }
+        assertTrue("Should have a high latency: " + slowBackend, slowBackend.getLatency() > 1000000000L);
+
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertTrue("Should not use the slow service: " + set, !set.contains(slow));
+    }
+
+    @Test
+    public void testStatisticsAreKeptWhenServicesAreUpdated() throws Exception {
+        LoadBalancerStatistics statistics = new LoadBalancerStatistics();
+        BackendStatistics backend = statistics.getBackend(serviceDetails("1.0").get(0));
+        backend.requestStarted();
+
+        // the updated service should find the same statistics rather than adding another entry
+        assertSame(backend, statistics.getBackend(serviceDetails("1.1").get(0)));
+        assertSame(backend, statistics.findBackend(serviceDetails("1.2").get(0)));
+        assertEquals(1, statistics.getBackends().size());
+        assertEquals(1, statistics.findBackend(serviceDetails("1.1").get(0)).getActive());
+    }
+
+    protected List<ServiceDTO> serviceDetails(String version) {
+        List<ServiceDTO> answer = new ArrayList<ServiceDTO>();
+        for (int i = 0; i < services.size(); i++) {
+            ServiceDTO dto = new ServiceDTO();
+            dto.setId("service" + i);
+            dto.setVersion(version);
+            dto.setServices(Arrays.asList(services.get(i)));
+            answer.add(dto);
+        }
+        return answer;
+    }
+
     protected List<String> performRequests(LoadBalancer loadBalancer) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
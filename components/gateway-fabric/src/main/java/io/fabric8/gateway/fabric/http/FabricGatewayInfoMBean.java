@@ -27,8 +27,21 @@ public interface FabricGatewayInfoMBean {
     String getGatewayVersion();
     boolean isEnableIndex();
     String getMappedServices();
+    long getRoutesVersion();
     String getLastError();
     String getLastCallDate();
     long getAvarageCallTimeNanos();
     void resetStatistics();
+    int getBackendClients();
+    int getBackendActiveRequests();
+    long getBackendRequests();
+    long getBackendClientsCreated();
+    long getBackendClientsReused();
+    long getBackendClientsEvicted();
+    long getCacheHeapBytes();
+    int getCacheEntries();
+    String getCacheMetrics();
+    long getCoalescedRequests();
+    long getCoalescingFallbacks();
+    String getCoalescingMetrics();
 }
@@ -19,20 +19,31 @@ package io.fabric8.gateway.fabric.http;
 import io.fabric8.gateway.api.CallDetailRecord;
 import io.fabric8.gateway.api.apimanager.ApiManager;
 import io.fabric8.gateway.api.apimanager.ApiManagerService;
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
 import io.fabric8.gateway.api.handlers.http.HttpGateway;
 import io.fabric8.gateway.api.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.api.handlers.http.HttpMappingRule;
+import io.fabric8.gateway.api.handlers.http.HttpMappingTrie;
 import io.fabric8.gateway.api.handlers.http.IMappedServices;
+import io.fabric8.gateway.api.handlers.http.RequestCoalescer;
+import io.fabric8.gateway.cache.DiskCacheTier;
+import io.fabric8.gateway.cache.ResponseCache;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
 import io.fabric8.utils.ShutdownTracker;
 
+import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
@@ -48,6 +59,9 @@ import org.vertx.java.core.http.HttpServerRequest;
 /**
  * An HTTP gateway which listens on a port and applies a number of {@link HttpMappingRuleConfiguration} instances to bind
  * HTTP requests to different HTTP based services running within the fabric.
+ * <br>
+ * The routes are served from an immutable {@link HttpMappingTrie} which is only rebuilt when a mapping rule
+ * is added or removed or one of them reports a change, so routing a request is a single volatile read.
  */
 @ApplicationScoped
 public class FabricHTTPGateway implements HttpGateway {
@@ -60,10 +74,21 @@ public class FabricHTTPGateway implements HttpGateway {
     HTTPGatewayConfig gatewayConfig;
     private ApiManager apiManager;
     private HttpGatewayServer server;
+    private HttpClientRegistry httpClientRegistry;
+    private ResponseCache responseCache;
+    private RequestCoalescer requestCoalescer;
     
     //private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
     private MBeanServer mbeanServer;
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
+    private volatile HttpMappingTrie routes = new HttpMappingTrie(Collections.<String, IMappedServices>emptyMap());
+    private final AtomicLong routesVersion = new AtomicLong();
+    private final Runnable mappingRulesChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            rebuildRoutes();
+        }
+    };
 
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
@@ -87,18 +112,31 @@ public class FabricHTTPGateway implements HttpGateway {
         Vertx vertx = getVertx();
         
         apiManager = new ApiManager();
-        
+
+        httpClientRegistry = new HttpClientRegistry(vertx);
+        httpClientRegistry.setKeepAlive(gatewayConfig.isBackendKeepAlive());
+        httpClientRegistry.setMaxPoolSize(gatewayConfig.getBackendMaxPoolSize());
+        httpClientRegistry.setPipelining(gatewayConfig.isBackendPipelining());
+        httpClientRegistry.setIdleTimeout(gatewayConfig.getBackendIdleTimeout());
+        httpClientRegistry.init();
+
         Handler<HttpServerRequest> requestHandler = null;
         if (gatewayConfig.isApiManagerEnabled()) {
             Map<String, Object> config = new HashMap<String,Object>();
             config.put(ApiManagerService.VERTX, getVertx());
             config.put(ApiManagerService.HTTP_GATEWAY, (HttpGateway) this);
             config.put(ApiManagerService.PORT, String.valueOf(gatewayConfig.getPort()));
+            config.put(ApiManagerService.HTTP_CLIENT_REGISTRY, httpClientRegistry);
             getApiManager().setService(apiManagerService);
             getApiManager().getService().init(config);
             requestHandler = getApiManager().getService().createApiManagerHttpGatewayHandler();
         } else {
-            requestHandler = new HttpGatewayHandler(getVertx(), this);
+            HttpGatewayHandler httpGatewayHandler = new HttpGatewayHandler(getVertx(), this, httpClientRegistry);
+            responseCache = createResponseCache();
+            httpGatewayHandler.setResponseCache(responseCache);
+            requestCoalescer = createRequestCoalescer();
+            httpGatewayHandler.setRequestCoalescer(requestCoalescer);
+            requestHandler = httpGatewayHandler;
         }
         
         //websocketHandler.setPathPrefix(websocketGatewayPrefix);
@@ -110,6 +148,67 @@ public class FabricHTTPGateway implements HttpGateway {
         if (server != null) {
             server.destroy();
         }
+        if (httpClientRegistry != null) {
+            httpClientRegistry.destroy();
+            httpClientRegistry = null;
+        }
+        if (responseCache != null) {
+            responseCache.close();
+            responseCache = null;
+        }
+        requestCoalescer = null;
+    }
+
+    /**
+     * Creates the request coalescer if it is enabled for all or some routes by the configuration
+     */
+    private RequestCoalescer createRequestCoalescer() {
+        List<String> routes = splitList(gatewayConfig.getCoalesceRoutes());
+        if (routes.isEmpty()) {
+            return null;
+        }
+        RequestCoalescer answer = new RequestCoalescer();
+        if (!routes.contains("*")) {
+            answer.setRoutes(new HashSet<String>(routes));
+        }
+        answer.setMaxResponseBytes(gatewayConfig.getCoalesceMaxResponseBytes());
+        answer.setLeaderTimeout(gatewayConfig.getCoalesceLeaderTimeout());
+        List<String> headers = splitList(gatewayConfig.getCoalesceHeaders());
+        if (!headers.isEmpty()) {
+            answer.setKeyHeaders(headers);
+        }
+        LOG.info("Coalescing requests with " + answer);
+        return answer;
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> answer = new ArrayList<String>();
+        if (value != null) {
+            for (String item : value.split(",")) {
+                item = item.trim();
+                if (item.length() > 0) {
+                    answer.add(item);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Creates the response cache if it is enabled by the configuration, with a disk tier if a cache file is configured
+     */
+    private ResponseCache createResponseCache() throws Exception {
+        long maxHeapBytes = gatewayConfig.getCacheMaxHeapBytes();
+        if (maxHeapBytes <= 0) {
+            return null;
+        }
+        ResponseCache answer = new ResponseCache(maxHeapBytes, gatewayConfig.getCacheMaxEntryBytes());
+        String diskFile = gatewayConfig.getCacheDiskFile();
+        if (diskFile != null && diskFile.length() > 0) {
+            answer.setDiskTier(new DiskCacheTier(new File(diskFile), gatewayConfig.getCacheDiskBytes()));
+        }
+        LOG.info("Caching responses with " + answer);
+        return answer;
     }
     
     @Override
@@ -123,21 +222,43 @@ public class FabricHTTPGateway implements HttpGateway {
 
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
-        mappingRuleConfigurations.add(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.add(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.addChangeListener(mappingRulesChangeListener);
+            rebuildRoutes();
+        }
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.removeChangeListener(mappingRulesChangeListener);
+            rebuildRoutes();
+        }
     }
 
     @Override
     public Map<String, IMappedServices> getMappedServices() {
+        return routes.getMappedServices();
+    }
+
+    /**
+     * Rebuilds the routes from the current mapping rules.
+     */
+    protected synchronized void rebuildRoutes() {
         Map<String, IMappedServices> answer = new HashMap<String, IMappedServices>();
         for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
             mappingRuleConfiguration.appendMappedServices(answer);
         }
-        return answer;
+        routes = new HttpMappingTrie(answer);
+        long version = routesVersion.incrementAndGet();
+        LOG.debug("Rebuilt {} routes, version {}", answer.size(), version);
+    }
+
+    /**
+     * Returns a number which changes every time the routes are rebuilt.
+     */
+    long getRoutesVersion() {
+        return routesVersion.get();
     }
 
     @Override
@@ -192,6 +313,18 @@ public class FabricHTTPGateway implements HttpGateway {
     String getHost() {
     	return gatewayConfig.getHost();
     }
+
+    RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    HttpClientRegistry getHttpClientRegistry() {
+        return httpClientRegistry;
+    }
     
     private void registerHttpGatewayMBeans() {
     	fabricHTTPGatewayInfoMBean = new FabricHTTPGatewayInfo(this);
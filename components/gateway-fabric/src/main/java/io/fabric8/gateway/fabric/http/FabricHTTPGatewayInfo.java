@@ -15,6 +15,9 @@
  */
 package io.fabric8.gateway.fabric.http;
 
+import io.fabric8.gateway.api.handlers.http.HttpClientRegistry;
+import io.fabric8.gateway.api.handlers.http.RequestCoalescer;
+import io.fabric8.gateway.cache.ResponseCache;
 import io.fabric8.utils.ShutdownTracker;
 
 import javax.management.MBeanServer;
@@ -126,6 +129,83 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
     	lastError = null;
     }
    
+    @Override
+    public long getRoutesVersion() {
+        return getFabricHTTPGateway().getRoutesVersion();
+    }
+
+    @Override
+    public int getBackendClients() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getClientCount() : 0;
+    }
+
+    @Override
+    public int getBackendActiveRequests() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getActiveRequests() : 0;
+    }
+
+    @Override
+    public long getBackendRequests() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getRequests() : 0;
+    }
+
+    @Override
+    public long getBackendClientsCreated() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getClientsCreated() : 0;
+    }
+
+    @Override
+    public long getBackendClientsReused() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getClientsReused() : 0;
+    }
+
+    @Override
+    public long getBackendClientsEvicted() {
+        HttpClientRegistry registry = getFabricHTTPGateway().getHttpClientRegistry();
+        return registry != null ? registry.getClientsEvicted() : 0;
+    }
+
+    @Override
+    public long getCacheHeapBytes() {
+        ResponseCache cache = getFabricHTTPGateway().getResponseCache();
+        return cache != null ? cache.getHeapBytes() : 0;
+    }
+
+    @Override
+    public int getCacheEntries() {
+        ResponseCache cache = getFabricHTTPGateway().getResponseCache();
+        return cache != null ? cache.getSize() : 0;
+    }
+
+    @Override
+    public String getCacheMetrics() {
+        ResponseCache cache = getFabricHTTPGateway().getResponseCache();
+        return cache != null ? cache.getMetrics().toString() : null;
+    }
+
+    @Override
+    public long getCoalescedRequests() {
+        RequestCoalescer coalescer = getFabricHTTPGateway().getRequestCoalescer();
+        return coalescer != null ? coalescer.getCoalescedRequests() : 0;
+    }
+
+    @Override
+    public long getCoalescingFallbacks() {
+        RequestCoalescer coalescer = getFabricHTTPGateway().getRequestCoalescer();
+        return coalescer != null ? coalescer.getFallbacks() : 0;
+    }
+
+    @Override
+    public String getCoalescingMetrics() {
+        RequestCoalescer coalescer = getFabricHTTPGateway().getRequestCoalescer();
+        return coalescer != null ? coalescer.getCounters().toString() : null;
+    }
+
     public ObjectName getObjectName() throws MalformedObjectNameException {
         if (objectName == null) {
             objectName = new ObjectName("io.fabric8.gateway-fabric:service=FabricHTTPGatewayInfo");
@@ -22,6 +22,8 @@ import java.util.Map;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.gateway.api.handlers.http.RequestCoalescer;
+import io.fabric8.gateway.cache.ResponseCache;
 
 public class HTTPGatewayConfig extends HashMap<String, String> {
 
@@ -54,6 +56,30 @@ public class HTTPGatewayConfig extends HashMap<String, String> {
     public final static String REVERSE_HEADERS = "REVERSE_HEADERS";
     /** The loadbalancer to use in the gateway */
     public final static String LOAD_BALANCER = "LOAD_BALANCER";
+    /** If enabled (the default) the connections to the back end services are kept open and reused */
+    public final static String BACKEND_KEEP_ALIVE = "BACKEND_KEEP_ALIVE";
+    /** The maximum number of pooled connections to each back end service per event loop, defaults to 20 */
+    public final static String BACKEND_MAX_POOL_SIZE = "BACKEND_MAX_POOL_SIZE";
+    /** If enabled then requests are pipelined on the pooled back end connections */
+    public final static String BACKEND_PIPELINING = "BACKEND_PIPELINING";
+    /** How long in milliseconds an unused back end client is kept before it is closed, defaults to 60000 */
+    public final static String BACKEND_IDLE_TIMEOUT = "BACKEND_IDLE_TIMEOUT";
+    /** The maximum number of bytes of responses cached on the heap, defaults to 0 which disables the response cache */
+    public final static String CACHE_MAX_HEAP_BYTES = "CACHE_MAX_HEAP_BYTES";
+    /** The maximum size in bytes of a single cached response, defaults to 1048576 */
+    public final static String CACHE_MAX_ENTRY_BYTES = "CACHE_MAX_ENTRY_BYTES";
+    /** The memory mapped file responses evicted from the heap are moved to, if any */
+    public final static String CACHE_DISK_FILE = "CACHE_DISK_FILE";
+    /** The size in bytes of the memory mapped cache file, defaults to 67108864 */
+    public final static String CACHE_DISK_BYTES = "CACHE_DISK_BYTES";
+    /** The comma separated URI prefixes of the routes whose identical concurrent GET requests are coalesced, or * for all routes */
+    public final static String COALESCE_ROUTES = "COALESCE_ROUTES";
+    /** The maximum size in bytes of a response shared by coalesced requests, defaults to 1048576 */
+    public final static String COALESCE_MAX_RESPONSE_BYTES = "COALESCE_MAX_RESPONSE_BYTES";
+    /** The comma separated request headers which must match for requests to be coalesced, defaults to Accept, Accept-Encoding, Accept-Language, Authorization and Cookie */
+    public final static String COALESCE_HEADERS = "COALESCE_HEADERS";
+    /** The number of milliseconds coalesced requests wait for the response of the leader before being sent independently, defaults to 30000 */
+    public final static String COALESCE_LEADER_TIMEOUT = "COALESCE_LEADER_TIMEOUT";
     
     public int getPort() {
         return Integer.parseInt(get(HTTP_PORT));
@@ -102,6 +128,42 @@ public class HTTPGatewayConfig extends HashMap<String, String> {
     public boolean isReverseHeaders() {
         return Boolean.parseBoolean(get(REVERSE_HEADERS));
     }
+    public boolean isBackendKeepAlive() {
+        return get(BACKEND_KEEP_ALIVE) == null || Boolean.parseBoolean(get(BACKEND_KEEP_ALIVE));
+    }
+    public int getBackendMaxPoolSize() {
+        return get(BACKEND_MAX_POOL_SIZE) == null ? 20 : Integer.parseInt(get(BACKEND_MAX_POOL_SIZE));
+    }
+    public boolean isBackendPipelining() {
+        return Boolean.parseBoolean(get(BACKEND_PIPELINING));
+    }
+    public long getBackendIdleTimeout() {
+        return get(BACKEND_IDLE_TIMEOUT) == null ? 60 * 1000 : Long.parseLong(get(BACKEND_IDLE_TIMEOUT));
+    }
+    public long getCacheMaxHeapBytes() {
+        return get(CACHE_MAX_HEAP_BYTES) == null ? 0 : Long.parseLong(get(CACHE_MAX_HEAP_BYTES));
+    }
+    public int getCacheMaxEntryBytes() {
+        return get(CACHE_MAX_ENTRY_BYTES) == null ? ResponseCache.DEFAULT_MAX_ENTRY_BYTES : Integer.parseInt(get(CACHE_MAX_ENTRY_BYTES));
+    }
+    public String getCacheDiskFile() {
+        return get(CACHE_DISK_FILE);
+    }
+    public int getCacheDiskBytes() {
+        return get(CACHE_DISK_BYTES) == null ? 64 * 1024 * 1024 : Integer.parseInt(get(CACHE_DISK_BYTES));
+    }
+    public String getCoalesceRoutes() {
+        return get(COALESCE_ROUTES);
+    }
+    public int getCoalesceMaxResponseBytes() {
+        return get(COALESCE_MAX_RESPONSE_BYTES) == null ? RequestCoalescer.DEFAULT_MAX_RESPONSE_BYTES : Integer.parseInt(get(COALESCE_MAX_RESPONSE_BYTES));
+    }
+    public String getCoalesceHeaders() {
+        return get(COALESCE_HEADERS);
+    }
+    public long getCoalesceLeaderTimeout() {
+        return get(COALESCE_LEADER_TIMEOUT) == null ? RequestCoalescer.DEFAULT_LEADER_TIMEOUT : Long.parseLong(get(COALESCE_LEADER_TIMEOUT));
+    }
     public static List<Map<String,String>> parseSelectorConfig(String selectorConfig) throws IOException {
     	ObjectMapper mapper = new ObjectMapper();
     	TypeReference<List<Map<String,String>>> typeRef = new TypeReference<List<Map<String,String>>>() {};
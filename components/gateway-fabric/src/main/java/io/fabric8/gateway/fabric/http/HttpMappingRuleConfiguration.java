@@ -69,6 +69,9 @@ public class HttpMappingRuleConfiguration {
      * <li>LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
      * <li>LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
      * <li>LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+     * <li>LoadBalancers.STICKY_HASH_LOAD_BALANCER, value = "Sticky Hashing")
+     * <li>LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections")
+     * <li>LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Latency")
      * </ul>
      */
     private String loadBalancerType;
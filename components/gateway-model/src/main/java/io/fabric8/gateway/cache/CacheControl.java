@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+/**
+ * The directives of a <code>Cache-Control</code> header which are relevant to a shared cache
+ * as described in <a href="http://tools.ietf.org/html/rfc7234#section-5.2">RFC 7234 Section 5.2</a>.
+ * Directives with field names such as <code>no-cache="Set-Cookie"</code> apply to the whole response.
+ */
+public class CacheControl {
+    static final long MAX_DELTA_SECONDS = 2147483648L;
+
+    private boolean noStore;
+    private boolean noCache;
+    private boolean privateResponse;
+    private boolean publicResponse;
+    private boolean mustRevalidate;
+    private long maxAge = -1;
+    private long sharedMaxAge = -1;
+
+    /**
+     * Parses the value of a <code>Cache-Control</code> header which may be null
+     */
+    public static CacheControl parse(String header) {
+        CacheControl answer = new CacheControl();
+        if (header == null) {
+            return answer;
+        }
+        for (String directive : header.split(",")) {
+            String name = directive.trim().toLowerCase();
+            String value = null;
+            int idx = name.indexOf('=');
+            if (idx > 0) {
+                value = name.substring(idx + 1).trim();
+                name = name.substring(0, idx).trim();
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+            }
+            if (name.equals("no-store")) {
+                answer.noStore = true;
+            } else if (name.equals("no-cache")) {
+                answer.noCache = true;
+            } else if (name.equals("private")) {
+                answer.privateResponse = true;
+            } else if (name.equals("public")) {
+                answer.publicResponse = true;
+            } else if (name.equals("must-revalidate") || name.equals("proxy-revalidate")) {
+                answer.mustRevalidate = true;
+            } else if (name.equals("max-age")) {
+                answer.maxAge = parseDeltaSeconds(value);
+            } else if (name.equals("s-maxage")) {
+                answer.sharedMaxAge = parseDeltaSeconds(value);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Parses delta seconds capping them at 2147483648 seconds as required by
+     * <a href="http://tools.ietf.org/html/rfc7234#section-1.2.1">RFC 7234 Section 1.2.1</a>, so that
+     * they can be converted to milliseconds without overflowing; invalid values are treated as 0
+     * so that the response is stale as required by the RFC
+     */
+    static long parseDeltaSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        String text = value.trim();
+        try {
+            return Math.min(MAX_DELTA_SECONDS, Math.max(0, Long.parseLong(text)));
+        } catch (NumberFormatException e) {
+            return text.matches("\\d+") ? MAX_DELTA_SECONDS : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CacheControl{" +
+                "noStore=" + noStore +
+                ", noCache=" + noCache +
+                ", private=" + privateResponse +
+                ", public=" + publicResponse +
+                ", mustRevalidate=" + mustRevalidate +
+                ", maxAge=" + maxAge +
+                ", sharedMaxAge=" + sharedMaxAge +
+                '}';
+    }
+
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    public boolean isPrivate() {
+        return privateResponse;
+    }
+
+    public boolean isPublic() {
+        return publicResponse;
+    }
+
+    /**
+     * Returns true for <code>must-revalidate</code> or <code>proxy-revalidate</code>
+     */
+    public boolean isMustRevalidate() {
+        return mustRevalidate;
+    }
+
+    /**
+     * Returns the <code>max-age</code> in seconds or -1 if not present
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Returns the <code>s-maxage</code> in seconds or -1 if not present
+     */
+    public long getSharedMaxAge() {
+        return sharedMaxAge;
+    }
+}
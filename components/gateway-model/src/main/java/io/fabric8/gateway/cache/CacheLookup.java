@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of looking up a request in the {@link ResponseCache}.
+ * <br>
+ * A {@link Status#HIT} can be served straight away with {@link #getResponse()} and {@link #getBody()}.
+ * A {@link Status#STALE} response must first be revalidated by sending the request to the back end
+ * service with the {@link #getIfNoneMatch()} and {@link #getIfModifiedSince()} validators; if it answers
+ * <code>304 Not Modified</code> the stale response is served after calling
+ * {@link ResponseCache#revalidate(CacheLookup, List)}. Otherwise the back end response can be offered
+ * to {@link ResponseCache#store(CacheLookup, int, List, byte[])}.
+ */
+public class CacheLookup {
+    public enum Status {
+        /** A fresh response was found */
+        HIT,
+        /** A stale response was found which can be revalidated */
+        STALE,
+        /** No usable response was found */
+        MISS,
+        /** The request must not use the cache at all */
+        BYPASS
+    }
+
+    private final Status status;
+    private final String route;
+    private final String uri;
+    private final RequestHeaders requestHeaders;
+    private final long requestTime;
+    private final CachedResponse response;
+    private final byte[] body;
+    private final long age;
+
+    CacheLookup(Status status, String route, String uri, RequestHeaders requestHeaders, long requestTime,
+                CachedResponse response, byte[] body) {
+        this(status, route, uri, requestHeaders, requestTime, response, body, requestTime);
+    }
+
+    private CacheLookup(Status status, String route, String uri, RequestHeaders requestHeaders, long requestTime,
+                        CachedResponse response, byte[] body, long ageTime) {
+        this.status = status;
+        this.route = route;
+        this.uri = uri;
+        this.requestHeaders = requestHeaders;
+        this.requestTime = requestTime;
+        this.response = response;
+        this.body = body;
+        this.age = response != null ? response.getCurrentAge(ageTime) / 1000 : 0;
+    }
+
+    /**
+     * Returns a copy of the lookup whose <code>Age</code> is the age of the response at the given time,
+     * once it has been updated by a revalidation
+     */
+    CacheLookup withAgeAt(long now) {
+        return new CacheLookup(status, route, uri, requestHeaders, requestTime, response, body, now);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheLookup{" +
+                "status=" + status +
+                ", route='" + route + '\'' +
+                ", uri='" + uri + '\'' +
+                ", response=" + response +
+                '}';
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isHit() {
+        return status == Status.HIT;
+    }
+
+    public boolean isStale() {
+        return status == Status.STALE;
+    }
+
+    /**
+     * Returns true if the response of the back end service may be offered to the cache
+     */
+    public boolean isCacheable() {
+        return status == Status.MISS || status == Status.STALE;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public RequestHeaders getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * Returns the time the request was received in milliseconds
+     */
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * Returns the cached response for a hit or stale lookup
+     */
+    public CachedResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Returns the body of the cached response for a hit or stale lookup, which is read
+     * at lookup time so it remains available if the response is evicted afterwards
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the value of the <code>Age</code> header to send with the cached response
+     */
+    public String getAge() {
+        return Long.toString(age);
+    }
+
+    /**
+     * Returns the <code>ETag</code> of a stale response to send as <code>If-None-Match</code>
+     */
+    public String getIfNoneMatch() {
+        return status == Status.STALE ? response.getETag() : null;
+    }
+
+    /**
+     * Returns the <code>Last-Modified</code> date of a stale response to send as <code>If-Modified-Since</code>
+     */
+    public String getIfModifiedSince() {
+        return status == Status.STALE ? response.getLastModified() : null;
+    }
+
+    /**
+     * Returns the headers to send with the cached response; the <code>Age</code> header must be added
+     */
+    public List<Map.Entry<String, String>> getHeaders() {
+        return response.getHeaders();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of the {@link ResponseCache} for a single route
+ */
+public class CacheMetrics {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Override
+    public String toString() {
+        return "CacheMetrics{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", revalidations=" + revalidations +
+                ", stores=" + stores +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    /**
+     * Returns the number of requests served from the cache without contacting the back end service
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests which had no fresh response in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of stale responses served from the cache after the back end service
+     * confirmed them with a <code>304 Not Modified</code>
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * Returns the number of responses stored in the cache
+     */
+    public long getStores() {
+        return stores.get();
+    }
+
+    /**
+     * Returns the number of responses evicted from the cache to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void revalidated() {
+        revalidations.incrementAndGet();
+    }
+
+    void stored() {
+        stores.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+}
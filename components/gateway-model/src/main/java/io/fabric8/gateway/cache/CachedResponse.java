@@ -0,0 +1,313 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * A response stored in the {@link ResponseCache} for a request URI and the values of the
+ * request headers named by its <code>Vary</code> header. The body is kept on the heap
+ * until the response is demoted to the {@link DiskCacheTier}.
+ * <br>
+ * The freshness lifetime and age are calculated as described in
+ * <a href="http://tools.ietf.org/html/rfc7234#section-4.2">RFC 7234 Section 4.2</a>;
+ * no heuristic freshness is used, so responses without explicit expiry are always revalidated.
+ */
+public class CachedResponse {
+    private static final String RFC_1123_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final String route;
+    private final String uri;
+    private final int status;
+    private final Map<String, String> varyValues;
+    private final int bodyLength;
+    private List<Map.Entry<String, String>> headers;
+    private CacheControl cacheControl;
+    private long requestTime;
+    private long responseTime;
+    private long dateValue;
+    private long ageValue;
+    private long freshnessLifetime;
+    private byte[] body;
+    private DiskCacheTier.Slot slot;
+
+    CachedResponse(String route, String uri, int status, List<Map.Entry<String, String>> headers, Map<String, String> varyValues,
+                   byte[] body, long requestTime, long responseTime) {
+        this.route = route;
+        this.uri = uri;
+        this.status = status;
+        this.varyValues = varyValues;
+        this.body = body;
+        this.bodyLength = body.length;
+        update(headers, requestTime, responseTime);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedResponse{" +
+                "uri='" + uri + '\'' +
+                ", status=" + status +
+                ", varyValues=" + varyValues +
+                ", bodyLength=" + bodyLength +
+                ", onDisk=" + (slot != null) +
+                '}';
+    }
+
+    /**
+     * Returns the route whose metrics the response counts towards
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the stored headers, without the hop by hop headers and the <code>Age</code> header
+     */
+    public synchronized List<Map.Entry<String, String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the first value of the header or null if the response does not have the header
+     */
+    public synchronized String getHeader(String name) {
+        return getHeader(headers, name);
+    }
+
+    /**
+     * Returns the <code>ETag</code> validator or null
+     */
+    public String getETag() {
+        return getHeader("ETag");
+    }
+
+    /**
+     * Returns the <code>Last-Modified</code> validator or null
+     */
+    public String getLastModified() {
+        return getHeader("Last-Modified");
+    }
+
+    /**
+     * Returns true if the response has a validator so that it can be revalidated with a conditional request
+     */
+    public boolean hasValidator() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    public synchronized CacheControl getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * Returns the freshness lifetime in milliseconds
+     */
+    public synchronized long getFreshnessLifetime() {
+        return freshnessLifetime;
+    }
+
+    /**
+     * Returns the current age in milliseconds at the given time
+     */
+    public synchronized long getCurrentAge(long now) {
+        long apparentAge = Math.max(0, responseTime - dateValue);
+        long correctedAgeValue = ageValue + (responseTime - requestTime);
+        return Math.max(apparentAge, correctedAgeValue) + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * Returns true if the response can be used without revalidation at the given time
+     */
+    public synchronized boolean isFresh(long now) {
+        return !cacheControl.isNoCache() && freshnessLifetime > getCurrentAge(now);
+    }
+
+    /**
+     * Returns true if the response was selected by the same values of the headers named by its
+     * <code>Vary</code> header as the request
+     */
+    public boolean matches(RequestHeaders requestHeaders) {
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            String value = normalize(requestHeaders.getHeader(entry.getKey()));
+            String expected = entry.getValue();
+            if (expected == null ? value != null : !expected.equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Map<String, String> getVaryValues() {
+        return varyValues;
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by the response
+     */
+    synchronized long getHeapSize() {
+        long answer = 128 + (body != null ? body.length : 0);
+        for (Map.Entry<String, String> header : headers) {
+            answer += 2 * (header.getKey().length() + header.getValue().length()) + 32;
+        }
+        return answer;
+    }
+
+    synchronized byte[] getHeapBody() {
+        return body;
+    }
+
+    synchronized DiskCacheTier.Slot getSlot() {
+        return slot;
+    }
+
+    synchronized void moveToDisk(DiskCacheTier.Slot slot) {
+        this.slot = slot;
+        this.body = null;
+    }
+
+    /**
+     * Replaces the stored headers with those of a <code>304 Not Modified</code> response as described
+     * in <a href="http://tools.ietf.org/html/rfc7234#section-4.3.4">RFC 7234 Section 4.3.4</a>
+     */
+    synchronized void revalidate(List<Map.Entry<String, String>> notModifiedHeaders, long requestTime, long responseTime) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>(headers);
+        for (Map.Entry<String, String> header : notModifiedHeaders) {
+            if (!header.getKey().equalsIgnoreCase("Content-Length")) {
+                removeHeader(answer, header.getKey());
+            }
+        }
+        for (Map.Entry<String, String> header : notModifiedHeaders) {
+            if (!header.getKey().equalsIgnoreCase("Content-Length")) {
+                answer.add(header);
+            }
+        }
+        update(answer, requestTime, responseTime);
+    }
+
+    private void update(List<Map.Entry<String, String>> newHeaders, long newRequestTime, long newResponseTime) {
+        List<Map.Entry<String, String>> copy = new ArrayList<Map.Entry<String, String>>(newHeaders.size());
+        for (Map.Entry<String, String> header : newHeaders) {
+            if (!header.getKey().equalsIgnoreCase("Age")) {
+                copy.add(new AbstractMap.SimpleImmutableEntry<String, String>(header.getKey(), header.getValue()));
+            }
+        }
+        this.headers = Collections.unmodifiableList(copy);
+        this.requestTime = newRequestTime;
+        this.responseTime = newResponseTime;
+        this.cacheControl = CacheControl.parse(getHeaderValues(copy, "Cache-Control"));
+        long date = parseDate(getHeader(copy, "Date"));
+        this.dateValue = date >= 0 ? date : newResponseTime;
+        this.ageValue = 1000 * parseAge(getHeader(newHeaders, "Age"));
+        if (cacheControl.getSharedMaxAge() >= 0) {
+            this.freshnessLifetime = 1000 * cacheControl.getSharedMaxAge();
+        } else if (cacheControl.getMaxAge() >= 0) {
+            this.freshnessLifetime = 1000 * cacheControl.getMaxAge();
+        } else {
+            String expires = getHeader(copy, "Expires");
+            // an invalid Expires header such as "0" means the response is already expired
+            this.freshnessLifetime = expires != null ? Math.max(0, parseDate(expires) - dateValue) : 0;
+        }
+    }
+
+    static String getHeader(List<Map.Entry<String, String>> headers, String name) {
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the values of the header joined by commas or null if there are none
+     */
+    static String getHeaderValues(List<Map.Entry<String, String>> headers, String name) {
+        StringBuilder buffer = null;
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                if (buffer == null) {
+                    buffer = new StringBuilder(header.getValue());
+                } else {
+                    buffer.append(',').append(header.getValue());
+                }
+            }
+        }
+        return buffer != null ? buffer.toString() : null;
+    }
+
+    private static void removeHeader(List<Map.Entry<String, String>> headers, String name) {
+        Iterator<Map.Entry<String, String>> iter = headers.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().getKey().equalsIgnoreCase(name)) {
+                iter.remove();
+            }
+        }
+    }
+
+    static String normalize(String value) {
+        return value != null ? value.trim() : null;
+    }
+
+    /**
+     * Parses an HTTP date returning -1 if it is missing or invalid
+     */
+    public static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(RFC_1123_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Formats a time as an HTTP date
+     */
+    public static String formatDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat(RFC_1123_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(time);
+    }
+
+    private static long parseAge(String value) {
+        return CacheControl.parseDeltaSeconds(value);
+    }
+}
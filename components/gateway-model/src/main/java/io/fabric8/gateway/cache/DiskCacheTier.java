@@ -0,0 +1,193 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A second cache tier for the bodies of responses evicted from the heap, kept in a memory mapped
+ * file which is used as a ring buffer: each body is written after the previous one, wrapping to the
+ * start of the file when it is full and overwriting the oldest bodies, whose responses are then
+ * evicted from the {@link ResponseCache}.
+ */
+public class DiskCacheTier implements Closeable {
+    private final File file;
+    private final int capacity;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final TreeMap<Integer, Slot> slots = new TreeMap<Integer, Slot>();
+    private int writePosition;
+    private int usedBytes;
+
+    public DiskCacheTier(File file, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive but was " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(capacity);
+        this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "DiskCacheTier{" +
+                "file=" + file +
+                ", capacity=" + capacity +
+                ", usedBytes=" + getUsedBytes() +
+                '}';
+    }
+
+    /**
+     * Writes the data returning its slot, or null if the data is bigger than the file.
+     * The owners of any slots which were overwritten are added to the given list.
+     */
+    public synchronized Slot write(byte[] data, Object owner, List<Object> overwritten) {
+        int length = data.length;
+        if (length > capacity) {
+            return null;
+        }
+        if (length == 0) {
+            return new Slot(this, 0, 0, owner);
+        }
+        if (writePosition + length > capacity) {
+            writePosition = 0;
+        }
+        int end = writePosition + length;
+        Map.Entry<Integer, Slot> floor = slots.floorEntry(writePosition);
+        Integer from = floor != null ? floor.getKey() : writePosition;
+        Iterator<Slot> iter = slots.subMap(from, true, end, false).values().iterator();
+        while (iter.hasNext()) {
+            Slot slot = iter.next();
+            if (slot.offset + slot.length > writePosition) {
+                iter.remove();
+                slot.valid = false;
+                usedBytes -= slot.length;
+                overwritten.add(slot.owner);
+            }
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition);
+        target.put(data);
+        Slot answer = new Slot(this, writePosition, length, owner);
+        slots.put(writePosition, answer);
+        usedBytes += length;
+        writePosition = end;
+        return answer;
+    }
+
+    /**
+     * Returns a copy of the data of the slot or null if it has been overwritten or freed
+     */
+    public synchronized byte[] read(Slot slot) {
+        if (!slot.valid) {
+            return null;
+        }
+        byte[] answer = new byte[slot.length];
+        if (slot.length > 0) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(slot.offset);
+            source.get(answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Frees the slot so that its space is no longer accounted as used
+     */
+    public synchronized void free(Slot slot) {
+        if (slot.valid) {
+            slot.valid = false;
+            if (slot.length > 0 && slots.remove(slot.offset) != null) {
+                usedBytes -= slot.length;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by valid slots
+     */
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Slot slot : slots.values()) {
+            slot.valid = false;
+        }
+        slots.clear();
+        usedBytes = 0;
+        randomAccessFile.close();
+    }
+
+    /**
+     * The region of the file holding the body of a response
+     */
+    public static final class Slot {
+        private final DiskCacheTier tier;
+        private final int offset;
+        private final int length;
+        private final Object owner;
+        private boolean valid = true;
+
+        Slot(DiskCacheTier tier, int offset, int length, Object owner) {
+            this.tier = tier;
+            this.offset = offset;
+            this.length = length;
+            this.owner = owner;
+        }
+
+        @Override
+        public String toString() {
+            return "Slot{" +
+                    "offset=" + offset +
+                    ", length=" + length +
+                    '}';
+        }
+
+        public DiskCacheTier getTier() {
+            return tier;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+/**
+ * Gives the {@link ResponseCache} access to the headers of a client request independently
+ * of the HTTP server handling it.
+ */
+public interface RequestHeaders {
+
+    /**
+     * Returns the value of the header, with multiple values joined by commas, or null if the
+     * request does not have the header
+     */
+    String getHeader(String name);
+}
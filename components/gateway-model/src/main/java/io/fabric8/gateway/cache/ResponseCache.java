@@ -0,0 +1,445 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A shared HTTP response cache for the gateways following
+ * <a href="http://tools.ietf.org/html/rfc7234">RFC 7234</a>.
+ * <br>
+ * Responses are indexed by request URI and the values of the request headers named by their
+ * <code>Vary</code> header. The responses are kept on the heap in least recently used order until
+ * their total size exceeds the maximum heap bytes; evicted responses are then demoted to the
+ * {@link DiskCacheTier} if there is one, or dropped. Only <code>GET</code> responses are stored and
+ * unsafe requests invalidate the responses for their URI. Hits, misses, revalidations, stores and
+ * evictions are counted per route.
+ */
+public class ResponseCache {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private static final Set<Integer> CACHEABLE_STATUS_CODES = new HashSet<Integer>(Arrays.asList(
+            200, 203, 204, 300, 301, 404, 405, 410, 414, 501));
+
+    private static final Set<String> SAFE_METHODS = new HashSet<String>(Arrays.asList(
+            "GET", "HEAD", "OPTIONS", "TRACE"));
+
+    private static final Set<String> EXCLUDED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "trailers", "transfer-encoding", "upgrade"));
+
+    private final long maxHeapBytes;
+    private final int maxEntryBytes;
+    private final Map<String, List<CachedResponse>> entries = new HashMap<String, List<CachedResponse>>();
+    private final LinkedHashMap<CachedResponse, Boolean> heap = new LinkedHashMap<CachedResponse, Boolean>(16, 0.75f, true);
+    private final ConcurrentMap<String, CacheMetrics> metrics = new ConcurrentHashMap<String, CacheMetrics>();
+    private DiskCacheTier diskTier;
+    private long heapBytes;
+
+    public ResponseCache(long maxHeapBytes) {
+        this(maxHeapBytes, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    public ResponseCache(long maxHeapBytes, int maxEntryBytes) {
+        this.maxHeapBytes = maxHeapBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache{" +
+                "maxHeapBytes=" + maxHeapBytes +
+                ", maxEntryBytes=" + maxEntryBytes +
+                ", heapBytes=" + getHeapBytes() +
+                ", diskTier=" + diskTier +
+                '}';
+    }
+
+    /**
+     * Looks up the response for a request on the given route.
+     */
+    public CacheLookup lookup(String route, String method, String uri, RequestHeaders requestHeaders) {
+        long now = currentTimeMillis();
+        CacheControl requestCacheControl = CacheControl.parse(requestHeaders.getHeader("Cache-Control"));
+        if (!"GET".equalsIgnoreCase(method) || requestCacheControl.isNoStore()) {
+            return new CacheLookup(CacheLookup.Status.BYPASS, route, uri, requestHeaders, now, null, null);
+        }
+        boolean noCache = requestCacheControl.isNoCache() || isPragmaNoCache(requestHeaders.getHeader("Pragma"));
+        CacheMetrics routeMetrics = getMetrics(route);
+        CachedResponse response;
+        byte[] body;
+        synchronized (this) {
+            response = findVariant(uri, requestHeaders);
+            body = response != null ? readBody(response) : null;
+            if (response != null && body == null) {
+                remove(response);
+                response = null;
+            }
+        }
+        if (response != null) {
+            long maxAge = requestCacheControl.getMaxAge();
+            boolean fresh = !noCache && response.isFresh(now) && (maxAge < 0 || response.getCurrentAge(now) <= 1000 * maxAge);
+            if (fresh) {
+                routeMetrics.hit();
+                return new CacheLookup(CacheLookup.Status.HIT, route, uri, requestHeaders, now, response, body);
+            }
+            if (response.hasValidator()) {
+                routeMetrics.miss();
+                return new CacheLookup(CacheLookup.Status.STALE, route, uri, requestHeaders, now, response, body);
+            }
+        }
+        routeMetrics.miss();
+        return new CacheLookup(CacheLookup.Status.MISS, route, uri, requestHeaders, now, null, null);
+    }
+
+    /**
+     * Returns true if a response with the given status and headers to the request of the lookup
+     * may be stored, so that its body is worth buffering while it is sent to the client.
+     */
+    public boolean isStorable(CacheLookup lookup, int status, List<Map.Entry<String, String>> headers) {
+        if (!lookup.isCacheable() || !CACHEABLE_STATUS_CODES.contains(status)) {
+            return false;
+        }
+        CacheControl cacheControl = CacheControl.parse(CachedResponse.getHeaderValues(headers, "Cache-Control"));
+        if (cacheControl.isNoStore() || cacheControl.isPrivate()) {
+            return false;
+        }
+        if (CachedResponse.getHeader(headers, "Set-Cookie") != null) {
+            return false;
+        }
+        if (lookup.getRequestHeaders().getHeader("Authorization") != null && !cacheControl.isPublic()
+                && !cacheControl.isMustRevalidate() && cacheControl.getSharedMaxAge() < 0) {
+            return false;
+        }
+        if (getVaryNames(headers) == null) {
+            return false;
+        }
+        String contentLength = CachedResponse.getHeader(headers, "Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxEntryBytes) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        boolean explicitExpiry = cacheControl.getSharedMaxAge() >= 0 || cacheControl.getMaxAge() >= 0
+                || CachedResponse.getHeader(headers, "Expires") != null;
+        return explicitExpiry || CachedResponse.getHeader(headers, "ETag") != null
+                || CachedResponse.getHeader(headers, "Last-Modified") != null;
+    }
+
+    /**
+     * Stores the response of the back end service for the request of the lookup if it is storable,
+     * replacing any previous response with the same <code>Vary</code> header values.
+     *
+     * @return the stored response or null if it was not stored
+     */
+    public CachedResponse store(CacheLookup lookup, int status, List<Map.Entry<String, String>> headers, byte[] body) {
+        if (body.length > maxEntryBytes || !isStorable(lookup, status, headers)) {
+            return null;
+        }
+        Map<String, String> varyValues = new TreeMap<String, String>();
+        for (String name : getVaryNames(headers)) {
+            varyValues.put(name, CachedResponse.normalize(lookup.getRequestHeaders().getHeader(name)));
+        }
+        CachedResponse response = new CachedResponse(lookup.getRoute(), lookup.getUri(), status, filterHeaders(headers),
+                varyValues, body, lookup.getRequestTime(), currentTimeMillis());
+        long size = response.getHeapSize();
+        if (size > maxHeapBytes) {
+            return null;
+        }
+        synchronized (this) {
+            List<CachedResponse> variants = entries.get(lookup.getUri());
+            if (variants == null) {
+                variants = new ArrayList<CachedResponse>(1);
+                entries.put(lookup.getUri(), variants);
+            }
+            for (CachedResponse variant : new ArrayList<CachedResponse>(variants)) {
+                if (variant.getVaryValues().equals(varyValues)) {
+                    remove(variant);
+                }
+            }
+            variants.add(response);
+            heap.put(response, Boolean.TRUE);
+            heapBytes += size;
+            evict();
+        }
+        getMetrics(lookup.getRoute()).stored();
+        return response;
+    }
+
+    /**
+     * Updates the stale response of the lookup with the headers of a <code>304 Not Modified</code>
+     * response so that it can be served again, returning the lookup to serve it with whose
+     * <code>Age</code> is the age of the updated response as required by
+     * <a href="http://tools.ietf.org/html/rfc7234#section-4.3.4">RFC 7234 Section 4.3.4</a>
+     */
+    public CacheLookup revalidate(CacheLookup lookup, List<Map.Entry<String, String>> notModifiedHeaders) {
+        CachedResponse response = lookup.getResponse();
+        if (response == null) {
+            return lookup;
+        }
+        long now = currentTimeMillis();
+        synchronized (this) {
+            boolean onHeap = heap.remove(response) != null;
+            if (onHeap) {
+                heapBytes -= response.getHeapSize();
+            }
+            response.revalidate(filterHeaders(notModifiedHeaders), lookup.getRequestTime(), now);
+            if (onHeap) {
+                heap.put(response, Boolean.TRUE);
+                heapBytes += response.getHeapSize();
+                evict();
+            }
+        }
+        getMetrics(lookup.getRoute()).revalidated();
+        return lookup.withAgeAt(now);
+    }
+
+    /**
+     * Invalidates the responses for the URI if an unsafe request to it succeeded
+     * as described in <a href="http://tools.ietf.org/html/rfc7234#section-4.4">RFC 7234 Section 4.4</a>
+     */
+    public void invalidate(String method, String uri, int status) {
+        if (status < 400 && !SAFE_METHODS.contains(method.toUpperCase())) {
+            synchronized (this) {
+                List<CachedResponse> variants = entries.get(uri);
+                if (variants != null) {
+                    for (CachedResponse variant : new ArrayList<CachedResponse>(variants)) {
+                        remove(variant);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the responses from the cache
+     */
+    public synchronized void clear() {
+        for (List<CachedResponse> variants : new ArrayList<List<CachedResponse>>(entries.values())) {
+            for (CachedResponse variant : new ArrayList<CachedResponse>(variants)) {
+                remove(variant);
+            }
+        }
+    }
+
+    /**
+     * Clears the cache and closes the disk tier, if any
+     */
+    public void close() {
+        clear();
+        DiskCacheTier tier = getDiskTier();
+        if (tier != null) {
+            try {
+                tier.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close " + tier + ". " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics of the route, creating them if required
+     */
+    public CacheMetrics getMetrics(String route) {
+        CacheMetrics answer = metrics.get(route);
+        if (answer == null) {
+            answer = new CacheMetrics();
+            CacheMetrics previous = metrics.putIfAbsent(route, answer);
+            if (previous != null) {
+                answer = previous;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the metrics of all routes indexed by route
+     */
+    public Map<String, CacheMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    public synchronized long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the number of responses in the cache on the heap or on disk
+     */
+    public synchronized int getSize() {
+        int answer = 0;
+        for (List<CachedResponse> variants : entries.values()) {
+            answer += variants.size();
+        }
+        return answer;
+    }
+
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public synchronized DiskCacheTier getDiskTier() {
+        return diskTier;
+    }
+
+    /**
+     * Sets the tier to which responses evicted from the heap are demoted
+     */
+    public synchronized void setDiskTier(DiskCacheTier diskTier) {
+        this.diskTier = diskTier;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private CachedResponse findVariant(String uri, RequestHeaders requestHeaders) {
+        List<CachedResponse> variants = entries.get(uri);
+        if (variants != null) {
+            // the most recently stored variant wins
+            for (int i = variants.size() - 1; i >= 0; i--) {
+                CachedResponse variant = variants.get(i);
+                if (variant.matches(requestHeaders)) {
+                    return variant;
+                }
+            }
+        }
+        return null;
+    }
+
+    private byte[] readBody(CachedResponse response) {
+        byte[] body = response.getHeapBody();
+        if (body != null) {
+            // lets mark it as recently used
+            heap.get(response);
+            return body;
+        }
+        DiskCacheTier.Slot slot = response.getSlot();
+        return slot != null ? slot.getTier().read(slot) : null;
+    }
+
+    private void evict() {
+        Iterator<CachedResponse> iter = heap.keySet().iterator();
+        List<Object> overwritten = new ArrayList<Object>();
+        while (heapBytes > maxHeapBytes && iter.hasNext()) {
+            CachedResponse eldest = iter.next();
+            iter.remove();
+            heapBytes -= eldest.getHeapSize();
+            DiskCacheTier.Slot slot = diskTier != null ? diskTier.write(eldest.getHeapBody(), eldest, overwritten) : null;
+            if (slot != null) {
+                eldest.moveToDisk(slot);
+                LOG.debug("Moved {} to disk", eldest);
+            } else {
+                removeEntry(eldest);
+                getMetrics(eldest.getRoute()).evicted();
+            }
+        }
+        for (Object owner : overwritten) {
+            CachedResponse response = (CachedResponse) owner;
+            removeEntry(response);
+            getMetrics(response.getRoute()).evicted();
+        }
+    }
+
+    private void remove(CachedResponse response) {
+        if (heap.remove(response) != null) {
+            heapBytes -= response.getHeapSize();
+        }
+        DiskCacheTier.Slot slot = response.getSlot();
+        if (slot != null) {
+            slot.getTier().free(slot);
+        }
+        removeEntry(response);
+    }
+
+    private void removeEntry(CachedResponse response) {
+        List<CachedResponse> variants = entries.get(response.getUri());
+        if (variants != null) {
+            variants.remove(response);
+            if (variants.isEmpty()) {
+                entries.remove(response.getUri());
+            }
+        }
+    }
+
+    /**
+     * Returns the lower case names of the request headers the response varies on,
+     * or null if it varies on <code>*</code> so it can never be reused
+     */
+    private static List<String> getVaryNames(List<Map.Entry<String, String>> headers) {
+        List<String> answer = new ArrayList<String>();
+        String vary = CachedResponse.getHeaderValues(headers, "Vary");
+        if (vary != null) {
+            for (String name : vary.split(",")) {
+                name = name.trim().toLowerCase();
+                if (name.equals("*")) {
+                    return null;
+                }
+                if (name.length() > 0) {
+                    answer.add(name);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if the header only applies to a single connection so it must not be stored or shared
+     */
+    public static boolean isHopByHopHeader(String name) {
+        return EXCLUDED_HEADERS.contains(name.toLowerCase());
+    }
+
+    private static List<Map.Entry<String, String>> filterHeaders(List<Map.Entry<String, String>> headers) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            if (!isHopByHopHeader(header.getKey())) {
+                answer.add(header);
+            }
+        }
+        return answer;
+    }
+
+    private static boolean isPragmaNoCache(String pragma) {
+        return pragma != null && pragma.toLowerCase().contains("no-cache");
+    }
+}
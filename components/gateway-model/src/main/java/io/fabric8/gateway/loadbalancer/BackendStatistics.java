@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the load of a single back end service: how many requests or connections
+ * are currently outstanding and a peak sensitive exponentially weighted moving average
+ * of how long it takes the service to connect or respond.
+ * <br>
+ * The average jumps up to any sample which is slower than it and otherwise decays towards
+ * the samples, and towards zero while the service is idle, over the configured decay time.
+ */
+public class BackendStatistics {
+    private final long decayNanos;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    // guarded by this
+    private double latency;
+    private long latencyTimestamp = System.nanoTime();
+
+    public BackendStatistics(long decayTime) {
+        this.decayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(decayTime), 1);
+    }
+
+    @Override
+    public String toString() {
+        return "BackendStatistics{" +
+                "active=" + getActive() +
+                ", requests=" + getRequests() +
+                ", failures=" + getFailures() +
+                ", latency=" + getLatency() +
+                '}';
+    }
+
+    /**
+     * Records the start of a request or connection and returns the start time in nanoseconds.
+     */
+    public long requestStarted() {
+        active.incrementAndGet();
+        requests.incrementAndGet();
+        lastUsed = System.currentTimeMillis();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time taken to connect or receive a response for a request started at the given time.
+     */
+    public void recordLatency(long startNanos) {
+        long now = System.nanoTime();
+        double sample = Math.max(now - startNanos, 0);
+        synchronized (this) {
+            double current = decayed(now);
+            if (sample > current) {
+                latency = sample;
+            } else {
+                double weight = Math.exp(-(now - latencyTimestamp) / (double) decayNanos);
+                latency = latency * weight + sample * (1 - weight);
+            }
+            latencyTimestamp = now;
+        }
+    }
+
+    /**
+     * Records that a request or connection has completed.
+     */
+    public void requestCompleted() {
+        active.decrementAndGet();
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Records that a request or connection failed, the failure counts as a completion.
+     */
+    public void requestFailed() {
+        failures.incrementAndGet();
+        requestCompleted();
+    }
+
+    private double decayed(long now) {
+        return latency * Math.exp(-Math.max(now - latencyTimestamp, 0) / (double) decayNanos);
+    }
+
+    /**
+     * Returns the moving average latency in nanoseconds, decayed for the time since the last sample.
+     */
+    public synchronized double getLatency() {
+        return decayed(System.nanoTime());
+    }
+
+    /**
+     * Returns the expected cost of sending another request to this service which is its latency
+     * weighted by the number of outstanding requests, so services with no samples yet still
+     * prefer the least loaded.
+     */
+    public double getCost() {
+        return (getLatency() + 1) * (getActive() + 1);
+    }
+
+    public int getActive() {
+        return Math.max(active.get(), 0);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * Base class for load balancers which choose a service using the {@link LoadBalancerStatistics}
+ * the gateways record for the services they proxy to.
+ */
+public abstract class LoadAwareLoadBalancer implements LoadBalancer {
+    protected final LoadBalancerStatistics statistics;
+
+    protected LoadAwareLoadBalancer(LoadBalancerStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the statistics the gateways should record the load of the chosen services in.
+     */
+    public LoadBalancerStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the statistics of the service the given load balancer chose, or null if
+     * the load balancer does not use them.
+     */
+    public static BackendStatistics getBackendStatistics(LoadBalancer loadBalancer, Object service) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer && service != null) {
+            return ((LoadAwareLoadBalancer) loadBalancer).getStatistics().getBackend(service);
+        }
+        return null;
+    }
+}
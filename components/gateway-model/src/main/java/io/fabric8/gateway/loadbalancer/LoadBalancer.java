@@ -21,7 +21,8 @@ import java.util.List;
  * Represents the load balancing algorithm to use to pick which service to use.
  *
  * Example implementations are: {@link RandomLoadBalancer},
- * {@link RoundRobinLoadBalancer} or {@link StickyLoadBalancer}
+ * {@link RoundRobinLoadBalancer}, {@link StickyLoadBalancer},
+ * {@link RendezvousHashLoadBalancer}, {@link LeastConnectionsLoadBalancer} or {@link PeakEwmaLoadBalancer}
  */
 public interface LoadBalancer {
     public <T> T choose(List<T> services, ClientRequestFacade requestFacade);
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link BackendStatistics} of the services chosen by a load balancer, keyed by the
+ * {@link LoadBalancers#serviceKey(Object)} of the services passed to
+ * {@link LoadBalancer#choose(java.util.List, ClientRequestFacade)} so that the statistics
+ * survive the services being recreated when they are updated.
+ * <br>
+ * Services which are idle with no outstanding requests for longer than the idle timeout
+ * are forgotten, so services which go away do not leak.
+ */
+public class LoadBalancerStatistics {
+    private final ConcurrentHashMap<Object, BackendStatistics> backends = new ConcurrentHashMap<Object, BackendStatistics>();
+    private final long decayTime;
+    private long idleTimeout = 10 * 60 * 1000;
+    private volatile long lastPruned = System.currentTimeMillis();
+
+    public LoadBalancerStatistics() {
+        this(LoadBalancers.PEAK_EWMA_LOAD_BALANCER_DEFAULT_DECAY_TIME);
+    }
+
+    public LoadBalancerStatistics(long decayTime) {
+        this.decayTime = decayTime;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadBalancerStatistics{" +
+                "backends=" + backends +
+                '}';
+    }
+
+    /**
+     * Returns the statistics of the given service, creating them if required.
+     */
+    public BackendStatistics getBackend(Object service) {
+        Object key = LoadBalancers.serviceKey(service);
+        BackendStatistics answer = backends.get(key);
+        if (answer == null) {
+            BackendStatistics created = new BackendStatistics(decayTime);
+            answer = backends.putIfAbsent(key, created);
+            if (answer == null) {
+                answer = created;
+                long now = System.currentTimeMillis();
+                if (now - lastPruned > idleTimeout) {
+                    lastPruned = now;
+                    prune(now);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the statistics of the given service or null if nothing was recorded for it yet.
+     */
+    public BackendStatistics findBackend(Object service) {
+        return backends.get(LoadBalancers.serviceKey(service));
+    }
+
+    /**
+     * Returns the statistics of the services indexed by their keys
+     */
+    public Map<Object, BackendStatistics> getBackends() {
+        return Collections.unmodifiableMap(backends);
+    }
+
+    protected void prune(long now) {
+        for (Map.Entry<Object, BackendStatistics> entry : backends.entrySet()) {
+            BackendStatistics value = entry.getValue();
+            if (value.getActive() == 0 && now - value.getLastUsed() > idleTimeout) {
+                backends.remove(entry.getKey(), value);
+            }
+        }
+    }
+
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+}
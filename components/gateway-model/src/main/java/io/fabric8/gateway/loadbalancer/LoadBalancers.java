@@ -28,8 +28,12 @@ public class LoadBalancers {
     public static final String RANDOM_LOAD_BALANCER = "random";
     public static final String ROUND_ROBIN_LOAD_BALANCER = "roundrobin";
     public static final String STICKY_LOAD_BALANCER = "sticky";
+    public static final String STICKY_HASH_LOAD_BALANCER = "stickyhash";
+    public static final String LEAST_CONNECTIONS_LOAD_BALANCER = "leastconnections";
+    public static final String PEAK_EWMA_LOAD_BALANCER = "peakewma";
 
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = 10000;
+    public static final long PEAK_EWMA_LOAD_BALANCER_DEFAULT_DECAY_TIME = 10000;
 
     public static LoadBalancer createLoadBalancer(String loadBalancerType, int stickyLoadBalancerCacheSize) {
         if (RANDOM_LOAD_BALANCER.equals(loadBalancerType)) {
@@ -38,6 +42,12 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         } else if (STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
             return new StickyLoadBalancer(stickyLoadBalancerCacheSize);
+        } else if (STICKY_HASH_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new RendezvousHashLoadBalancer();
+        } else if (LEAST_CONNECTIONS_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new LeastConnectionsLoadBalancer();
+        } else if (PEAK_EWMA_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new PeakEwmaLoadBalancer();
         } else {
             if (Strings.isNotBlank(loadBalancerType)) {
                 LOG.warn("Ignored invalid load balancer type: " + loadBalancerType);
@@ -47,4 +57,18 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         }
     }
+
+    /**
+     * Returns the key identifying the given service, which is the ID of a {@link LoadBalancedService}
+     * or the service itself, such as the URL of an HTTP service
+     */
+    public static Object serviceKey(Object service) {
+        if (service instanceof LoadBalancedService) {
+            String id = ((LoadBalancedService) service).getId();
+            if (id != null) {
+                return id;
+            }
+        }
+        return service;
+    }
 }
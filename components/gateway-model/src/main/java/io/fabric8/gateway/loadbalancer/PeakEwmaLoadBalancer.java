@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two services at random and chooses the one with the lower cost, where the cost is
+ * the peak sensitive moving average latency of the service weighted by its outstanding
+ * requests. Slow services quickly get less traffic and are tried again once their
+ * latency decays.
+ */
+public class PeakEwmaLoadBalancer extends LoadAwareLoadBalancer {
+    public PeakEwmaLoadBalancer() {
+        this(LoadBalancers.PEAK_EWMA_LOAD_BALANCER_DEFAULT_DECAY_TIME);
+    }
+
+    public PeakEwmaLoadBalancer(long decayTime) {
+        this(new LoadBalancerStatistics(decayTime));
+    }
+
+    public PeakEwmaLoadBalancer(LoadBalancerStatistics statistics) {
+        super(statistics);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwmaLoadBalancer{" +
+                "decayTime=" + statistics.getDecayTime() +
+                '}';
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        T a = services.get(first);
+        T b = services.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    protected double cost(Object service) {
+        BackendStatistics backend = statistics.findBackend(service);
+        return backend != null ? backend.getCost() : 1;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+
+/**
+ * A sticky load balancer which uses rendezvous (highest random weight) hashing of the client ID
+ * String requested from the {@link ClientRequestFacade} to pick a service, so it needs no cache
+ * of the previous choices and never forgets them.
+ * <br>
+ * When a service is removed only the clients bound to it move to other services and when a
+ * service is added it only takes its fair share of the clients, so about 1/N of the clients
+ * move either way. Requests without a client ID use the first request load balancer.
+ */
+public class RendezvousHashLoadBalancer implements LoadBalancer {
+    private final LoadBalancer firstRequestLoadBalancer;
+
+    public RendezvousHashLoadBalancer() {
+        this(new RoundRobinLoadBalancer());
+    }
+
+    public RendezvousHashLoadBalancer(LoadBalancer firstRequestLoadBalancer) {
+        this.firstRequestLoadBalancer = firstRequestLoadBalancer;
+    }
+
+    @Override
+    public String toString() {
+        return "RendezvousHashLoadBalancer{}";
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        String clientKey = requestFacade.getClientRequestKey();
+        if (clientKey == null) {
+            return firstRequestLoadBalancer.choose(services, requestFacade);
+        }
+        long keyHash = mix(clientKey.hashCode());
+        T answer = null;
+        long highest = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            T service = services.get(i);
+            long weight = mix(keyHash ^ serviceHash(service));
+            if (answer == null || weight > highest) {
+                highest = weight;
+                answer = service;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the hash identifying the service which must be the same for every instance
+     * describing the same service, so by default the hash of its {@link LoadBalancers#serviceKey(Object)}
+     * is used as the services are recreated whenever they are updated.
+     */
+    protected long serviceHash(Object service) {
+        return mix(LoadBalancers.serviceKey(service).toString().hashCode()) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * The MurmurHash3 64 bit finalizer which spreads the bits of the String hash codes.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
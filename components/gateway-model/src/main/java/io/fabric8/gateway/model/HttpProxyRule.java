@@ -42,6 +42,8 @@ public class HttpProxyRule {
     private Set<UriTemplateDefinition> destinationUriTemplates = new HashSet<UriTemplateDefinition>();
     private String cookiePath;
     private String cookieDomain;
+    private int maxConcurrentRequests;
+    private long requestTimeout;
 
     public HttpProxyRule() {
     }
@@ -195,4 +197,37 @@ public class HttpProxyRule {
         this.cookieDomain = cookieDomain;
         return this;
     }
+
+    /**
+     * Returns the maximum number of requests which can be proxied concurrently for this rule,
+     * or 0 to use the gateway default.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Sets the maximum number of requests which can be proxied concurrently for this rule; any further
+     * requests are rejected so that a slow back end service cannot use up the gateway for other rules.
+     */
+    public HttpProxyRule setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Returns the timeout in millis for the back end service to respond to a request for this rule,
+     * or 0 to use the gateway default.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets the timeout in millis for the back end service to respond to a request for this rule.
+     */
+    public HttpProxyRule setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
 }
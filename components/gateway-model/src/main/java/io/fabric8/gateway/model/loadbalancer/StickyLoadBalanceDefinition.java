@@ -16,6 +16,7 @@
 package io.fabric8.gateway.model.loadbalancer;
 
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.RendezvousHashLoadBalancer;
 import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
 import io.fabric8.gateway.support.Constants;
 
@@ -23,6 +24,7 @@ import io.fabric8.gateway.support.Constants;
  */
 public class StickyLoadBalanceDefinition extends LoadBalancerDefinition {
     private int cacheSize = Constants.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
+    private boolean hashing;
 
     public int getCacheSize() {
         return cacheSize;
@@ -32,8 +34,24 @@ public class StickyLoadBalanceDefinition extends LoadBalancerDefinition {
         this.cacheSize = cacheSize;
     }
 
+    public boolean isHashing() {
+        return hashing;
+    }
+
+    /**
+     * Sets whether clients are bound to services by hashing their client ID using a
+     * {@link RendezvousHashLoadBalancer} rather than by caching the service they used last,
+     * in which case the cache size is ignored.
+     */
+    public void setHashing(boolean hashing) {
+        this.hashing = hashing;
+    }
+
     @Override
     protected LoadBalancer createLoadBalancer() {
+        if (hashing) {
+            return new RendezvousHashLoadBalancer();
+        }
         return new StickyLoadBalancer(cacheSize);
     }
 }
@@ -21,5 +21,6 @@ import io.fabric8.gateway.loadbalancer.LoadBalancers;
  */
 public class Constants {
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
+    public static final long PEAK_EWMA_LOAD_BALANCER_DEFAULT_DECAY_TIME = LoadBalancers.PEAK_EWMA_LOAD_BALANCER_DEFAULT_DECAY_TIME;
 
 }
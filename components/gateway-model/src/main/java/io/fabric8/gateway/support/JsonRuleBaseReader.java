@@ -43,7 +43,8 @@ public final class JsonRuleBaseReader {
      * <pre>
      * { "rulebase" : [
      *    { "rule": "/foo/{path}", "to": "https://foo.com/cheese/{path}"},
-     *    { "rule": "/customers/{id}/address/{addressId}", "to": "http://another.com/addresses/{addressId}/customer/{id}"}
+     *    { "rule": "/customers/{id}/address/{addressId}", "to": "http://another.com/addresses/{addressId}/customer/{id}"},
+     *    { "rule": "/reports/{path}", "to": "http://reports.com/{path}", "maxConcurrentRequests": 10, "requestTimeout": 5000}
      *  ]
      * }
      * </pre>
@@ -64,10 +65,19 @@ public final class JsonRuleBaseReader {
             JsonNode globalDomain = config.get("cookieDomain");
             for (JsonNode entry : getRuleBase(config)) {
                 String rule = entry.get("rule").asText();
-                map.put(rule, new HttpProxyRule(rule)
+                HttpProxyRule proxyRule = new HttpProxyRule(rule)
                         .to(entry.get("to").asText())
                         .setCookiePath(getGlobal(entry, globalCookiePath, "cookiePath"))
-                        .setCookieDomain(getGlobal(entry, globalDomain, "cookieDomain")));
+                        .setCookieDomain(getGlobal(entry, globalDomain, "cookieDomain"));
+                JsonNode maxConcurrentRequests = entry.get("maxConcurrentRequests");
+                if (maxConcurrentRequests != null) {
+                    proxyRule.setMaxConcurrentRequests(maxConcurrentRequests.asInt());
+                }
+                JsonNode requestTimeout = entry.get("requestTimeout");
+                if (requestTimeout != null) {
+                    proxyRule.setRequestTimeout(requestTimeout.asLong());
+                }
+                map.put(rule, proxyRule);
             }
             return map;
         } catch (IOException e) {
@@ -18,23 +18,43 @@ package io.fabric8.gateway.support;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 
+import java.util.Map;
+
 /**
  * A helper class to map a request URI to a mapping rule
+ * <br>
+ * The rules are compiled into a {@link MappingRuleTree} which is rebuilt when rules are added to
+ * or removed from the {@link HttpProxyRuleBase}; call {@link #rulesChanged()} after replacing or
+ * changing a rule in place.
  */
 public class MappingRuleResolver {
     private HttpProxyRuleBase mappingRules = new HttpProxyRuleBase();
+    private volatile CompiledRules compiledRules;
 
     public MappingResult findMappingRule(String requestURI) {
         String[] paths = Paths.splitPaths(requestURI);
-        MappingResult answer = null;
-        // TODO we could build a path based tree to do more efficient matching?
-        for (HttpProxyRule mappingRule : mappingRules.getMappingRules().values()) {
-            answer = mappingRule.matches(paths);
-            if (answer != null) {
-                break;
-            }
+        return getMappingRuleTree().findMappingRule(paths);
+    }
+
+    /**
+     * Returns the compiled rules, compiling them again if the rules have changed.
+     */
+    public MappingRuleTree getMappingRuleTree() {
+        HttpProxyRuleBase ruleBase = mappingRules;
+        Map<String, HttpProxyRule> rules = ruleBase.getMappingRules();
+        CompiledRules compiled = compiledRules;
+        if (compiled == null || compiled.rules != rules || compiled.size != rules.size()) {
+            compiled = new CompiledRules(rules, new MappingRuleTree(rules.values()));
+            compiledRules = compiled;
         }
-        return answer;
+        return compiled.tree;
+    }
+
+    /**
+     * Forces the rules to be compiled again on the next request.
+     */
+    public void rulesChanged() {
+        compiledRules = null;
     }
 
     public HttpProxyRuleBase getMappingRules() {
@@ -43,6 +63,18 @@ public class MappingRuleResolver {
 
     public void setMappingRules(HttpProxyRuleBase mappingRules) {
         this.mappingRules = mappingRules;
+        rulesChanged();
     }
 
+    private static final class CompiledRules {
+        private final Map<String, HttpProxyRule> rules;
+        private final int size;
+        private final MappingRuleTree tree;
+
+        CompiledRules(Map<String, HttpProxyRule> rules, MappingRuleTree tree) {
+            this.rules = rules;
+            this.size = rules.size();
+            this.tree = tree;
+        }
+    }
 }
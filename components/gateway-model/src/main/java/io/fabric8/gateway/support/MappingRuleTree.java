@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The mapping rules compiled into a tree of path segments, so that a request URI is resolved
+ * in time proportional to the depth of its path rather than the number of rules.
+ * <br>
+ * Each node has a child for every literal segment, a single child for a <code>{parameter}</code>
+ * segment and the rules which end at the node. A parameter which is the last segment of its
+ * {@link UriTemplate} also acts as a catch all for the rest of the path. Literal segments are
+ * preferred over parameters which are preferred over catch alls, so that the most specific rule wins.
+ */
+public class MappingRuleTree {
+    private final Node root = new Node();
+    private final int size;
+
+    public MappingRuleTree(Collection<HttpProxyRule> mappingRules) {
+        int count = 0;
+        for (HttpProxyRule mappingRule : mappingRules) {
+            UriTemplate template = mappingRule.getUriTemplate() != null ? mappingRule.getUriTemplateObject() : null;
+            if (template != null) {
+                add(template, mappingRule);
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * Returns the result of the most specific rule matching the paths of a request URI
+     * or null if no rule matches.
+     */
+    public MappingResult findMappingRule(String[] paths) {
+        HttpProxyRule mappingRule = find(root, paths, 0);
+        return mappingRule != null ? mappingRule.matches(paths) : null;
+    }
+
+    /**
+     * Returns the number of rules in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void add(UriTemplate template, HttpProxyRule mappingRule) {
+        String[] segments = template.getPaths();
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            if (template.getWildcardParameterName(i) != null) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+                if (i == segments.length - 1 && node.catchAll == null) {
+                    node.catchAll = mappingRule;
+                }
+            } else {
+                String segment = segments[i];
+                Node child = node.literals.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.literals.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        // the first rule wins if several rules have equivalent templates
+        if (node.rule == null) {
+            node.rule = mappingRule;
+        }
+    }
+
+    private static HttpProxyRule find(Node node, String[] paths, int index) {
+        if (index == paths.length) {
+            return node.rule;
+        }
+        Node literal = node.literals.get(paths[index]);
+        if (literal != null) {
+            HttpProxyRule answer = find(literal, paths, index + 1);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        if (node.wildcard != null) {
+            HttpProxyRule answer = find(node.wildcard, paths, index + 1);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        return node.catchAll;
+    }
+
+    static final class Node {
+        final Map<String, Node> literals = new HashMap<String, Node>();
+        Node wildcard;
+        HttpProxyRule rule;
+        HttpProxyRule catchAll;
+    }
+}
@@ -78,6 +78,13 @@ public class UriTemplate {
     }
 
 
+    /**
+     * Returns the path segments of the template
+     */
+    String[] getPaths() {
+        return paths;
+    }
+
     public List<String> getParameterNames() {
         return Collections.unmodifiableList(parameters);
     }
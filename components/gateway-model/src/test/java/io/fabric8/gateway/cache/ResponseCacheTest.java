@@ -0,0 +1,295 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.cache;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ResponseCacheTest {
+
+    private long now = 1000000000000L;
+    private ResponseCache cache = createCache(1024 * 1024);
+    private File diskFile;
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        if (diskFile != null) {
+            diskFile.delete();
+        }
+    }
+
+    @Test
+    public void testFreshResponseIsServedUntilItExpires() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=60"), "hello");
+
+        CacheLookup lookup = lookup("/a");
+        assertTrue(lookup.isHit());
+        assertEquals("hello", new String(lookup.getBody()));
+        assertEquals("0", lookup.getAge());
+
+        now += 30000;
+        lookup = lookup("/a");
+        assertTrue(lookup.isHit());
+        assertEquals("30", lookup.getAge());
+
+        now += 31000;
+        lookup = lookup("/a");
+        // no validator so it can't be revalidated
+        assertEquals(CacheLookup.Status.MISS, lookup.getStatus());
+
+        CacheMetrics metrics = cache.getMetrics("route");
+        assertEquals(2, metrics.getHits());
+        assertEquals(2, metrics.getMisses());
+        assertEquals(1, metrics.getStores());
+    }
+
+    @Test
+    public void testFreshnessUsesSharedMaxAgeThenMaxAgeThenExpires() throws Exception {
+        assertStored("/shared", headers("Cache-Control", "max-age=10, s-maxage=100"), "a");
+        assertStored("/expires", headers("Date", CachedResponse.formatDate(now), "Expires", CachedResponse.formatDate(now + 50000)), "b");
+        now += 20000;
+        assertTrue(lookup("/shared").isHit());
+        assertTrue(lookup("/expires").isHit());
+        now += 40000;
+        assertTrue(lookup("/shared").isHit());
+        assertFalse(lookup("/expires").isHit());
+    }
+
+    @Test
+    public void testAgeHeaderOfTheBackEndIsAdded() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=60", "Age", "50"), "hello");
+        CacheLookup lookup = lookup("/a");
+        assertTrue(lookup.isHit());
+        assertEquals("50", lookup.getAge());
+        assertNull(lookup.getResponse().getHeader("Age"));
+        now += 11000;
+        assertFalse(lookup("/a").isHit());
+    }
+
+    @Test
+    public void testResponsesWhichMustNotBeStored() throws Exception {
+        assertNotStored("/nostore", headers("Cache-Control", "no-store, max-age=60"));
+        assertNotStored("/private", headers("Cache-Control", "private, max-age=60"));
+        assertNotStored("/cookie", headers("Cache-Control", "max-age=60", "Set-Cookie", "a=b"));
+        assertNotStored("/varyall", headers("Cache-Control", "max-age=60", "Vary", "*"));
+        assertNotStored("/noexpiry", headers("Content-Type", "text/plain"));
+        assertNotStored("/big", headers("Cache-Control", "max-age=60", "Content-Length", "2000000"));
+
+        CacheLookup lookup = lookup("/status");
+        assertNull(cache.store(lookup, 500, headers("Cache-Control", "max-age=60"), "error".getBytes()));
+
+        lookup = cache.lookup("route", "POST", "/post", requestHeaders());
+        assertEquals(CacheLookup.Status.BYPASS, lookup.getStatus());
+        assertNull(cache.store(lookup, 200, headers("Cache-Control", "max-age=60"), "posted".getBytes()));
+
+        lookup = lookup("/auth", "Authorization", "Basic Zm9vOmJhcg==");
+        assertNull(cache.store(lookup, 200, headers("Cache-Control", "max-age=60"), "secret".getBytes()));
+        assertNotNull(cache.store(lookup, 200, headers("Cache-Control", "public, max-age=60"), "shared".getBytes()));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testRequestCacheControl() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=60", "ETag", "\"v1\""), "hello");
+        now += 10000;
+        assertTrue(lookup("/a").isHit());
+        assertTrue(lookup("/a", "Cache-Control", "no-cache").isStale());
+        assertTrue(lookup("/a", "Pragma", "no-cache").isStale());
+        assertTrue(lookup("/a", "Cache-Control", "max-age=5").isStale());
+        assertTrue(lookup("/a", "Cache-Control", "max-age=20").isHit());
+        assertEquals(CacheLookup.Status.BYPASS, lookup("/a", "Cache-Control", "no-store").getStatus());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=10", "ETag", "\"v1\"", "Last-Modified", "Tue, 15 Nov 1994 12:45:26 GMT", "Content-Length", "5", "X-Version", "1"), "hello");
+        now += 20000;
+
+        CacheLookup lookup = lookup("/a");
+        assertTrue(lookup.isStale());
+        assertEquals("\"v1\"", lookup.getIfNoneMatch());
+        assertEquals("Tue, 15 Nov 1994 12:45:26 GMT", lookup.getIfModifiedSince());
+
+        assertEquals("20", lookup.getAge());
+        now += 1000;
+        CacheLookup revalidated = cache.revalidate(lookup, headers("Cache-Control", "max-age=30", "X-Version", "2", "Content-Length", "0"));
+        // the age is the age of the updated response, the second the revalidation took, rather than the stale one
+        assertEquals("1", revalidated.getAge());
+        assertEquals("hello", new String(revalidated.getBody()));
+        assertEquals("hello", new String(lookup.getBody()));
+        assertEquals("2", lookup.getResponse().getHeader("X-Version"));
+        assertEquals("5", lookup.getResponse().getHeader("Content-Length"));
+
+        now += 20000;
+        assertTrue(lookup("/a").isHit());
+        assertEquals(1, cache.getMetrics("route").getRevalidations());
+    }
+
+    @Test
+    public void testHugeDeltaSecondsDoNotOverflow() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=9223372036854775807"), "hello");
+        assertStored("/b", headers("Cache-Control", "s-maxage=99999999999999999999"), "hello");
+        now += 365L * 24 * 3600 * 1000;
+        assertTrue(lookup("/a").isHit());
+        assertTrue(lookup("/b").isHit());
+        assertTrue(lookup("/a", "Cache-Control", "max-age=9223372036854775807").isHit());
+        assertEquals(CacheControl.MAX_DELTA_SECONDS, CacheControl.parse("max-age=99999999999999999999").getMaxAge());
+    }
+
+    @Test
+    public void testVary() throws Exception {
+        CacheLookup gzip = lookup("/a", "Accept-Encoding", "gzip");
+        assertNotNull(cache.store(gzip, 200, headers("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), "zipped".getBytes()));
+        CacheLookup plain = lookup("/a");
+        assertFalse(plain.isHit());
+        assertNotNull(cache.store(plain, 200, headers("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), "plain".getBytes()));
+
+        assertEquals("zipped", new String(lookup("/a", "Accept-Encoding", "gzip").getBody()));
+        assertEquals("plain", new String(lookup("/a").getBody()));
+        assertFalse(lookup("/a", "Accept-Encoding", "deflate").isHit());
+        assertEquals(2, cache.getSize());
+
+        // a new response replaces the variant with the same header values
+        assertNotNull(cache.store(lookup("/a", "Accept-Encoding", "deflate"), 200, headers("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), "deflated".getBytes()));
+        assertNotNull(cache.store(lookup("/a", "Accept-Encoding", "gzip", "Cache-Control", "no-cache"), 200, headers("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), "zipped2".getBytes()));
+        assertEquals(3, cache.getSize());
+        assertEquals("zipped2", new String(lookup("/a", "Accept-Encoding", "gzip").getBody()));
+    }
+
+    @Test
+    public void testUnsafeRequestsInvalidate() throws Exception {
+        assertStored("/a", headers("Cache-Control", "max-age=60"), "hello");
+        cache.invalidate("GET", "/a", 200);
+        cache.invalidate("DELETE", "/a", 500);
+        assertTrue(lookup("/a").isHit());
+        cache.invalidate("PUT", "/a", 204);
+        assertFalse(lookup("/a").isHit());
+        assertEquals(0, cache.getHeapBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponsesAreEvictedByBytes() throws Exception {
+        byte[] body = new byte[1000];
+        cache = createCache(2 * (body.length + 300));
+        assertStored("/a", headers("Cache-Control", "max-age=60"), body);
+        assertStored("/b", headers("Cache-Control", "max-age=60"), body);
+        assertTrue(lookup("/a").isHit());
+        assertStored("/c", headers("Cache-Control", "max-age=60"), body);
+
+        assertTrue(lookup("/a").isHit());
+        assertFalse(lookup("/b").isHit());
+        assertTrue(lookup("/c").isHit());
+        assertTrue(cache.getHeapBytes() <= cache.getMaxHeapBytes());
+        assertEquals(1, cache.getMetrics("route").getEvictions());
+    }
+
+    @Test
+    public void testEvictedResponsesAreDemotedToDisk() throws Exception {
+        byte[] body = new byte[1000];
+        cache = createCache(body.length + 300);
+        diskFile = File.createTempFile("gateway-cache-", ".dat");
+        cache.setDiskTier(new DiskCacheTier(diskFile, 2 * body.length + 500));
+
+        List<byte[]> bodies = new ArrayList<byte[]>();
+        for (int i = 0; i < 4; i++) {
+            byte[] data = body.clone();
+            data[0] = (byte) i;
+            bodies.add(data);
+            assertStored("/" + i, headers("Cache-Control", "max-age=60"), data);
+        }
+        // /3 is on the heap, /1 and /2 on disk and /0 was overwritten on disk
+        assertFalse(lookup("/0").isHit());
+        for (int i = 1; i < 4; i++) {
+            CacheLookup lookup = lookup("/" + i);
+            assertTrue("Hit for /" + i, lookup.isHit());
+            assertArrayEquals(bodies.get(i), lookup.getBody());
+        }
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getMetrics("route").getEvictions());
+        assertEquals(2 * body.length, cache.getDiskTier().getUsedBytes());
+
+        cache.invalidate("POST", "/1", 200);
+        assertEquals(body.length, cache.getDiskTier().getUsedBytes());
+    }
+
+    protected ResponseCache createCache(long maxHeapBytes) {
+        return new ResponseCache(maxHeapBytes) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    protected void assertStored(String uri, List<Map.Entry<String, String>> headers, String body) {
+        assertStored(uri, headers, body.getBytes());
+    }
+
+    protected void assertStored(String uri, List<Map.Entry<String, String>> headers, byte[] body) {
+        CacheLookup lookup = lookup(uri);
+        assertTrue(cache.isStorable(lookup, 200, headers));
+        assertNotNull("Stored " + uri, cache.store(lookup, 200, headers, body));
+    }
+
+    protected void assertNotStored(String uri, List<Map.Entry<String, String>> headers) {
+        CacheLookup lookup = lookup(uri);
+        assertFalse(cache.isStorable(lookup, 200, headers));
+        assertNull(cache.store(lookup, 200, headers, "hello".getBytes()));
+        assertFalse(lookup(uri).isHit());
+    }
+
+    protected CacheLookup lookup(String uri, String... requestHeaders) {
+        return cache.lookup("route", "GET", uri, requestHeaders(requestHeaders));
+    }
+
+    protected static RequestHeaders requestHeaders(String... namesAndValues) {
+        final Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            map.put(namesAndValues[i].toLowerCase(), namesAndValues[i + 1]);
+        }
+        return new RequestHeaders() {
+            @Override
+            public String getHeader(String name) {
+                return map.get(name.toLowerCase());
+            }
+        };
+    }
+
+    protected static List<Map.Entry<String, String>> headers(String... namesAndValues) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            answer.add(new AbstractMap.SimpleEntry<String, String>(namesAndValues[i], namesAndValues[i + 1]));
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving a request URI with the {@link MappingRuleTree} with trying
+ * every rule in turn as the {@link MappingRuleResolver} used to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.fabric8.gateway.support.MappingRuleResolverBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingRuleResolverBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int rules;
+
+    MappingRuleResolver resolver;
+    String requestURI;
+
+    @Setup
+    public void setup() {
+        HttpProxyRuleBase ruleBase = new HttpProxyRuleBase();
+        for (int i = 0; i < rules; i++) {
+            ruleBase.rule("/service" + i + "/customers/{customerId}/orders/{orderId}").to("http://host" + i + "/orders/{orderId}?customer={customerId}");
+            ruleBase.rule("/service" + i + "/{path}").to("http://host" + i + "/{path}");
+        }
+        resolver = new MappingRuleResolver();
+        resolver.setMappingRules(ruleBase);
+        requestURI = "/service" + (rules / 2) + "/customers/c123/orders/o456";
+        if (resolveByLoop() == null || resolveByTree() == null) {
+            throw new IllegalStateException("No rule matched " + requestURI);
+        }
+    }
+
+    @Benchmark
+    public MappingResult resolveByLoop() {
+        String[] paths = Paths.splitPaths(requestURI);
+        for (HttpProxyRule mappingRule : resolver.getMappingRules().getMappingRules().values()) {
+            MappingResult answer = mappingRule.matches(paths);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public MappingResult resolveByTree() {
+        return resolver.findMappingRule(requestURI);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MappingRuleResolverBenchmark.class.getSimpleName()).build()).run();
+    }
+}
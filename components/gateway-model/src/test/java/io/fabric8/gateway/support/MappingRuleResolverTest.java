@@ -16,6 +16,7 @@
 package io.fabric8.gateway.support;
 
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 
 import org.junit.Test;
@@ -24,6 +25,8 @@ import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  */
@@ -45,6 +48,43 @@ public class MappingRuleResolverTest extends MappingRuleTestSupport {
         assertRuleMatch("/customers/c123/address/abc", "http://another.com/addresses/abc/customerThingy/c123");
     }
 
+    @Test
+    public void testMostSpecificRuleWins() throws Exception {
+        HttpProxyRuleBase ruleBase = getResolver().getMappingRules();
+        ruleBase.rule("/members/{id}/orders").to("http://foo.com/orders/{id}");
+        ruleBase.rule("/members/admin").to("http://admin.com/members");
+        ruleBase.rule("/members/admin/{path}").to("http://admin.com/members/{path}");
+
+        assertRuleMatch("/members/admin", "http://admin.com/members");
+        assertRuleMatch("/members/admin/", "http://admin.com/members");
+        assertRuleMatch("/members/10001/orders", "http://foo.com/orders/10001");
+        assertRuleMatch("/members/admin/orders", "http://admin.com/members/orders");
+        assertRuleMatch("/members/admin/orders/1", "http://admin.com/members/orders/1");
+        // a trailing parameter catches the rest of the path when no longer rule matches
+        assertRuleMatch("/members/10001/orders/1", "http://foo.com/rest/members/10001/orders/1");
+        assertRuleMatch("/foo/a/b/c?x=y", "http://foo.com/cheese/a/b/c");
+        assertNull(getResolver().findMappingRule("/foo"));
+        assertNull(getResolver().findMappingRule("/customers/c123/address"));
+        assertNull(getResolver().findMappingRule("/"));
+    }
+
+    @Test
+    public void testRulesAreCompiledAgainWhenChanged() throws Exception {
+        MappingRuleTree tree = getResolver().getMappingRuleTree();
+        assertSame(tree, getResolver().getMappingRuleTree());
+        assertEquals(4, tree.size());
+        assertNull(getResolver().findMappingRule("/cheese"));
+
+        getResolver().getMappingRules().rule("/cheese").to("http://foo.com/cheese");
+        assertRuleMatch("/cheese", "http://foo.com/cheese");
+
+        getResolver().getMappingRules().rule("/cheese").getDestinationUriTemplates().clear();
+        getResolver().getMappingRules().getMappingRules().put("/cheese", new HttpProxyRule("/cheddar").to("http://foo.com/cheddar"));
+        getResolver().rulesChanged();
+        assertNull(getResolver().findMappingRule("/cheese"));
+        assertRuleMatch("/cheddar", "http://foo.com/cheddar");
+    }
+
     @Override
     protected void loadMappingRules(HttpProxyRuleBase ruleBase) {
         ruleBase.rule("/members").to("http://foo.com/rest/members");
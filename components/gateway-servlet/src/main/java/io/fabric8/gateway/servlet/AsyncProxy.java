@@ -0,0 +1,355 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+import io.fabric8.gateway.servlet.support.ProxySupport;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.io.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proxies requests using a Servlet 3.0 {@link AsyncContext} and a non blocking Jetty {@link HttpClient}
+ * so that no container thread is held while waiting for the back end service to respond.
+ * <br>
+ * The number of concurrent requests for each {@link HttpProxyRule} is limited so that a slow back end
+ * service cannot use up the connections and memory of the gateway for the other rules; further requests
+ * are rejected with a 503. Requests which the back end service does not answer within the timeout get a 504.
+ * <br>
+ * Note that the request and response bodies are still copied with the blocking servlet streams on the
+ * threads of the Jetty client, so a client which is slow to send its request body or to read the response
+ * holds a client thread while the copy waits on it; size the client thread pool for the slow clients.
+ */
+public class AsyncProxy {
+    private static final transient Logger LOG = LoggerFactory.getLogger(AsyncProxy.class);
+
+    private final HttpClient httpClient;
+    private final ConcurrentMap<HttpProxyRule, AtomicInteger> activeRequestsPerRule = new ConcurrentHashMap<HttpProxyRule, AtomicInteger>();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private int maxConcurrentRequests;
+    private long requestTimeout = 30000;
+
+    public AsyncProxy(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public void start() throws Exception {
+        httpClient.start();
+    }
+
+    public void stop() throws Exception {
+        httpClient.stop();
+    }
+
+    /**
+     * Starts an asynchronous proxy of the request to the back end service, or rejects it if the
+     * rule has too many requests in progress
+     */
+    public void proxy(ProxyDetails proxyDetails, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpProxyRule proxyRule = proxyDetails.getProxyRule();
+        AtomicInteger active = getActiveRequestCounter(proxyRule);
+        int limit = proxyRule.getMaxConcurrentRequests() > 0 ? proxyRule.getMaxConcurrentRequests() : maxConcurrentRequests;
+        if (active.incrementAndGet() > limit && limit > 0) {
+            active.decrementAndGet();
+            rejectedRequests.incrementAndGet();
+            LOG.debug("Rejecting {} as {} requests are in progress for {}", request.getRequestURI(), limit, proxyRule.getUriTemplate());
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many requests in progress for " + request.getRequestURI());
+            return;
+        }
+        activeRequests.incrementAndGet();
+        requests.incrementAndGet();
+
+        long timeout = proxyRule.getRequestTimeout() > 0 ? proxyRule.getRequestTimeout() : requestTimeout;
+        ProxyExchange exchange;
+        try {
+            AsyncContext asyncContext = request.startAsync(request, response);
+            // the exchange times out first so the container timeout is only a safety net
+            asyncContext.setTimeout(timeout > 0 ? timeout + 1000 : 0);
+            exchange = new ProxyExchange(proxyDetails, request, asyncContext, response, active);
+            asyncContext.addListener(exchange);
+        } catch (RuntimeException e) {
+            // no exchange will ever complete this request
+            active.decrementAndGet();
+            activeRequests.decrementAndGet();
+            throw e;
+        }
+        try {
+            exchange.setMethod(request.getMethod());
+            exchange.setURL(proxyDetails.getStringProxyURL());
+            if (timeout > 0) {
+                exchange.setTimeout(timeout);
+            }
+            copyRequestHeaders(request, exchange);
+            if (request.getContentLength() > 0 || request.getHeader("Transfer-Encoding") != null) {
+                // the client thread blocks reading this stream while a slow client sends the body
+                exchange.setRequestContentSource(request.getInputStream());
+            }
+            httpClient.send(exchange);
+        } catch (IOException e) {
+            exchange.fail(HttpServletResponse.SC_BAD_GATEWAY, e);
+        } catch (RuntimeException e) {
+            exchange.fail(HttpServletResponse.SC_BAD_GATEWAY, e);
+        }
+    }
+
+    protected void copyRequestHeaders(HttpServletRequest request, HttpExchange exchange) {
+        Enumeration<?> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            // the client sets the Host header of the back end service
+            if (ProxySupport.isHopByHopHeader(name) || name.equalsIgnoreCase("Host")) {
+                continue;
+            }
+            Enumeration<?> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                exchange.addRequestHeader(name, (String) values.nextElement());
+            }
+        }
+    }
+
+    protected AtomicInteger getActiveRequestCounter(HttpProxyRule proxyRule) {
+        AtomicInteger answer = activeRequestsPerRule.get(proxyRule);
+        if (answer == null) {
+            AtomicInteger counter = new AtomicInteger();
+            answer = activeRequestsPerRule.putIfAbsent(proxyRule, counter);
+            if (answer == null) {
+                answer = counter;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of requests in progress for the rule
+     */
+    public int getActiveRequests(HttpProxyRule proxyRule) {
+        AtomicInteger answer = activeRequestsPerRule.get(proxyRule);
+        return answer != null ? answer.get() : 0;
+    }
+
+    /**
+     * Returns the number of requests in progress for all rules
+     */
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public long getTimedOutRequests() {
+        return timedOutRequests.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Sets the default maximum number of concurrent requests for each rule, 0 for no limit
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets the default timeout in millis for the back end services to respond, 0 for no timeout
+     */
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Copies the response of the back end service to the client as it is received.
+     * <br>
+     * The response is only written while holding a lock which {@link #complete()} also takes, so a
+     * timeout cannot complete the request in the middle of a write. The lock is not the exchange itself
+     * as the Jetty client synchronizes on the exchange when its status changes.
+     */
+    protected class ProxyExchange extends HttpExchange implements AsyncListener {
+        private final ProxyDetails proxyDetails;
+        private final HttpProxyRule proxyRule;
+        private final HttpServletRequest request;
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final AtomicInteger active;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final Object lock = new Object();
+        private int responseStatus;
+
+        public ProxyExchange(ProxyDetails proxyDetails, HttpServletRequest request, AsyncContext asyncContext, HttpServletResponse response, AtomicInteger active) {
+            this.proxyDetails = proxyDetails;
+            this.proxyRule = proxyDetails.getProxyRule();
+            this.request = request;
+            this.asyncContext = asyncContext;
+            this.response = response;
+            this.active = active;
+        }
+
+        @Override
+        protected void onResponseStatus(Buffer version, int status, Buffer reason) throws IOException {
+            synchronized (lock) {
+                this.responseStatus = status;
+                if (!done.get()) {
+                    response.setStatus(status);
+                }
+            }
+        }
+
+        @Override
+        protected void onResponseHeader(Buffer name, Buffer value) throws IOException {
+            synchronized (lock) {
+                String headerName = name.toString();
+                if (done.get() || ProxySupport.isHopByHopHeader(headerName)) {
+                    return;
+                }
+                String headerValue = value.toString();
+                if (headerName.equalsIgnoreCase("Set-Cookie")) {
+                    headerValue = ProxySupport.replaceCookieAttributes(headerValue, proxyRule.getCookiePath(), proxyRule.getCookieDomain());
+                } else if (headerName.equalsIgnoreCase("Location") && responseStatus >= HttpServletResponse.SC_MULTIPLE_CHOICES
+                        && responseStatus < HttpServletResponse.SC_NOT_MODIFIED) {
+                    // redirect to this proxy rather than the proxied host like the synchronous proxy
+                    headerValue = proxyDetails.rewriteLocation(headerValue, request);
+                }
+                response.addHeader(headerName, headerValue);
+            }
+        }
+
+        /**
+         * Writes the content with the blocking servlet stream, so the client thread waits while a slow client reads
+         */
+        @Override
+        protected void onResponseContent(Buffer content) throws IOException {
+            synchronized (lock) {
+                if (!done.get()) {
+                    content.writeTo(response.getOutputStream());
+                }
+            }
+        }
+
+        @Override
+        protected void onResponseComplete() throws IOException {
+            complete();
+        }
+
+        @Override
+        protected void onConnectionFailed(Throwable x) {
+            fail(HttpServletResponse.SC_BAD_GATEWAY, x);
+        }
+
+        @Override
+        protected void onException(Throwable x) {
+            fail(HttpServletResponse.SC_BAD_GATEWAY, x);
+        }
+
+        @Override
+        protected void onExpire() {
+            timedOutRequests.incrementAndGet();
+            fail(HttpServletResponse.SC_GATEWAY_TIMEOUT, null);
+        }
+
+        protected void fail(int status, Throwable cause) {
+            if (status != HttpServletResponse.SC_GATEWAY_TIMEOUT) {
+                failedRequests.incrementAndGet();
+                LOG.debug("Failed to proxy request: " + cause, cause);
+            }
+            synchronized (lock) {
+                if (!done.get() && !response.isCommitted()) {
+                    try {
+                        response.sendError(status);
+                    } catch (IOException e) {
+                        LOG.debug("Could not send error " + status + ": " + e, e);
+                    } catch (IllegalStateException e) {
+                        // the response was committed concurrently
+                    }
+                }
+                complete();
+            }
+        }
+
+        protected void complete() {
+            synchronized (lock) {
+                if (done.compareAndSet(false, true)) {
+                    active.decrementAndGet();
+                    activeRequests.decrementAndGet();
+                    try {
+                        asyncContext.complete();
+                    } catch (IllegalStateException e) {
+                        // the container already completed the request
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            cancel();
+            timedOutRequests.incrementAndGet();
+            fail(HttpServletResponse.SC_GATEWAY_TIMEOUT, null);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            cancel();
+            fail(HttpServletResponse.SC_BAD_GATEWAY, event.getThrowable());
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            // make sure the counters are released if the container completes the request
+            if (done.compareAndSet(false, true)) {
+                active.decrementAndGet();
+                activeRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+}
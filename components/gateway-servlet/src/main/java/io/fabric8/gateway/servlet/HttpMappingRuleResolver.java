@@ -51,4 +51,11 @@ public class HttpMappingRuleResolver {
     public HttpProxyRuleBase getMappingRules() {
         return resolver.getMappingRules();
     }
+
+    /**
+     * Notifies the resolver that a rule was replaced or changed in place so they are compiled again.
+     */
+    public void rulesChanged() {
+        resolver.rulesChanged();
+    }
 }
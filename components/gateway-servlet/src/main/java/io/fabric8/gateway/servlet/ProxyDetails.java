@@ -20,6 +20,8 @@ import io.fabric8.gateway.model.HttpProxyRule;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 
+import javax.servlet.http.HttpServletRequest;
+
 /**
  */
 public class ProxyDetails {
@@ -93,6 +95,12 @@ public class ProxyDetails {
         return stringProxyURL;
     }
 
+    /**
+     * Creates a new unpooled {@link HttpClient} for every call.
+     *
+     * @deprecated use the pooled client shared by the servlet, see {@link ProxyServlet#getHttpClient()}
+     */
+    @Deprecated
     public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest) {
         HttpClient client = new HttpClient();
         return client;
@@ -110,4 +118,17 @@ public class ProxyDetails {
         return proxyRule;
     }
 
+    /**
+     * Returns the location of a redirect of the back end service modified to go to this proxy
+     * rather than the proxied host
+     */
+    public String rewriteLocation(String location, HttpServletRequest request) {
+        String myHostName = request.getServerName();
+        if (request.getServerPort() != 80) {
+            myHostName += ":" + request.getServerPort();
+        }
+        myHostName += request.getContextPath();
+        return location.replace(getProxyHostAndPort() + getProxyPath(), myHostName);
+    }
+
 }
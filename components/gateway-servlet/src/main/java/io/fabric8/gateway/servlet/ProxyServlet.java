@@ -15,11 +15,19 @@
  */
 package io.fabric8.gateway.servlet;
 
-import io.fabric8.utils.IOHelpers;
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.DiskCacheTier;
+import io.fabric8.gateway.cache.ResponseCache;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
+import io.fabric8.gateway.servlet.support.BufferPool;
+import io.fabric8.gateway.servlet.support.CacheSupport;
+import io.fabric8.gateway.servlet.support.CachingOutputStream;
+import io.fabric8.gateway.servlet.support.FileItemPartSource;
 import io.fabric8.gateway.servlet.support.NonBindingSocketFactory;
 import io.fabric8.gateway.servlet.support.ProxySupport;
+import io.fabric8.gateway.servlet.support.SpooledRequestEntity;
+import io.fabric8.gateway.servlet.support.StreamingRequestEntity;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
@@ -28,7 +36,9 @@ import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -36,13 +46,13 @@ import org.apache.commons.httpclient.methods.OptionsMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +61,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -63,6 +72,37 @@ import java.util.Map;
 
 /**
  * Based on code from http://edwardstx.net/2010/06/http-proxy-servlet/
+ * <br>
+ * Requests are sent to the back end services using a shared {@link HttpClient} with a pool of
+ * keep-alive connections which can be configured with the following servlet init parameters:
+ * <ul>
+ *     <li>{@value #MAX_CONNECTIONS_PER_HOST}: the maximum number of connections to each back end host (default 20)</li>
+ *     <li>{@value #MAX_TOTAL_CONNECTIONS}: the maximum number of connections to all back end hosts (default 200)</li>
+ *     <li>{@value #CONNECTION_TIMEOUT}: the timeout in millis to connect to a back end host (default 30000)</li>
+ *     <li>{@value #SOCKET_TIMEOUT}: the timeout in millis waiting for data from a back end host, 0 for none (default 0)</li>
+ *     <li>{@value #IDLE_CONNECTION_TIMEOUT}: the time in millis after which idle connections are closed (default 60000)</li>
+ *     <li>{@value #STALE_CHECKING_ENABLED}: whether pooled connections are checked before being reused (default true)</li>
+ *     <li>{@value #BUFFER_SIZE}: the size of the buffers used to copy request and response bodies (default 8192)</li>
+ * </ul>
+ * By default multipart requests are parsed and sent again to the back end service, with uploaded files
+ * above the maximum file upload size kept in temporary files. If the {@value #STREAM_REQUEST_BODIES} init
+ * parameter is true the bodies of POST and PUT requests are streamed to the back end service as they are
+ * received using chunked transfer encoding, so the proxied request starts before the client upload finishes.
+ * If the {@value #REQUEST_BODY_SPILL_THRESHOLD} init parameter is also set, the body is read before the
+ * proxied request is sent instead, with bodies above the threshold in bytes spilled to temporary files.
+ * <br>
+ * If the {@value #ASYNC_PROXY} init parameter is true and the servlet supports asynchronous requests, requests
+ * are proxied by an {@link AsyncProxy} so that no container thread waits for the back end services. The
+ * {@value #MAX_CONCURRENT_REQUESTS} and {@value #REQUEST_TIMEOUT} init parameters set the default limit on
+ * concurrent requests for each rule (default 0 for no limit) and the timeout in millis (default 30000), which
+ * can be overridden by {@link HttpProxyRule#setMaxConcurrentRequests(int)} and
+ * {@link HttpProxyRule#setRequestTimeout(long)}.
+ * <br>
+ * If the {@value #CACHE_MAX_HEAP_BYTES} init parameter is set, GET responses are cached following RFC 7234 in a
+ * {@link ResponseCache} of that many bytes, with responses above {@value #CACHE_MAX_ENTRY_BYTES} bytes (default 1MB)
+ * not cached. If the {@value #CACHE_DISK_FILE} init parameter is also set, responses evicted from the heap are moved
+ * to a memory mapped file of {@value #CACHE_DISK_BYTES} bytes (default 64MB). Requests proxied asynchronously
+ * are not cached.
  */
 public abstract class ProxyServlet extends HttpServlet {
     private static final transient Logger LOG = LoggerFactory.getLogger(ProxyServlet.class);
@@ -97,6 +137,23 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private static final File FILE_UPLOAD_TEMP_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
 
+    public static final String MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
+    public static final String MAX_TOTAL_CONNECTIONS = "maxTotalConnections";
+    public static final String CONNECTION_TIMEOUT = "connectionTimeout";
+    public static final String SOCKET_TIMEOUT = "socketTimeout";
+    public static final String IDLE_CONNECTION_TIMEOUT = "idleConnectionTimeout";
+    public static final String STALE_CHECKING_ENABLED = "staleCheckingEnabled";
+    public static final String BUFFER_SIZE = "bufferSize";
+    public static final String STREAM_REQUEST_BODIES = "streamRequestBodies";
+    public static final String REQUEST_BODY_SPILL_THRESHOLD = "requestBodySpillThreshold";
+    public static final String ASYNC_PROXY = "asyncProxy";
+    public static final String MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+    public static final String REQUEST_TIMEOUT = "requestTimeout";
+    public static final String CACHE_MAX_HEAP_BYTES = "cacheMaxHeapBytes";
+    public static final String CACHE_MAX_ENTRY_BYTES = "cacheMaxEntryBytes";
+    public static final String CACHE_DISK_FILE = "cacheDiskFile";
+    public static final String CACHE_DISK_BYTES = "cacheDiskBytes";
+
     private HttpMappingRuleResolver resolver = new HttpMappingRuleResolver();
 
     /**
@@ -104,6 +161,15 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private int intMaxFileUploadSize = 5 * 1024 * 1024;
 
+    private transient MultiThreadedHttpConnectionManager connectionManager;
+    private transient IdleConnectionTimeoutThread idleConnectionReaper;
+    private transient HttpClient httpClient;
+    private transient BufferPool bufferPool;
+    private boolean streamRequestBodies;
+    private int requestBodySpillThreshold;
+    private transient AsyncProxy asyncProxy;
+    private transient ResponseCache responseCache;
+
     /**
      * Initialize the <code>ProxyServlet</code>
      *
@@ -111,11 +177,123 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     @Override
     public void init(ServletConfig config) throws ServletException {
+        super.init(config);
         HttpProxyRuleBase ruleBase = new HttpProxyRuleBase();
         loadRuleBase(config, ruleBase);
         resolver.setMappingRules(ruleBase);
         Protocol.registerProtocol("http", new Protocol("http", new NonBindingSocketFactory(), 80));
         Protocol.registerProtocol("https", new Protocol("https", new NonBindingSocketFactory(), 443));
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(getIntParameter(config, MAX_CONNECTIONS_PER_HOST, 20));
+        params.setMaxTotalConnections(getIntParameter(config, MAX_TOTAL_CONNECTIONS, 200));
+        params.setConnectionTimeout(getIntParameter(config, CONNECTION_TIMEOUT, 30000));
+        params.setSoTimeout(getIntParameter(config, SOCKET_TIMEOUT, 0));
+        params.setStaleCheckingEnabled(!"false".equalsIgnoreCase(config.getInitParameter(STALE_CHECKING_ENABLED)));
+        httpClient = new HttpClient(connectionManager);
+
+        int idleConnectionTimeout = getIntParameter(config, IDLE_CONNECTION_TIMEOUT, 60000);
+        if (idleConnectionTimeout > 0) {
+            idleConnectionReaper = new IdleConnectionTimeoutThread();
+            idleConnectionReaper.setName("ProxyServlet idle connection reaper");
+            idleConnectionReaper.setConnectionTimeout(idleConnectionTimeout);
+            idleConnectionReaper.setTimeoutInterval(Math.max(1000, idleConnectionTimeout / 2));
+            idleConnectionReaper.addConnectionManager(connectionManager);
+            idleConnectionReaper.start();
+        }
+        bufferPool = new BufferPool(getIntParameter(config, BUFFER_SIZE, 8192), params.getMaxTotalConnections());
+        streamRequestBodies = "true".equalsIgnoreCase(config.getInitParameter(STREAM_REQUEST_BODIES));
+        requestBodySpillThreshold = getIntParameter(config, REQUEST_BODY_SPILL_THRESHOLD, 0);
+
+        if ("true".equalsIgnoreCase(config.getInitParameter(ASYNC_PROXY))) {
+            org.eclipse.jetty.client.HttpClient asyncHttpClient = new org.eclipse.jetty.client.HttpClient();
+            asyncHttpClient.setConnectorType(org.eclipse.jetty.client.HttpClient.CONNECTOR_SELECT_CHANNEL);
+            asyncHttpClient.setMaxConnectionsPerAddress(params.getDefaultMaxConnectionsPerHost());
+            asyncHttpClient.setConnectTimeout(getIntParameter(config, CONNECTION_TIMEOUT, 30000));
+            if (idleConnectionTimeout > 0) {
+                asyncHttpClient.setIdleTimeout(idleConnectionTimeout);
+            }
+            asyncProxy = new AsyncProxy(asyncHttpClient);
+            asyncProxy.setMaxConcurrentRequests(getIntParameter(config, MAX_CONCURRENT_REQUESTS, 0));
+            asyncProxy.setRequestTimeout(getIntParameter(config, REQUEST_TIMEOUT, 30000));
+            try {
+                asyncProxy.start();
+            } catch (Exception e) {
+                throw new ServletException("Failed to start the asynchronous HTTP client: " + e, e);
+            }
+        }
+
+        int cacheMaxHeapBytes = getIntParameter(config, CACHE_MAX_HEAP_BYTES, 0);
+        if (cacheMaxHeapBytes > 0) {
+            responseCache = new ResponseCache(cacheMaxHeapBytes,
+                    getIntParameter(config, CACHE_MAX_ENTRY_BYTES, ResponseCache.DEFAULT_MAX_ENTRY_BYTES));
+            String cacheDiskFile = config.getInitParameter(CACHE_DISK_FILE);
+            if (cacheDiskFile != null && cacheDiskFile.trim().length() > 0) {
+                try {
+                    responseCache.setDiskTier(new DiskCacheTier(new File(cacheDiskFile.trim()),
+                            getIntParameter(config, CACHE_DISK_BYTES, 64 * 1024 * 1024)));
+                } catch (IOException e) {
+                    throw new ServletException("Failed to create the response cache file " + cacheDiskFile + ": " + e, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (asyncProxy != null) {
+            try {
+                asyncProxy.stop();
+            } catch (Exception e) {
+                LOG.warn("Failed to stop the asynchronous HTTP client: " + e, e);
+            }
+            asyncProxy = null;
+        }
+        if (responseCache != null) {
+            responseCache.close();
+            responseCache = null;
+        }
+        if (idleConnectionReaper != null) {
+            idleConnectionReaper.shutdown();
+            idleConnectionReaper = null;
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        super.destroy();
+    }
+
+    private static int getIntParameter(ServletConfig config, String name, int defaultValue) throws ServletException {
+        String value = config.getInitParameter(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid value for init parameter " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Proxies the request asynchronously if the {@value #ASYNC_PROXY} mode is enabled and the request
+     * supports it, otherwise the request is proxied by the <code>doXXX</code> method for its HTTP method
+     */
+    @Override
+    protected void service(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse)
+            throws ServletException, IOException {
+        if (asyncProxy == null || !httpServletRequest.isAsyncSupported()) {
+            super.service(httpServletRequest, httpServletResponse);
+            return;
+        }
+        ProxyDetails proxyDetails = createProxyDetails(httpServletRequest, httpServletResponse);
+        if (!proxyDetails.isValid()) {
+            noMappingFound(httpServletRequest, httpServletResponse);
+        } else {
+            asyncProxy.proxy(proxyDetails, httpServletRequest, httpServletResponse);
+        }
     }
 
     /**
@@ -140,11 +318,23 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!proxyDetails.isValid()) {
             noMappingFound(httpServletRequest, httpServletResponse);
         } else {
+            CacheLookup cacheLookup = null;
+            if (responseCache != null) {
+                cacheLookup = responseCache.lookup(proxyDetails.getProxyRule().getUriTemplate().getUriTemplate(), httpServletRequest.getMethod(),
+                        CacheSupport.cacheKey(httpServletRequest), CacheSupport.requestHeaders(httpServletRequest));
+                if (cacheLookup.isHit()) {
+                    CacheSupport.respond(cacheLookup, httpServletResponse);
+                    return;
+                }
+            }
             GetMethod getMethodProxyRequest = new GetMethod(proxyDetails.getStringProxyURL());
             // Forward the request headers
             setProxyRequestHeaders(proxyDetails, httpServletRequest, getMethodProxyRequest);
+            if (CacheSupport.isRevalidating(cacheLookup, httpServletRequest)) {
+                CacheSupport.addValidators(cacheLookup, getMethodProxyRequest);
+            }
             // Execute the proxy request
-            this.executeProxyRequest(proxyDetails, getMethodProxyRequest, httpServletRequest, httpServletResponse);
+            this.executeProxyRequest(proxyDetails, getMethodProxyRequest, httpServletRequest, httpServletResponse, cacheLookup);
         }
     }
 
@@ -169,13 +359,15 @@ public abstract class ProxyServlet extends HttpServlet {
             // Forward the request headers
             setProxyRequestHeaders(proxyDetails, httpServletRequest, postMethodProxyRequest);
             // Check if this is a mulitpart (file upload) POST
-            if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
+            if (isStreamRequestBodies()) {
+                this.handleStreamingEntity(postMethodProxyRequest, httpServletRequest);
+            } else if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
                 this.handleMultipartPost(postMethodProxyRequest, httpServletRequest);
             } else {
                 this.handleEntity(postMethodProxyRequest, httpServletRequest);
             }
             // Execute the proxy request
-            this.executeProxyRequest(proxyDetails, postMethodProxyRequest, httpServletRequest, httpServletResponse);
+            this.executeProxyRequest(proxyDetails, postMethodProxyRequest, httpServletRequest, httpServletResponse, null);
         }
     }
 
@@ -197,12 +389,14 @@ public abstract class ProxyServlet extends HttpServlet {
         } else {
             PutMethod putMethodProxyRequest = new PutMethod(proxyDetails.getStringProxyURL());
             setProxyRequestHeaders(proxyDetails, httpServletRequest, putMethodProxyRequest);
-            if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
+            if (isStreamRequestBodies()) {
+                handleStreamingEntity(putMethodProxyRequest, httpServletRequest);
+            } else if (ServletFileUpload.isMultipartContent(httpServletRequest)) {
                 handleMultipartPost(putMethodProxyRequest, httpServletRequest);
             } else {
                 handleEntity(putMethodProxyRequest, httpServletRequest);
             }
-            executeProxyRequest(proxyDetails, putMethodProxyRequest, httpServletRequest, httpServletResponse);
+            executeProxyRequest(proxyDetails, putMethodProxyRequest, httpServletRequest, httpServletResponse, null);
         }
     }
 
@@ -226,7 +420,7 @@ public abstract class ProxyServlet extends HttpServlet {
             // Forward the request headers
             setProxyRequestHeaders(proxyDetails, httpServletRequest, deleteMethodProxyRequest);
             // Execute the proxy request
-            executeProxyRequest(proxyDetails, deleteMethodProxyRequest, httpServletRequest, httpServletResponse);
+            executeProxyRequest(proxyDetails, deleteMethodProxyRequest, httpServletRequest, httpServletResponse, null);
         }
     }
 
@@ -238,18 +432,19 @@ public abstract class ProxyServlet extends HttpServlet {
         } else {
             OptionsMethod optionsMethodProxyRequest = new OptionsMethod(proxyDetails.getStringProxyURL());
             setProxyRequestHeaders(proxyDetails, httpServletRequest, optionsMethodProxyRequest);
-            executeProxyRequest(proxyDetails, optionsMethodProxyRequest, httpServletRequest, httpServletResponse);
+            executeProxyRequest(proxyDetails, optionsMethodProxyRequest, httpServletRequest, httpServletResponse, null);
         }
     }
 
     protected ProxyDetails createProxyDetails(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) {
         HttpMappingResult mappingRule = getResolver().findMappingRule(httpServletRequest, httpServletResponse);
+        if (mappingRule == null) {
+            return new ProxyDetails(false, null, null);
+        }
         final HttpProxyRule proxyRule = mappingRule.getProxyRule();
-        if (mappingRule != null) {
-            String destinationUrl = mappingRule.getDestinationUrl(new HttpClientRequestFacade(httpServletRequest, httpServletResponse));
-            if (destinationUrl != null) {
-                return new ProxyDetails(true, destinationUrl, proxyRule);
-            }
+        String destinationUrl = mappingRule.getDestinationUrl(new HttpClientRequestFacade(httpServletRequest, httpServletResponse));
+        if (destinationUrl != null) {
+            return new ProxyDetails(true, destinationUrl, proxyRule);
         }
         return new ProxyDetails(false, null, proxyRule);
     }
@@ -294,13 +489,11 @@ public abstract class ProxyServlet extends HttpServlet {
                     // Add the part to the list
                     listParts.add(stringPart);
                 } else {
-                    // The item is a file upload, so we create a FilePart
+                    // The item is a file upload, so we create a FilePart which reads the
+                    // uploaded file contents from memory or the temporary file as it is sent
                     FilePart filePart = new FilePart(
                             fileItemCurrent.getFieldName(),    // The field name
-                            new ByteArrayPartSource(
-                                    fileItemCurrent.getName(), // The uploaded file name
-                                    fileItemCurrent.get()      // The uploaded file contents
-                            )
+                            new FileItemPartSource(fileItemCurrent)
                     );
                     // Add the part to the list
                     listParts.add(filePart);
@@ -325,6 +518,32 @@ public abstract class ProxyServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Sets up the given {@link EntityEnclosingMethod} to stream the body of the given
+     * {@link javax.servlet.http.HttpServletRequest} unchanged, or to spill it to a temporary
+     * file first if a spill threshold is configured
+     *
+     * @param entityEnclosingMethod The {@link EntityEnclosingMethod} that we are
+     *                               configuring to send the request body
+     * @param httpServletRequest     The {@link javax.servlet.http.HttpServletRequest} that contains
+     *                               the body to be sent via the {@link EntityEnclosingMethod}
+     */
+    private void handleStreamingEntity(EntityEnclosingMethod entityEnclosingMethod, HttpServletRequest httpServletRequest) throws IOException {
+        if (httpServletRequest.getContentLength() == 0) {
+            return;
+        }
+        // the Content-Type header including any multipart boundary was copied from the client request
+        String contentType = httpServletRequest.getContentType();
+        RequestEntity entity;
+        if (requestBodySpillThreshold > 0) {
+            entity = new SpooledRequestEntity(httpServletRequest.getInputStream(), contentType,
+                    requestBodySpillThreshold, FILE_UPLOAD_TEMP_DIRECTORY, bufferPool);
+        } else {
+            entity = new StreamingRequestEntity(httpServletRequest.getInputStream(), contentType, bufferPool);
+        }
+        entityEnclosingMethod.setRequestEntity(entity);
+    }
+
     /**
      * Sets up the given {@link PostMethod} to send the same standard
      * data as was sent in the given {@link javax.servlet.http.HttpServletRequest}
@@ -355,8 +574,20 @@ public abstract class ProxyServlet extends HttpServlet {
         if (contentType != null) {
             contentType = contentType.toLowerCase();
             if (contentType.contains("json") || contentType.contains("xml") || contentType.contains("application") || contentType.contains("text")) {
-                String body = IOHelpers.readFully(httpServletRequest.getReader());
-                entity = new StringRequestEntity(body, contentType, httpServletRequest.getCharacterEncoding());
+                // copy the raw bytes so the body is not decoded and encoded again
+                if (requestBodySpillThreshold > 0) {
+                    // large bodies go to disk rather than the heap
+                    entity = new SpooledRequestEntity(httpServletRequest.getInputStream(), httpServletRequest.getContentType(),
+                            requestBodySpillThreshold, FILE_UPLOAD_TEMP_DIRECTORY, bufferPool);
+                } else {
+                    byte[] buffer = bufferPool.acquire();
+                    try {
+                        byte[] body = ProxySupport.readFully(httpServletRequest.getInputStream(), httpServletRequest.getContentLength(), buffer);
+                        entity = new ByteArrayRequestEntity(body, httpServletRequest.getContentType());
+                    } finally {
+                        bufferPool.release(buffer);
+                    }
+                }
                 entityEnclosingMethod.setRequestEntity(entity);
             }
         }
@@ -380,23 +611,60 @@ public abstract class ProxyServlet extends HttpServlet {
      * @param httpMethodProxyRequest An object representing the proxy request to be made
      * @param httpServletResponse    An object by which we can send the proxied
      *                               response back to the client
+     * @param cacheLookup            The lookup of a GET request in the response cache or null
      * @throws java.io.IOException            Can be thrown by the {@link HttpClient}.executeMethod
      * @throws javax.servlet.ServletException Can be thrown to indicate that another error has occurred
      */
     private void executeProxyRequest(
             ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest,
             HttpServletRequest httpServletRequest,
-            HttpServletResponse httpServletResponse)
+            HttpServletResponse httpServletResponse, CacheLookup cacheLookup)
             throws IOException, ServletException {
         httpMethodProxyRequest.setDoAuthentication(false);
         httpMethodProxyRequest.setFollowRedirects(false);
+        boolean completed = false;
+        try {
+            proxyResponse(proxyDetails, httpMethodProxyRequest, httpServletRequest, httpServletResponse, cacheLookup);
+            completed = true;
+        } finally {
+            if (!completed) {
+                // the client went away or the back end failed part way through the response, so lets
+                // close the connection rather than drain the rest of the body on this thread
+                httpMethodProxyRequest.abort();
+            }
+            // return the connection to the pool, which discards it if it was aborted
+            httpMethodProxyRequest.releaseConnection();
+            if (httpMethodProxyRequest instanceof EntityEnclosingMethod) {
+                RequestEntity entity = ((EntityEnclosingMethod) httpMethodProxyRequest).getRequestEntity();
+                if (entity instanceof SpooledRequestEntity) {
+                    ((SpooledRequestEntity) entity).release();
+                }
+            }
+        }
+    }
 
-        // Create a default HttpClient
-        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest);
-
+    private void proxyResponse(
+            ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse, CacheLookup cacheLookup)
+            throws IOException, ServletException {
         // Execute the request
         int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
 
+        boolean cacheResponse = false;
+        if (responseCache != null) {
+            responseCache.invalidate(httpMethodProxyRequest.getName(), CacheSupport.cacheKey(httpServletRequest), intProxyResponseCode);
+            if (cacheLookup != null) {
+                List<Map.Entry<String, String>> headers = CacheSupport.headers(httpMethodProxyRequest.getResponseHeaders());
+                if (intProxyResponseCode == HttpServletResponse.SC_NOT_MODIFIED && CacheSupport.isRevalidating(cacheLookup, httpServletRequest)) {
+                    // the stale response is still valid so lets serve it
+                    CacheSupport.respond(responseCache.revalidate(cacheLookup, headers), httpServletResponse);
+                    return;
+                }
+                cacheResponse = responseCache.isStorable(cacheLookup, intProxyResponseCode, headers);
+            }
+        }
+
         // Check if the proxy response is a redirect
         // The following code is adapted from org.tigris.noodle.filters.CheckForRedirect
         // Hooray for open source software
@@ -409,12 +677,7 @@ public abstract class ProxyServlet extends HttpServlet {
                         + " but no " + STRING_LOCATION_HEADER + " header was found in the response");
             }
             // Modify the redirect to go to this proxy servlet rather that the proxied host
-            String stringMyHostName = httpServletRequest.getServerName();
-            if (httpServletRequest.getServerPort() != 80) {
-                stringMyHostName += ":" + httpServletRequest.getServerPort();
-            }
-            stringMyHostName += httpServletRequest.getContextPath();
-            httpServletResponse.sendRedirect(stringLocation.replace(proxyDetails.getProxyHostAndPort() + proxyDetails.getProxyPath(), stringMyHostName));
+            httpServletResponse.sendRedirect(proxyDetails.rewriteLocation(stringLocation, httpServletRequest));
             return;
         } else if (intProxyResponseCode == HttpServletResponse.SC_NOT_MODIFIED) {
             // 304 needs special handling.  See:
@@ -462,13 +725,33 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!noData) {
             // Send the content to the client
             InputStream inputStreamProxyResponse = httpMethodProxyRequest.getResponseBodyAsStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamProxyResponse);
-            OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
-            int intNextByte;
-            while ((intNextByte = bufferedInputStream.read()) != -1) {
-                outputStreamClientResponse.write(intNextByte);
+            if (inputStreamProxyResponse != null) {
+                OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
+                CachingOutputStream cachingOutputStream = null;
+                if (cacheResponse) {
+                    cachingOutputStream = new CachingOutputStream(outputStreamClientResponse, responseCache.getMaxEntryBytes());
+                    outputStreamClientResponse = cachingOutputStream;
+                }
+                byte[] buffer = bufferPool.acquire();
+                try {
+                    ProxySupport.copy(inputStreamProxyResponse, outputStreamClientResponse, buffer);
+                } finally {
+                    bufferPool.release(buffer);
+                }
+                if (cachingOutputStream != null && cachingOutputStream.getCopy() != null) {
+                    storeResponse(cacheLookup, httpMethodProxyRequest, cachingOutputStream.getCopy());
+                }
+                return;
             }
         }
+        if (cacheResponse) {
+            storeResponse(cacheLookup, httpMethodProxyRequest, new byte[0]);
+        }
+    }
+
+    private void storeResponse(CacheLookup cacheLookup, HttpMethod httpMethodProxyRequest, byte[] body) {
+        responseCache.store(cacheLookup, httpMethodProxyRequest.getStatusCode(),
+                CacheSupport.headers(httpMethodProxyRequest.getResponseHeaders()), body);
     }
 
     public String getServletInfo() {
@@ -480,6 +763,34 @@ public abstract class ProxyServlet extends HttpServlet {
         return resolver;
     }
 
+    /**
+     * Returns the shared client used to send requests to the back end services
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the asynchronous proxy or null if the {@value #ASYNC_PROXY} mode is not enabled
+     */
+    public AsyncProxy getAsyncProxy() {
+        return asyncProxy;
+    }
+
+    /**
+     * Returns the response cache or null if the {@value #CACHE_MAX_HEAP_BYTES} init parameter is not set
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns the number of pooled connections to the back end services
+     */
+    public int getConnectionsInPool() {
+        return connectionManager != null ? connectionManager.getConnectionsInPool() : 0;
+    }
+
     /**
      * Retrieves all of the headers from the servlet request and sets them on
      * the proxy request
@@ -520,6 +831,22 @@ public abstract class ProxyServlet extends HttpServlet {
     }
 
 
+    /**
+     * Returns true if request bodies are streamed to the back end services rather than
+     * multipart requests being parsed first
+     */
+    public boolean isStreamRequestBodies() {
+        return streamRequestBodies;
+    }
+
+    /**
+     * Returns the size in bytes above which streamed request bodies are spilled to temporary files
+     * before the request is sent, or 0 if they are sent as they are received
+     */
+    public int getRequestBodySpillThreshold() {
+        return requestBodySpillThreshold;
+    }
+
     private int getMaxFileUploadSize() {
         return this.intMaxFileUploadSize;
     }
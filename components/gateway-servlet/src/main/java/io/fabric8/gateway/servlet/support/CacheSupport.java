@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import io.fabric8.gateway.cache.CacheLookup;
+import io.fabric8.gateway.cache.RequestHeaders;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper methods to use the {@link io.fabric8.gateway.cache.ResponseCache} with servlet requests
+ * and the responses of the back end services.
+ */
+public final class CacheSupport {
+
+    private CacheSupport() {
+    }
+
+    /**
+     * Returns a view of the headers of a request for the cache
+     */
+    public static RequestHeaders requestHeaders(final HttpServletRequest request) {
+        return new RequestHeaders() {
+            @Override
+            public String getHeader(String name) {
+                Enumeration<?> values = request.getHeaders(name);
+                if (values == null || !values.hasMoreElements()) {
+                    return null;
+                }
+                StringBuilder buffer = new StringBuilder((String) values.nextElement());
+                while (values.hasMoreElements()) {
+                    buffer.append(',').append(values.nextElement());
+                }
+                return buffer.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns the request URI including the query string which identifies the cached responses
+     */
+    public static String cacheKey(HttpServletRequest request) {
+        String queryString = request.getQueryString();
+        return queryString != null ? request.getRequestURI() + "?" + queryString : request.getRequestURI();
+    }
+
+    /**
+     * Returns the headers of a response of a back end service for the cache
+     */
+    public static List<Map.Entry<String, String>> headers(Header[] headers) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>(headers.length);
+        for (Header header : headers) {
+            answer.add(new AbstractMap.SimpleImmutableEntry<String, String>(header.getName(), header.getValue()));
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if the request revalidates the stale response of the lookup, which is the case unless
+     * the client sent its own conditional headers whose <code>304</code> response must be relayed to it
+     */
+    public static boolean isRevalidating(CacheLookup lookup, HttpServletRequest request) {
+        return lookup != null && lookup.isStale()
+                && request.getHeader("If-None-Match") == null && request.getHeader("If-Modified-Since") == null;
+    }
+
+    /**
+     * Adds the validators of the stale response of the lookup to the request to the back end service
+     */
+    public static void addValidators(CacheLookup lookup, HttpMethod method) {
+        if (lookup.getIfNoneMatch() != null) {
+            method.setRequestHeader("If-None-Match", lookup.getIfNoneMatch());
+        }
+        if (lookup.getIfModifiedSince() != null) {
+            method.setRequestHeader("If-Modified-Since", lookup.getIfModifiedSince());
+        }
+    }
+
+    /**
+     * Sends the cached response of the lookup with its <code>Age</code>
+     */
+    public static void respond(CacheLookup lookup, HttpServletResponse response) throws IOException {
+        response.setStatus(lookup.getResponse().getStatus());
+        for (Map.Entry<String, String> header : lookup.getHeaders()) {
+            response.addHeader(header.getKey(), header.getValue());
+        }
+        response.setHeader("Age", lookup.getAge());
+        byte[] body = lookup.getBody();
+        if (body.length > 0) {
+            response.getOutputStream().write(body);
+        }
+    }
+}
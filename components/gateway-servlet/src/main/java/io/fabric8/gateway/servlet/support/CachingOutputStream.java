@@ -0,0 +1,65 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes to an output stream while keeping a copy of the data for the response cache,
+ * which is dropped once it exceeds the maximum number of bytes.
+ */
+public class CachingOutputStream extends FilterOutputStream {
+    private final int maxBytes;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    public CachingOutputStream(OutputStream out, int maxBytes) {
+        super(out);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (reserve(1)) {
+            copy.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (reserve(len)) {
+            copy.write(b, off, len);
+        }
+    }
+
+    /**
+     * Returns the data written or null if there was more than the maximum number of bytes
+     */
+    public byte[] getCopy() {
+        return copy != null ? copy.toByteArray() : null;
+    }
+
+    private boolean reserve(int length) {
+        if (copy != null && copy.size() + length > maxBytes) {
+            copy = null;
+        }
+        return copy != null;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link PartSource} which reads an uploaded {@link FileItem} from memory or from its
+ * temporary file, so that large uploads are not copied onto the heap.
+ */
+public class FileItemPartSource implements PartSource {
+    private final FileItem fileItem;
+
+    public FileItemPartSource(FileItem fileItem) {
+        this.fileItem = fileItem;
+    }
+
+    @Override
+    public long getLength() {
+        return fileItem.getSize();
+    }
+
+    @Override
+    public String getFileName() {
+        return fileItem.getName();
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+        return fileItem.getInputStream();
+    }
+}
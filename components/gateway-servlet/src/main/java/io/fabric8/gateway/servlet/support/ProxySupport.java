@@ -18,6 +18,10 @@ package io.fabric8.gateway.servlet.support;
 import org.apache.commons.httpclient.Header;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -89,4 +93,34 @@ public final class ProxySupport {
     public static boolean isSetCookieHeader(final Header header) {
         return header.getName().equalsIgnoreCase("Set-Cookie");
     }
+
+    /**
+     * Copies the input stream to the output stream using the given buffer.
+     *
+     * @return the number of bytes copied.
+     */
+    public static long copy(final InputStream in, final OutputStream out, final byte[] buffer) throws IOException {
+        long count = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the input stream fully using the given buffer.
+     * <br>
+     * The expected length only sizes the initial capacity up to 16 buffers, as it is sent by
+     * the client and may be much bigger than the data which actually arrives.
+     *
+     * @param contentLength the expected length, or a negative value if it is not known.
+     */
+    public static byte[] readFully(final InputStream in, final int contentLength, final byte[] buffer) throws IOException {
+        int capacity = contentLength > 0 ? Math.min(contentLength, buffer.length * 16) : buffer.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(capacity);
+        copy(in, out, buffer);
+        return out.toByteArray();
+    }
 }
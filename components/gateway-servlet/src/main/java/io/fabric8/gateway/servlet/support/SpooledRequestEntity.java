@@ -0,0 +1,131 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A repeatable {@link RequestEntity} which reads the whole body of the client request before it is
+ * sent to the back end service, keeping it in memory up to a threshold and spilling it to a temporary
+ * file above it, so that large bodies are not held on the heap.
+ * <br>
+ * {@link #release()} must be called once the request has completed to delete the temporary file.
+ */
+public class SpooledRequestEntity implements RequestEntity {
+    private static final transient Logger LOG = LoggerFactory.getLogger(SpooledRequestEntity.class);
+
+    private final String contentType;
+    private final BufferPool bufferPool;
+    private byte[] data;
+    private File file;
+    private long contentLength;
+
+    public SpooledRequestEntity(InputStream in, String contentType, int threshold, File directory, BufferPool bufferPool) throws IOException {
+        this.contentType = contentType;
+        this.bufferPool = bufferPool;
+        byte[] buffer = bufferPool.acquire();
+        try {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(threshold, buffer.length));
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                contentLength += n;
+                if (contentLength > threshold) {
+                    spill(memory, buffer, n, in, directory);
+                    return;
+                }
+                memory.write(buffer, 0, n);
+            }
+            data = memory.toByteArray();
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void spill(ByteArrayOutputStream memory, byte[] buffer, int n, InputStream in, File directory) throws IOException {
+        file = File.createTempFile("gateway-request-", ".tmp", directory);
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                memory.writeTo(out);
+                out.write(buffer, 0, n);
+                contentLength += ProxySupport.copy(in, out, buffer);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+        LOG.debug("Spilled request body of {} bytes to {}", contentLength, file);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        if (file == null) {
+            out.write(data);
+            return;
+        }
+        InputStream in = new FileInputStream(file);
+        byte[] buffer = bufferPool.acquire();
+        try {
+            ProxySupport.copy(in, out, buffer);
+        } finally {
+            bufferPool.release(buffer);
+            in.close();
+        }
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns true if the body was spilled to a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Deletes the temporary file if the body was spilled to one
+     */
+    public void release() {
+        if (file != null && !file.delete() && file.exists()) {
+            LOG.warn("Could not delete temporary file " + file);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link RequestEntity} which streams the body of the client request to the back end service
+ * as it is received, using chunked transfer encoding as the length is not known up front.
+ * <br>
+ * The entity can only be written once so the request cannot be retried.
+ */
+public class StreamingRequestEntity implements RequestEntity {
+    private final InputStream in;
+    private final String contentType;
+    private final BufferPool bufferPool;
+    private long bytesWritten;
+
+    public StreamingRequestEntity(InputStream in, String contentType, BufferPool bufferPool) {
+        this.in = in;
+        this.contentType = contentType;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                bytesWritten += n;
+                // send what we have so far as the client may be uploading slowly
+                out.flush();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the number of bytes streamed to the back end service
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends many concurrent requests for a slow back end service through the {@link ProxyServlet} and
+ * compares the number of container threads in use when proxying synchronously and asynchronously.
+ */
+public class AsyncProxyServletLoadTest {
+    private static final transient Logger LOG = LoggerFactory.getLogger(AsyncProxyServletLoadTest.class);
+
+    private static final int CONCURRENCY = 40;
+    private static final long BACKEND_DELAY = 500;
+
+    private Server backend;
+    private Server gateway;
+    private QueuedThreadPool gatewayThreads;
+    private TestProxyServlet asyncServlet;
+    private ExecutorService clients;
+    private String gatewayUrl;
+
+    @Before
+    public void start() throws Exception {
+        int backendPort = ProxyServletBenchmark.freePort();
+        backend = new Server(backendPort);
+        ServletContextHandler backendContext = new ServletContextHandler(backend, "/");
+        backendContext.addServlet(new ServletHolder(new SlowBackendServlet()), "/backend/*");
+        backend.start();
+
+        int gatewayPort = ProxyServletBenchmark.freePort();
+        gateway = new Server(gatewayPort);
+        gatewayThreads = new QueuedThreadPool(200);
+        gateway.setThreadPool(gatewayThreads);
+        ServletContextHandler context = new ServletContextHandler(gateway, "/");
+        String backendUrl = "http://localhost:" + backendPort + "/backend";
+
+        ServletHolder sync = new ServletHolder(new TestProxyServlet());
+        sync.setInitParameter("backendUrl", backendUrl);
+        context.addServlet(sync, "/sync/*");
+
+        asyncServlet = new TestProxyServlet();
+        ServletHolder async = new ServletHolder(asyncServlet);
+        async.setInitParameter("backendUrl", backendUrl);
+        async.setInitParameter(ProxyServlet.ASYNC_PROXY, "true");
+        async.setAsyncSupported(true);
+        context.addServlet(async, "/async/*");
+        gateway.start();
+
+        gatewayUrl = "http://localhost:" + gatewayPort;
+        clients = Executors.newFixedThreadPool(CONCURRENCY);
+        // initialize the servlets
+        assertEquals(200, get("/sync/fast"));
+        assertEquals(200, get("/async/fast"));
+    }
+
+    @After
+    public void stop() throws Exception {
+        clients.shutdownNow();
+        gateway.stop();
+        backend.stop();
+    }
+
+    @Test
+    public void testAsyncProxyReleasesContainerThreads() throws Exception {
+        int syncThreads = peakBusyThreads("/sync/slow");
+        int asyncThreads = peakBusyThreads("/async/slow");
+        LOG.info("Peak container threads for " + CONCURRENCY + " requests to a slow back end: sync " + syncThreads + " async " + asyncThreads);
+
+        assertTrue("Sync mode should hold a thread per request but used " + syncThreads, syncThreads >= CONCURRENCY / 2);
+        assertTrue("Async mode should release the container threads but used " + asyncThreads, asyncThreads < syncThreads / 2);
+        assertEquals(0, asyncServlet.getAsyncProxy().getActiveRequests());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreLimitedPerRule() throws Exception {
+        List<Integer> statuses = getConcurrently("/async/limited/slow", 20);
+        int ok = 0;
+        int rejected = 0;
+        for (Integer status : statuses) {
+            if (status == HttpServletResponse.SC_OK) {
+                ok++;
+            } else if (status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+                rejected++;
+            }
+        }
+        assertTrue("At most 5 requests should have been proxied but was " + ok, ok <= 5 && ok > 0);
+        assertEquals(20, ok + rejected);
+        assertEquals(rejected, asyncServlet.getAsyncProxy().getRejectedRequests());
+        // other rules are not affected by the limit
+        assertEquals(200, get("/async/fast"));
+    }
+
+    @Test
+    public void testSlowBackEndTimesOut() throws Exception {
+        assertEquals(HttpServletResponse.SC_GATEWAY_TIMEOUT, get("/async/timeout/slow"));
+        assertEquals(1, asyncServlet.getAsyncProxy().getTimedOutRequests());
+    }
+
+    protected int peakBusyThreads(String path) throws Exception {
+        final int idle = gatewayThreads.getThreads() - gatewayThreads.getIdleThreads();
+        final AtomicInteger peak = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread("busy thread sampler") {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    int busy = gatewayThreads.getThreads() - gatewayThreads.getIdleThreads() - idle;
+                    if (busy > peak.get()) {
+                        peak.set(busy);
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        sampler.start();
+        try {
+            for (Integer status : getConcurrently(path, CONCURRENCY)) {
+                assertEquals(200, status.intValue());
+            }
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        return peak.get();
+    }
+
+    protected List<Integer> getConcurrently(final String path, int count) throws Exception {
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < count; i++) {
+            futures.add(clients.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return get(path);
+                }
+            }));
+        }
+        List<Integer> answer = new ArrayList<Integer>();
+        for (Future<Integer> future : futures) {
+            answer.add(future.get());
+        }
+        return answer;
+    }
+
+    protected int get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(gatewayUrl + path).openConnection();
+        try {
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                while (in.read() != -1) {
+                }
+                in.close();
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public static class TestProxyServlet extends ProxyServlet {
+        @Override
+        protected void loadRuleBase(ServletConfig config, HttpProxyRuleBase ruleBase) throws ServletException {
+            String backendUrl = config.getInitParameter("backendUrl");
+            ruleBase.rule("/sync/{path}").to(backendUrl + "/{path}");
+            ruleBase.rule("/async/{path}").to(backendUrl + "/{path}");
+            ruleBase.rule("/async/limited/{path}").to(backendUrl + "/{path}").setMaxConcurrentRequests(5);
+            ruleBase.rule("/async/timeout/{path}").to(backendUrl + "/{path}").setRequestTimeout(100);
+        }
+    }
+
+    public static class SlowBackendServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            if (request.getPathInfo().endsWith("slow")) {
+                try {
+                    Thread.sleep(BACKEND_DELAY);
+                } catch (InterruptedException e) {
+                    throw new ServletException(e);
+                }
+            }
+            response.setContentType("text/plain");
+            response.getOutputStream().write("ok".getBytes("UTF-8"));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxies large response bodies from a back end servlet through the {@link ProxyServlet}, all running
+ * in an embedded Jetty, comparing the pooled connections and buffered copies with a servlet which
+ * creates a new {@link HttpClient} for every request and copies one byte at a time as the
+ * {@link ProxyServlet} used to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.fabric8.gateway.servlet.ProxyServletBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ProxyServletBenchmark {
+
+    @Param({"65536", "4194304"})
+    public int bodySize;
+
+    Server server;
+    HttpClient client;
+    String proxyUrl;
+    String legacyProxyUrl;
+
+    @Setup
+    public void start() throws Exception {
+        int port = freePort();
+        String backendUrl = "http://localhost:" + port + "/backend";
+        server = new Server(port);
+        ServletContextHandler context = new ServletContextHandler(server, "/");
+        context.addServlet(new ServletHolder(new BackendServlet(bodySize)), "/backend/*");
+        ServletHolder proxy = new ServletHolder(new BenchmarkProxyServlet());
+        proxy.setInitParameter("backendUrl", backendUrl);
+        context.addServlet(proxy, "/proxy/*");
+        context.addServlet(new ServletHolder(new LegacyProxyServlet(backendUrl)), "/legacy/*");
+        server.start();
+
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(16);
+        connectionManager.getParams().setMaxTotalConnections(16);
+        client = new HttpClient(connectionManager);
+        proxyUrl = "http://localhost:" + port + "/proxy/data";
+        legacyProxyUrl = "http://localhost:" + port + "/legacy/data";
+        if (get(proxyUrl) != bodySize || get(legacyProxyUrl) != bodySize) {
+            throw new IllegalStateException("The proxied body was not " + bodySize + " bytes");
+        }
+    }
+
+    @TearDown
+    public void stop() throws Exception {
+        ((MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()).shutdown();
+        server.stop();
+    }
+
+    @Benchmark
+    public long pooledProxy() throws IOException {
+        return get(proxyUrl);
+    }
+
+    @Benchmark
+    public long legacyProxy() throws IOException {
+        return get(legacyProxyUrl);
+    }
+
+    protected long get(String url) throws IOException {
+        GetMethod method = new GetMethod(url);
+        try {
+            client.executeMethod(method);
+            InputStream in = method.getResponseBodyAsStream();
+            byte[] buffer = new byte[8192];
+            long count = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                count += n;
+            }
+            return count;
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    protected static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ProxyServletBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class BenchmarkProxyServlet extends ProxyServlet {
+        @Override
+        protected void loadRuleBase(ServletConfig config, HttpProxyRuleBase ruleBase) throws ServletException {
+            ruleBase.rule("/proxy/{path}").to(config.getInitParameter("backendUrl") + "/{path}");
+        }
+    }
+
+    /**
+     * Proxies requests the way the {@link ProxyServlet} did before its connections were pooled.
+     */
+    public static class LegacyProxyServlet extends HttpServlet {
+        private final String backendUrl;
+
+        public LegacyProxyServlet(String backendUrl) {
+            this.backendUrl = backendUrl;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            GetMethod method = new GetMethod(backendUrl + request.getPathInfo());
+            HttpClient httpClient = new HttpClient();
+            response.setStatus(httpClient.executeMethod(method));
+            BufferedInputStream in = new BufferedInputStream(method.getResponseBodyAsStream());
+            OutputStream out = response.getOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+        }
+    }
+
+    public static class BackendServlet extends HttpServlet {
+        private final byte[] body;
+
+        public BackendServlet(int size) {
+            body = new byte[size];
+            new Random(size).nextBytes(body);
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            response.setContentType("application/octet-stream");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class BufferPoolTest {
+
+    @Test
+    public void buffersAreReused() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 2);
+        final byte[] buffer = pool.acquire();
+        assertThat(buffer.length, is(1024));
+        pool.release(buffer);
+        assertThat(pool.getAvailable(), is(1));
+        assertThat(pool.acquire(), sameInstance(buffer));
+        assertThat(pool.getAvailable(), is(0));
+    }
+
+    @Test
+    public void poolIsBounded() throws Exception {
+        final BufferPool pool = new BufferPool(16, 2);
+        pool.release(pool.acquire());
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+        assertThat(pool.getAvailable(), is(2));
+        // buffers of another size are not pooled
+        pool.release(new byte[8]);
+        pool.acquire();
+        pool.release(new byte[8]);
+        assertThat(pool.getAvailable(), is(1));
+    }
+}
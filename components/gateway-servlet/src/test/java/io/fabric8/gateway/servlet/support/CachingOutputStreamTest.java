@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class CachingOutputStreamTest {
+
+    @Test
+    public void dataIsCopied() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CachingOutputStream stream = new CachingOutputStream(out, 10);
+        stream.write("hello".getBytes());
+        stream.write('!');
+        assertThat(new String(out.toByteArray()), equalTo("hello!"));
+        assertThat(new String(stream.getCopy()), equalTo("hello!"));
+    }
+
+    @Test
+    public void copyIsDroppedAboveTheMaximum() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CachingOutputStream stream = new CachingOutputStream(out, 10);
+        stream.write("hello".getBytes());
+        stream.write("world!".getBytes());
+        stream.write('!');
+        assertThat(out.size(), is(12));
+        assertNull(stream.getCopy());
+    }
+}
@@ -17,6 +17,10 @@ package io.fabric8.gateway.servlet.support;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -113,4 +117,32 @@ public class ProxySupportTest {
         assertThat(rewritten, equalTo("JSESSIONID=Y-9KtnLehgsF3yaDa80cqoaf.dhcp-208-183"));
     }
 
+    @Test
+    public void copyUsesTheWholeBuffer() throws Exception {
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = ProxySupport.copy(new ByteArrayInputStream(data), out, new byte[1024]);
+        assertThat(count, is(10000L));
+        assertThat(Arrays.equals(data, out.toByteArray()), is(true));
+    }
+
+    @Test
+    public void readFullyWithUnknownContentLength() throws Exception {
+        final byte[] data = "{\"name\":\"gateway\"}".getBytes("UTF-8");
+        assertThat(Arrays.equals(data, ProxySupport.readFully(new ByteArrayInputStream(data), -1, new byte[4])), is(true));
+        assertThat(ProxySupport.readFully(new ByteArrayInputStream(new byte[0]), 0, new byte[4]).length, is(0));
+    }
+
+    @Test
+    public void readFullyDoesNotTrustHugeContentLength() throws Exception {
+        // a client claiming a 2 GB body must not make the gateway allocate it up front
+        final byte[] data = "tiny".getBytes("UTF-8");
+        assertThat(Arrays.equals(data, ProxySupport.readFully(new ByteArrayInputStream(data), Integer.MAX_VALUE, new byte[4096])), is(true));
+        final byte[] large = new byte[100000];
+        assertThat(ProxySupport.readFully(new ByteArrayInputStream(large), Integer.MAX_VALUE, new byte[16]).length, is(large.length));
+    }
+
 }
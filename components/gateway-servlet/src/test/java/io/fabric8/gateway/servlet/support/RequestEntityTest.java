@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RequestEntityTest {
+
+    private final BufferPool bufferPool = new BufferPool(64, 4);
+    private final File directory = new File(System.getProperty("java.io.tmpdir"));
+
+    @Test
+    public void smallBodiesAreKeptInMemory() throws Exception {
+        final byte[] body = createBody(100);
+        final SpooledRequestEntity entity = new SpooledRequestEntity(new ByteArrayInputStream(body), "text/plain", 100, directory, bufferPool);
+        assertThat(entity.isSpilled(), is(false));
+        assertThat(entity.getContentLength(), is(100L));
+        assertThat(entity.getContentType(), is("text/plain"));
+        assertThat(Arrays.equals(body, write(entity)), is(true));
+        entity.release();
+    }
+
+    @Test
+    public void largeBodiesAreSpilledToTemporaryFiles() throws Exception {
+        final byte[] body = createBody(1000);
+        final int before = countTemporaryFiles();
+        final SpooledRequestEntity entity = new SpooledRequestEntity(new ByteArrayInputStream(body), "application/octet-stream", 100, directory, bufferPool);
+        assertThat(entity.isSpilled(), is(true));
+        assertThat(entity.isRepeatable(), is(true));
+        assertThat(entity.getContentLength(), is(1000L));
+        assertThat(countTemporaryFiles(), is(before + 1));
+        // the body can be sent again if the request is retried
+        assertThat(Arrays.equals(body, write(entity)), is(true));
+        assertThat(Arrays.equals(body, write(entity)), is(true));
+
+        entity.release();
+        assertThat(countTemporaryFiles(), is(before));
+    }
+
+    @Test
+    public void streamedBodiesAreChunked() throws Exception {
+        final byte[] body = createBody(1000);
+        final StreamingRequestEntity entity = new StreamingRequestEntity(new ByteArrayInputStream(body), "multipart/form-data; boundary=xyz", bufferPool);
+        assertThat(entity.getContentLength(), is(-1L));
+        assertThat(entity.isRepeatable(), is(false));
+        assertThat(Arrays.equals(body, write(entity)), is(true));
+        assertThat(entity.getBytesWritten(), is(1000L));
+    }
+
+    protected int countTemporaryFiles() {
+        final String[] names = directory.list();
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith("gateway-request-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    protected static byte[] write(RequestEntity entity) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeRequest(out);
+        return out.toByteArray();
+    }
+
+    protected static byte[] createBody(int size) {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i * 31);
+        }
+        return body;
+    }
+}